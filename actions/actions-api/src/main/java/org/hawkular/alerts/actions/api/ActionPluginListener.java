@@ -51,4 +51,11 @@ public interface ActionPluginListener {
      * @throws Exception any problem
      */
     void process(ActionMessage msg) throws Exception;
+
+    /**
+     * This method is invoked when the actions plugins are stopped.
+     * The plugin should complete its pending work and release its resources.
+     */
+    default void close() {
+    }
 }
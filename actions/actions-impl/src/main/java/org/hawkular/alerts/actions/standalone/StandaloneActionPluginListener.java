@@ -18,6 +18,8 @@ package org.hawkular.alerts.actions.standalone;
 
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.hawkular.alerts.actions.api.ActionMessage;
 import org.hawkular.alerts.actions.api.ActionPluginListener;
@@ -36,6 +38,8 @@ import org.hawkular.commons.log.MsgLogging;
 public class StandaloneActionPluginListener implements ActionListener {
     private static final AlertingLogger log = MsgLogging.getMsgLogger(AlertingLogger.class, StandaloneActionPluginRegister.class);
 
+    private static final long CLOSE_TIMEOUT_SECONDS = 30;
+
     private DefinitionsService definitions;
 
     ExecutorService executorService;
@@ -82,16 +86,36 @@ public class StandaloneActionPluginListener implements ActionListener {
                     }
                 });
             }
+        } catch (RejectedExecutionException e) {
+            log.warnf("Action [%s] for plugin [%s] not processed, actions executor is saturated",
+                    action.getActionId(), action.getActionPlugin());
         } catch (Exception e) {
             log.debugf("Error processing action: %s", action.getActionPlugin(), e);
             log.errorProcessingAction(e.getMessage());
         }
     }
 
+    /*
+        Actions already submitted are completed before the plugins are closed, so they can still use their resources
+     */
     public void close() {
         if (executorService != null) {
             executorService.shutdown();
+            try {
+                if (!executorService.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    log.warnf("Actions still running after [%s] seconds, closing plugins", CLOSE_TIMEOUT_SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
+        plugins.forEach((name, plugin) -> {
+            try {
+                plugin.close();
+            } catch (Exception e) {
+                log.debugf("Error closing plugin: %s", name, e);
+            }
+        });
     }
 
     @Override
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.actions.email;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.hawkular.alerts.actions.api.ActionMessage;
+
+/**
+ * Coalesce messages for the same recipients within a time window.
+ *
+ * The first message for a recipient key opens a window, messages for the same key received before the window expires
+ * are accumulated and delivered together to the digest consumer when it closes.
+ * Once the digest is closed messages are delivered as they are added.
+ */
+public class EmailDigest {
+
+    private final Map<String, List<ActionMessage>> pending = new HashMap<>();
+
+    private final Consumer<List<ActionMessage>> digestConsumer;
+
+    private final ScheduledExecutorService scheduler;
+
+    private boolean closed = false;
+
+    public EmailDigest(Consumer<List<ActionMessage>> digestConsumer) {
+        this.digestConsumer = digestConsumer;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "hawkular-alerts-email-digest");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Add a message to the digest of its recipients.
+     *
+     * @param key the recipients key
+     * @param msg the message to coalesce
+     * @param window time in milliseconds the digest is accumulated since its first message
+     */
+    public void add(String key, ActionMessage msg, long window) {
+        synchronized (pending) {
+            if (!closed) {
+                List<ActionMessage> digest = pending.get(key);
+                if (digest == null) {
+                    digest = new ArrayList<>();
+                    pending.put(key, digest);
+                    scheduler.schedule(() -> flush(key), window, TimeUnit.MILLISECONDS);
+                }
+                digest.add(msg);
+                return;
+            }
+        }
+        digestConsumer.accept(Collections.singletonList(msg));
+    }
+
+    /**
+     * @return number of messages waiting on open digests
+     */
+    public int size() {
+        synchronized (pending) {
+            return pending.values().stream().mapToInt(List::size).sum();
+        }
+    }
+
+    /**
+     * Deliver all open digests and stop the scheduler.
+     */
+    public void close() {
+        List<List<ActionMessage>> digests;
+        synchronized (pending) {
+            closed = true;
+            digests = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        scheduler.shutdownNow();
+        digests.forEach(digestConsumer);
+    }
+
+    private void flush(String key) {
+        List<ActionMessage> digest;
+        synchronized (pending) {
+            digest = pending.remove(key);
+        }
+        if (digest != null && !digest.isEmpty()) {
+            digestConsumer.accept(digest);
+        }
+    }
+}
@@ -20,15 +20,14 @@ import static org.hawkular.alerts.api.util.Util.isEmpty;
 
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
 import javax.mail.Address;
-import javax.mail.Authenticator;
 import javax.mail.Message;
 import javax.mail.Multipart;
-import javax.mail.PasswordAuthentication;
 import javax.mail.Session;
 import javax.mail.Transport;
 import javax.mail.internet.InternetAddress;
@@ -49,6 +48,7 @@ import org.hawkular.alerts.api.model.event.Alert.Status;
 import org.hawkular.alerts.api.model.event.Event;
 import org.hawkular.alerts.log.AlertingLogger;
 import org.hawkular.commons.log.MsgLogging;
+import org.hawkular.commons.properties.HawkularProperties;
 
 /**
  * Action Email plugin.
@@ -91,6 +91,14 @@ public class EmailPlugin implements ActionPluginListener {
     public static final String HAWKULAR_ALERTS_TEMPLATES = "HAWKULAR_ALERTS_TEMPLATES";
     public static final String HAWKULAR_ALERTS_TEMPLATES_PROPERY = "hawkular.alerts.templates";
 
+    /**
+     * Max number of concurrent SMTP connections per mail session.
+     * Connections are pooled and reused between messages.
+     */
+    public static final String TRANSPORT_POOL_SIZE = "hawkular-alerts.email-transport-pool-size";
+    public static final String TRANSPORT_POOL_SIZE_ENV = "HAWKULAR_ALERTS_EMAIL_TRANSPORT_POOL_SIZE";
+    public static final String TRANSPORT_POOL_SIZE_DEFAULT = "4";
+
     /*
         This is the list of properties supported for the Email plugin.
         Properties are personalized per action.
@@ -193,14 +201,23 @@ public class EmailPlugin implements ActionPluginListener {
      */
     public static final String PROP_TEMPLATE_HTML = "template.html";
 
-
+    /**
+     * "digest.window" property defines a time window in milliseconds to coalesce emails for the same recipients.
+     * When defined, the first message for a set of sender/recipients opens a window and all messages for the same
+     * sender/recipients received during the window are sent as a single email when the window expires.
+     *
+     * If not defined or 0, each message is sent as a separate email.
+     */
+    public static final String PROP_DIGEST_WINDOW = "digest.window";
 
     Map<String, String> defaultProperties = new HashMap<>();
 
-    Session mailSession;
-
     EmailTemplate emailTemplate;
 
+    EmailTransportPool transportPool;
+
+    EmailDigest emailDigest;
+
     @Sender
     ActionPluginSender sender;
 
@@ -217,15 +234,22 @@ public class EmailPlugin implements ActionPluginListener {
         defaultProperties.put(PROP_TEMPLATE_HAWKULAR_URL, DEFAULT_HAWKULAR_BASE_URL);
         defaultProperties.put(PROP_TEMPLATE_PLAIN, "");
         defaultProperties.put(PROP_TEMPLATE_HTML, "");
+        defaultProperties.put(PROP_DIGEST_WINDOW, "");
 
         emailTemplate = new EmailTemplate();
+        transportPool = new EmailTransportPool(Integer.parseInt(HawkularProperties.getProperty(TRANSPORT_POOL_SIZE,
+                TRANSPORT_POOL_SIZE_ENV, TRANSPORT_POOL_SIZE_DEFAULT)));
+        emailDigest = new EmailDigest(this::processDigest);
     }
 
     public void setSender(ActionPluginSender sender) {
         this.sender = sender;
     }
 
-    private void initMailSession(ActionMessage msg) {
+    /*
+        Returns the mail properties of the message, null when the mail session is offline
+     */
+    private Properties getMailProperties(ActionMessage msg) {
         boolean offLine = System.getProperty(MAIL_SESSION_OFFLINE) != null;
         if (!offLine) {
             Properties emailProperties = new Properties();
@@ -242,19 +266,20 @@ public class EmailPlugin implements ActionPluginListener {
             }
             emailProperties.putIfAbsent("mail.smtp.host", DEFAULT_MAIL_SMTP_HOST);
             emailProperties.putIfAbsent("mail.smtp.port", DEFAULT_MAIL_SMTP_PORT);
-            if (emailProperties.containsKey("mail.smtp.user")
-                    && emailProperties.containsKey("mail.smtp.pass")) {
-                String user = emailProperties.getProperty("mail.smtp.user");
-                String password = emailProperties.getProperty("mail.smtp.pass");
-                mailSession = Session.getInstance(emailProperties, new Authenticator() {
-                    @Override
-                    protected PasswordAuthentication getPasswordAuthentication() {
-                        return new PasswordAuthentication(user, password);
-                    }
-                });
-            } else {
-                mailSession = Session.getInstance(emailProperties);
-            }
+            return emailProperties;
+        }
+        return null;
+    }
+
+    private Session getMailSession(Properties emailProperties) {
+        return emailProperties != null ? transportPool.getSession(emailProperties) : null;
+    }
+
+    private void send(Properties emailProperties, Message message) throws Exception {
+        if (emailProperties != null) {
+            transportPool.send(emailProperties, message);
+        } else {
+            Transport.send(message);
         }
     }
 
@@ -268,6 +293,15 @@ public class EmailPlugin implements ActionPluginListener {
         return defaultProperties;
     }
 
+    /**
+     * Send the open digests and close the pooled connections.
+     */
+    @Override
+    public void close() {
+        emailDigest.close();
+        transportPool.close();
+    }
+
     private void sendResult(Action action) {
         if (sender == null) {
             throw new IllegalStateException("ActionPluginSender is not present in the plugin");
@@ -290,13 +324,17 @@ public class EmailPlugin implements ActionPluginListener {
             log.warnMessageReceivedWithoutPayload("email");
         }
         try {
-            String tenantId = msg.getAction() != null ? msg.getAction().getTenantId() : null;
+            long digestWindow = getDigestWindow(msg);
+            if (digestWindow > 0) {
+                emailDigest.add(getDigestKey(msg), msg, digestWindow);
+                return;
+            }
             /**
              * Mail session can change during invocations
              */
-            initMailSession(msg);
-            Message message = createMimeMessage(msg);
-            Transport.send(message);
+            Properties emailProperties = getMailProperties(msg);
+            Message message = createMimeMessage(msg, getMailSession(emailProperties));
+            send(emailProperties, message);
             log.infoActionReceived("email", msg.toString());
             Action successAction = msg.getAction();
             successAction.setResult(MESSAGE_PROCESSED);
@@ -309,27 +347,158 @@ public class EmailPlugin implements ActionPluginListener {
         }
     }
 
-    protected Message createMimeMessage(ActionMessage msg) throws Exception {
-        Message email = new EmailMimeMessage(mailSession);
+    private void processDigest(List<ActionMessage> msgs) {
+        if (msgs.size() == 1) {
+            try {
+                Properties emailProperties = getMailProperties(msgs.get(0));
+                send(emailProperties, createMimeMessage(msgs.get(0), getMailSession(emailProperties)));
+                log.infoActionReceived("email", msgs.get(0).toString());
+                msgs.get(0).getAction().setResult(MESSAGE_PROCESSED);
+            } catch (Exception e) {
+                log.errorCannotProcessMessage("email", e.getMessage());
+                msgs.get(0).getAction().setResult(MESSAGE_FAILED);
+            }
+            sendResult(msgs.get(0).getAction());
+            return;
+        }
+        String result;
+        try {
+            Properties emailProperties = getMailProperties(msgs.get(0));
+            send(emailProperties, createDigestMimeMessage(msgs, getMailSession(emailProperties)));
+            msgs.forEach(msg -> log.infoActionReceived("email", msg.toString()));
+            result = MESSAGE_PROCESSED;
+        } catch (Exception e) {
+            log.errorCannotProcessMessage("email", e.getMessage());
+            result = MESSAGE_FAILED;
+        }
+        for (ActionMessage msg : msgs) {
+            msg.getAction().setResult(result);
+            sendResult(msg.getAction());
+        }
+    }
 
+    private long getDigestWindow(ActionMessage msg) {
+        if (msg == null || msg.getAction() == null) {
+            return 0;
+        }
         Map<String, String> props = msg.getAction().getProperties();
-        if (isEmpty(props)) {
-            log.warnf("Properties empty on plugin %s.", PLUGIN_NAME);
+        String window = props != null ? props.get(PROP_DIGEST_WINDOW) : null;
+        if (isEmpty(window)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(window.trim());
+        } catch (NumberFormatException e) {
+            log.warnf("Invalid %s property [%s] on plugin %s.", PROP_DIGEST_WINDOW, window, PLUGIN_NAME);
+            return 0;
         }
+    }
+
+    private String getDigestKey(ActionMessage msg) {
+        Map<String, String> props = msg.getAction().getProperties();
+        String statusStr = getStatus(msg).name().toLowerCase();
+        return msg.getAction().getTenantId() + "|" + getProperty(props, PROP_FROM, statusStr, DEFAULT_FROM) + "|"
+                + getProperty(props, PROP_TO, statusStr, "") + "|" + getProperty(props, PROP_CC, statusStr, "");
+    }
+
+    private static String getProperty(Map<String, String> props, String name, String statusStr, String defaultValue) {
+        String value = props.get(name + "." + statusStr);
+        value = value == null ? props.get(name) : value;
+        return value == null ? defaultValue : value;
+    }
+
+    private static Status getStatus(ActionMessage msg) {
         Event event = msg.getAction() != null ? msg.getAction().getEvent() : null;
         Alert alert = null != event && (event instanceof Alert) ? (Alert) event : null;
-        Status status = alert != null && alert.getStatus() != null ? alert.getStatus() : Status.OPEN;
-        String statusStr = status.name().toLowerCase();
+        return alert != null && alert.getStatus() != null ? alert.getStatus() : Status.OPEN;
+    }
+
+    /**
+     * Create a single email for several messages sent to the same recipients.
+     * Headers are taken from the first message and body contains the content of all messages.
+     *
+     * @param msgs the messages coalesced in the digest
+     * @param session the mail session of the email, null when offline
+     * @return a single email
+     * @throws Exception on any problem
+     */
+    protected Message createDigestMimeMessage(List<ActionMessage> msgs, Session session) throws Exception {
+        Message email = new EmailMimeMessage(session);
+        ActionMessage first = msgs.get(0);
+        setSenderAndRecipients(email, first);
+        email.setSentDate(new Date());
+
+        StringBuilder plain = new StringBuilder();
+        StringBuilder html = new StringBuilder();
+        String firstSubject = null;
+        for (ActionMessage msg : msgs) {
+            Map<String, String> emailProcessed = emailTemplate.processTemplate(msg);
+            if (firstSubject == null) {
+                firstSubject = emailProcessed.get("emailSubject");
+            } else {
+                plain.append("\n\n");
+                html.append("<hr/>");
+            }
+            plain.append(emailProcessed.get("emailBodyPlain"));
+            html.append(emailProcessed.get("emailBodyHtml"));
+        }
+        email.setSubject("[" + msgs.size() + " notifications] " + (firstSubject == null ? "" : firstSubject));
 
-        String from = props.get(PROP_FROM + "." + statusStr);
-        from = from == null ? props.get(PROP_FROM) : from;
-        from = from == null ? DEFAULT_FROM : from;
+        MimeBodyPart text = new MimeBodyPart();
+        text.setContent(plain.toString(), "text/plain");
 
-        String fromName = props.get(PROP_FROM_NAME + "." + statusStr);
-        fromName = fromName == null ? props.get(PROP_FROM_NAME) : fromName;
-        fromName = fromName == null ? DEFAULT_FROM_NAME : fromName;
+        MimeBodyPart rich = new MimeBodyPart();
+        rich.setContent(html.toString(), "text/html");
 
+        Multipart multipart = new MimeMultipart("alternative");
+        multipart.addBodyPart(text);
+        multipart.addBodyPart(rich);
+        email.setContent(multipart);
+        return email;
+    }
+
+    private void setSenderAndRecipients(Message email, ActionMessage msg) throws Exception {
+        Map<String, String> props = msg.getAction().getProperties();
+        String statusStr = getStatus(msg).name().toLowerCase();
+
+        String from = getProperty(props, PROP_FROM, statusStr, DEFAULT_FROM);
+        String fromName = getProperty(props, PROP_FROM_NAME, statusStr, DEFAULT_FROM_NAME);
         email.setFrom(new InternetAddress(from, fromName));
+
+        String to = getProperty(props, PROP_TO, statusStr, null);
+        if (!isEmpty(to)) {
+            Address toAddress = new InternetAddress(to);
+            email.addRecipient(Message.RecipientType.TO, toAddress);
+        }
+
+        String ccs = getProperty(props, PROP_CC, statusStr, null);
+        if (!isEmpty(ccs)) {
+            String[] multipleCc = ccs.split(",");
+            for (String cc : multipleCc) {
+                Address toAddress = new InternetAddress(cc);
+                email.addRecipient(Message.RecipientType.CC, toAddress);
+            }
+        }
+    }
+
+    /*
+        An email without mail session, as used when the session is offline
+     */
+    protected Message createMimeMessage(ActionMessage msg) throws Exception {
+        return createMimeMessage(msg, null);
+    }
+
+    protected Message createMimeMessage(ActionMessage msg, Session session) throws Exception {
+        Message email = new EmailMimeMessage(session);
+
+        Map<String, String> props = msg.getAction().getProperties();
+        if (isEmpty(props)) {
+            log.warnf("Properties empty on plugin %s.", PLUGIN_NAME);
+        }
+        Event event = msg.getAction() != null ? msg.getAction().getEvent() : null;
+        Alert alert = null != event && (event instanceof Alert) ? (Alert) event : null;
+
+        setSenderAndRecipients(email, msg);
         if (alert != null && alert.getStatus() != null) {
             if (alert.getStatus().equals(Status.OPEN)) {
                 email.setSentDate(new Date(alert.getCtime()));
@@ -349,23 +518,6 @@ public class EmailPlugin implements ActionPluginListener {
             }
         }
 
-        String to = props.get(PROP_TO + "." + statusStr);
-        to = to == null ? props.get(PROP_TO) : to;
-        if (!isEmpty(to)) {
-            Address toAddress = new InternetAddress(to);
-            email.addRecipient(Message.RecipientType.TO, toAddress);
-        }
-
-        String ccs = props.get(PROP_CC + "." + statusStr);
-        ccs = ccs == null ? props.get(PROP_CC) : ccs;
-        if (!isEmpty(ccs)) {
-            String[] multipleCc = ccs.split(",");
-            for (String cc : multipleCc) {
-                Address toAddress = new InternetAddress(cc);
-                email.addRecipient(Message.RecipientType.CC, toAddress);
-            }
-        }
-
         Map<String, String> emailProcessed = emailTemplate.processTemplate(msg);
 
         String subject = emailProcessed.get("emailSubject");
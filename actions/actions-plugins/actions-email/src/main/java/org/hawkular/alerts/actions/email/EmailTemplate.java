@@ -22,13 +22,16 @@ import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
 
 import org.hawkular.alerts.actions.api.ActionMessage;
 import org.hawkular.commons.log.MsgLogger;
 import org.hawkular.commons.log.MsgLogging;
+import org.hawkular.commons.properties.HawkularProperties;
 
 import freemarker.template.Configuration;
 import freemarker.template.Template;
@@ -77,6 +80,9 @@ import freemarker.template.Version;
  * exist for this action: "template.plain.es"/"template.html.es". Under these properties are defined specific
  * templates for Spanish language.
  *
+ * Dynamic templates are compiled once and cached keyed by their content, so the same template text defined at plugin
+ * or action level is not parsed again for every message. The cache is bounded by the
+ * "hawkular-alerts.email-template-cache-size" property (defaults to 100 templates).
  *
  * @author Jay Shaughnessy
  * @author Lucas Ponce
@@ -89,13 +95,30 @@ public class EmailTemplate {
     public static final Locale DEFAULT_LOCALE = new Locale("en", "US");
     public static final String FREEMARKER_VERSION = "2.3.23";
 
+    public static final String TEMPLATE_CACHE_SIZE = "hawkular-alerts.email-template-cache-size";
+    public static final String TEMPLATE_CACHE_SIZE_ENV = "HAWKULAR_ALERTS_EMAIL_TEMPLATE_CACHE_SIZE";
+    public static final String TEMPLATE_CACHE_SIZE_DEFAULT = "100";
+
     Configuration ftlCfg;
-    Template ftlTemplate;
     Template ftlTemplatePlain;
     Template ftlTemplateHtml;
 
+    /*
+        Compiled dynamic templates keyed by template content.
+        Access order is used to evict the least recently used templates when the cache is full.
+     */
+    Map<String, Template> templateCache;
+
     public EmailTemplate() {
         ftlCfg = new Configuration(new Version(FREEMARKER_VERSION));
+        int cacheSize = Integer.parseInt(HawkularProperties.getProperty(TEMPLATE_CACHE_SIZE, TEMPLATE_CACHE_SIZE_ENV,
+                TEMPLATE_CACHE_SIZE_DEFAULT));
+        templateCache = Collections.synchronizedMap(new LinkedHashMap<String, Template>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Template> eldest) {
+                return size() > cacheSize;
+            }
+        });
         try {
             // Check if templates are located from disk or if we are loading default ones.
             String templatesDir = System.getenv(EmailPlugin.HAWKULAR_ALERTS_TEMPLATES);
@@ -158,16 +181,12 @@ public class EmailTemplate {
         StringWriter writerPlain = new StringWriter();
         StringWriter writerHtml = new StringWriter();
         if (!isEmpty(plain)) {
-            StringReader plainReader = new StringReader(plain);
-            ftlTemplate = new Template("plainTemplate", plainReader, ftlCfg);
-            ftlTemplate.process(pmDesc, writerPlain);
+            getTemplate("plainTemplate", plain).process(pmDesc, writerPlain);
         }  else {
             ftlTemplatePlain.process(pmDesc, writerPlain);
         }
         if (!isEmpty(html)) {
-            StringReader htmlReader = new StringReader(html);
-            ftlTemplate = new Template("htmlTemplate", htmlReader, ftlCfg);
-            ftlTemplate.process(pmDesc, writerHtml);
+            getTemplate("htmlTemplate", html).process(pmDesc, writerHtml);
         } else {
             ftlTemplateHtml.process(pmDesc, writerHtml);
         }
@@ -185,4 +204,22 @@ public class EmailTemplate {
         return emailProcessed;
     }
 
+    /**
+     * Return a compiled template for a dynamic template text.
+     * Templates are compiled only the first time a content is seen, next invocations reuse the cached instance.
+     *
+     * @param name the name used for the compiled template
+     * @param text the template content
+     * @return a compiled freemarker template
+     * @throws IOException on any problem parsing the template
+     */
+    Template getTemplate(String name, String text) throws IOException {
+        String key = name + ":" + text;
+        Template template = templateCache.get(key);
+        if (template == null) {
+            template = new Template(name, new StringReader(text), ftlCfg);
+            templateCache.put(key, template);
+        }
+        return template;
+    }
 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.actions.email;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+
+import javax.mail.Authenticator;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.PasswordAuthentication;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+import org.hawkular.commons.log.MsgLogger;
+import org.hawkular.commons.log.MsgLogging;
+
+/**
+ * A pool of connected javax.mail Transports.
+ *
+ * javax.mail.Transport.send() opens and closes a SMTP connection per message.
+ * This pool keeps a javax.mail.Session per distinct set of "mail.*" properties and reuses its connected Transports
+ * between messages.
+ *
+ * The number of concurrent connections per Session is bounded by the poolSize, when all Transports are in use
+ * senders wait until one is released.
+ */
+public class EmailTransportPool {
+    private final MsgLogger log = MsgLogging.getMsgLogger(EmailTransportPool.class);
+
+    private final int poolSize;
+
+    private final Map<String, SessionPool> pools = new ConcurrentHashMap<>();
+
+    public EmailTransportPool(int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("poolSize must be greater than 0");
+        }
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * Return the javax.mail.Session shared by all messages using the same properties.
+     *
+     * @param emailProperties the "mail.*" properties of the session
+     * @return a javax.mail.Session
+     */
+    public Session getSession(Properties emailProperties) {
+        return getPool(emailProperties).session;
+    }
+
+    /**
+     * Send a message using a pooled Transport of its javax.mail.Session.
+     * A pooled Transport that has lost its connection is discarded and the message is retried once on a new one.
+     * Other failures are not retried, the server may have accepted the message for some of its recipients.
+     *
+     * @param emailProperties the "mail.*" properties of the session used to create the message
+     * @param message the message to send
+     * @throws MessagingException on any problem sending the message
+     */
+    public void send(Properties emailProperties, Message message) throws MessagingException {
+        SessionPool pool = getPool(emailProperties);
+        message.saveChanges();
+        try {
+            pool.permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted waiting for a mail transport", e);
+        }
+        try {
+            Transport transport = pool.idle.pollFirst();
+            if (transport != null) {
+                try {
+                    sendMessage(transport, message);
+                    pool.idle.offerFirst(transport);
+                    return;
+                } catch (SendFailedException e) {
+                    release(pool, transport);
+                    throw e;
+                } catch (MessagingException e) {
+                    if (transport.isConnected()) {
+                        release(pool, transport);
+                        throw e;
+                    }
+                    log.debugf("Discarding pooled transport: %s", e.getMessage());
+                    close(transport);
+                }
+            }
+            transport = pool.session.getTransport();
+            try {
+                sendMessage(transport, message);
+                pool.idle.offerFirst(transport);
+            } catch (MessagingException e) {
+                release(pool, transport);
+                throw e;
+            }
+        } finally {
+            pool.permits.release();
+        }
+    }
+
+    /**
+     * Close all pooled Transports.
+     */
+    public void close() {
+        pools.values().forEach(pool -> {
+            Transport transport;
+            while ((transport = pool.idle.pollFirst()) != null) {
+                close(transport);
+            }
+        });
+        pools.clear();
+    }
+
+    private SessionPool getPool(Properties emailProperties) {
+        // Properties are normalized to a sorted String to be used as key
+        String key = new TreeMap<>(emailProperties).toString();
+        return pools.computeIfAbsent(key, k -> new SessionPool(createSession(emailProperties), poolSize));
+    }
+
+    private Session createSession(Properties emailProperties) {
+        if (emailProperties.containsKey("mail.smtp.user")
+                && emailProperties.containsKey("mail.smtp.pass")) {
+            String user = emailProperties.getProperty("mail.smtp.user");
+            String password = emailProperties.getProperty("mail.smtp.pass");
+            return Session.getInstance(emailProperties, new Authenticator() {
+                @Override
+                protected PasswordAuthentication getPasswordAuthentication() {
+                    return new PasswordAuthentication(user, password);
+                }
+            });
+        }
+        return Session.getInstance(emailProperties);
+    }
+
+    private void sendMessage(Transport transport, Message message) throws MessagingException {
+        if (!transport.isConnected()) {
+            transport.connect();
+        }
+        transport.sendMessage(message, message.getAllRecipients());
+    }
+
+    /*
+        A Transport still connected after a failed message is kept for the next ones
+     */
+    private void release(SessionPool pool, Transport transport) {
+        if (transport.isConnected()) {
+            pool.idle.offerFirst(transport);
+        } else {
+            close(transport);
+        }
+    }
+
+    private void close(Transport transport) {
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            log.debugf("Error closing transport: %s", e.getMessage());
+        }
+    }
+
+    private static class SessionPool {
+        final Session session;
+        final Semaphore permits;
+        final ConcurrentLinkedDeque<Transport> idle = new ConcurrentLinkedDeque<>();
+
+        SessionPool(Session session, int poolSize) {
+            this.session = session;
+            this.permits = new Semaphore(poolSize, true);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.actions.email;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hawkular.alerts.actions.api.ActionMessage;
+import org.hawkular.alerts.actions.tests.JvmGarbageCollectionData;
+import org.hawkular.alerts.actions.tests.TestActionMessage;
+import org.hawkular.alerts.api.model.action.Action;
+import org.hawkular.alerts.api.model.event.Alert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class EmailDigestTest extends CommonTest {
+
+    private static EmailPlugin plugin;
+    private static Map<String, String> properties;
+
+    @BeforeClass
+    public static void prepareMessages() {
+        plugin = new EmailPlugin();
+        plugin.setSender(new TestActionPluginSender());
+
+        properties = new HashMap<>();
+        properties.put("to", "admin@hawkular.org");
+        properties.put("template.hawkular.url", "http://www.hawkular.org");
+        properties.put("digest.window", "500");
+    }
+
+    @Test
+    public void digestEmailTest() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            Alert openAlert = JvmGarbageCollectionData.getOpenAlert();
+            Action openAction = new Action(openAlert.getTriggerId(), "email", "email-to-test", openAlert);
+            openAction.setProperties(properties);
+            ActionMessage openMessage = new TestActionMessage(openAction);
+            plugin.process(openMessage);
+        }
+        assertEquals(0, server.getReceivedMessages().length);
+        assertEquals(5, plugin.emailDigest.size());
+
+        server.waitForIncomingEmail(5000, 1);
+
+        // Five alerts are coalesced in a single message
+        assertEquals(1, server.getReceivedMessages().length);
+        assertEquals(0, plugin.emailDigest.size());
+        writeEmailFile(server.getReceivedMessages()[0], this.getClass().getSimpleName() + "-1-digest.eml");
+    }
+
+    @Test
+    public void addAfterCloseTest() throws Exception {
+        List<List<ActionMessage>> digests = new ArrayList<>();
+        EmailDigest digest = new EmailDigest(digests::add);
+
+        Alert openAlert = JvmGarbageCollectionData.getOpenAlert();
+        Action openAction = new Action(openAlert.getTriggerId(), "email", "email-to-test", openAlert);
+        digest.add("admin@hawkular.org", new TestActionMessage(openAction), 60000);
+        digest.close();
+        assertEquals(1, digests.size());
+
+        // Messages added once closed are not kept waiting on a window that never closes
+        digest.add("admin@hawkular.org", new TestActionMessage(openAction), 60000);
+        assertEquals(2, digests.size());
+        assertEquals(0, digest.size());
+    }
+}
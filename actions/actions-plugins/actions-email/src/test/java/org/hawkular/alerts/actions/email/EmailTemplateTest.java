@@ -18,6 +18,7 @@ package org.hawkular.alerts.actions.email;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 
 import java.io.File;
 import java.util.HashMap;
@@ -115,4 +116,23 @@ public class EmailTemplateTest {
         properties.remove("template.locale");
     }
 
+    @Test
+    public void cachedTemplatesFromPropertiesTest() throws Exception {
+        Alert openAlert = JvmGarbageCollectionData.getOpenAlert();
+        Action openAction = new Action(openAlert.getTriggerId(), "email", "email-to-test", openAlert);
+        openAction.setProperties(properties);
+        ActionMessage openMessage = new TestActionMessage(openAction);
+
+        properties.put("template.plain", "Cached template: ${emailSubject}");
+
+        EmailTemplate template = new EmailTemplate();
+        template.processTemplate(openMessage);
+        template.processTemplate(openMessage);
+
+        assertEquals(1, template.templateCache.size());
+        assertSame(template.getTemplate("plainTemplate", "Cached template: ${emailSubject}"),
+                template.getTemplate("plainTemplate", "Cached template: ${emailSubject}"));
+
+        properties.remove("template.plain");
+    }
 }
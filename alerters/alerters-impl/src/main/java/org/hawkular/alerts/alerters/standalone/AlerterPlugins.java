@@ -30,6 +30,7 @@ import org.hawkular.alerts.alerters.api.AlerterPlugin;
 import org.hawkular.alerts.api.services.AlertsService;
 import org.hawkular.alerts.api.services.DefinitionsService;
 import org.hawkular.alerts.engine.StandaloneAlerts;
+import org.hawkular.alerts.engine.util.AlertsExecutors.Pool;
 import org.hawkular.commons.log.MsgLogger;
 import org.hawkular.commons.log.MsgLogging;
 
@@ -60,7 +61,7 @@ public class AlerterPlugins {
             plugins = new HashMap<>();
             definitions = StandaloneAlerts.getDefinitionsService();
             alerts = StandaloneAlerts.getAlertsService();
-            executor = StandaloneAlerts.getExecutor();
+            executor = StandaloneAlerts.getExecutor(Pool.ALERTERS);
             scan();
         } catch (Exception e) {
             throw new IllegalStateException(e);
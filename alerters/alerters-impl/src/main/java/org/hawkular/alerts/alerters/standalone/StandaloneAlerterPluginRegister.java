@@ -17,7 +17,6 @@
 package org.hawkular.alerts.alerters.standalone;
 
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
 
 import org.hawkular.alerts.alerters.api.AlerterPlugin;
 import org.hawkular.commons.log.MsgLogger;
@@ -31,7 +30,6 @@ public class StandaloneAlerterPluginRegister {
     private static final MsgLogger log = MsgLogging.getMsgLogger(StandaloneAlerterPluginRegister.class);
 
     private static StandaloneAlerterPluginRegister instance;
-    private static ExecutorService executor;
 
     Map<String, AlerterPlugin> plugins;
 
@@ -39,10 +37,6 @@ public class StandaloneAlerterPluginRegister {
         init();
     }
 
-    public static void setExecutor(ExecutorService executor) {
-        StandaloneAlerterPluginRegister.executor = executor;
-    }
-
     public void init() {
         plugins = AlerterPlugins.getPlugins();
         log.info("Alerter Plugins load finished");
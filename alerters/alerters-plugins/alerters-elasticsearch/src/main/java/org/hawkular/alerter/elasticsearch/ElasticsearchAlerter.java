@@ -22,6 +22,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
@@ -94,6 +95,22 @@ import org.hawkular.commons.properties.HawkularProperties;
  *   i.e.   trigger.context["interval"] = "30s" will perform queries each 30 seconds fetching new documents generated
  *          on the last 30 seconds, using the timestamp field provided in the Alerter tag.
  *
+ *   The interval defines the lookback only for the first query of a trigger. Next queries resume from the last
+ *   document processed, so documents are not read twice on overlapping windows.
+ *
+ * - [Optional]    trigger.context["page_size"] = "<number of documents>"
+ *
+ *   Documents are fetched sorted by timestamp in pages using search_after, each page is converted and sent to the
+ *   engine before fetching the next one. If not value provided, default one is "1000".
+ *
+ * - [Optional]    trigger.context["tiebreaker"] = "<unique field>"
+ *
+ *   Documents with the same timestamp are sorted by this field, it must be unique per document and sortable.
+ *   If not value provided, default one is "_id", it is sortable on Elasticsearch 6.x and 7.x.
+ *   On Elasticsearch 5.x "_uid" must be used instead. On Elasticsearch 8.x sorting on "_id" is disabled by default,
+ *   a unique keyword field with doc values should be used instead.
+ *   Pagination uses search_after, so Elasticsearch 5.0 or later is required.
+ *
  * - [Optional]    trigger.context["timestamp_pattern"] = "<date and time pattern>"
  *
  *   Defines a new time pattern for the trigger.context["timestamp"]. It must follow supported formats of
@@ -147,6 +164,9 @@ import org.hawkular.commons.properties.HawkularProperties;
  *
  *      trigger.context["url"] = "http://host1:9200,http://host2:9200,http://host3:9200"
  *
+ *   Requests are balanced across all hosts of the list. Triggers using the same url and credentials share the same
+ *   client and its pool of connections.
+ *
  * </pre>
  *
  * @author Jay Shaughnessy
@@ -183,15 +203,22 @@ public class ElasticsearchAlerter implements AlerterPlugin {
 
     private static final Integer THREAD_POOL_SIZE = 20;
 
+    private static final String FILTER = "filter";
+    private static final String INDEX = "index";
     private static final String INTERVAL = "interval";
     private static final String INTERVAL_DEFAULT = "2m";
     private static final String URL = "url";
     private static final String FORWARDED_FOR = "forwarded-for";
     private static final String PROXY_REMOTE_USER = "proxy-remote-user";
+    private static final String TIEBREAKER = "tiebreaker";
+    private static final String TIMESTAMP = "timestamp";
     private static final String TOKEN = "token";
 
     private ScheduledThreadPoolExecutor scheduledExecutor;
     private Map<TriggerKey, ScheduledFuture<?>> queryFutures = new HashMap<>();
+    private Map<TriggerKey, ElasticsearchQuery> queries = new HashMap<>();
+
+    private ElasticsearchClients clients = new ElasticsearchClients();
 
     private Map<String, String> defaultProperties;
 
@@ -231,6 +258,7 @@ public class ElasticsearchAlerter implements AlerterPlugin {
             scheduledExecutor.shutdown();
             scheduledExecutor = null;
         }
+        clients.close();
     }
 
     private void refresh(Set<DistributedEvent> distEvents) {
@@ -284,7 +312,7 @@ public class ElasticsearchAlerter implements AlerterPlugin {
         Set<TriggerKey> canceledKeys = new HashSet<>();
 
         Set<TriggerKey> updatedKeys = new HashSet<>(activeKeys);
-        updatedKeys.retainAll(activeKeys);
+        updatedKeys.retainAll(existingKeys);
 
         activeKeys.stream().filter(key -> !existingKeys.contains(key)).forEach(key -> newKeys.add(key));
         existingKeys.stream().filter(key -> !activeKeys.contains(key)).forEach(key -> canceledKeys.add(key));
@@ -298,6 +326,7 @@ public class ElasticsearchAlerter implements AlerterPlugin {
             if (canceled != null) {
                 canceled.cancel(false);
             }
+            queries.remove(key);
         });
         updatedKeys.stream().forEach(key -> {
             ScheduledFuture updated = queryFutures.remove(key);
@@ -315,13 +344,25 @@ public class ElasticsearchAlerter implements AlerterPlugin {
         for (TriggerKey key : newKeys) {
             Trigger t = activeTriggers.get(key);
             String interval = t.getContext().get(INTERVAL) == null ? INTERVAL_DEFAULT : t.getContext().get(INTERVAL);
+            ElasticsearchQuery query = new ElasticsearchQuery(t, defaultProperties, alerts, clients);
+            ElasticsearchQuery previous = queries.put(key, query);
+            if (previous != null && sameSource(previous.getTrigger(), t)) {
+                // Updated triggers resume from the last document processed by the previous query, once it completes
+                query.setCursor(previous.getCursor());
+            }
             queryFutures.put(key, scheduledExecutor
-                    .scheduleAtFixedRate(new ElasticsearchQuery(t, defaultProperties, alerts),0L,
-                            getIntervalValue(interval), getIntervalUnit(interval)));
+                    .scheduleAtFixedRate(query, 0L, getIntervalValue(interval), getIntervalUnit(interval)));
 
         }
     }
 
+    private static boolean sameSource(Trigger previous, Trigger current) {
+        return Objects.equals(previous.getContext().get(TIMESTAMP), current.getContext().get(TIMESTAMP))
+                && Objects.equals(previous.getContext().get(TIEBREAKER), current.getContext().get(TIEBREAKER))
+                && Objects.equals(previous.getContext().get(INDEX), current.getContext().get(INDEX))
+                && Objects.equals(previous.getContext().get(FILTER), current.getContext().get(FILTER));
+    }
+
     public static int getIntervalValue(String interval) {
         if (isEmpty(interval)) {
             interval = INTERVAL_DEFAULT;
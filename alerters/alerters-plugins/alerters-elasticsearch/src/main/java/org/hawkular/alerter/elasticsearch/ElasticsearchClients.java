@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerter.elasticsearch;
+
+import static org.hawkular.alerts.api.util.Util.isEmpty;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.elasticsearch.client.RestClient;
+import org.hawkular.commons.log.MsgLogger;
+import org.hawkular.commons.log.MsgLogging;
+
+/**
+ * Registry of Elasticsearch RestClients shared by all triggers querying the same cluster.
+ *
+ * A cluster is identified by its list of urls and its basic credentials.
+ * RestClient balances requests across all the hosts of the list and keeps a pool of persistent connections, so a
+ * single instance per cluster is reused for all scheduled queries instead of building a new one per query.
+ */
+public class ElasticsearchClients {
+    private static final MsgLogger log = MsgLogging.getMsgLogger(ElasticsearchClients.class);
+
+    private final Map<String, RestClient> clients = new ConcurrentHashMap<>();
+
+    /**
+     * @param url a comma separated list of valid {@link HttpHost} urls of the cluster
+     * @param user optional user for basic authentication
+     * @param password optional password for basic authentication
+     * @return a RestClient shared for this cluster
+     */
+    public RestClient getClient(String url, String user, String password) {
+        String key = url + "|" + (user == null ? "" : user) + "|" + (password == null ? "" : password);
+        return clients.computeIfAbsent(key, k -> createClient(url, user, password));
+    }
+
+    /**
+     * Close all clients of the registry.
+     */
+    public void close() {
+        clients.values().forEach(client -> {
+            try {
+                client.close();
+            } catch (Exception e) {
+                log.debugf("Error closing Elasticsearch client: %s", e.getMessage());
+            }
+        });
+        clients.clear();
+    }
+
+    public int size() {
+        return clients.size();
+    }
+
+    public static RestClient createClient(String url, String user, String password) {
+        String[] urls = url.split(",");
+        HttpHost[] hosts = new HttpHost[urls.length];
+        for (int i = 0; i < urls.length; i++) {
+            hosts[i] = HttpHost.create(urls[i].trim());
+        }
+        return RestClient.builder(hosts)
+                .setHttpClientConfigCallback(httpClientBuilder -> {
+                    httpClientBuilder.useSystemProperties();
+                    CredentialsProvider credentialsProvider = checkBasicCredentials(user, password);
+                    if (credentialsProvider != null) {
+                        httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
+                    }
+                    return httpClientBuilder;
+                })
+                .build();
+    }
+
+    private static CredentialsProvider checkBasicCredentials(String user, String password) {
+        if (!isEmpty(user)) {
+            if (!isEmpty(password)) {
+                CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+                credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(user, password));
+                return credentialsProvider;
+            } else {
+                log.warnf("User [%s] without password ", user);
+            }
+        }
+        return null;
+    }
+}
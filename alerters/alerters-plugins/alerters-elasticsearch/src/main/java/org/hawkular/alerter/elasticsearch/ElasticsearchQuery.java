@@ -35,15 +35,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpHost;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.CredentialsProvider;
 import org.apache.http.entity.ContentType;
-import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.message.BasicHeader;
 import org.apache.http.nio.entity.NStringEntity;
 import org.elasticsearch.client.Response;
@@ -67,7 +63,7 @@ import org.hawkular.commons.log.MsgLogging;
 public class ElasticsearchQuery implements Runnable {
     private static final MsgLogger log = MsgLogging.getMsgLogger(ElasticsearchQuery.class);
 
-    private static final int SIZE_DEFAULT = 10;
+    private static final int SIZE_DEFAULT = 1000;
 
     private static final String _ID = "_id";
     private static final String _INDEX = "_index";
@@ -85,6 +81,7 @@ public class ElasticsearchQuery implements Runnable {
     private static final String INTERVAL = "interval";
     private static final String INTERVAL_DEFAULT = "2m";
     private static final String MAPPING = "mapping";
+    private static final String PAGE_SIZE = "page_size";
     private static final String PASS = "pass";
     private static final String PREFERENCE = "preference";
     private static final String PROXY_REMOTE_USER = "proxy-remote-user";
@@ -92,10 +89,12 @@ public class ElasticsearchQuery implements Runnable {
     private static final String TIMESTAMP = "timestamp";
     private static final String TIMESTAMP_PATTERN = "timestamp_pattern";
     private static final String TOKEN = "token";
-    private static final String TOTAL = "total";
     private static final String TYPE = "type";
     private static final String RESOURCE_ID = "resource.id";
+    private static final String SORT = "sort";
     private static final String SOURCE = "source";
+    private static final String TIEBREAKER = "tiebreaker";
+    private static final String TIEBREAKER_DEFAULT = _ID;
     private static final String URL = "url";
     private static final String X_FORWARDED = "X-Forwarded-For";
     private static final String X_PROXY_REMOTE_USER = "X-Proxy-Remote-User";
@@ -114,12 +113,47 @@ public class ElasticsearchQuery implements Runnable {
 
     private RestClient client;
 
+    /*
+        Shared clients registry, when present clients are not closed after each query
+     */
+    private ElasticsearchClients clients;
+
     private Header[] headers = null;
 
+    /*
+        Sort values of the last document processed.
+        Next queries resume from this point instead of re-reading the whole interval.
+     */
+    private Cursor cursor = new Cursor();
+
     public ElasticsearchQuery(Trigger trigger, Map<String, String> properties, AlertsService alerts) {
+        this(trigger, properties, alerts, null);
+    }
+
+    public ElasticsearchQuery(Trigger trigger, Map<String, String> properties, AlertsService alerts,
+                              ElasticsearchClients clients) {
         this.trigger = trigger;
         this.properties = properties == null ? new HashMap<>() : new HashMap<>(properties);
         this.alerts = alerts;
+        this.clients = clients;
+    }
+
+    public Trigger getTrigger() {
+        return trigger;
+    }
+
+    public Cursor getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Shares the position of a previous query, an updated trigger resumes where the previous query stopped.
+     * Runs sharing a cursor are serialized, so a previous run still paging completes before the next one starts.
+     *
+     * @param cursor the cursor of the previous query
+     */
+    public void setCursor(Cursor cursor) {
+        this.cursor = cursor;
     }
 
     public void parseProperties() throws Exception {
@@ -136,6 +170,8 @@ public class ElasticsearchQuery implements Runnable {
         checkContext(USER, false);
         checkContext(PASS, false);
         checkContext(TOKEN, false);
+        checkContext(PAGE_SIZE, false);
+        checkContext(TIEBREAKER, TIEBREAKER_DEFAULT);
     }
 
     public void parseMap() throws Exception {
@@ -185,21 +221,12 @@ public class ElasticsearchQuery implements Runnable {
     }
 
     public void connect(String url) throws Exception {
-        String[] urls = url.split(",");
-        HttpHost[] hosts = new HttpHost[urls.length];
-        for (int i=0; i<urls.length; i++) {
-            hosts[i] = HttpHost.create(urls[0]);
+        if (clients != null) {
+            client = clients.getClient(url, properties.get(USER), properties.get(PASS));
+        } else {
+            client = ElasticsearchClients.createClient(url, properties.get(USER), properties.get(PASS));
         }
-        client = RestClient.builder(hosts)
-                .setHttpClientConfigCallback(httpClientBuilder -> {
-                    httpClientBuilder.useSystemProperties();
-                    CredentialsProvider credentialsProvider = checkBasicCredentials();
-                    if (credentialsProvider != null) {
-                        httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
-                    }
-                    return httpClientBuilder;
-                })
-                .build();
+        headers = null;
         int nHeaders = 0;
         String token = properties.get(TOKEN);
         Header bearer = null;
@@ -236,47 +263,48 @@ public class ElasticsearchQuery implements Runnable {
         }
     }
 
-    private CredentialsProvider checkBasicCredentials() {
-        String user = properties.get(USER);
-        String password = properties.get(PASS);
-        if (!isEmpty(user)){
-            if (!isEmpty(password)) {
-                CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-                credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(user, password));
-                return credentialsProvider;
-            } else {
-                log.warnf("User [%s] without password ", user);
-            }
-        }
-        return null;
+    public List<Map<String, Object>> query(String filter, String indices) throws Exception {
+        List<Map<String, Object>> results = new ArrayList<>();
+        query(filter, indices, results::addAll);
+        log.debugf("Results %s", results.size());
+        return results;
     }
 
-    public List<Map<String, Object>> query(String filter, String indices) throws Exception {
+    /**
+     * Query documents sorted by timestamp and process them page by page.
+     *
+     * Pages are fetched using search_after on the timestamp field plus a unique tiebreaker field, so deep
+     * results are not limited by index.max_result_window and each page costs the same as the first one.
+     * The sort values of the last document are kept to resume the next query from that point.
+     *
+     * @param filter the query filter
+     * @param indices a comma separated list of indices to query
+     * @param pageConsumer a consumer of each page of documents
+     * @return the total number of documents processed
+     * @throws Exception on any problem
+     */
+    public long query(String filter, String indices, Consumer<List<Map<String, Object>>> pageConsumer)
+            throws Exception {
         if (filter == null || filter.isEmpty()) {
             throw new IllegalArgumentException("filter must be not null");
         }
-        List<Map<String, Object>> results = new ArrayList<>();
         String json = rawQuery(filter);
+        int pageSize = getPageSize();
 
         List<String> index = indices == null ? EMPTY_LIST : new ArrayList<>(Arrays.asList(indices.split(",")));
         Response response = null;
-        //  Using a loop in case results are greater than default results size
         Map<String, String> params = new HashMap<>();
         params.put(PREFERENCE, UUID.randomUUID().toString());
-        String jsonQuery = "{" +
-                "\"from\":0," +
-                "\"size\":" + SIZE_DEFAULT + "," +
-                "\"query\":" + json +
-                "}";
-        HttpEntity entity = new NStringEntity(jsonQuery, ContentType.APPLICATION_JSON);
+        HttpEntity entity = new NStringEntity(pageQuery(json, pageSize, cursor.searchAfter),
+                ContentType.APPLICATION_JSON);
         boolean retry = false;
         String endpoint = null;
         do {
+            retry = false;
             try {
                 endpoint = "/" + String.join(",", index) + "/_search";
                 response = headers == null ? client.performRequest(GET, endpoint, params, entity) :
                         client.performRequest(GET, endpoint, params, entity, headers);
-                retry = false;
             } catch (ResponseException e) {
                 log.warn(e.toString());
                 Map<String, Object> exception = JsonUtil.getMapper()
@@ -289,40 +317,69 @@ public class ElasticsearchQuery implements Runnable {
                         retry = true;
                         index.remove(badIndex);
                         if (index.isEmpty()) {
-                            return results;
+                            return 0;
                         }
                     }
                 }
+                if (!retry) {
+                    throw e;
+                }
             }
         } while(retry);
-        Map<String, Object> responseMap = JsonUtil.getMapper().readValue(response.getEntity().getContent(), Map.class);
-        Map<String, Object> allHits = (Map<String, Object>) responseMap.get(HITS);
-        List<Map<String, Object>> hits = (List<Map<String, Object>>) allHits.get(HITS);
-        results.addAll(hits);
-        long totalHits = new Long((Integer) allHits.get(TOTAL));
-        long currentHits = hits.size();
-        while (currentHits < totalHits) {
-            long pageSize = SIZE_DEFAULT;
-            if ((currentHits + SIZE_DEFAULT) > totalHits) {
-                pageSize = totalHits - currentHits;
+        long currentHits = 0;
+        List<Map<String, Object>> hits = readHits(response);
+        while (!hits.isEmpty()) {
+            currentHits += hits.size();
+            List<Object> lastSort = (List<Object>) hits.get(hits.size() - 1).get(SORT);
+            pageConsumer.accept(hits);
+            if (lastSort != null) {
+                cursor.searchAfter = lastSort;
+            }
+            if (hits.size() < pageSize || lastSort == null) {
+                break;
             }
-            jsonQuery = "{" +
-                    "\"from\":" + currentHits + "," +
-                    "\"size\":" + pageSize + "," +
-                    "\"query\":" + json +
-                    "}";
-            entity = new NStringEntity(jsonQuery, ContentType.APPLICATION_JSON);
+            log.debugf("currentHits [%s]", currentHits);
+            entity = new NStringEntity(pageQuery(json, pageSize, lastSort), ContentType.APPLICATION_JSON);
             response = headers == null ? client.performRequest(GET, endpoint, params, entity) :
                     client.performRequest(GET, endpoint, params, entity, headers);
-            responseMap = JsonUtil.getMapper().readValue(response.getEntity().getContent(), Map.class);
-            allHits = (Map<String, Object>) responseMap.get(HITS);
-            hits = (List<Map<String, Object>>) allHits.get(HITS);
-            currentHits += hits.size();
-            log.debugf("currentHits [%s] totalHits [%s]", currentHits, totalHits);
-            results.addAll(hits);
+            hits = readHits(response);
         }
-        log.debugf("Results %s", results.size());
-        return results;
+        return currentHits;
+    }
+
+    private List<Map<String, Object>> readHits(Response response) throws Exception {
+        Map<String, Object> responseMap = JsonUtil.getMapper().readValue(response.getEntity().getContent(), Map.class);
+        Map<String, Object> allHits = (Map<String, Object>) responseMap.get(HITS);
+        List<Map<String, Object>> hits = allHits == null ? null : (List<Map<String, Object>>) allHits.get(HITS);
+        return hits == null ? EMPTY_LIST : hits;
+    }
+
+    String pageQuery(String json, int pageSize, List<Object> after) {
+        StringBuilder jsonQuery = new StringBuilder("{")
+                .append("\"size\":").append(pageSize).append(",")
+                .append("\"query\":").append(json).append(",")
+                .append("\"sort\":[");
+        if (properties.get(TIMESTAMP) != null) {
+            jsonQuery.append("{\"").append(properties.get(TIMESTAMP)).append("\":\"asc\"},");
+        }
+        jsonQuery.append("{\"").append(properties.getOrDefault(TIEBREAKER, TIEBREAKER_DEFAULT))
+                .append("\":\"asc\"}]");
+        if (after != null && !after.isEmpty()) {
+            jsonQuery.append(",\"search_after\":").append(JsonUtil.toJson(after));
+        }
+        return jsonQuery.append("}").toString();
+    }
+
+    private int getPageSize() {
+        String pageSize = properties.get(PAGE_SIZE);
+        if (!isEmpty(pageSize)) {
+            try {
+                return Integer.parseInt(pageSize);
+            } catch (NumberFormatException e) {
+                log.warnf("Invalid page_size [%s], using default [%s]", pageSize, SIZE_DEFAULT);
+            }
+        }
+        return SIZE_DEFAULT;
     }
 
     public List<Event> parseEvents(List<Map<String, Object>> hits) {
@@ -476,8 +533,21 @@ public class ElasticsearchQuery implements Runnable {
     }
 
     private String prepareQuery() {
-        String range = new StringBuilder("{\"range\":{\"").append(properties.get(TIMESTAMP))
-                .append("\":{\"gt\":\"").append(formatTimestamp(intervalDate())).append("\"}}}").toString();
+        String range;
+        List<Object> searchAfter = cursor.searchAfter;
+        Object lastTimestamp = searchAfter != null && !searchAfter.isEmpty() ? searchAfter.get(0) : null;
+        if (lastTimestamp instanceof Number) {
+            // Resume from the last document seen, search_after skips documents already processed on that timestamp
+            range = new StringBuilder("{\"range\":{\"").append(properties.get(TIMESTAMP))
+                    .append("\":{\"gte\":").append(lastTimestamp).append(",\"format\":\"epoch_millis\"}}}")
+                    .toString();
+        } else if (lastTimestamp != null) {
+            range = new StringBuilder("{\"range\":{\"").append(properties.get(TIMESTAMP))
+                    .append("\":{\"gte\":").append(JsonUtil.toJson(lastTimestamp)).append("}}}").toString();
+        } else {
+            range = new StringBuilder("{\"range\":{\"").append(properties.get(TIMESTAMP))
+                    .append("\":{\"gt\":\"").append(formatTimestamp(intervalDate())).append("\"}}}").toString();
+        }
         String filter = properties.get(FILTER);
         String filters;
         if (filter != null) {
@@ -489,9 +559,10 @@ public class ElasticsearchQuery implements Runnable {
     }
 
     public void disconnect() throws Exception {
-        if (client != null) {
+        if (client != null && clients == null) {
             client.close();
         }
+        client = null;
     }
 
     @Override
@@ -500,15 +571,37 @@ public class ElasticsearchQuery implements Runnable {
             parseProperties();
             parseMap();
             connect(properties.get(URL));
-            String preparedQuery = prepareQuery();
-            log.debugf("Fetching documents from Elasticsearch [%s] %s", preparedQuery, trigger.getContext());
-            List<Event> events = parseEvents(query(preparedQuery, properties.get(INDEX)));
-            log.debugf("Found [%s]", events.size());
-            disconnect();
-            events.stream().forEach(e -> e.setTenantId(trigger.getTenantId()));
-            alerts.sendEvents(events);
+            try {
+                synchronized (cursor) {
+                    String preparedQuery = prepareQuery();
+                    log.debugf("Fetching documents from Elasticsearch [%s] %s", preparedQuery, trigger.getContext());
+                    long found = query(preparedQuery, properties.get(INDEX), hits -> {
+                        List<Event> events = parseEvents(hits);
+                        events.stream().forEach(e -> e.setTenantId(trigger.getTenantId()));
+                        try {
+                            alerts.sendEvents(events);
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                    });
+                    log.debugf("Found [%s]", found);
+                }
+            } finally {
+                disconnect();
+            }
         } catch (Exception e) {
             log.error("Error querying Elasticsearch.", e);
         }
     }
+
+    /**
+     * Sort values of the last document processed by a query, shared with the query replacing it on a trigger update.
+     */
+    public static class Cursor {
+        private volatile List<Object> searchAfter;
+
+        public List<Object> getSearchAfter() {
+            return searchAfter;
+        }
+    }
 }
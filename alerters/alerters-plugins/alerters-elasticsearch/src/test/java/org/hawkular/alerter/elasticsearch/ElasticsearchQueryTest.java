@@ -18,6 +18,8 @@ package org.hawkular.alerter.elasticsearch;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -26,6 +28,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -90,6 +93,25 @@ public class ElasticsearchQueryTest {
         esQuery.parseMap();
     }
 
+    @Test
+    public void checkTiebreaker() throws Exception {
+        Trigger trigger = new Trigger();
+        trigger.getContext().put("timestamp", "@timestamp");
+        trigger.getContext().put("mapping", "@timestamp:ctime,index:dataId");
+
+        ElasticsearchQuery esQuery = new ElasticsearchQuery(trigger, null, null);
+        esQuery.parseProperties();
+        assertEquals("{\"size\":10,\"query\":{},\"sort\":[{\"@timestamp\":\"asc\"},{\"_id\":\"asc\"}]}",
+                esQuery.pageQuery("{}", 10, null));
+
+        trigger.getContext().put("tiebreaker", "uuid");
+        esQuery = new ElasticsearchQuery(trigger, null, null);
+        esQuery.parseProperties();
+        assertEquals("{\"size\":10,\"query\":{},\"sort\":[{\"@timestamp\":\"asc\"},{\"uuid\":\"asc\"}],"
+                        + "\"search_after\":[1000,\"doc-1\"]}",
+                esQuery.pageQuery("{}", 10, Arrays.asList(1000, "doc-1")));
+    }
+
     @Test
     public void checkConstantMapping() throws Exception {
         ElasticsearchQuery esQuery = new ElasticsearchQuery(null, null, null);
@@ -126,6 +148,21 @@ public class ElasticsearchQueryTest {
         assertEquals("valueB", value);
     }
 
+    @Test
+    public void checkSharedClients() throws Exception {
+        ElasticsearchClients clients = new ElasticsearchClients();
+        try {
+            assertSame(clients.getClient("http://host1:9200,http://host2:9200", null, null),
+                    clients.getClient("http://host1:9200,http://host2:9200", null, null));
+            assertNotSame(clients.getClient("http://host1:9200,http://host2:9200", null, null),
+                    clients.getClient("http://host1:9200,http://host2:9200", "user", "password"));
+            assertEquals(2, clients.size());
+        } finally {
+            clients.close();
+        }
+        assertEquals(0, clients.size());
+    }
+
     /*
         -Djavax.net.ssl.trustStore=/tmp/truststore.jks
         -Djavax.net.ssl.trustStorePassword=password
@@ -197,6 +197,12 @@ import org.hawkular.commons.properties.HawkularProperties;
  *
  * </pre>
  *
+ * All triggers share a single GnocchiClient. Requests run on a common pool of workers, sized by
+ * "hawkular-alerts.gnocchi-workers" property (GNOCCHI_WORKERS env), default 10.
+ * Metric discovery (by names, regexp or resource query) is cached and shared across triggers for
+ * "hawkular-alerts.gnocchi-cache-ttl" seconds (GNOCCHI_CACHE_TTL env), default 300.
+ * Measures of the metrics of a trigger are fetched in a single request using the Gnocchi aggregates endpoint.
+ *
  * @author Jay Shaughnessy
  * @author Lucas Ponce
  */
@@ -221,6 +227,14 @@ public class GnocchiAlerter implements AlerterPlugin {
     public static final String GNOCCHI_PASSWORD_ENV = "GNOCCHI_PASSWORD";
     public static final String GNOCCHI_PASSWORD_DEFAULT = "admin";
 
+    public static final String GNOCCHI_WORKERS = "hawkular-alerts.gnocchi-workers";
+    public static final String GNOCCHI_WORKERS_ENV = "GNOCCHI_WORKERS";
+    public static final String GNOCCHI_WORKERS_DEFAULT = "10";
+
+    public static final String GNOCCHI_CACHE_TTL = "hawkular-alerts.gnocchi-cache-ttl";
+    public static final String GNOCCHI_CACHE_TTL_ENV = "GNOCCHI_CACHE_TTL";
+    public static final String GNOCCHI_CACHE_TTL_DEFAULT = "300";
+
     public static final String INTERVAL = "interval";
     public static final String INTERVAL_DEFAULT = "2m";
     public static final String URL = "url";
@@ -237,6 +251,8 @@ public class GnocchiAlerter implements AlerterPlugin {
     private ScheduledThreadPoolExecutor scheduledExecutor;
     private Map<TriggerKey, ScheduledFuture<?>> queryFutures = new HashMap<>();
 
+    private GnocchiClient client;
+
     private Map<String, String> defaultProperties;
 
     private DefinitionsService definitions;
@@ -260,6 +276,11 @@ public class GnocchiAlerter implements AlerterPlugin {
         defaultProperties.put(PASSWORD, HawkularProperties.getProperty(GNOCCHI_PASSWORD, GNOCCHI_PASSWORD_ENV, GNOCCHI_PASSWORD_DEFAULT));
 
         if (gnocchiAlerter) {
+            int workers = Integer.parseInt(HawkularProperties.getProperty(GNOCCHI_WORKERS, GNOCCHI_WORKERS_ENV,
+                    GNOCCHI_WORKERS_DEFAULT));
+            long cacheTtl = TimeUnit.SECONDS.toMillis(Long.parseLong(HawkularProperties.getProperty(GNOCCHI_CACHE_TTL,
+                    GNOCCHI_CACHE_TTL_ENV, GNOCCHI_CACHE_TTL_DEFAULT)));
+            client = new GnocchiClient(workers, cacheTtl);
             this.definitions.registerDistributedListener(events -> refresh(events));
             initialRefresh();
         }
@@ -271,6 +292,10 @@ public class GnocchiAlerter implements AlerterPlugin {
             scheduledExecutor.shutdown();
             scheduledExecutor = null;
         }
+        if (client != null) {
+            client.close();
+            client = null;
+        }
     }
 
     private void refresh(Set<DistributedEvent> distEvents) {
@@ -324,7 +349,7 @@ public class GnocchiAlerter implements AlerterPlugin {
         Set<TriggerKey> canceledKeys = new HashSet<>();
 
         Set<TriggerKey> updatedKeys = new HashSet<>(activeKeys);
-        updatedKeys.retainAll(activeKeys);
+        updatedKeys.retainAll(existingKeys);
 
         activeKeys.stream().filter(key -> !existingKeys.contains(key)).forEach(key -> newKeys.add(key));
         existingKeys.stream().filter(key -> !activeKeys.contains(key)).forEach(key -> canceledKeys.add(key));
@@ -356,7 +381,7 @@ public class GnocchiAlerter implements AlerterPlugin {
             Trigger t = activeTriggers.get(key);
             String interval = t.getContext().get(INTERVAL) == null ? INTERVAL_DEFAULT : t.getContext().get(INTERVAL);
             queryFutures.put(key, scheduledExecutor
-                .scheduleAtFixedRate(new GnocchiQuery(t, defaultProperties, alerts), 0L,
+                .scheduleAtFixedRate(new GnocchiQuery(t, defaultProperties, alerts, client), 0L,
                         getIntervalValue(interval), getIntervalUnit(interval)));
         }
     }
@@ -0,0 +1,368 @@
+package org.hawkular.alerter.gnocchi;
+
+import static org.hawkular.alerts.api.util.Util.isEmpty;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.hawkular.alerts.api.json.JsonUtil;
+import org.hawkular.commons.log.MsgLogger;
+import org.hawkular.commons.log.MsgLogging;
+
+/**
+ * Alerter-wide access to Gnocchi shared by all GnocchiQuery instances.
+ *
+ * It holds a single worker pool for the http requests and caches the metric discovery results (catalogue, metrics by
+ * name and resource searches) for a TTL, so triggers pointing to the same Gnocchi system resolve their metrics once.
+ *
+ * Http connections are reused by the JDK keep-alive pool, as long as responses are fully consumed and closed.
+ */
+public class GnocchiClient {
+    private static final MsgLogger log = MsgLogging.getMsgLogger(GnocchiClient.class);
+
+    private static final String AUTHORIZATION = "Authorization";
+    private static final String CONTENT_TYPE = "Content-Type";
+    private static final String ACCEPT = "Accept";
+    private static final String APPLICATION_JSON = "application/json";
+    private static final String GET = "GET";
+    private static final String POST = "POST";
+
+    public static final int WORKERS_DEFAULT = 10;
+    public static final long CACHE_TTL_DEFAULT = TimeUnit.MINUTES.toMillis(5);
+
+    private final ExecutorService workers;
+    private final long cacheTtl;
+
+    private final TtlCache<List<Map<String, String>>> allMetrics;
+    private final TtlCache<List<Map<String, String>>> metricsByName;
+    private final TtlCache<List<Map<String, String>>> resourceMetrics;
+
+    // Gnocchi systems not supporting the batch /v1/aggregates endpoint
+    private final Map<String, Boolean> noBatch = new ConcurrentHashMap<>();
+
+    public GnocchiClient() {
+        this(WORKERS_DEFAULT, CACHE_TTL_DEFAULT);
+    }
+
+    public GnocchiClient(int workers, long cacheTtl) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread t = new Thread(r, "gnocchi-alerter-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        this.workers = Executors.newFixedThreadPool(workers, threadFactory);
+        this.cacheTtl = cacheTtl;
+        this.allMetrics = new TtlCache<>(cacheTtl);
+        this.metricsByName = new TtlCache<>(cacheTtl);
+        this.resourceMetrics = new TtlCache<>(cacheTtl);
+    }
+
+    public long getCacheTtl() {
+        return cacheTtl;
+    }
+
+    public <T> Future<T> submit(Callable<T> task) {
+        return workers.submit(task);
+    }
+
+    public void close() {
+        workers.shutdown();
+        allMetrics.clear();
+        metricsByName.clear();
+        resourceMetrics.clear();
+    }
+
+    public List<Map<String, String>> getAllMetrics(String baseUrl, String basicAuth) {
+        String allMetricsUrl = baseUrl + "/v1/metric";
+        return allMetrics.get(basicAuth + "|" + allMetricsUrl, () -> {
+            try {
+                List rawAllMetrics = (List) get(allMetricsUrl, basicAuth, List.class);
+                log.debugf("Gnocchi Metrics found %s", rawAllMetrics);
+                return (List<Map<String, String>>) rawAllMetrics;
+            } catch (IOException e) {
+                log.errorf(e, "Error querying Gnocchi metrics %s", allMetricsUrl);
+            }
+            return null;
+        });
+    }
+
+    /*
+        Metric names not cached are resolved in parallel on the workers pool.
+     */
+    public List<Map<String, String>> getMetrics(String baseUrl, String basicAuth, List<String> gnocchiNames) {
+        List<Map<String, String>> rawMetrics = new ArrayList<>();
+        if (isEmpty(gnocchiNames)) {
+            return rawMetrics;
+        }
+        String metricsUrl = baseUrl + "/v1/metric";
+        List<Future<List<Map<String, String>>>> futures = new ArrayList<>();
+        for (String metricName : gnocchiNames) {
+            String metricUrl = metricsUrl + "?name=" + metricName;
+            futures.add(workers.submit(() -> metricsByName.get(basicAuth + "|" + metricUrl, () -> {
+                try {
+                    List rawMetric = (List) get(metricUrl, basicAuth, List.class);
+                    log.debugf("Gnocchi Metrics found %s", rawMetric);
+                    return (List<Map<String, String>>) rawMetric;
+                } catch (IOException e) {
+                    log.errorf(e, "Error querying Gnocchi metrics %s", metricUrl);
+                }
+                return null;
+            })));
+        }
+        for (Future<List<Map<String, String>>> future : futures) {
+            try {
+                rawMetrics.addAll(future.get());
+            } catch (Exception e) {
+                log.error(e);
+            }
+        }
+        return rawMetrics;
+    }
+
+    public List<Map<String, String>> getResourceMetrics(String baseUrl, String basicAuth, String resourceQuery) {
+        String resourcesUrl = baseUrl + "/v1/search/resource/generic";
+        return resourceMetrics.get(basicAuth + "|" + resourcesUrl + "|" + resourceQuery, () -> {
+            try {
+                List rawResources = (List) post(resourcesUrl, basicAuth, resourceQuery, List.class);
+                log.debugf("Gnocchi Resources found %s", rawResources);
+                List<Map<String, String>> rawMetrics = new ArrayList<>();
+                for (int i = 0; i < rawResources.size(); i++) {
+                    Map<String, Object> resource = (Map<String, Object>) rawResources.get(i);
+                    if (resource.containsKey("metrics")) {
+                        Map<String, String> metrics = (Map<String, String>) resource.get("metrics");
+                        for (Map.Entry<String, String> metric : metrics.entrySet()) {
+                            Map<String, String> resultMetric = new HashMap<>();
+                            resultMetric.put("name", metric.getKey());
+                            resultMetric.put("id", metric.getValue());
+                            rawMetrics.add(resultMetric);
+                        }
+                    }
+                }
+                log.debugf("Gnocchi Metrics found %s", rawMetrics);
+                return rawMetrics;
+            } catch (IOException e) {
+                log.errorf(e, "Error querying Gnocchi resources %s", resourcesUrl);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Fetch the measures of several metrics with a single request to the Gnocchi aggregates endpoint.
+     * If the Gnocchi system does not support it, measures are fetched per metric.
+     *
+     * @param baseUrl Gnocchi url
+     * @param basicAuth Authorization header
+     * @param metricIds Gnocchi metric ids
+     * @param granularity Gnocchi granularity
+     * @param start start of the interval in seconds
+     * @return a map of metric id and its measures
+     */
+    public Map<String, List> getMeasures(String baseUrl, String basicAuth, Collection<String> metricIds,
+                                         String granularity, long start) {
+        if (isEmpty(metricIds)) {
+            return Collections.emptyMap();
+        }
+        if (!noBatch.containsKey(baseUrl)) {
+            String aggregatesUrl = baseUrl + "/v1/aggregates?granularity=" + granularity + "&start=" + start;
+            try {
+                Map rawAggregates = (Map) post(aggregatesUrl, basicAuth, aggregatesQuery(metricIds), Map.class);
+                return parseAggregates(rawAggregates);
+            } catch (NotFoundException e) {
+                log.infof("Gnocchi %s does not support batch aggregates, measures are fetched per metric", baseUrl);
+                noBatch.put(baseUrl, Boolean.TRUE);
+            } catch (IOException e) {
+                log.errorf(e, "Error querying Gnocchi URL %s", aggregatesUrl);
+                return Collections.emptyMap();
+            }
+        }
+        /*
+            Fetched inline: getMeasures() runs on the workers pool, submitting more tasks to the same pool and
+            blocking on them could exhaust it.
+         */
+        Map<String, List> measures = new HashMap<>();
+        for (String metricId : metricIds) {
+            String measuresUrl = baseUrl + "/v1/metric/" + metricId + "/measures?granularity=" + granularity
+                    + "&start=" + start;
+            try {
+                measures.put(metricId, (List) get(measuresUrl, basicAuth, List.class));
+            } catch (IOException e) {
+                log.errorf(e, "Error querying Gnocchi URL %s", measuresUrl);
+                measures.put(metricId, Collections.emptyList());
+            }
+        }
+        return measures;
+    }
+
+    public List getAggregation(String aggregationUrl, String basicAuth) {
+        try {
+            return (List) get(aggregationUrl, basicAuth, List.class);
+        } catch (IOException e) {
+            log.errorf(e, "Error querying Gnocchi URL %s", aggregationUrl);
+        }
+        return Collections.emptyList();
+    }
+
+    static String aggregatesQuery(Collection<String> metricIds) {
+        StringBuilder operations = new StringBuilder("(metric");
+        for (String metricId : metricIds) {
+            operations.append(" (").append(metricId).append(" mean)");
+        }
+        operations.append(")");
+        Map<String, String> query = new HashMap<>();
+        query.put("operations", operations.toString());
+        try {
+            return JsonUtil.getMapper().writeValueAsString(query);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+        {"measures": {"<metric-id>": {"mean": [[timestamp, granularity, value], ...]}, ...}}
+     */
+    static Map<String, List> parseAggregates(Map rawAggregates) {
+        Map<String, List> measures = new HashMap<>();
+        if (rawAggregates == null) {
+            return measures;
+        }
+        Object rawMeasures = rawAggregates.containsKey("measures") ? rawAggregates.get("measures") : rawAggregates;
+        if (!(rawMeasures instanceof Map)) {
+            return measures;
+        }
+        for (Map.Entry<String, Object> metric : ((Map<String, Object>) rawMeasures).entrySet()) {
+            if (metric.getValue() instanceof Map) {
+                for (Object aggregation : ((Map) metric.getValue()).values()) {
+                    if (aggregation instanceof List) {
+                        measures.put(metric.getKey(), (List) aggregation);
+                        break;
+                    }
+                }
+            }
+        }
+        return measures;
+    }
+
+    private Object get(String url, String basicAuth, Class<?> type) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setRequestProperty(AUTHORIZATION, basicAuth);
+        conn.setRequestMethod(GET);
+        conn.setDoInput(true);
+        return read(conn, type);
+    }
+
+    private Object post(String url, String basicAuth, String body, Class<?> type) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setRequestProperty(AUTHORIZATION, basicAuth);
+        conn.setRequestProperty(CONTENT_TYPE, APPLICATION_JSON);
+        conn.setRequestProperty(ACCEPT, APPLICATION_JSON);
+        conn.setRequestMethod(POST);
+        conn.setDoInput(true);
+        conn.setDoOutput(true);
+        try (OutputStream os = conn.getOutputStream()) {
+            os.write(body.getBytes());
+            os.flush();
+        }
+        return read(conn, type);
+    }
+
+    private Object read(HttpURLConnection conn, Class<?> type) throws IOException {
+        int status = conn.getResponseCode();
+        if (status == HttpURLConnection.HTTP_NOT_FOUND || status == HttpURLConnection.HTTP_BAD_METHOD) {
+            drain(conn.getErrorStream());
+            throw new NotFoundException("Status " + status + " from " + conn.getURL());
+        }
+        if (status >= 300) {
+            drain(conn.getErrorStream());
+            throw new IOException("Status " + status + " from " + conn.getURL());
+        }
+        // Closing the stream instead of disconnecting lets the connection be reused
+        try (InputStream is = conn.getInputStream()) {
+            return JsonUtil.getMapper().readValue(is, type);
+        }
+    }
+
+    private void drain(InputStream is) {
+        if (is == null) {
+            return;
+        }
+        try (InputStream es = is) {
+            byte[] buffer = new byte[1024];
+            while (es.read(buffer) > 0) {
+                // consume
+            }
+        } catch (IOException e) {
+            log.debugf("Error consuming error stream %s", e.getMessage());
+        }
+    }
+
+    static class NotFoundException extends IOException {
+        NotFoundException(String message) {
+            super(message);
+        }
+    }
+
+    static class TtlCache<V> {
+        private final long ttl;
+        private final Map<String, Entry<V>> entries = new ConcurrentHashMap<>();
+
+        TtlCache(long ttl) {
+            this.ttl = ttl;
+        }
+
+        /*
+            Null values returned by the loader are not cached, so a failed query is retried next time.
+         */
+        V get(String key, Supplier<V> loader) {
+            long now = System.currentTimeMillis();
+            Entry<V> entry = entries.get(key);
+            if (entry != null && entry.expiration > now) {
+                return entry.value;
+            }
+            V value = loader.get();
+            if (value == null) {
+                return (V) Collections.EMPTY_LIST;
+            }
+            entries.values().removeIf(e -> e.expiration <= now);
+            entries.put(key, new Entry<>(value, now + ttl));
+            return value;
+        }
+
+        int size() {
+            return entries.size();
+        }
+
+        void clear() {
+            entries.clear();
+        }
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long expiration;
+
+        Entry(V value, long expiration) {
+            this.value = value;
+            this.expiration = expiration;
+        }
+    }
+}
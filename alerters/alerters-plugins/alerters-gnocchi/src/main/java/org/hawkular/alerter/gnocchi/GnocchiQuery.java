@@ -7,25 +7,17 @@ import static org.hawkular.alerter.gnocchi.GnocchiAlerter.getIntervalUnit;
 import static org.hawkular.alerter.gnocchi.GnocchiAlerter.getIntervalValue;
 import static org.hawkular.alerts.api.util.Util.isEmpty;
 
-import java.io.IOException;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Base64;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
-import org.hawkular.alerts.api.json.JsonUtil;
 import org.hawkular.alerts.api.model.data.Data;
 import org.hawkular.alerts.api.model.trigger.Trigger;
 import org.hawkular.alerts.api.services.AlertsService;
@@ -39,13 +31,6 @@ import org.hawkular.commons.log.MsgLogging;
 public class GnocchiQuery implements Runnable {
     private static final MsgLogger log = MsgLogging.getMsgLogger(GnocchiQuery.class);
 
-    private static final String AUTHORIZATION = "Authorization";
-    private static final String CONTENT_TYPE = "Content-Type";
-    private static final String ACCEPT = "Accept";
-    private static final String APPLICATION_JSON = "application/json";
-    private static final String GET = "GET";
-    private static final String POST = "POST";
-
     private static final String METRIC_IDS = "metric.ids";
     private static final String METRIC_NAMES = "metric.names";
     private static final String METRIC_NAMES_REGEXP = "metric.names.regexp";
@@ -71,12 +56,16 @@ public class GnocchiQuery implements Runnable {
     private Map<String, String> nameIdMetrics = new HashMap<>();
     private Map<String, List<String>> aggregatedMetrics = new HashMap<>();
     private Map<String, String> queries = new HashMap<>();
-    private ExecutorService executorService = Executors.newFixedThreadPool(10);
 
-    public GnocchiQuery(Trigger trigger, Map<String, String> properties, AlertsService alerts) {
+    private GnocchiClient client;
+    private long resolved;
+
+    public GnocchiQuery(Trigger trigger, Map<String, String> properties, AlertsService alerts,
+                        GnocchiClient client) {
         this.trigger = trigger;
         this.properties = properties == null ? new HashMap<>() : new HashMap<>(properties);
         this.alerts = alerts;
+        this.client = client;
         String user = null;
         String password = null;
         if (trigger != null) {
@@ -108,9 +97,20 @@ public class GnocchiQuery implements Runnable {
                         .toString()
                         .getBytes())))
                 .toString();
+        resolve();
+    }
+
+    /*
+        Metrics are resolved through the client cache, so they are refreshed when the cached discovery expires.
+     */
+    private void resolve() {
+        nameIdMetrics = new HashMap<>();
+        aggregatedMetrics = new HashMap<>();
+        queries = new HashMap<>();
         searchMetrics();
         processMetricAggregation();
         buildGnocchiQueries();
+        resolved = System.currentTimeMillis();
     }
 
     public void searchMetrics() {
@@ -262,99 +262,19 @@ public class GnocchiQuery implements Runnable {
                 }
                 queries.put(entry.getKey(), url.toString());
             }
-        } else if (!nameIdMetrics.isEmpty()) {
-            for (Map.Entry<String, String> entry : nameIdMetrics.entrySet()) {
-                StringBuilder url = new StringBuilder(baseUrl)
-                        .append("/v1/metric/")
-                        .append(entry.getValue())
-                        .append("/measures?granularity=")
-                        .append(granularity)
-                        .append("&");
-                queries.put(entry.getKey(), url.toString());
-            }
         }
     }
 
     private List<Map<String, String>> getAllMetrics() {
-        String allMetricsUrl = baseUrl + "/v1/metric";
-        try {
-            URL url = new URL(allMetricsUrl);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestProperty(AUTHORIZATION, basicAuth);
-            conn.setRequestMethod(GET);
-            conn.setDoInput(true);
-            List rawAllMetrics = JsonUtil.getMapper().readValue(conn.getInputStream(), List.class);
-            conn.disconnect();
-            log.debugf("Gnocchi Metrics found %s", rawAllMetrics);
-            return (List<Map<String, String>>) rawAllMetrics;
-        } catch (IOException e) {
-            log.errorf(e,"Error querying Gnocchi metrics %s", allMetricsUrl);
-        }
-        return Collections.EMPTY_LIST;
+        return client.getAllMetrics(baseUrl, basicAuth);
     }
 
     private List<Map<String, String>> getMetrics(List<String> gnocchiNames) {
-        String metricsUrl = baseUrl + "/v1/metric";
-        List<Map<String, String>> rawMetrics = new ArrayList<>();
-        if (isEmpty(gnocchiNames)) {
-            return rawMetrics;
-        }
-        for (String metricName : gnocchiNames) {
-            String metricUrl = metricsUrl + "?name=" + metricName;
-            try {
-                URL url = new URL(metricUrl);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestProperty(AUTHORIZATION, basicAuth);
-                conn.setRequestMethod(GET);
-                conn.setDoInput(true);
-                List rawMetric = JsonUtil.getMapper().readValue(conn.getInputStream(), List.class);
-                conn.disconnect();
-                log.debugf("Gnocchi Metrics found %s", rawMetric);
-                rawMetrics.addAll(rawMetric);
-            } catch (IOException e) {
-                log.errorf(e,"Error querying Gnocchi metrics %s", metricUrl);
-            }
-        }
-        return rawMetrics;
+        return client.getMetrics(baseUrl, basicAuth, gnocchiNames);
     }
 
     private List<Map<String, String>> getResourceMetrics() {
-        String resourcesUrl = baseUrl + "/v1/search/resource/generic";
-        try {
-            URL url = new URL(resourcesUrl);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestProperty(AUTHORIZATION, basicAuth);
-            conn.setRequestProperty(CONTENT_TYPE, APPLICATION_JSON);
-            conn.setRequestProperty(ACCEPT, APPLICATION_JSON);
-            conn.setRequestMethod(POST);
-            conn.setDoInput(true);
-            conn.setDoOutput(true);
-            OutputStream os = conn.getOutputStream();
-            os.write(metricResourceQuery.getBytes());
-            os.flush();
-            os.close();
-            List rawResources = JsonUtil.getMapper().readValue(conn.getInputStream(), List.class);
-            log.debugf("Gnocchi Resources found %s", rawResources);
-            List<Map<String, String>> rawMetrics = new ArrayList<>();
-            for (int i = 0; i < rawResources.size(); i++) {
-                Map<String, Object> resource = (Map<String, Object>) rawResources.get(i);
-                if (resource.containsKey("metrics")) {
-                    Map<String, String> metrics = (Map<String, String>) resource.get("metrics");
-                    for (Map.Entry<String, String> metric : metrics.entrySet()) {
-                        Map<String, String> resultMetric = new HashMap<>();
-                        resultMetric.put("name", metric.getKey());
-                        resultMetric.put("id", metric.getValue());
-                        rawMetrics.add(resultMetric);
-                    }
-                }
-            }
-            log.debugf("Gnocchi Metrics found %s", rawMetrics);
-            conn.disconnect();
-            return rawMetrics;
-        } catch (IOException e) {
-            log.errorf(e,"Error querying Gnocchi resources %s", resourcesUrl);
-        }
-        return Collections.EMPTY_LIST;
+        return client.getResourceMetrics(baseUrl, basicAuth, metricResourceQuery);
     }
 
     private long intervalStart() {
@@ -383,47 +303,77 @@ public class GnocchiQuery implements Runnable {
     }
 
     public void run() {
-        List<Future> futures = new ArrayList<>();
-        for (Map.Entry<String, String> query : queries.entrySet()) {
-            futures.add(executorService.submit(() -> {
-                String metricName = query.getKey();
-                String measuresUrl = query.getValue() + "start=" + intervalStart();
-                try {
-                    URL url = new URL(measuresUrl);
-                    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                    conn.setRequestProperty(AUTHORIZATION, basicAuth);
-                    conn.setRequestMethod(GET);
-                    conn.setDoInput(true);
-                    List measures = JsonUtil.getMapper().readValue(conn.getInputStream(), List.class);
-                    List<Data> data = new ArrayList<>();
-                    for (int i = 0; i < measures.size(); i++) {
-                        List measure = (List)measures.get(i);
-                        if (measure != null && measure.size() == 3) {
-                            String timestamp = (String) measure.get(0);
-                            Double granularity = (Double) measure.get(1);
-                            Double value = (Double) measure.get(2);
-                            Map<String, String> context = new HashMap<>();
-                            context.put("granularity", String.valueOf(granularity));
-                            data.add(Data.forNumeric(trigger.getTenantId(), metricName, parseTimestamp(timestamp), value, context));
-                        }
-                    }
-                    log.debugf("Sending [%s]", data);
-                    if (alerts != null) {
-                        alerts.sendData(data, true);
+        if (System.currentTimeMillis() - resolved > client.getCacheTtl()) {
+            resolve();
+        }
+        long start = intervalStart();
+        List<Future<List<Data>>> futures = new ArrayList<>();
+        if (!aggregatedMetrics.isEmpty()) {
+            // Aggregations across metrics are a request per aggregated metric, run in parallel on the client workers
+            for (Map.Entry<String, String> query : queries.entrySet()) {
+                futures.add(client.submit(() -> {
+                    List measures = client.getAggregation(query.getValue() + "start=" + start, basicAuth);
+                    return toData(query.getKey(), measures);
+                }));
+            }
+        } else if (!nameIdMetrics.isEmpty()) {
+            // Measures of all the metrics of the trigger are fetched in a single batch
+            Map<String, List<String>> idNameMetrics = new HashMap<>();
+            nameIdMetrics.forEach((name, id) -> idNameMetrics.computeIfAbsent(id, k -> new ArrayList<>()).add(name));
+            futures.add(client.submit(() -> {
+                List<Data> data = new ArrayList<>();
+                Map<String, List> measures = client.getMeasures(baseUrl, basicAuth, idNameMetrics.keySet(),
+                        granularity, start);
+                for (Map.Entry<String, List> metricMeasures : measures.entrySet()) {
+                    List<String> metricNames = idNameMetrics.get(metricMeasures.getKey());
+                    if (metricNames != null) {
+                        metricNames.forEach(metricName -> data.addAll(toData(metricName, metricMeasures.getValue())));
                     }
-                } catch (IOException e) {
-                    log.errorf(e,"Error querying Gnochi URL %s", measuresUrl);
-                } catch (Exception e) {
-                    log.errorf(e, "Error sending data to the Alerting Engine");
                 }
+                return data;
             }));
         }
-        for (Future future : futures) {
+        List<Data> data = new ArrayList<>();
+        for (Future<List<Data>> future : futures) {
             try {
-                future.get();
+                data.addAll(future.get());
             } catch (Exception e) {
                 log.error(e);
             }
         }
+        if (data.isEmpty()) {
+            return;
+        }
+        log.debugf("Sending [%s]", data);
+        if (alerts != null) {
+            try {
+                alerts.sendData(data, true);
+            } catch (Exception e) {
+                log.errorf(e, "Error sending data to the Alerting Engine");
+            }
+        }
+    }
+
+    private List<Data> toData(String metricName, List measures) {
+        List<Data> data = new ArrayList<>();
+        if (measures == null) {
+            return data;
+        }
+        for (int i = 0; i < measures.size(); i++) {
+            List measure = (List) measures.get(i);
+            if (measure != null && measure.size() == 3) {
+                String timestamp = (String) measure.get(0);
+                Number granularity = (Number) measure.get(1);
+                Number value = (Number) measure.get(2);
+                if (value == null) {
+                    continue;
+                }
+                Map<String, String> context = new HashMap<>();
+                context.put("granularity", String.valueOf(granularity.doubleValue()));
+                data.add(Data.forNumeric(trigger.getTenantId(), metricName, parseTimestamp(timestamp),
+                        value.doubleValue(), context));
+            }
+        }
+        return data;
     }
 }
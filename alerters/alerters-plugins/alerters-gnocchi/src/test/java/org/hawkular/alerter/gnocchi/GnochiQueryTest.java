@@ -1,17 +1,25 @@
 package org.hawkular.alerter.gnocchi;
 
+import static org.junit.Assert.assertEquals;
+
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.hawkular.alerts.api.json.JsonUtil;
 import org.hawkular.alerts.api.model.trigger.Trigger;
 import org.hawkular.commons.log.MsgLogger;
 import org.hawkular.commons.log.MsgLogging;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -22,6 +30,18 @@ import org.junit.Test;
 public class GnochiQueryTest {
     private static final MsgLogger log = MsgLogging.getMsgLogger(GnochiQueryTest.class);
 
+    private static GnocchiClient client;
+
+    @BeforeClass
+    public static void initClient() {
+        client = new GnocchiClient();
+    }
+
+    @AfterClass
+    public static void closeClient() {
+        client.close();
+    }
+
     @Ignore
     @Test
     public void fetchResources() throws Exception {
@@ -117,7 +137,7 @@ public class GnochiQueryTest {
         // Case 1
         Trigger trigger = new Trigger("tenant", "gnochi-test-id", "Gnocchi Trigger");
         trigger.getContext().put("metric.ids", "0062038b-af87-4f5c-b250-72c986037fa2,01320e1e-0aeb-4e17-9402-d2450b2e0024");
-        new GnocchiQuery(trigger, null, null).run();
+        new GnocchiQuery(trigger, null, null, client).run();
     }
 
     @Ignore
@@ -126,7 +146,7 @@ public class GnochiQueryTest {
         // Case 2
         Trigger trigger = new Trigger("tenant", "gnochi-test-id", "Gnocchi Trigger");
         trigger.getContext().put("metric.names", "cpu-0@cpu-user-0,cpu-1@cpu-user-0,cpu-2@cpu-user-0");
-        new GnocchiQuery(trigger, null, null).run();
+        new GnocchiQuery(trigger, null, null, client).run();
     }
 
     @Ignore
@@ -135,7 +155,7 @@ public class GnochiQueryTest {
         // Case 3
         Trigger trigger = new Trigger("tenant", "gnochi-test-id", "Gnocchi Trigger");
         trigger.getContext().put("metric.names.regexp", "cpu-.@cpu.*");
-        new GnocchiQuery(trigger, null, null).run();
+        new GnocchiQuery(trigger, null, null, client).run();
     }
 
     @Ignore
@@ -150,7 +170,7 @@ public class GnochiQueryTest {
                 "}" +
                 "}";
         trigger.getContext().put("metric.resource.query", resourceQuery);
-        new GnocchiQuery(trigger, null, null).run();
+        new GnocchiQuery(trigger, null, null, client).run();
     }
 
     @Ignore
@@ -165,7 +185,7 @@ public class GnochiQueryTest {
                 "}" +
                 "}";
         trigger.getContext().put("metric.resource.query", resourceQuery);
-        new GnocchiQuery(trigger, null, null).run();
+        new GnocchiQuery(trigger, null, null, client).run();
     }
 
     @Ignore
@@ -179,7 +199,7 @@ public class GnochiQueryTest {
                 "}" +
                 "}";
         trigger.getContext().put("metric.resource.query", resourceQuery);
-        new GnocchiQuery(trigger, null, null).run();
+        new GnocchiQuery(trigger, null, null, client).run();
     }
 
     @Ignore
@@ -187,7 +207,7 @@ public class GnochiQueryTest {
     public void searchMetrics() {
         // Case 5
         Trigger trigger = new Trigger("tenant", "gnochi-test-id", "Gnocchi Trigger");
-        new GnocchiQuery(trigger, null, null).run();
+        new GnocchiQuery(trigger, null, null, client).run();
     }
 
     @Ignore
@@ -198,7 +218,7 @@ public class GnochiQueryTest {
                 "cpu-nice=mean(cpu-0@cpu-nice-0,cpu-1@cpu-nice-0);" +
                 "cpu-system=mean(cpu-0@cpu-system-0,cpu-1@cpu-system-0)";
         trigger.addContext("metric.aggregation", aggregatedMetrics);
-        new GnocchiQuery(trigger, null, null).run();
+        new GnocchiQuery(trigger, null, null, client).run();
     }
 
     @Ignore
@@ -209,7 +229,7 @@ public class GnochiQueryTest {
                 "cpu-nice=mean(cpu-.@cpu-nice-.*);" +
                 "cpu-system=mean(cpu-.@cpu-system-.*)";
         trigger.addContext("metric.aggregation", aggregatedMetrics);
-        new GnocchiQuery(trigger, null, null).run();
+        new GnocchiQuery(trigger, null, null, client).run();
     }
 
     @Ignore
@@ -217,4 +237,44 @@ public class GnochiQueryTest {
     public void parseGnocchiDates() throws Exception {
         ZonedDateTime.parse("2017-09-14T21:15:00+00:00", DateTimeFormatter.ISO_OFFSET_DATE_TIME).toInstant().toEpochMilli();
     }
+
+    @Test
+    public void parseBatchMeasures() throws Exception {
+        String query = GnocchiClient.aggregatesQuery(Arrays.asList("id1", "id2"));
+        Map rawQuery = JsonUtil.getMapper().readValue(query, Map.class);
+        assertEquals("(metric (id1 mean) (id2 mean))", rawQuery.get("operations"));
+
+        String response = "{\"measures\":{" +
+                "\"id1\":{\"mean\":[[\"2017-09-14T21:15:00+00:00\",300.0,1.5],[\"2017-09-14T21:20:00+00:00\",300.0,2.5]]}," +
+                "\"id2\":{\"mean\":[[\"2017-09-14T21:15:00+00:00\",300.0,3.0]]}}}";
+        Map<String, List> measures = GnocchiClient.parseAggregates(JsonUtil.getMapper().readValue(response, Map.class));
+        assertEquals(2, measures.size());
+        assertEquals(2, measures.get("id1").size());
+        assertEquals(1, measures.get("id2").size());
+    }
+
+    @Test
+    public void cacheDiscovery() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        GnocchiClient.TtlCache<List<String>> cache = new GnocchiClient.TtlCache<>(60000);
+        for (int i = 0; i < 10; i++) {
+            cache.get("metrics", () -> {
+                loads.incrementAndGet();
+                return Collections.singletonList("cpu");
+            });
+        }
+        assertEquals(1, loads.get());
+
+        // Failed loads are not cached
+        cache.get("failed", () -> {
+            loads.incrementAndGet();
+            return null;
+        });
+        cache.get("failed", () -> {
+            loads.incrementAndGet();
+            return null;
+        });
+        assertEquals(3, loads.get());
+        assertEquals(1, cache.size());
+    }
 }
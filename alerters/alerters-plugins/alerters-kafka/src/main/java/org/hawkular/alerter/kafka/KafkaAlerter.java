@@ -73,10 +73,22 @@ import org.hawkular.commons.properties.HawkularProperties;
  *
  *   It defines the Kafka Topic a trigger will listen. In the current version only a single topic for Trigger is allowed.
  *
+ *   Triggers with the same topic and consumer configuration share the same consumers, each record is read once and
+ *   it is converted for every trigger of the group.
+ *
  * - [Optional]    trigger.context["poll_timeout"] = "<kafka consumer poll timeout>"
  *
  *   It defines the poll timeout in ms for the Kafka Consumer. By default it takes 1 second.
  *
+ *   Records returned by a poll are converted and sent to the engine as a single batch. Unless
+ *   trigger.context["kafka.enable.auto.commit"] is defined, offsets are committed only after the batch has been
+ *   accepted by the engine.
+ *
+ * - [Optional]    trigger.context["consumers"] = "<number of consumer threads>"
+ *
+ *   It defines the number of consumers that will read the topic in parallel on the same consumer group.
+ *   It requires trigger.context["kafka.group.id"]. By default a single consumer is used.
+ *
  * - [Optional]    trigger.context["mapping"] = "<mapping_expression>"
  *
  *   By default, Kafka records are directly mapped into a Data object, with the following mapping
@@ -123,7 +135,12 @@ public class KafkaAlerter implements AlerterPlugin {
 
     private Map<TriggerKey, Trigger> activeTriggers = new ConcurrentHashMap<>();
 
-    private Map<TriggerKey, KafkaQuery> kafkaQueries = new ConcurrentHashMap<>();
+    /*
+        Queries are shared by all triggers with the same topic and consumer configuration
+     */
+    private Map<String, KafkaQuery> kafkaQueries = new ConcurrentHashMap<>();
+
+    private Map<TriggerKey, String> triggerGroups = new ConcurrentHashMap<>();
 
     private DefinitionsService definitions;
 
@@ -161,58 +178,76 @@ public class KafkaAlerter implements AlerterPlugin {
         try {
             Collection<Trigger> triggers = definitions.getAllTriggersByTag(ALERTER_NAME, "*");
             triggers.stream().forEach(trigger -> activeTriggers.put(new TriggerKey(trigger.getTenantId(), trigger.getId()), trigger));
-            update();
+            update(activeTriggers.keySet());
         } catch (Exception e) {
             log.error("Failed to fetch Triggers for external conditions.", e);
         }
     }
 
-    private synchronized void update() {
-        final Set<TriggerKey> existingKeys = kafkaQueries.keySet();
+    private synchronized void update(Set<TriggerKey> changedKeys) {
+        final Set<TriggerKey> existingKeys = triggerGroups.keySet();
         final Set<TriggerKey> activeKeys = activeTriggers.keySet();
 
-        Set<TriggerKey> newKeys = new HashSet<>();
         Set<TriggerKey> canceledKeys = new HashSet<>();
-
-        Set<TriggerKey> updatedKeys = new HashSet<>(activeKeys);
-        updatedKeys.retainAll(activeKeys);
-
-        activeKeys.stream().filter(key -> !existingKeys.contains(key)).forEach(key -> newKeys.add(key));
         existingKeys.stream().filter(key -> !activeKeys.contains(key)).forEach(key -> canceledKeys.add(key));
 
-        log.debugf("newKeys %s", newKeys);
-        log.debugf("updatedKeys %s", updatedKeys);
+        log.debugf("changedKeys %s", changedKeys);
         log.debugf("canceledKeys %s", canceledKeys);
 
-        canceledKeys.stream().forEach(key -> {
-            KafkaQuery canceled = kafkaQueries.remove(key);
-            if (canceled != null) {
-                canceled.shutdown();
+        canceledKeys.stream().forEach(key -> removeFromGroup(key));
+
+        for (TriggerKey key : changedKeys) {
+            Trigger trigger = activeTriggers.get(key);
+            if (trigger == null) {
+                continue;
             }
-        });
-        updatedKeys.stream().forEach(key -> {
-            KafkaQuery updated = kafkaQueries.remove(key);
-            if (updated != null) {
-                updated.shutdown();
+            KafkaQuery candidate = new KafkaQuery(alerts, trigger);
+            if (!candidate.isValid()) {
+                removeFromGroup(key);
+                continue;
             }
-        });
-
-        newKeys.addAll(updatedKeys);
+            String groupKey = candidate.getGroupKey();
+            String previousGroupKey = triggerGroups.get(key);
+            if (previousGroupKey != null && !previousGroupKey.equals(groupKey)) {
+                removeFromGroup(key);
+            }
+            KafkaQuery query = kafkaQueries.get(groupKey);
+            if (query != null) {
+                // Running consumers pick the new mapping on the next poll
+                query.addTrigger(trigger);
+            } else {
+                log.debugf("Starting Kafka group %s", groupKey);
+                query = candidate;
+                kafkaQueries.put(groupKey, query);
+                for (int i = 0; i < query.getConsumers(); i++) {
+                    kafkaExecutor.submit(query);
+                }
+            }
+            triggerGroups.put(key, groupKey);
+        }
+    }
 
-        for (TriggerKey key : newKeys) {
-            Trigger trigger = activeTriggers.get(key);
-            KafkaQuery query = new KafkaQuery(alerts, trigger);
-            kafkaQueries.put(key, query);
-            kafkaExecutor.submit(query);
+    private void removeFromGroup(TriggerKey key) {
+        String groupKey = triggerGroups.remove(key);
+        if (groupKey == null) {
+            return;
+        }
+        KafkaQuery query = kafkaQueries.get(groupKey);
+        if (query != null && query.removeTrigger(key)) {
+            log.debugf("Stopping Kafka group %s", groupKey);
+            kafkaQueries.remove(groupKey);
+            query.shutdown();
         }
     }
 
     private void refresh(Set<DistributedEvent> distEvents) {
         log.debugf("Events received %s", distEvents);
         executor.submit(() -> {
+            Set<TriggerKey> changedKeys = new HashSet<>();
             try {
                 for (DistributedEvent distEvent : distEvents) {
                     TriggerKey triggerKey = new TriggerKey(distEvent.getTenantId(), distEvent.getTriggerId());
+                    changedKeys.add(triggerKey);
                     switch (distEvent.getOperation()) {
                         case REMOVE:
                             activeTriggers.remove(triggerKey);
@@ -236,7 +271,7 @@ public class KafkaAlerter implements AlerterPlugin {
             } catch (Exception e) {
                 log.error("Failed to fetch Triggers for external conditions.", e);
             }
-            update();
+            update(changedKeys);
         });
     }
 
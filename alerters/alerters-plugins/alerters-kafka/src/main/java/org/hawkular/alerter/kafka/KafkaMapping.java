@@ -0,0 +1,241 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerter.kafka;
+
+import static org.hawkular.alerts.api.model.event.EventField.DATAID;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.hawkular.alerts.api.model.data.Data;
+import org.hawkular.alerts.api.model.event.Event;
+import org.hawkular.alerts.api.model.event.EventField;
+import org.hawkular.commons.log.MsgLogger;
+import org.hawkular.commons.log.MsgLogging;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Conversion of Kafka records into Hawkular Data or Events for a trigger.
+ *
+ * The "mapping" expression of the trigger context is parsed once into a list of typed field mappings with their
+ * json paths and default values pre-resolved. Records are read as a json tree and fields are resolved directly on it
+ * without converting the payload into generic maps.
+ */
+public class KafkaMapping {
+    private static final MsgLogger log = MsgLogging.getMsgLogger(KafkaMapping.class);
+
+    public static final String MAPPING = "mapping";
+    private static final String SOURCE = "source";
+    private static final String TIMESTAMP_PATTERN = "timestamp_pattern";
+
+    private static final DateTimeFormatter[] DEFAULT_DATE_FORMATS = {
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSSSSZ"),
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ")
+    };
+
+    private final String tenantId;
+    private final String key;
+    private final boolean mappingData;
+    private final List<FieldMapping> mappings = new ArrayList<>();
+    private final DateTimeFormatter definedFormatter;
+
+    /**
+     * @param tenantId the tenant of the generated Data or Events
+     * @param context the trigger context with the optional "mapping" and "timestamp_pattern" properties
+     * @throws IllegalStateException if the mapping expression is not valid
+     */
+    public KafkaMapping(String tenantId, Map<String, String> context) {
+        this.tenantId = tenantId;
+        String rawMap = context == null ? null : context.get(MAPPING);
+        mappingData = rawMap == null;
+        String definedPattern = mappingData ? null : context.get(TIMESTAMP_PATTERN);
+        key = tenantId + "|" + rawMap + "|" + definedPattern;
+        DateTimeFormatter formatter = null;
+        if (!mappingData) {
+            if (definedPattern != null) {
+                try {
+                    formatter = DateTimeFormatter.ofPattern(definedPattern);
+                } catch (Exception e) {
+                    log.warnf("Invalid timestamp_pattern [%s]", definedPattern);
+                }
+            }
+            parseMap(rawMap);
+        }
+        definedFormatter = formatter;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    /**
+     * @return a key identifying the tenant and mapping expression, mappings with the same key produce the same output
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public boolean isMappingData() {
+        return mappingData;
+    }
+
+    public Data toData(ConsumerRecord<String, String> record) {
+        return new Data(tenantId, null, record.topic(), record.timestamp(), record.value(), null);
+    }
+
+    public Event toEvent(ConsumerRecord<String, String> record, JsonNode payload) {
+        Event newEvent = new Event();
+        newEvent.setTenantId(tenantId);
+        newEvent.setCtime(record.timestamp());
+        newEvent.getContext().put(SOURCE, record.value());
+        for (FieldMapping mapping : mappings) {
+            String value = mapping.resolve(payload);
+            switch (mapping.eventField) {
+                case ID:
+                    newEvent.setId(value);
+                    break;
+                case CTIME:
+                    newEvent.setCtime(parseTimestamp(value));
+                    break;
+                case DATAID:
+                    newEvent.setDataId(value);
+                    break;
+                case DATASOURCE:
+                    newEvent.setDataSource(value);
+                    break;
+                case CATEGORY:
+                    newEvent.setCategory(value);
+                    break;
+                case TEXT:
+                    newEvent.setText(value);
+                    break;
+                case CONTEXT:
+                    newEvent.getContext().put(mapping.name, value);
+                    break;
+                case TAGS:
+                    newEvent.getTags().put(mapping.name, value);
+                    break;
+            }
+        }
+        if (newEvent.getId() == null) {
+            newEvent.setId(UUID.randomUUID().toString());
+        }
+        return newEvent;
+    }
+
+    private void parseMap(String rawMap) {
+        String[] rawMappings = rawMap.split(",");
+        boolean dataId = false;
+        for (String rawMapping : rawMappings) {
+            String[] fields = rawMapping.trim().split(":");
+            if (fields.length == 2) {
+                EventField eventField = EventField.fromString(fields[1].trim());
+                if (eventField == null) {
+                    log.warnf("Skipping invalid mapping [%s]", rawMapping);
+                } else {
+                    mappings.add(new FieldMapping(fields[0].trim(), eventField));
+                    dataId |= eventField == DATAID;
+                }
+            } else {
+                log.warnf("Skipping invalid mapping [%s]", rawMapping);
+            }
+        }
+        if (!dataId) {
+            throw new IllegalStateException("Mapping [" + rawMap + "] does not include dataId");
+        }
+    }
+
+    protected long parseTimestamp(String timestamp) {
+        if (definedFormatter != null) {
+            try {
+                return ZonedDateTime.parse(timestamp, definedFormatter).toInstant().toEpochMilli();
+            } catch (Exception e) {
+                log.debugf("Not able to parse [%s] with format [%s]", timestamp, definedFormatter);
+            }
+        }
+        for (DateTimeFormatter formatter : DEFAULT_DATE_FORMATS) {
+            try {
+                return ZonedDateTime.parse(timestamp, formatter).toInstant().toEpochMilli();
+            } catch (Exception e) {
+                log.debugf("Not able to parse [%s] with format [%s]", timestamp, formatter);
+            }
+        }
+        try {
+            return Long.parseLong(timestamp);
+        } catch (Exception e) {
+            log.debugf("Not able to parse [%s] as plain timestamp", timestamp);
+        }
+        return System.currentTimeMillis();
+    }
+
+    /*
+        A single "<kafka_record_field> [ "|" "'" <DEFAULT_VALUE> "'" ]" mapping with its path already split.
+     */
+    static class FieldMapping {
+        final String name;
+        final EventField eventField;
+        final String constant;
+        final String defaultValue;
+        final String[] path;
+
+        FieldMapping(String name, EventField eventField) {
+            this.name = name;
+            this.eventField = eventField;
+            if (!name.isEmpty() && name.charAt(0) == '\'' && name.charAt(name.length() - 1) == '\'') {
+                constant = name.substring(1, name.length() - 1);
+                defaultValue = null;
+                path = null;
+                return;
+            }
+            constant = null;
+            String[] names = name.split("\\|");
+            String field = name;
+            String defValue = "";
+            if (names.length > 1) {
+                if (names[1].charAt(0) == '\'' && names[1].charAt(names[1].length() - 1) == '\'') {
+                    defValue = names[1].substring(1, names[1].length() - 1);
+                }
+                field = names[0];
+            }
+            defaultValue = defValue;
+            path = field.split("\\.");
+        }
+
+        String resolve(JsonNode source) {
+            if (constant != null) {
+                return constant;
+            }
+            if (source == null) {
+                return null;
+            }
+            JsonNode node = source;
+            for (String field : path) {
+                node = node.get(field);
+                if (node == null) {
+                    return defaultValue;
+                }
+            }
+            return node.isValueNode() ? node.asText() : defaultValue;
+        }
+    }
+}
@@ -16,32 +16,55 @@
  */
 package org.hawkular.alerter.kafka;
 
-import static org.hawkular.alerts.api.model.event.EventField.DATAID;
 import static org.hawkular.alerts.api.util.Util.isEmpty;
 
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.UUID;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.WakeupException;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.hawkular.alerts.api.exception.IngestionRejectedException;
 import org.hawkular.alerts.api.json.JsonUtil;
 import org.hawkular.alerts.api.model.data.Data;
 import org.hawkular.alerts.api.model.event.Event;
-import org.hawkular.alerts.api.model.event.EventField;
 import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.hawkular.alerts.api.model.trigger.TriggerKey;
 import org.hawkular.alerts.api.services.AlertsService;
 import org.hawkular.commons.log.MsgLogger;
 import org.hawkular.commons.log.MsgLogging;
 
+import com.fasterxml.jackson.databind.JsonNode;
+
 /**
+ * Consumer of a Kafka topic shared by all triggers with the same topic and consumer configuration.
+ *
+ * Each record is read once and fanned out to the tenant and mapping of every trigger of the group. Triggers can be
+ * added or removed from a running query without restarting its consumers.
+ *
+ * Records returned by each poll are converted and sent to the engine as a single batch of data and a single batch
+ * of events. Offsets are committed manually once both have been accepted by the engine, a failed commit is only
+ * logged and the records are delivered again after a rebalance. If one of them is rejected
+ * the consumer pauses its partitions, still polling to stay in the group, and only the rejected part is retried
+ * after a delay, so the part already accepted is not sent twice. The delay is the one suggested by the engine when
+ * its ingestion queue is full, or the poll timeout on other errors.
+ *
+ * The same KafkaQuery can be run by several threads, each one runs its own KafkaConsumer on the same consumer group,
+ * so partitions of the topic are consumed in parallel.
+ *
  * @author Jay Shaughnessy
  * @author Lucas Ponce
  */
@@ -49,31 +72,33 @@ public class KafkaQuery implements Runnable {
     private static final MsgLogger log = MsgLogging.getMsgLogger(KafkaQuery.class);
 
     public static final String TOPIC = "topic";
-    public static final String MAPPING = "mapping";
-    private static final String SOURCE = "source";
-    private static final String TIMESTAMP_PATTERN = "timestamp_pattern";
+    public static final String MAPPING = KafkaMapping.MAPPING;
+    public static final String CONSUMERS = "consumers";
     private static final String KEY_DESERIALIZER = "key.deserializer";
     private static final String VALUE_DESERIALIZER = "value.deserializer";
+    private static final String ENABLE_AUTO_COMMIT = "enable.auto.commit";
+    private static final String GROUP_ID = "group.id";
     private static final String POLL_TIMEOUT = "poll_timeout";
     public static final int POLL_TIMEOUT_DEFAULT = 1000;
 
-    private static final DateTimeFormatter[] DEFAULT_DATE_FORMATS = {
-            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSSSSZ"),
-            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ")
-    };
-
     AlertsService alerts;
     Properties consumerProperties;
     String topic;
     long pollTimeout;
-    boolean running;
+    int consumers = 1;
+    volatile boolean running;
+
+    String groupKey;
 
-    boolean mappingData = true;
-    private Map<String, EventField> mappings = new HashMap<>();
-    String tenantId;
-    String definedPattern;
+    /*
+        Mappings of the triggers of this group.
+        Triggers with the same tenant and mapping expression share a single mapping, so a record is not converted
+        twice into the same Data or Event.
+     */
+    Map<TriggerKey, KafkaMapping> targets = new ConcurrentHashMap<>();
+    volatile Collection<KafkaMapping> mappings = Collections.emptyList();
 
-    KafkaConsumer<String, String> consumer;
+    List<KafkaConsumer<String, String>> kafkaConsumers = new CopyOnWriteArrayList<>();
 
     public KafkaQuery(AlertsService alerts, Trigger trigger) {
         this.alerts = alerts;
@@ -83,7 +108,6 @@ public class KafkaQuery implements Runnable {
             running = false;
             return;
         }
-        tenantId = trigger.getTenantId();
         topic = trigger.getContext().get(TOPIC);
         if (isEmpty(topic)) {
             log.warnf("Found a Kafka Trigger without topic in context %s", trigger);
@@ -109,183 +133,245 @@ public class KafkaQuery implements Runnable {
         if (!consumerProperties.containsKey(VALUE_DESERIALIZER)) {
             consumerProperties.put(VALUE_DESERIALIZER, StringDeserializer.class.getName());
         }
-        if (consumerProperties.isEmpty()) {
-            log.warnf("Found a Kafka Trigger without kafka consumer properties %s", trigger);
-            running = false;
-            return;
+        // Offsets are committed once a batch is accepted by the engine
+        if (!consumerProperties.containsKey(ENABLE_AUTO_COMMIT)) {
+            consumerProperties.put(ENABLE_AUTO_COMMIT, "false");
         }
-        if (trigger.getContext().get(MAPPING) != null) {
-            mappingData = false;
-            definedPattern = trigger.getContext().get(TIMESTAMP_PATTERN);
+        if (trigger.getContext().get(CONSUMERS) != null) {
             try {
-                parseMap(trigger.getContext());
+                consumers = Math.max(1, Integer.valueOf(trigger.getContext().get(CONSUMERS)));
             } catch (Exception e) {
-                log.errorf("Error fetching mapping on Kafka Trigger %s", trigger, e);
-                running = false;
-                return;
+                log.warnf("Invalid consumers value on Kafka Trigger %s", trigger);
             }
+            if (consumers > 1 && !consumerProperties.containsKey(GROUP_ID)) {
+                log.warnf("Kafka Trigger without kafka.group.id cannot use several consumers %s", trigger);
+                consumers = 1;
+            }
+        }
+        groupKey = groupKey(topic, consumerProperties, pollTimeout, consumers);
+        if (!addTrigger(trigger)) {
+            running = false;
+        }
+    }
+
+    private static String groupKey(String topic, Properties consumerProperties, long pollTimeout, int consumers) {
+        // Properties are sorted to get the same key for the same configuration
+        return topic + "|" + new TreeMap<>(consumerProperties) + "|" + pollTimeout + "|" + consumers;
+    }
+
+    /**
+     * Triggers with the same group key can share this query.
+     *
+     * @return the key of the topic and consumer configuration of this query
+     */
+    public String getGroupKey() {
+        return groupKey;
+    }
+
+    /**
+     * @return true if the query has a valid configuration and a mapping for at least one trigger
+     */
+    public boolean isValid() {
+        return running;
+    }
+
+    /**
+     * Add or update a trigger on this query.
+     *
+     * @param trigger the trigger to consume records for, it should have the same group key than this query
+     * @return true if the trigger has a valid mapping and it was added
+     */
+    public boolean addTrigger(Trigger trigger) {
+        TriggerKey key = new TriggerKey(trigger.getTenantId(), trigger.getId());
+        try {
+            targets.put(key, new KafkaMapping(trigger.getTenantId(), trigger.getContext()));
+            updateMappings();
+            return true;
+        } catch (Exception e) {
+            log.errorf("Error fetching mapping on Kafka Trigger %s", trigger, e);
+            removeTrigger(key);
+            return false;
         }
     }
 
+    /**
+     * Remove a trigger from this query.
+     *
+     * @param key the key of the trigger to remove
+     * @return true if the query has not more triggers
+     */
+    public boolean removeTrigger(TriggerKey key) {
+        targets.remove(key);
+        updateMappings();
+        return targets.isEmpty();
+    }
+
+    private synchronized void updateMappings() {
+        Map<String, KafkaMapping> distinct = new LinkedHashMap<>();
+        targets.values().forEach(m -> distinct.putIfAbsent(m.getKey(), m));
+        mappings = new ArrayList<>(distinct.values());
+    }
+
+    /**
+     * @return number of consumer threads that should run this query
+     */
+    public int getConsumers() {
+        return consumers;
+    }
+
     @Override
     public void run() {
         if (running) {
+            KafkaConsumer<String, String> consumer = null;
             try {
                 log.debugf("Starting Kafka Consumer %s %s ", topic, consumerProperties);
                 consumer = new KafkaConsumer<>(consumerProperties);
+                kafkaConsumers.add(consumer);
                 consumer.subscribe(Arrays.asList(topic));
+                Batch pending = null;
+                long retryAt = 0;
                 while (running) {
                     ConsumerRecords<String, String> records = consumer.poll(pollTimeout);
-                    for (ConsumerRecord<String, String> record : records) {
-                        if (mappingData) {
-                            Data data = new Data(tenantId, null, topic, record.timestamp(), record.value(), null);
-                            log.debugf("Data %s", data);
-                            if (alerts != null) {
-                                alerts.sendData(Arrays.asList(data));
-                            }
-                        } else {
-                            try {
-                                Map<String, Object> json = JsonUtil.fromJson(record.value(), Map.class);
-                                Event newEvent = new Event();
-                                newEvent.setTenantId(tenantId);
-                                newEvent.setCtime(record.timestamp());
-                                parseEvent(newEvent, json);
-                                log.infof("Event %s", newEvent);
-                                if (alerts != null) {
-                                    alerts.sendEvents(Arrays.asList(newEvent));
-                                }
-                            } catch (Exception e) {
-                                log.errorf("Error parsing an event from Kafka Alerter %s", record.value(), e);
-                            }
+                    if (pending == null) {
+                        if (records.isEmpty()) {
+                            continue;
+                        }
+                        pending = toBatch(records);
+                    } else {
+                        if (!records.isEmpty()) {
+                            // partitions assigned while paused, they are read again once the pending batch is sent
+                            seek(consumer, records);
+                            consumer.pause(consumer.assignment());
+                        }
+                        if (System.currentTimeMillis() < retryAt) {
+                            continue;
                         }
                     }
+                    try {
+                        send(pending);
+                    } catch (WakeupException e) {
+                        throw e;
+                    } catch (IngestionRejectedException e) {
+                        log.debugf("Pausing Kafka Consumer %s for %s seconds: %s", topic, e.getRetryAfter(),
+                                e.getMessage());
+                        consumer.pause(consumer.assignment());
+                        retryAt = System.currentTimeMillis() + e.getRetryAfter() * 1000L;
+                        continue;
+                    } catch (Exception e) {
+                        log.errorf("Error sending batch from Kafka Alerter, it will be retried. %s", e.getMessage());
+                        consumer.pause(consumer.assignment());
+                        retryAt = System.currentTimeMillis() + pollTimeout;
+                        continue;
+                    }
+                    pending = null;
+                    if (!consumer.paused().isEmpty()) {
+                        log.debugf("Resuming Kafka Consumer %s", topic);
+                        consumer.resume(consumer.paused());
+                    }
+                    commit(consumer);
                 }
             } catch (WakeupException e) {
                 // This is caught when consumer is stopped
             } catch (Exception e) {
                 log.error("Unexpected error on Kafka Alerter", e);
+            } finally {
+                if (consumer != null) {
+                    kafkaConsumers.remove(consumer);
+                    consumer.close();
+                }
             }
         }
         log.debugf("Finished");
     }
 
-    public void shutdown() {
-        log.debugf("Shutting down");
-        running = false;
-    }
-
-    protected void parseMap(Map<String, String> context) throws Exception {
-        if (!mappingData) {
-            String rawMap = context.get(MAPPING);
-            if (rawMap == null) {
-                throw new IllegalStateException("mapping must be not null");
-            }
-            String[] rawMappings = rawMap.split(",");
-            for (String rawMapping : rawMappings) {
-                String[] fields = rawMapping.trim().split(":");
-                if (fields.length == 2) {
-                    EventField eventField = EventField.fromString(fields[1].trim());
-                    if (eventField == null) {
-                        log.warnf("Skipping invalid mapping [%s]", rawMapping);
-                    } else {
-                        mappings.put(fields[0].trim(), eventField);
-                    }
-                } else {
-                    log.warnf("Skipping invalid mapping [%s]", rawMapping);
+    protected Batch toBatch(ConsumerRecords<String, String> records) {
+        Collection<KafkaMapping> current = mappings;
+        boolean hasData = current.stream().anyMatch(KafkaMapping::isMappingData);
+        boolean hasEvents = current.stream().anyMatch(m -> !m.isMappingData());
+        List<Data> dataBatch = hasData ? new ArrayList<>(records.count()) : Collections.emptyList();
+        List<Event> eventsBatch = hasEvents ? new ArrayList<>(records.count()) : Collections.emptyList();
+        for (ConsumerRecord<String, String> record : records) {
+            JsonNode payload = null;
+            if (hasEvents) {
+                try {
+                    payload = JsonUtil.getMapper().readTree(record.value());
+                } catch (Exception e) {
+                    log.errorf("Error parsing an event from Kafka Alerter %s", record.value(), e);
                 }
             }
-            if (!mappings.values().contains(DATAID)) {
-                throw new IllegalStateException("Mapping [" + rawMap + "] does not include dataId");
-            }
-        }
-    }
-
-    protected void parseEvent(Event newEvent, Map<String, Object> payload) {
-        newEvent.getContext().put(SOURCE, JsonUtil.toJson(payload));
-        for (Map.Entry<String, EventField> entry : mappings.entrySet()) {
-            switch (entry.getValue()) {
-                case ID:
-                    newEvent.setId(getField(payload, entry.getKey()));
-                    break;
-                case CTIME:
-                    newEvent.setCtime(parseTimestamp(getField(payload, entry.getKey())));
-                    break;
-                case DATAID:
-                    newEvent.setDataId(getField(payload, entry.getKey()));
-                    break;
-                case DATASOURCE:
-                    newEvent.setDataSource(getField(payload, entry.getKey()));
-                    break;
-                case CATEGORY:
-                    newEvent.setCategory(getField(payload, entry.getKey()));
-                    break;
-                case TEXT:
-                    newEvent.setText(getField(payload, entry.getKey()));
-                    break;
-                case CONTEXT:
-                    newEvent.getContext().put(entry.getKey(), getField(payload, entry.getKey()));
-                    break;
-                case TAGS:
-                    newEvent.getTags().put(entry.getKey(), getField(payload, entry.getKey()));
-                    break;
+            for (KafkaMapping mapping : current) {
+                if (mapping.isMappingData()) {
+                    dataBatch.add(mapping.toData(record));
+                } else if (payload != null) {
+                    eventsBatch.add(mapping.toEvent(record, payload));
+                }
             }
         }
-        if (newEvent.getId() == null) {
-            newEvent.setId(UUID.randomUUID().toString());
-        }
+        return new Batch(dataBatch, eventsBatch);
     }
 
-    protected String getField(Map<String, Object> source, String name) {
-        if (source == null || name == null) {
-            return null;
-        }
-        if (name.charAt(0) == '\'' && name.charAt(name.length() - 1) == '\'') {
-            return name.substring(1, name.length() - 1);
-        }
-        String[] names = name.split("\\|");
-        String defaultValue = "";
-        if (names.length > 1) {
-            if (names[1].charAt(0) == '\'' && names[1].charAt(names[1].length() - 1) == '\'') {
-                defaultValue = names[1].substring(1, names[1].length() - 1);
+    /*
+        Each part is cleared once it is accepted by the engine, so a retry of the batch sends only the rejected part
+     */
+    protected void send(Batch batch) throws Exception {
+        if (!batch.data.isEmpty()) {
+            log.debugf("Data %s", batch.data);
+            if (alerts != null) {
+                alerts.sendData(batch.data);
             }
-            name = names[0];
+            batch.data = Collections.emptyList();
         }
-        String[] fields = name.split("\\.");
-        for (int i=0; i < fields.length; i++) {
-            Object value = source.get(fields[i]);
-            if (value instanceof String) {
-                return (String) value;
-            }
-            if (value instanceof Map) {
-                source = (Map<String, Object>) value;
+        if (!batch.events.isEmpty()) {
+            log.debugf("Events %s", batch.events);
+            if (alerts != null) {
+                alerts.sendEvents(batch.events);
             }
+            batch.events = Collections.emptyList();
         }
-        return defaultValue;
     }
 
-    protected long parseTimestamp(String timestamp) {
-        if (definedPattern != null) {
-            DateTimeFormatter formatter = null;
-            try {
-                formatter = DateTimeFormatter.ofPattern(definedPattern);
-                return ZonedDateTime.parse(timestamp, formatter).toInstant().toEpochMilli();
-            } catch (Exception e) {
-                log.debugf("Not able to parse [%s] with format [%s]", timestamp, formatter);
-            }
-        }
-        for (DateTimeFormatter formatter : DEFAULT_DATE_FORMATS) {
-            try {
-                return ZonedDateTime.parse(timestamp, formatter).toInstant().toEpochMilli();
-            } catch (Exception e) {
-                log.debugf("Not able to parse [%s] with format [%s]", timestamp, formatter);
-            }
+    /*
+        The batch is already accepted by the engine, a failed commit is not retried. The records are delivered again
+        after a rebalance or a restart, as with any other uncommitted offset.
+     */
+    private void commit(KafkaConsumer<String, String> consumer) {
+        if (Boolean.parseBoolean(consumerProperties.getProperty(ENABLE_AUTO_COMMIT))) {
+            return;
         }
         try {
-            return new Long(timestamp).longValue();
+            consumer.commitSync();
+        } catch (WakeupException e) {
+            throw e;
         } catch (Exception e) {
-            log.debugf("Not able to parse [%s] as plain timestamp", timestamp);
+            log.warnf("Error committing offsets of Kafka Consumer %s. %s", topic, e.getMessage());
+        }
+    }
+
+    private void seek(KafkaConsumer<String, String> consumer, ConsumerRecords<String, String> records) {
+        Map<TopicPartition, Long> firstOffsets = new HashMap<>();
+        for (ConsumerRecord<String, String> record : records) {
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            firstOffsets.merge(partition, record.offset(), Math::min);
         }
-        return System.currentTimeMillis();
+        firstOffsets.forEach(consumer::seek);
     }
 
+    public void shutdown() {
+        log.debugf("Shutting down");
+        running = false;
+        kafkaConsumers.forEach(KafkaConsumer::wakeup);
+    }
+
+    /*
+        The data and events converted from the records of a poll
+     */
+    protected static class Batch {
+        List<Data> data;
+        List<Event> events;
+
+        Batch(List<Data> data, List<Event> events) {
+            this.data = data;
+            this.events = events;
+        }
+    }
 }
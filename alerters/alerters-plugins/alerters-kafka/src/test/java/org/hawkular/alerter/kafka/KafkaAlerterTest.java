@@ -16,11 +16,17 @@
  */
 package org.hawkular.alerter.kafka;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.hawkular.alerts.api.model.trigger.TriggerKey;
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -79,4 +85,44 @@ public class KafkaAlerterTest {
         kafkaQuery.shutdown();
     }
 
+    @Test
+    public void shareQueryBetweenTriggers() throws Exception {
+        Trigger trigger1 = new Trigger("tenant1", "kafka-trigger-1", "kafka-trigger-1");
+        trigger1.addContext("kafka.bootstrap.servers", "localhost:9092");
+        trigger1.addContext("kafka.group.id", "kafka-trigger-group");
+        trigger1.addContext("topic", "my-topic");
+
+        Trigger trigger2 = new Trigger("tenant2", "kafka-trigger-2", "kafka-trigger-2");
+        trigger2.addContext("kafka.bootstrap.servers", "localhost:9092");
+        trigger2.addContext("kafka.group.id", "kafka-trigger-group");
+        trigger2.addContext("topic", "my-topic");
+
+        Trigger trigger3 = new Trigger("tenant2", "kafka-trigger-3", "kafka-trigger-3");
+        trigger3.addContext("kafka.bootstrap.servers", "localhost:9092");
+        trigger3.addContext("kafka.group.id", "kafka-trigger-group");
+        trigger3.addContext("topic", "my-topic");
+
+        Trigger trigger4 = new Trigger("tenant1", "kafka-trigger-4", "kafka-trigger-4");
+        trigger4.addContext("kafka.bootstrap.servers", "localhost:9092");
+        trigger4.addContext("kafka.group.id", "kafka-trigger-group");
+        trigger4.addContext("topic", "other-topic");
+
+        KafkaQuery query = new KafkaQuery(null, trigger1);
+        assertTrue(query.isValid());
+        assertEquals(query.getGroupKey(), new KafkaQuery(null, trigger2).getGroupKey());
+        assertNotEquals(query.getGroupKey(), new KafkaQuery(null, trigger4).getGroupKey());
+
+        assertTrue(query.addTrigger(trigger2));
+        assertTrue(query.addTrigger(trigger3));
+
+        // trigger2 and trigger3 share tenant and mapping
+        assertEquals(3, query.targets.size());
+        assertEquals(2, query.mappings.size());
+
+        assertFalse(query.removeTrigger(new TriggerKey("tenant1", "kafka-trigger-1")));
+        assertFalse(query.removeTrigger(new TriggerKey("tenant2", "kafka-trigger-2")));
+        assertEquals(1, query.mappings.size());
+        assertTrue(query.removeTrigger(new TriggerKey("tenant2", "kafka-trigger-3")));
+        assertEquals(0, query.mappings.size());
+    }
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerter.kafka;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.hawkular.alerts.api.json.JsonUtil;
+import org.hawkular.alerts.api.model.data.Data;
+import org.hawkular.alerts.api.model.event.Event;
+import org.junit.Test;
+
+public class KafkaMappingTest {
+
+    @Test
+    public void mapData() throws Exception {
+        KafkaMapping mapping = new KafkaMapping("test-tenant", new HashMap<>());
+        assertTrue(mapping.isMappingData());
+
+        ConsumerRecord<String, String> record = new ConsumerRecord<>("my-topic", 0, 0, null, "10.5");
+        Data data = mapping.toData(record);
+        assertEquals("test-tenant", data.getTenantId());
+        assertEquals("my-topic", data.getId());
+        assertEquals("10.5", data.getValue());
+    }
+
+    @Test
+    public void mapEvent() throws Exception {
+        Map<String, String> context = new HashMap<>();
+        context.put("mapping", "origin:dataId,payload.text:text,payload.level|'INFO':category,'kafka':dataSource," +
+                "payload.code:tags");
+        KafkaMapping mapping = new KafkaMapping("test-tenant", context);
+        assertFalse(mapping.isMappingData());
+
+        String value = "{\"origin\":\"app1\",\"payload\":{\"text\":\"Something happened\",\"code\":500}}";
+        ConsumerRecord<String, String> record = new ConsumerRecord<>("my-topic", 0, 0, null, value);
+        Event event = mapping.toEvent(record, JsonUtil.getMapper().readTree(value));
+        assertEquals("test-tenant", event.getTenantId());
+        assertEquals("app1", event.getDataId());
+        assertEquals("Something happened", event.getText());
+        assertEquals("INFO", event.getCategory());
+        assertEquals("kafka", event.getDataSource());
+        assertEquals("500", event.getTags().get("payload.code"));
+        assertEquals(value, event.getContext().get("source"));
+    }
+
+    @Test
+    public void mappingWithoutDataId() throws Exception {
+        Map<String, String> context = new HashMap<>();
+        context.put("mapping", "payload:text");
+        try {
+            new KafkaMapping("test-tenant", context);
+            fail("Mapping without dataId should fail");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+}
@@ -17,12 +17,15 @@
 package org.hawkular.alerter.prometheus;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -31,11 +34,12 @@ import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
-import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.utils.URLEncodedUtils;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
 import org.hawkular.alerts.alerters.api.Alerter;
 import org.hawkular.alerts.alerters.api.AlerterPlugin;
@@ -53,7 +57,17 @@ import org.jboss.logging.Logger;
 
 /**
  * Manages the Prometheus evaluations and interacts with the Alerts system.  Sets up fixed rate thread
- * jobs to back each ExternalCondition.</p>
+ * jobs to back the ExternalConditions.</p>
+ * <p>
+ * ExternalConditions with the same Prometheus url and frequency are evaluated together on a single job, aligned to
+ * multiples of the frequency. On each tick an expression is queried once and its result is sent for all the
+ * conditions (of any trigger or tenant) using that expression. If ticks were missed, i.e. because Prometheus was not
+ * reachable, the gap is recovered with a query_range from the last successful evaluation.
+ * </p>
+ * <p>
+ * All queries share a pooled http client, the number of concurrent requests per Prometheus endpoint is limited by
+ * "hawkular-alerts.prometheus-max-connections" property (PROMETHEUS_MAX_CONNECTIONS env), default 10.
+ * </p>
  * <pre>
  * Defining a Trigger to be processed by the Prometheus External Alerter:
  *   [Required]    trigger.tags["prometheus"] // the value is ignored
@@ -87,6 +101,17 @@ public class PrometheusAlerter implements AlerterPlugin {
     private static final String PROMETHEUS_THREAD_POOL_SIZE_DEFAULT = "20";
     private static final String THREAD_POOL_SIZE = "thread-pool-size";
 
+    private static final String PROMETHEUS_MAX_CONNECTIONS = "hawkular-alerts.prometheus-max-connections";
+    private static final String PROMETHEUS_MAX_CONNECTIONS_ENV = "PROMETHEUS_MAX_CONNECTIONS";
+    private static final String PROMETHEUS_MAX_CONNECTIONS_DEFAULT = "10";
+    private static final String MAX_CONNECTIONS = "max-connections";
+
+    // Max time in seconds recovered by a query_range after missed evaluations
+    private static final String PROMETHEUS_CATCH_UP = "hawkular-alerts.prometheus-catch-up";
+    private static final String PROMETHEUS_CATCH_UP_ENV = "PROMETHEUS_CATCH_UP";
+    private static final String PROMETHEUS_CATCH_UP_DEFAULT = "3600";
+    private static final String CATCH_UP = "catch-up";
+
     private static final String CONTEXT_URL = "prometheus.url";
     private static final String CONTEXT_FREQUENCY = "prometheus.frequency";
     private static final String CONTEXT_FREQUENCY_DEFAULT = "120";
@@ -97,7 +122,9 @@ public class PrometheusAlerter implements AlerterPlugin {
     private Map<TriggerKey, Trigger> activeTriggers = new ConcurrentHashMap<>();
 
     ScheduledThreadPoolExecutor expressionExecutor;
-    Map<ExternalCondition, ScheduledFuture<?>> expressionFutures = new HashMap<>();
+    Map<GroupKey, EvaluationGroup> evaluationGroups = new HashMap<>();
+
+    CloseableHttpClient httpClient;
 
     private boolean prometheusAlerter;
     private Map<String, String> defaultProperties;
@@ -122,6 +149,12 @@ public class PrometheusAlerter implements AlerterPlugin {
         defaultProperties.put(THREAD_POOL_SIZE,
                 HawkularProperties.getProperty(PROMETHEUS_THREAD_POOL_SIZE, PROMETHEUS_THREAD_POOL_SIZE_ENV,
                         PROMETHEUS_THREAD_POOL_SIZE_DEFAULT));
+        defaultProperties.put(MAX_CONNECTIONS,
+                HawkularProperties.getProperty(PROMETHEUS_MAX_CONNECTIONS, PROMETHEUS_MAX_CONNECTIONS_ENV,
+                        PROMETHEUS_MAX_CONNECTIONS_DEFAULT));
+        defaultProperties.put(CATCH_UP,
+                HawkularProperties.getProperty(PROMETHEUS_CATCH_UP, PROMETHEUS_CATCH_UP_ENV,
+                        PROMETHEUS_CATCH_UP_DEFAULT));
 
         if (prometheusAlerter) {
             log.infof("Starting Hawkular Prometheus External Alerter");
@@ -134,13 +167,22 @@ public class PrometheusAlerter implements AlerterPlugin {
     public void stop() {
         log.infof("Stopping Hawkular Prometheus External Alerter");
 
-        if (null != expressionFutures) {
-            expressionFutures.values().forEach(f -> f.cancel(true));
+        if (null != evaluationGroups) {
+            evaluationGroups.values().forEach(g -> g.cancel());
+            evaluationGroups.clear();
         }
         if (null != expressionExecutor) {
             expressionExecutor.shutdown();
             expressionExecutor = null;
         }
+        if (null != httpClient) {
+            try {
+                httpClient.close();
+            } catch (IOException e) {
+                log.debugf(e, "Failed closing http client");
+            }
+            httpClient = null;
+        }
     }
 
     private void initialRefresh() {
@@ -196,11 +238,22 @@ public class PrometheusAlerter implements AlerterPlugin {
                 expressionExecutor = new ScheduledThreadPoolExecutor(
                         Integer.valueOf(defaultProperties.get(THREAD_POOL_SIZE)));
             }
+            if (httpClient == null) {
+                int maxConnections = Integer.valueOf(defaultProperties.get(MAX_CONNECTIONS));
+                PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+                connectionManager.setDefaultMaxPerRoute(maxConnections);
+                connectionManager.setMaxTotal(Math.max(maxConnections,
+                        Integer.valueOf(defaultProperties.get(THREAD_POOL_SIZE))));
+                httpClient = HttpClients.custom()
+                        .setConnectionManager(connectionManager)
+                        .useSystemProperties()
+                        .build();
+            }
 
-            Set<ExternalCondition> activeConditions = new HashSet<>();
+            Map<GroupKey, Set<ExternalCondition>> activeConditions = new HashMap<>();
             log.debugf("Found [%d] active External Prometheus Triggers!", activeTriggers.size());
 
-            // for each trigger look for Prometheus Conditions and start running them
+            // for each trigger look for Prometheus Conditions and assign them to their evaluation group
             Collection<Condition> conditions = null;
             for (Trigger trigger : activeTriggers.values()) {
                 try {
@@ -211,55 +264,58 @@ public class PrometheusAlerter implements AlerterPlugin {
                     log.error("Failed to fetch Conditions when scheduling prometheus conditions for " + trigger, e);
                     continue;
                 }
+                String url = trigger.getContext().containsKey(CONTEXT_URL)
+                        ? trigger.getContext().get(CONTEXT_URL) : defaultProperties.get(URL);
+                String frequency = trigger.getContext().containsKey(CONTEXT_FREQUENCY)
+                        ? trigger.getContext().get(CONTEXT_FREQUENCY) : CONTEXT_FREQUENCY_DEFAULT;
+                GroupKey groupKey;
+                try {
+                    groupKey = new GroupKey(url, Long.valueOf(frequency));
+                } catch (NumberFormatException e) {
+                    log.errorf("Invalid %s [%s] on trigger %s", CONTEXT_FREQUENCY, frequency, trigger);
+                    continue;
+                }
                 for (Condition condition : conditions) {
                     if (condition instanceof ExternalCondition) {
                         ExternalCondition externalCondition = (ExternalCondition) condition;
                         if (ALERTER_ID.equals(externalCondition.getAlerterId())) {
                             log.debugf("Found Prometheus ExternalCondition %s", externalCondition);
-                            activeConditions.add(externalCondition);
-                            if (expressionFutures.containsKey(externalCondition)) {
-                                log.debugf("Skipping, already evaluating %s", externalCondition);
-
-                            } else {
-                                try {
-                                    // start the job. TODO: Do we need a delay for any reason?
-                                    log.debugf("Adding runner for %s", externalCondition);
-
-                                    Map<String, String> properties = new HashMap<>(defaultProperties);
-                                    if (trigger.getContext().containsKey(CONTEXT_URL)) {
-                                        properties.put(URL, trigger.getContext().get(CONTEXT_URL));
-                                    }
-                                    String frequency = trigger.getContext().containsKey(CONTEXT_FREQUENCY)
-                                            ? trigger.getContext().get(CONTEXT_FREQUENCY) : CONTEXT_FREQUENCY_DEFAULT;
-
-                                    ExpressionRunner runner = new ExpressionRunner(alerts, properties,
-                                            externalCondition);
-                                    expressionFutures.put(
-                                            externalCondition,
-                                            expressionExecutor.scheduleAtFixedRate(runner, 0L, Long.valueOf(frequency),
-                                                    TimeUnit.SECONDS));
-                                } catch (Exception e) {
-                                    log.error("Failed to schedule expression for Prometheus condition "
-                                            + externalCondition, e);
-                                }
-                            }
+                            activeConditions.computeIfAbsent(groupKey, k -> new HashSet<>()).add(externalCondition);
                         }
                     }
                 }
             }
 
-            // cancel obsolete expressions
-            Set<ExternalCondition> temp = new HashSet<>();
-            for (Map.Entry<ExternalCondition, ScheduledFuture<?>> me : expressionFutures.entrySet()) {
-                ExternalCondition ec = me.getKey();
-                if (!activeConditions.contains(ec)) {
-                    log.debugf("Canceling evaluation of obsolete External Prometheus Condition %s", ec);
+            // update running groups and start the new ones
+            for (Map.Entry<GroupKey, Set<ExternalCondition>> me : activeConditions.entrySet()) {
+                EvaluationGroup group = evaluationGroups.get(me.getKey());
+                if (group == null) {
+                    log.debugf("Adding evaluation group for %s", me.getKey());
+                    group = new EvaluationGroup(me.getKey(), this);
+                    long frequencyMs = TimeUnit.SECONDS.toMillis(me.getKey().frequency);
+                    try {
+                        group.future = expressionExecutor.scheduleAtFixedRate(group,
+                                alignedDelay(System.currentTimeMillis(), frequencyMs), frequencyMs,
+                                TimeUnit.MILLISECONDS);
+                    } catch (Exception e) {
+                        log.error("Failed to schedule expressions for Prometheus group " + me.getKey(), e);
+                        continue;
+                    }
+                    evaluationGroups.put(me.getKey(), group);
+                }
+                group.setConditions(me.getValue());
+            }
 
-                    me.getValue().cancel(true);
-                    temp.add(ec);
+            // cancel obsolete groups
+            Set<GroupKey> temp = new HashSet<>();
+            for (Map.Entry<GroupKey, EvaluationGroup> me : evaluationGroups.entrySet()) {
+                if (!activeConditions.containsKey(me.getKey())) {
+                    log.debugf("Canceling evaluation of obsolete External Prometheus group %s", me.getKey());
+                    me.getValue().cancel();
+                    temp.add(me.getKey());
                 }
             }
-            expressionFutures.keySet().removeAll(temp);
+            evaluationGroups.keySet().removeAll(temp);
             temp.clear();
 
         } catch (Exception e) {
@@ -267,87 +323,206 @@ public class PrometheusAlerter implements AlerterPlugin {
         }
     }
 
-    private static class ExpressionRunner implements Runnable {
-        private final Logger log = Logger.getLogger(PrometheusAlerter.ExpressionRunner.class);
+    /**
+     * @param now current time in milliseconds
+     * @param frequencyMs frequency of the evaluations in milliseconds
+     * @return delay in milliseconds until the next multiple of the frequency
+     */
+    static long alignedDelay(long now, long frequencyMs) {
+        if (frequencyMs <= 0) {
+            return 0L;
+        }
+        long remainder = now % frequencyMs;
+        return remainder == 0 ? 0L : frequencyMs - remainder;
+    }
+
+    static class GroupKey {
+        final String url;
+        final long frequency;
+
+        GroupKey(String url, long frequency) {
+            this.url = url;
+            this.frequency = frequency;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            GroupKey groupKey = (GroupKey) o;
+            return frequency == groupKey.frequency && Objects.equals(url, groupKey.url);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(url, frequency);
+        }
+
+        @Override
+        public String toString() {
+            return "GroupKey [url=" + url + ", frequency=" + frequency + "]";
+        }
+    }
+
+    /**
+     * Evaluates all the conditions of a Prometheus url with the same frequency.
+     * Conditions with identical expressions are queried once per tick.
+     */
+    private static class EvaluationGroup implements Runnable {
+        private final Logger log = Logger.getLogger(PrometheusAlerter.EvaluationGroup.class);
+
+        private final GroupKey key;
+        private final PrometheusAlerter alerter;
+        private final long frequencyMs;
+        private final long catchUpMs;
+
+        private volatile Map<String, List<ExternalCondition>> expressions = Collections.emptyMap();
+
+        // Last successful evaluation time per expression
+        private final Map<String, Long> lastEvaluations = new ConcurrentHashMap<>();
+
+        ScheduledFuture<?> future;
 
-        private Map<String, String> properties;
-        private AlertsService alertsService;
-        private ExternalCondition externalCondition;
+        EvaluationGroup(GroupKey key, PrometheusAlerter alerter) {
+            this.key = key;
+            this.alerter = alerter;
+            this.frequencyMs = TimeUnit.SECONDS.toMillis(key.frequency);
+            this.catchUpMs = TimeUnit.SECONDS.toMillis(Long.valueOf(alerter.defaultProperties.get(CATCH_UP)));
+        }
 
-        public ExpressionRunner(AlertsService alerts, Map<String, String> properties,
-                ExternalCondition externalCondition) {
-            super();
-            this.alertsService = alerts;
-            this.externalCondition = externalCondition;
-            this.properties = properties;
+        void setConditions(Set<ExternalCondition> conditions) {
+            Map<String, List<ExternalCondition>> newExpressions = new HashMap<>();
+            conditions.forEach(c -> newExpressions.computeIfAbsent(c.getExpression(), e -> new ArrayList<>()).add(c));
+            lastEvaluations.keySet().retainAll(newExpressions.keySet());
+            expressions = newExpressions;
+        }
+
+        void cancel() {
+            if (future != null) {
+                future.cancel(true);
+            }
         }
 
         @Override
         public void run() {
-            CloseableHttpClient httpClient = null;
-            try {
-                httpClient = HttpClients.createDefault();
+            long now = System.currentTimeMillis();
+            long tick = now - (now % frequencyMs);
+            ScheduledThreadPoolExecutor executor = alerter.expressionExecutor;
+            for (Map.Entry<String, List<ExternalCondition>> me : expressions.entrySet()) {
+                if (executor == null) {
+                    return;
+                }
+                executor.execute(() -> evaluate(me.getKey(), me.getValue(), tick));
+            }
+        }
 
-                StringBuffer url = new StringBuffer(properties.get(URL));
-                BasicNameValuePair param = new BasicNameValuePair("query", externalCondition.getExpression());
-                url.append("/api/v1/query?").append(URLEncodedUtils.format(Arrays.asList(param), UTF_8));
-                HttpGet getRequest = new HttpGet(url.toString());
-                HttpResponse response = httpClient.execute(getRequest);
-                if (response.getStatusLine().getStatusCode() >= 300) {
-                    log.warnf("Prometheus GET failed. Status=[%d], message=[%s], url=[%s]",
-                            response.getStatusLine().getStatusCode(),
-                            response.getStatusLine().getReasonPhrase(), url.toString());
+        private void evaluate(String expression, List<ExternalCondition> conditions, long tick) {
+            Long last = lastEvaluations.get(expression);
+            try {
+                List<Event> events;
+                if (last != null && (tick - last) > frequencyMs) {
+                    long start = Math.max(last + frequencyMs, tick - catchUpMs);
+                    log.debugf("Catching up %s from %s to %s", expression, start, tick);
+                    QueryResponse queryResponse = query("/api/v1/query_range", Arrays.asList(
+                            new BasicNameValuePair("query", expression),
+                            new BasicNameValuePair("start", String.valueOf(start / 1000.0)),
+                            new BasicNameValuePair("end", String.valueOf(tick / 1000.0)),
+                            new BasicNameValuePair("step", String.valueOf(key.frequency))), "matrix");
+                    if (queryResponse == null) {
+                        return;
+                    }
+                    events = rangeEvents(queryResponse.getData().getResult(), conditions);
                 } else {
-                    QueryResponse queryResponse = JsonUtil.getMapper().readValue(response.getEntity().getContent(),
-                            QueryResponse.class);
-                    if (isValid(queryResponse, response)) {
-                        evaluate(queryResponse.getData().getResult());
+                    QueryResponse queryResponse = query("/api/v1/query", Arrays.asList(
+                            new BasicNameValuePair("query", expression),
+                            new BasicNameValuePair("time", String.valueOf(tick / 1000.0))), "vector");
+                    if (queryResponse == null) {
+                        return;
                     }
-                    return;
+                    events = instantEvents(queryResponse.getData().getResult(), conditions);
+                }
+                lastEvaluations.put(expression, tick);
+                if (!events.isEmpty()) {
+                    log.debugf("Sending External Condition Events to Alerting %s", events);
+                    alerter.alerts.sendEvents(events);
                 }
             } catch (Throwable t) {
                 if (log.isDebugEnabled()) {
                     t.printStackTrace();
                 }
-                log.warnf("Failed data fetch for %s: %s", externalCondition.getExpression(), t.getMessage());
-            } finally {
-                if (httpClient != null) {
-                    try {
-                        httpClient.close();
-                    } catch (IOException e) {
-                        log.debugf(e, "Failed closing http client");
-                    }
+                log.warnf("Failed data fetch for %s: %s", expression, t.getMessage());
+            }
+        }
+
+        private QueryResponse query(String endpoint, List<BasicNameValuePair> params, String resultType)
+                throws Exception {
+            CloseableHttpClient httpClient = alerter.httpClient;
+            if (httpClient == null) {
+                return null;
+            }
+            StringBuffer url = new StringBuffer(key.url);
+            url.append(endpoint).append("?").append(URLEncodedUtils.format(params, UTF_8));
+            HttpGet getRequest = new HttpGet(url.toString());
+            try (CloseableHttpResponse response = httpClient.execute(getRequest)) {
+                if (response.getStatusLine().getStatusCode() >= 300) {
+                    log.warnf("Prometheus GET failed. Status=[%d], message=[%s], url=[%s]",
+                            response.getStatusLine().getStatusCode(),
+                            response.getStatusLine().getReasonPhrase(), url.toString());
+                    return null;
                 }
+                QueryResponse queryResponse = JsonUtil.getMapper().readValue(response.getEntity().getContent(),
+                        QueryResponse.class);
+                return isValid(queryResponse, response, resultType) ? queryResponse : null;
             }
         }
 
-        private boolean isValid(QueryResponse queryResponse, Object response) {
+        private boolean isValid(QueryResponse queryResponse, Object response, String resultType) {
             if (!"success".equals(queryResponse.getStatus())) {
                 log.warnf("Prometheus query did not return success, can not process external condition: [%s]",
                         response);
                 return false;
             }
-            if (!"vector".equals(queryResponse.getData().getResultType())) {
-                log.warnf("resultType [%s] is not yet supported. Supported resultTyes are [vector]: [%s]",
-                        queryResponse.getData().getResultType(), response);
+            if (!resultType.equals(queryResponse.getData().getResultType())) {
+                log.warnf("resultType [%s] is not yet supported. Supported resultTyes are [%s]: [%s]",
+                        queryResponse.getData().getResultType(), resultType, response);
                 return false;
             }
 
             return true;
         }
 
-        private void evaluate(QueryResponse.Result[] result) throws Exception {
+        private List<Event> instantEvents(QueryResponse.Result[] result, List<ExternalCondition> conditions) {
+            List<Event> events = new ArrayList<>();
             for (QueryResponse.Result r : result) {
                 // just send all of the time series labels as context for event
                 // TODO: Should these be tags or context?
                 Map<String, String> context = r.getMetric();
+                for (ExternalCondition externalCondition : conditions) {
+                    events.add(new Event(externalCondition.getTenantId(), UUID.randomUUID().toString(),
+                            System.currentTimeMillis(), externalCondition.getDataId(),
+                            ALERTER_ID, Arrays.toString(r.getValue()), context, null));
+                }
+            }
+            return events;
+        }
 
-                Event externalEvent = new Event(externalCondition.getTenantId(), UUID.randomUUID().toString(),
-                        System.currentTimeMillis(), externalCondition.getDataId(),
-                        ALERTER_ID, Arrays.toString(r.getValue()), context, null);
-                log.debugf("Sending External Condition Event to Alerting %s", externalEvent);
-                alertsService.sendEvents(Collections.singleton(externalEvent));
+        private List<Event> rangeEvents(QueryResponse.Result[] result, List<ExternalCondition> conditions) {
+            List<Event> events = new ArrayList<>();
+            for (QueryResponse.Result r : result) {
+                Map<String, String> context = r.getMetric();
+                if (r.getValues() == null) {
+                    continue;
+                }
+                for (Object[] value : r.getValues()) {
+                    long timestamp = (long) (((Number) value[0]).doubleValue() * 1000);
+                    for (ExternalCondition externalCondition : conditions) {
+                        events.add(new Event(externalCondition.getTenantId(), UUID.randomUUID().toString(),
+                                timestamp, externalCondition.getDataId(),
+                                ALERTER_ID, Arrays.toString(value), context, null));
+                    }
+                }
             }
+            return events;
         }
     }
 }
@@ -98,6 +98,12 @@ public class QueryResponse {
         @JsonInclude
         Object[] value;
 
+        /*
+            Samples of a range query, "matrix" resultType
+         */
+        @JsonInclude
+        Object[][] values;
+
         public Result() {
             super();
         }
@@ -118,9 +124,18 @@ public class QueryResponse {
             this.value = value;
         }
 
+        public Object[][] getValues() {
+            return values;
+        }
+
+        public void setValues(Object[][] values) {
+            this.values = values;
+        }
+
         @Override
         public String toString() {
-            return "MetricData [metric=" + metric + ", value=" + Arrays.toString(value) + "]";
+            return "MetricData [metric=" + metric + ", value=" + Arrays.toString(value) + ", values="
+                    + Arrays.deepToString(values) + "]";
         }
 
     }
@@ -95,4 +95,26 @@ public class PrometheusQueryTest {
         client.close();
     }
 
+    @Test
+    public void matrixResponse() throws Exception {
+        String json = "{\"status\":\"success\",\"data\":{\"resultType\":\"matrix\",\"result\":["
+                + "{\"metric\":{\"__name__\":\"up\",\"job\":\"prometheus\"},"
+                + "\"values\":[[1435781430.781,\"1\"],[1435781445.781,\"0\"]]}]}}";
+        QueryResponse queryResponse = JsonUtil.getMapper().readValue(json, QueryResponse.class);
+        assertEquals("success", queryResponse.getStatus());
+        assertEquals("matrix", queryResponse.getData().getResultType());
+        QueryResponse.Result r = queryResponse.getData().getResult()[0];
+        assertEquals("prometheus", r.getMetric().get("job"));
+        assertEquals(2, r.getValues().length);
+        assertEquals(1435781445781L, (long) (((Number) r.getValues()[1][0]).doubleValue() * 1000));
+        assertEquals("0", r.getValues()[1][1]);
+    }
+
+    @Test
+    public void alignedDelay() {
+        assertEquals(0L, PrometheusAlerter.alignedDelay(120000L, 120000L));
+        assertEquals(119000L, PrometheusAlerter.alignedDelay(121000L, 120000L));
+        assertEquals(1000L, PrometheusAlerter.alignedDelay(239000L, 120000L));
+    }
+
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.api.exception;
+
+/**
+ * Indicates that incoming data or events were not accepted because the ingestion queues are full.
+ * The caller should retry after the suggested delay, alerters should pause their consumption meanwhile.
+ */
+public class IngestionRejectedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int retryAfter;
+
+    private final boolean timedOut;
+
+    /**
+     * @param message description of the rejection
+     * @param retryAfter suggested delay in seconds before retrying
+     * @param timedOut true if the caller waited for room in the queues and the wait expired, false if the data was
+     *                 rejected without waiting
+     */
+    public IngestionRejectedException(String message, int retryAfter, boolean timedOut) {
+        super(message);
+        this.retryAfter = retryAfter;
+        this.timedOut = timedOut;
+    }
+
+    /**
+     * @return suggested delay in seconds before retrying
+     */
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.api.json;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.hawkular.alerts.api.model.action.ActionDefinition;
+import org.hawkular.alerts.api.model.export.Definitions;
+import org.hawkular.alerts.api.model.export.DefinitionsWriter;
+import org.hawkular.alerts.api.model.trigger.FullTrigger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Newline delimited json representation of {@link Definitions}, used to export and import definitions as a stream.
+ *
+ * Every line holds a single item wrapped in an object whose only field names the kind of the item:
+ * <pre>
+ * {"action":{...ActionDefinition...}}
+ * {"trigger":{...FullTrigger...}}
+ * {"groupMember":{...GroupMemberInfo...}}
+ * </pre>
+ * Blank lines are ignored.
+ */
+public class DefinitionsNdjson {
+
+    public static final String CONTENT_TYPE = "application/x-ndjson";
+
+    public static final String ACTION = "action";
+    public static final String TRIGGER = "trigger";
+    public static final String GROUP_MEMBER = "groupMember";
+
+    private static final byte NEW_LINE = '\n';
+
+    private DefinitionsNdjson() {
+    }
+
+    /**
+     * @param out stream where the lines are written, it is not closed by the writer
+     * @return a DefinitionsWriter writing one line per item
+     */
+    public static DefinitionsWriter writer(OutputStream out) {
+        ObjectMapper mapper = JsonUtil.getMapper();
+        return new DefinitionsWriter() {
+            @Override
+            public void writeAction(ActionDefinition actionDefinition) throws Exception {
+                out.write(mapper.writeValueAsBytes(Collections.singletonMap(ACTION, actionDefinition)));
+                out.write(NEW_LINE);
+            }
+
+            @Override
+            public void writeTrigger(FullTrigger fullTrigger) throws Exception {
+                out.write(mapper.writeValueAsBytes(Collections.singletonMap(TRIGGER, fullTrigger)));
+                out.write(NEW_LINE);
+            }
+        };
+    }
+
+    /**
+     * Parse the lines incrementally, grouping the items in {@link Definitions} batches.
+     *
+     * @param in stream with the lines to parse, it is read lazily as the batches are consumed
+     * @param batchSize max number of items per batch
+     * @return an iterator of batches, parsing errors are thrown as IllegalArgumentException and read errors as
+     * UncheckedIOException
+     */
+    public static Iterator<Definitions> batches(InputStream in, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        return new Iterator<Definitions>() {
+            private Definitions next;
+            private long lineNumber = 0;
+            private boolean eof = false;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null && !eof) {
+                    next = readBatch();
+                }
+                return next != null;
+            }
+
+            @Override
+            public Definitions next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Definitions batch = next;
+                next = null;
+                return batch;
+            }
+
+            private Definitions readBatch() {
+                Definitions batch = new Definitions(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+                int size = 0;
+                try {
+                    while (size < batchSize) {
+                        String line = reader.readLine();
+                        if (line == null) {
+                            eof = true;
+                            break;
+                        }
+                        lineNumber++;
+                        if (line.trim().isEmpty()) {
+                            continue;
+                        }
+                        parseLine(line, batch);
+                        size++;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return size == 0 ? null : batch;
+            }
+
+            private void parseLine(String line, Definitions batch) {
+                ObjectMapper mapper = JsonUtil.getMapper();
+                try {
+                    JsonNode node = mapper.readTree(line);
+                    if (node.has(TRIGGER)) {
+                        batch.getTriggers().add(mapper.treeToValue(node.get(TRIGGER), FullTrigger.class));
+                    } else if (node.has(GROUP_MEMBER)) {
+                        batch.getGroupMembersInfo()
+                                .add(mapper.treeToValue(node.get(GROUP_MEMBER), GroupMemberInfo.class));
+                    } else if (node.has(ACTION)) {
+                        batch.getActions().add(mapper.treeToValue(node.get(ACTION), ActionDefinition.class));
+                    } else {
+                        throw new IllegalArgumentException("Unknown item at line " + lineNumber);
+                    }
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Invalid json at line " + lineNumber + ": " + e.getMessage(),
+                            e);
+                }
+            }
+        };
+    }
+}
@@ -16,11 +16,8 @@
  */
 package org.hawkular.alerts.api.model.condition;
 
-import static org.hawkular.alerts.api.util.Util.isEmpty;
-
-import java.util.ArrayList;
-import java.util.List;
-import java.util.regex.Pattern;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 
 import org.hawkular.alerts.api.doc.DocModel;
 import org.hawkular.alerts.api.doc.DocModelProperty;
@@ -69,7 +66,8 @@ import com.fasterxml.jackson.annotation.JsonInclude.Include;
  * So, putting everything together, a valid expression might look like:
  * event.id start 'IDXYZ', event.tag.category == 'Server', event.tag.from end '.com'
  *
- * A non valid expression will return false.
+ * A non valid expression is accepted by setExpression() but never matches. It is rejected by
+ * validateExpression(), which the definitions service calls when the condition is created or updated.
  *
  * @author Jay Shaughnessy
  * @author Lucas Ponce
@@ -112,7 +110,7 @@ import com.fasterxml.jackson.annotation.JsonInclude.Include;
         "So, putting everything together, a valid expression might look like: + \n" +
         "event.id starts 'IDXYZ', event.tag.category == 'Server', event.tag.from end '.com' + \n" +
         " + \n" +
-        "A non valid expression will return false. + \n")
+        "A non valid expression is rejected when the condition is created or updated. + \n")
 public class EventCondition extends Condition {
 
     private static final long serialVersionUID = 1L;
@@ -126,6 +124,9 @@ public class EventCondition extends Condition {
     @JsonInclude(Include.NON_NULL)
     private String expression;
 
+    // Compiled on every change of the expression, an invalid expression never matches
+    private transient EventExpression compiledExpression;
+
     public EventCondition() {
         this("", "", Mode.FIRING, 1, 1, null, null);
     }
@@ -178,6 +179,7 @@ public class EventCondition extends Condition {
             int conditionSetIndex, String dataId, String expression) {
         super(tenantId, triggerId, triggerMode, conditionSetSize, conditionSetIndex, Type.EVENT);
         this.dataId = dataId;
+        this.compiledExpression = EventExpression.compileOrNone(expression);
         this.expression = expression;
         updateDisplayString();
     }
@@ -187,6 +189,7 @@ public class EventCondition extends Condition {
 
         this.dataId = condition.getDataId();
         this.expression = condition.getExpression();
+        this.compiledExpression = condition.compiledExpression;
     }
 
     public void setDataId(String dataId) {
@@ -202,176 +205,39 @@ public class EventCondition extends Condition {
         return expression;
     }
 
+    /**
+     * @param expression the expression of the condition, it is compiled once here. An invalid expression is kept
+     *                   but never matches, use {@link #validateExpression()} to reject it.
+     */
     public void setExpression(String expression) {
+        this.compiledExpression = EventExpression.compileOrNone(expression);
         this.expression = expression;
     }
 
-    private static Pattern cleanComma = Pattern.compile("\\\\,");
+    /**
+     * Strict check of the expression, used when the condition is defined.
+     *
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    public void validateExpression() {
+        EventExpression.compile(expression);
+    }
 
     public boolean match(Event value) {
         if (null == value) {
             return false;
         }
-        if (isEmpty(expression)) {
-            return true;
-        }
-        List<String> expressions = new ArrayList<>();
-        int j = 0;
-        for (int i = 0; i < expression.length(); i++) {
-            if (expression.charAt(i) == ','
-                    && (i == 0 || (i > 0 && expression.charAt(i - 1) != '\\'))) {
-                expressions.add(cleanComma.matcher(expression.substring(j, i).trim()).replaceAll(","));
-                j = i + 1;
-            }
-        }
-        expressions.add(cleanComma.matcher(expression.substring(j).trim()).replaceAll(","));
-        for (String expression : expressions) {
-            if (!processExpression(expression, value)) {
-                return false;
-            }
+        EventExpression compiled = compiledExpression;
+        if (null == compiled) {
+            compiled = EventExpression.compileOrNone(expression);
+            compiledExpression = compiled;
         }
-        return true;
+        return compiled.match(value);
     }
 
-    private static final String TENANT_ID = "tenantId";
-    private static final String ID = "id";
-    private static final String CTIME = "ctime";
-    private static final String TEXT = "text";
-    private static final String CATEGORY = "category";
-    private static final String TAGS = "tags.";
-
-    private static final String EQ = "==";
-    private static final String NON_EQ = "!=";
-    private static final String STARTS = "starts";
-    private static final String ENDS = "ends";
-    private static final String CONTAINS = "contains";
-    private static final String MATCHES = "matches";
-    private static final String LT = "<";
-    private static final String LTE = "<=";
-    private static final String GT = ">";
-    private static final String GTE = ">=";
-
-    private boolean processExpression(String expression, Event value) {
-        if (isEmpty(expression) || null == value) {
-            return false;
-        }
-        String[] tokens = expression.split(" ");
-        if (tokens.length < 3) {
-            return false;
-        }
-        String eventField = tokens[0];
-        String operator = tokens[1];
-        String constant = tokens[2];
-        for (int i = 3; i < tokens.length; ++i) {
-            constant += " ";
-            constant += tokens[i];
-        }
-        String sEventValue = null;
-        Long lEventValue = null;
-        String sConstantValue = null;
-        Double dConstantValue = null;
-
-        if (isEmpty(eventField)) {
-            return false;
-        }
-        if (TENANT_ID.equals(eventField)) {
-            sEventValue = value.getTenantId();
-        } else if (ID.equals(eventField)) {
-            sEventValue = value.getId();
-        } else if (CTIME.equals(eventField)) {
-            lEventValue = value.getCtime();
-        } else if (TEXT.equals(eventField)) {
-            sEventValue = value.getText();
-        } else if (CATEGORY.equals(eventField)) {
-            sEventValue = value.getCategory();
-        } else if (eventField.startsWith(TAGS)) {
-            // We get the key from tags.<key> string
-            String key = eventField.substring(5);
-            sEventValue = value.getTags().get(key);
-        }
-        if (sEventValue == null && lEventValue == null) {
-            return false;
-        }
-        if (constant == null) {
-            return false;
-        }
-        int constantLength = constant.length();
-        if (constant.charAt(0) == '\'' && constant.charAt(constantLength - 1) == '\'') {
-            sConstantValue = constant.substring(1, constantLength - 1);
-        } else if (constant.charAt(0) == '\'' && constant.charAt(constantLength - 1) != '\'') {
-            return false;
-        } else if (constant.charAt(0) != '\'' && constant.charAt(constantLength - 1) == '\'') {
-            return false;
-        } else {
-            dConstantValue = Double.valueOf(constant);
-        }
-
-        if (EQ.equals(operator)) {
-            if (sEventValue != null && sConstantValue != null) {
-                return sEventValue.equals(sConstantValue);
-            }
-            if (lEventValue != null && dConstantValue != null) {
-                return lEventValue.longValue() == dConstantValue.doubleValue();
-            }
-            return false;
-        } else if (NON_EQ.equals(operator)) {
-            if (sEventValue != null && sConstantValue != null) {
-                return !sEventValue.equals(sConstantValue);
-            }
-            if (lEventValue != null && dConstantValue != null) {
-                return lEventValue.longValue() != dConstantValue.doubleValue();
-            }
-            return false;
-        } else if (STARTS.equals(operator)) {
-            if (sEventValue != null && sConstantValue != null) {
-                return sEventValue.startsWith(sConstantValue);
-            }
-            return false;
-        } else if (ENDS.equals(operator)) {
-            if (sEventValue != null && sConstantValue != null) {
-                return sEventValue.endsWith(sConstantValue);
-            }
-            return false;
-        } else if (CONTAINS.equals(operator)) {
-            if (sEventValue != null && sConstantValue != null) {
-                return sEventValue.contains(sConstantValue);
-            }
-            return false;
-        } else if (MATCHES.equals(operator)) {
-            if (sEventValue != null && sConstantValue != null) {
-                return sEventValue.matches(sConstantValue);
-            }
-            return false;
-        } else if (GT.equals(operator)) {
-            Double dEventValue = lEventValue != null ? lEventValue.doubleValue() : null;
-            dEventValue = sEventValue != null ? Double.valueOf(sEventValue) : dEventValue;
-            if (dEventValue != null && dConstantValue != null) {
-                return dEventValue > dConstantValue;
-            }
-            return false;
-        } else if (GTE.equals(operator)) {
-            Double dEventValue = lEventValue != null ? lEventValue.doubleValue() : null;
-            dEventValue = sEventValue != null ? Double.valueOf(sEventValue) : dEventValue;
-            if (dEventValue != null && dConstantValue != null) {
-                return dEventValue >= dConstantValue;
-            }
-            return false;
-        } else if (LT.equals(operator)) {
-            Double dEventValue = lEventValue != null ? lEventValue.doubleValue() : null;
-            dEventValue = sEventValue != null ? Double.valueOf(sEventValue) : dEventValue;
-            if (dEventValue != null && dConstantValue != null) {
-                return dEventValue < dConstantValue;
-            }
-            return false;
-        } else if (LTE.equals(operator)) {
-            Double dEventValue = lEventValue != null ? lEventValue.doubleValue() : null;
-            dEventValue = sEventValue != null ? Double.valueOf(sEventValue) : dEventValue;
-            if (dEventValue != null && dConstantValue != null) {
-                return dEventValue <= dConstantValue;
-            }
-            return false;
-        }
-        return false;
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        compiledExpression = EventExpression.compileOrNone(expression);
     }
 
     @Override
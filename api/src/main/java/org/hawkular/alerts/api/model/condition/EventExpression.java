@@ -0,0 +1,310 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.api.model.condition;
+
+import static org.hawkular.alerts.api.util.Util.isEmpty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.hawkular.alerts.api.model.event.Event;
+
+/**
+ * The compiled form of an {@link EventCondition} expression.
+ *
+ * An expression is parsed once into a list of clauses with the event field, the operator and the constant already
+ * resolved, so matching an Event does not tokenize the expression or parse the constants again.
+ * An instance is immutable and can be shared between threads.
+ */
+public final class EventExpression {
+
+    private static final Pattern CLEAN_COMMA = Pattern.compile("\\\\,");
+
+    private static final String TENANT_ID = "tenantId";
+    private static final String ID = "id";
+    private static final String CTIME = "ctime";
+    private static final String TEXT = "text";
+    private static final String CATEGORY = "category";
+    private static final String TAGS = "tags.";
+
+    /**
+     * Matches any Event, it is the compiled form of an empty expression
+     */
+    public static final EventExpression ANY = new EventExpression(new Clause[0]);
+
+    /**
+     * Matches no Event
+     */
+    public static final EventExpression NONE = new EventExpression(new Clause[] { new Clause(null, null,
+            Operator.EQ, null, 0, null) });
+
+    private enum Field {
+        TENANT_ID, ID, CTIME, TEXT, CATEGORY, TAG
+    }
+
+    private enum Operator {
+        EQ("=="), NON_EQ("!="), STARTS("starts"), ENDS("ends"), CONTAINS("contains"), MATCHES("matches"),
+        LT("<"), LTE("<="), GT(">"), GTE(">=");
+
+        private final String token;
+
+        Operator(String token) {
+            this.token = token;
+        }
+
+        static Operator fromToken(String token) {
+            for (Operator operator : values()) {
+                if (operator.token.equals(token)) {
+                    return operator;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final Clause[] clauses;
+
+    private EventExpression(Clause[] clauses) {
+        this.clauses = clauses;
+    }
+
+    /**
+     * @param expression the expression of an EventCondition
+     * @return the compiled expression, {@link #ANY} for an empty expression
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    public static EventExpression compile(String expression) {
+        if (isEmpty(expression)) {
+            return ANY;
+        }
+        List<Clause> clauses = new ArrayList<>();
+        for (String clause : split(expression)) {
+            clauses.add(compileClause(clause));
+        }
+        return new EventExpression(clauses.toArray(new Clause[clauses.size()]));
+    }
+
+    /**
+     * Like {@link #compile(String)} but an invalid expression is compiled as {@link #NONE}, used for expressions
+     * that were stored before they were validated.
+     *
+     * @param expression the expression of an EventCondition
+     * @return the compiled expression
+     */
+    public static EventExpression compileOrNone(String expression) {
+        try {
+            return compile(expression);
+        } catch (IllegalArgumentException e) {
+            return NONE;
+        }
+    }
+
+    /**
+     * @param event the Event to evaluate, not null
+     * @return true if the event matches all the clauses of the expression
+     */
+    public boolean match(Event event) {
+        for (int i = 0; i < clauses.length; i++) {
+            if (!clauses[i].match(event)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+        Clauses are separated by commas not escaped with a backslash
+     */
+    private static List<String> split(String expression) {
+        List<String> clauses = new ArrayList<>();
+        int j = 0;
+        for (int i = 0; i < expression.length(); i++) {
+            if (expression.charAt(i) == ',' && (i == 0 || expression.charAt(i - 1) != '\\')) {
+                clauses.add(CLEAN_COMMA.matcher(expression.substring(j, i).trim()).replaceAll(","));
+                j = i + 1;
+            }
+        }
+        clauses.add(CLEAN_COMMA.matcher(expression.substring(j).trim()).replaceAll(","));
+        return clauses;
+    }
+
+    private static Clause compileClause(String clause) {
+        String[] tokens = clause.split(" ");
+        if (tokens.length < 3) {
+            throw new IllegalArgumentException("Expression [" + clause + "] is not <event.field> <operator> " +
+                    "<constant>");
+        }
+        String eventField = tokens[0];
+        Field field;
+        String tagKey = null;
+        if (TENANT_ID.equals(eventField)) {
+            field = Field.TENANT_ID;
+        } else if (ID.equals(eventField)) {
+            field = Field.ID;
+        } else if (CTIME.equals(eventField)) {
+            field = Field.CTIME;
+        } else if (TEXT.equals(eventField)) {
+            field = Field.TEXT;
+        } else if (CATEGORY.equals(eventField)) {
+            field = Field.CATEGORY;
+        } else if (eventField.startsWith(TAGS)) {
+            field = Field.TAG;
+            tagKey = eventField.substring(TAGS.length());
+        } else {
+            throw new IllegalArgumentException("Expression [" + clause + "] has an unknown event field [" +
+                    eventField + "]");
+        }
+        Operator operator = Operator.fromToken(tokens[1]);
+        if (operator == null) {
+            throw new IllegalArgumentException("Expression [" + clause + "] has an unknown operator [" +
+                    tokens[1] + "]");
+        }
+        StringBuilder constant = new StringBuilder(tokens[2]);
+        for (int i = 3; i < tokens.length; ++i) {
+            constant.append(' ').append(tokens[i]);
+        }
+        int length = constant.length();
+        boolean quoteStart = length > 0 && constant.charAt(0) == '\'';
+        boolean quoteEnd = length > 1 && constant.charAt(length - 1) == '\'';
+        if (quoteStart && quoteEnd) {
+            String sConstant = constant.substring(1, length - 1);
+            Pattern pattern = null;
+            if (operator == Operator.MATCHES) {
+                try {
+                    pattern = Pattern.compile(sConstant);
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException("Expression [" + clause + "] has an invalid pattern: " +
+                            e.getDescription());
+                }
+            }
+            return new Clause(field, tagKey, operator, sConstant, 0, pattern);
+        }
+        if (quoteStart || (length > 0 && constant.charAt(length - 1) == '\'')) {
+            throw new IllegalArgumentException("Expression [" + clause + "] has an unclosed string constant");
+        }
+        try {
+            return new Clause(field, tagKey, operator, null, Double.parseDouble(constant.toString()), null);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expression [" + clause + "] has an invalid numeric constant [" +
+                    constant + "]");
+        }
+    }
+
+    /*
+        A field operator constant clause. A string constant is only compared with string fields, a numeric constant
+        is compared with ctime or, for the numeric operators, with the numeric value of a string field.
+     */
+    private static final class Clause {
+        private final Field field;
+        private final String tagKey;
+        private final Operator operator;
+        private final String sConstant;
+        private final double dConstant;
+        private final Pattern pattern;
+
+        Clause(Field field, String tagKey, Operator operator, String sConstant, double dConstant, Pattern pattern) {
+            this.field = field;
+            this.tagKey = tagKey;
+            this.operator = operator;
+            this.sConstant = sConstant;
+            this.dConstant = dConstant;
+            this.pattern = pattern;
+        }
+
+        boolean match(Event event) {
+            if (field == null) {
+                return false;
+            }
+            if (field == Field.CTIME) {
+                return sConstant == null && compare(event.getCtime());
+            }
+            String value = stringValue(event);
+            if (value == null) {
+                return false;
+            }
+            if (sConstant != null) {
+                switch (operator) {
+                    case EQ:
+                        return value.equals(sConstant);
+                    case NON_EQ:
+                        return !value.equals(sConstant);
+                    case STARTS:
+                        return value.startsWith(sConstant);
+                    case ENDS:
+                        return value.endsWith(sConstant);
+                    case CONTAINS:
+                        return value.contains(sConstant);
+                    case MATCHES:
+                        return pattern.matcher(value).matches();
+                    default:
+                        return false;
+                }
+            }
+            switch (operator) {
+                case LT:
+                case LTE:
+                case GT:
+                case GTE:
+                    try {
+                        return compare(Double.parseDouble(value));
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                default:
+                    return false;
+            }
+        }
+
+        private String stringValue(Event event) {
+            switch (field) {
+                case TENANT_ID:
+                    return event.getTenantId();
+                case ID:
+                    return event.getId();
+                case TEXT:
+                    return event.getText();
+                case CATEGORY:
+                    return event.getCategory();
+                case TAG:
+                    return event.getTags().get(tagKey);
+                default:
+                    return null;
+            }
+        }
+
+        private boolean compare(double value) {
+            switch (operator) {
+                case EQ:
+                    return value == dConstant;
+                case NON_EQ:
+                    return value != dConstant;
+                case LT:
+                    return value < dConstant;
+                case LTE:
+                    return value <= dConstant;
+                case GT:
+                    return value > dConstant;
+                case GTE:
+                    return value >= dConstant;
+                default:
+                    return false;
+            }
+        }
+    }
+}
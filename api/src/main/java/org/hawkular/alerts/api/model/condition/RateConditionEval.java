@@ -16,6 +16,8 @@
  */
 package org.hawkular.alerts.api.model.condition;
 
+import java.util.Map;
+
 import org.hawkular.alerts.api.doc.DocModel;
 import org.hawkular.alerts.api.doc.DocModelProperty;
 import org.hawkular.alerts.api.model.condition.Condition.Type;
@@ -72,15 +74,29 @@ public class RateConditionEval extends ConditionEval {
     }
 
     public RateConditionEval(RateCondition condition, Data data, Data previousData) {
-        super(Type.RATE, condition.match(data.getTimestamp(), Double.valueOf(data.getValue()),
-                previousData.getTimestamp(), Double.valueOf(previousData.getValue())), data.getTimestamp(),
+        this(condition, data, previousData.getTimestamp(), Double.parseDouble(previousData.getValue()));
+    }
+
+    /**
+     * @param condition the evaluated condition
+     * @param data the current datum
+     * @param previousTime timestamp of the previous datum
+     * @param previousValue already parsed value of the previous datum
+     */
+    public RateConditionEval(RateCondition condition, Data data, long previousTime, double previousValue) {
+        this(condition, data.getTimestamp(), Double.parseDouble(data.getValue()), previousTime, previousValue,
                 data.getContext());
+    }
+
+    private RateConditionEval(RateCondition condition, long time, double value, long previousTime,
+            double previousValue, Map<String, String> context) {
+        super(Type.RATE, condition.match(time, value, previousTime, previousValue), time, context);
         this.condition = condition;
-        this.time = data.getTimestamp();
-        this.value = Double.valueOf(data.getValue());
-        this.previousTime = previousData.getTimestamp();
-        this.previousValue = Double.valueOf(previousData.getValue());
-        this.rate = condition.getRate(this.time, this.value, this.previousTime, this.previousValue);
+        this.time = time;
+        this.value = value;
+        this.previousTime = previousTime;
+        this.previousValue = previousValue;
+        this.rate = condition.getRate(time, value, previousTime, previousValue);
     }
 
     public RateCondition getCondition() {
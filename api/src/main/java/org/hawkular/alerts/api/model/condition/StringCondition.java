@@ -16,6 +16,8 @@
  */
 package org.hawkular.alerts.api.model.condition;
 
+import java.util.regex.Pattern;
+
 import org.hawkular.alerts.api.doc.DocModel;
 import org.hawkular.alerts.api.doc.DocModelProperty;
 import org.hawkular.alerts.api.model.trigger.Mode;
@@ -60,6 +62,10 @@ public class StringCondition extends Condition {
     @JsonInclude
     private boolean ignoreCase;
 
+    // Derived from pattern and ignoreCase on first use, reset when any of them changes
+    private transient Pattern compiledPattern;
+    private transient String lowerCasePattern;
+
     public StringCondition() {
         /*
             Default constructor is needed for JSON libraries in JAX-RS context.
@@ -121,6 +127,8 @@ public class StringCondition extends Condition {
         this.ignoreCase = condition.isIgnoreCase();
         this.operator = condition.getOperator();
         this.pattern = condition.getPattern();
+        this.compiledPattern = condition.compiledPattern;
+        this.lowerCasePattern = condition.lowerCasePattern;
     }
 
     @Override
@@ -138,6 +146,8 @@ public class StringCondition extends Condition {
 
     public void setIgnoreCase(boolean ignoreCase) {
         this.ignoreCase = ignoreCase;
+        this.compiledPattern = null;
+        this.lowerCasePattern = null;
     }
 
     public Operator getOperator() {
@@ -154,12 +164,26 @@ public class StringCondition extends Condition {
 
     public void setPattern(String pattern) {
         this.pattern = pattern;
+        this.compiledPattern = null;
+        this.lowerCasePattern = null;
     }
 
     public boolean match(String value) {
-
-        if (ignoreCase && operator != Operator.MATCH) {
-            pattern = pattern.toLowerCase();
+        if (operator == Operator.MATCH) {
+            Pattern compiled = compiledPattern;
+            if (null == compiled) {
+                compiled = ignoreCase ? Pattern.compile(pattern, Pattern.CASE_INSENSITIVE) : Pattern.compile(pattern);
+                compiledPattern = compiled;
+            }
+            return compiled.matcher(value).matches();
+        }
+        String pattern = this.pattern;
+        if (ignoreCase) {
+            pattern = lowerCasePattern;
+            if (null == pattern) {
+                pattern = this.pattern.toLowerCase();
+                lowerCasePattern = pattern;
+            }
             value = value.toLowerCase();
         }
         switch (operator) {
@@ -173,8 +197,6 @@ public class StringCondition extends Condition {
                 return value.startsWith(pattern);
             case CONTAINS:
                 return value.contains(pattern);
-            case MATCH:
-                return value.matches(ignoreCase ? ("(?i)" + pattern) : pattern);
             default:
                 throw new IllegalStateException("Unknown operator: " + operator.name());
         }
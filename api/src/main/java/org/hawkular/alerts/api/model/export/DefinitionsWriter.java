@@ -14,19 +14,21 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package org.hawkular.alerts.handlers.util;
+package org.hawkular.alerts.api.model.export;
 
-import java.util.concurrent.ThreadFactory;
+import org.hawkular.alerts.api.model.action.ActionDefinition;
+import org.hawkular.alerts.api.model.trigger.FullTrigger;
 
 /**
+ * Receives the definitions of a tenant one item at a time while they are exported, so a full export does not need
+ * to be held in memory as a single {@link Definitions} object.
+ *
  * @author Jay Shaughnessy
  * @author Lucas Ponce
  */
-public class AlertingThreadFactory implements ThreadFactory {
-    private int count = 0;
+public interface DefinitionsWriter {
+
+    void writeAction(ActionDefinition actionDefinition) throws Exception;
 
-    @Override
-    public Thread newThread(Runnable r) {
-        return new Thread(r, "HawkularAlerts-" + (++count));
-    }
+    void writeTrigger(FullTrigger fullTrigger) throws Exception;
 }
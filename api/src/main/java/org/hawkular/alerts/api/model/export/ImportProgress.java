@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.api.model.export;
+
+import org.hawkular.alerts.api.doc.DocModel;
+import org.hawkular.alerts.api.doc.DocModelProperty;
+
+/**
+ * Counters of an import of definitions processed in batches.
+ */
+@DocModel(description = "Progress of a streaming import of definitions.")
+public class ImportProgress {
+
+    @DocModelProperty(description = "Number of batches processed.", position = 0)
+    private int batches;
+
+    @DocModelProperty(description = "Number of items (full triggers, group members and action definitions) read.",
+            position = 1)
+    private long processed;
+
+    @DocModelProperty(description = "Number of full triggers imported.", position = 2)
+    private long triggers;
+
+    @DocModelProperty(description = "Number of group member triggers imported.", position = 3)
+    private long groupMembers;
+
+    @DocModelProperty(description = "Number of action definitions imported.", position = 4)
+    private long actions;
+
+    public ImportProgress() {
+    }
+
+    public void add(Definitions read, Definitions imported) {
+        batches++;
+        processed += size(read);
+        if (imported.getTriggers() != null) {
+            triggers += imported.getTriggers().size();
+        }
+        if (imported.getGroupMembersInfo() != null) {
+            groupMembers += imported.getGroupMembersInfo().size();
+        }
+        if (imported.getActions() != null) {
+            actions += imported.getActions().size();
+        }
+    }
+
+    private static long size(Definitions definitions) {
+        long size = 0;
+        if (definitions.getTriggers() != null) {
+            size += definitions.getTriggers().size();
+        }
+        if (definitions.getGroupMembersInfo() != null) {
+            size += definitions.getGroupMembersInfo().size();
+        }
+        if (definitions.getActions() != null) {
+            size += definitions.getActions().size();
+        }
+        return size;
+    }
+
+    public int getBatches() {
+        return batches;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    public long getTriggers() {
+        return triggers;
+    }
+
+    public long getGroupMembers() {
+        return groupMembers;
+    }
+
+    public long getActions() {
+        return actions;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportProgress{" +
+                "batches=" + batches +
+                ", processed=" + processed +
+                ", triggers=" + triggers +
+                ", groupMembers=" + groupMembers +
+                ", actions=" + actions +
+                '}';
+    }
+}
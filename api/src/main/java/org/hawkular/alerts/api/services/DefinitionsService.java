@@ -17,14 +17,18 @@
 package org.hawkular.alerts.api.services;
 
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import org.hawkular.alerts.api.exception.NotFoundException;
 import org.hawkular.alerts.api.model.action.ActionDefinition;
 import org.hawkular.alerts.api.model.condition.Condition;
 import org.hawkular.alerts.api.model.dampening.Dampening;
 import org.hawkular.alerts.api.model.export.Definitions;
+import org.hawkular.alerts.api.model.export.DefinitionsWriter;
+import org.hawkular.alerts.api.model.export.ImportProgress;
 import org.hawkular.alerts.api.model.export.ImportType;
 import org.hawkular.alerts.api.model.paging.Page;
 import org.hawkular.alerts.api.model.paging.Pager;
@@ -63,6 +67,18 @@ public interface DefinitionsService {
      */
     void createFullTrigger(String tenantId, FullTrigger fullTrigger) throws Exception;
 
+    /**
+     * Create a collection of <code>FullTrigger</code>. All the definitions are persisted in a single batch, the
+     * Alerts engine is updated once per trigger and the resulting events are notified together.  The triggerIds must
+     * be set.
+     *
+     * @param tenantId Tenant where triggers are created
+     * @param fullTriggers New full trigger definitions to be created
+     * @throws Exception If any of the <code>Trigger</code> already exists, nothing is created in that case.
+     * @see {@link #createFullTrigger(String, FullTrigger)}
+     */
+    void createFullTriggers(String tenantId, Collection<FullTrigger> fullTriggers) throws Exception;
+
     /**
      * Get a stored FullTrigger for a specific Tenant.
      * @param tenantId Tenant where trigger is stored
@@ -87,6 +103,18 @@ public interface DefinitionsService {
      */
     void updateFullTrigger(String tenantId, FullTrigger fullTrigger) throws Exception;
 
+    /**
+     * Update a collection of <code>FullTrigger</code>. Each one is updated as in
+     * {@link #updateFullTrigger(String, FullTrigger)} but all of them are validated before any change is stored, the
+     * Alerts engine is updated once per trigger, after all of them are persisted, and the resulting events are
+     * notified together.
+     *
+     * @param tenantId Tenant where triggers are updated
+     * @param fullTriggers Full trigger definitions to be updated
+     * @throws Exception If any of the <code>Trigger</code> does not exist.
+     */
+    void updateFullTriggers(String tenantId, Collection<FullTrigger> fullTriggers) throws Exception;
+
     /**
      * <p>
      * <code>createFullTrigger(String, Trigger)</code> is the preferred way to create a trigger.
@@ -166,6 +194,16 @@ public interface DefinitionsService {
      */
     void removeTrigger(String tenantId, String triggerId) throws Exception;
 
+    /**
+     * Remove a collection of standard or group member triggers in a single batch.  The Alerts engine is updated once
+     * per trigger and the resulting events are notified together.
+     * @param tenantId Tenant where triggers are stored
+     * @param triggerIds Triggers to be removed
+     * @throws NotFoundException if any trigger is not found, nothing is removed in that case
+     * @throws Exception on any problem
+     */
+    void removeTriggers(String tenantId, Collection<String> triggerIds) throws Exception;
+
     /**
      * The group <code>Trigger</code> will be removed from the Alerts engine, as needed, and will no longer be
      * persisted. The member triggers will be removed as well, depending on the settings for
@@ -707,5 +745,32 @@ public interface DefinitionsService {
     Definitions importDefinitions(String tenantId, Definitions definitions, ImportType strategy)
             throws Exception;
 
+    /**
+     * Export alert definitions per a specific Tenant, one item at a time.
+     * Action definitions are written first, then the FullTrigger objects.  Definitions are fetched from the backend
+     * in pages so the memory needed does not depend on the number of triggers of the Tenant.
+     *
+     * @param tenantId Tenant where definitions are stored
+     * @param writer receiver of the exported items
+     * @throws Exception on any problem, including any thrown by the writer
+     */
+    void exportDefinitions(String tenantId, DefinitionsWriter writer) throws Exception;
+
+    /**
+     * Import alert definitions per a specific Tenant, as a sequence of Definitions batches.
+     * The ImportType strategy is applied batch by batch, with the DELETE strategy the existing definitions are
+     * removed once, before the first batch is imported.  Batches are consumed lazily so they can be parsed while
+     * the import progresses.
+     *
+     * @param tenantId Tenant where definitions will be imported
+     * @param batches Definitions to import
+     * @param strategy the ImportType strategy to apply
+     * @param progressListener optional listener invoked after every batch is imported
+     * @return the counters of the imported definitions
+     * @throws Exception on any problem, batches already imported are kept
+     */
+    ImportProgress importDefinitions(String tenantId, Iterator<Definitions> batches, ImportType strategy,
+            Consumer<ImportProgress> progressListener) throws Exception;
+
     void registerDistributedListener(DistributedListener listener);
 }
@@ -49,4 +49,24 @@ public interface StatusService {
      * @return Map with currentNode and members information for distributed scenarios
      */
     Map<String, String> getDistributedStatus();
+
+    /**
+     * Show the depth and counters of the ingestion queues of data and events, i.e.
+     *  - getIngestionStatus().get("ingestion-data.queued-items") returns the number of datums waiting to be processed
+     *  - getIngestionStatus().get("ingestion-data.shed-items") returns the number of datums dropped by the
+     *    ingestion policy
+     *
+     * @return Map with the ingestion status
+     */
+    Map<String, String> getIngestionStatus();
+
+    /**
+     * Show the usage of the thread pools of each subsystem, i.e.
+     *  - getExecutorsStatus().get("executor-ingestion.queued-tasks") returns the number of tasks waiting for a thread
+     *  - getExecutorsStatus().get("executor-ingestion.saturated-tasks") returns the number of tasks run on the caller
+     *    thread because the pool was full
+     *
+     * @return Map with the executors status
+     */
+    Map<String, String> getExecutorsStatus();
 }
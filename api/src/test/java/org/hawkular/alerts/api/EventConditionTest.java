@@ -16,9 +16,18 @@
  */
 package org.hawkular.alerts.api;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.hawkular.alerts.api.json.JsonUtil;
+import org.hawkular.alerts.api.model.condition.Condition;
 import org.hawkular.alerts.api.model.condition.EventCondition;
 import org.hawkular.alerts.api.model.event.Event;
 import org.junit.Test;
@@ -183,4 +192,92 @@ public class EventConditionTest {
         assertFalse(condition.match(bpmEvent2));
     }
 
+    @Test
+    public void testMatchesExpression() {
+        EventCondition condition = new EventCondition("tenant", "trigger-1", "app.war",
+                "text matches 'ERROR.*', tags.host ends '.com'");
+        Event event1 = new Event();
+        event1.setText("ERROR in deployment");
+        event1.addTag("host", "server.com");
+
+        assertTrue(condition.match(event1));
+
+        event1.setText("WARN in deployment");
+
+        assertFalse(condition.match(event1));
+    }
+
+    @Test
+    public void testInvalidExpressions() {
+        String[] invalids = {
+                "text ==",
+                "unknown == 'value'",
+                "text like 'value'",
+                "text == 'value",
+                "ctime > ten",
+                "text matches '['",
+                "text == 'value',"
+        };
+        Event event1 = new Event();
+        event1.setText("value");
+        for (String invalid : invalids) {
+            EventCondition condition = new EventCondition("tenant", "trigger-1", "app.war", invalid);
+            assertFalse(condition.match(event1));
+            try {
+                condition.validateExpression();
+                fail("Expression [" + invalid + "] should be rejected");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+        EventCondition condition = new EventCondition("tenant", "trigger-1", "app.war", "text == 'value'");
+        condition.validateExpression();
+        assertTrue(condition.match(event1));
+        condition.setExpression("text ==");
+        assertEquals("text ==", condition.getExpression());
+        assertFalse(condition.match(event1));
+    }
+
+    @Test
+    public void testSerializedExpression() throws Exception {
+        EventCondition condition = new EventCondition("tenant", "trigger-1", "app.war",
+                "category == 'my category', ctime >= 10");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(condition);
+        }
+        EventCondition deserialized;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            deserialized = (EventCondition) in.readObject();
+        }
+        Event event1 = new Event();
+        event1.setCategory("my category");
+        event1.setCtime(10);
+
+        assertTrue(deserialized.match(event1));
+
+        event1.setCtime(9);
+
+        assertFalse(deserialized.match(event1));
+    }
+
+    @Test
+    public void testJsonInvalidExpression() throws Exception {
+        // Stored definitions are read back through JSON, an invalid expression must not break the deserialization
+        String json = "{\"tenantId\":\"tenant\",\"triggerId\":\"trigger-1\",\"type\":\"EVENT\"," +
+                "\"dataId\":\"app.war\",\"expression\":\"text ==\"}";
+        EventCondition condition = (EventCondition) JsonUtil.fromJson(json, Condition.class);
+        assertEquals("text ==", condition.getExpression());
+
+        Event event1 = new Event();
+        event1.setText("value");
+
+        assertFalse(condition.match(event1));
+        try {
+            condition.validateExpression();
+            fail("Expression should be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
 }
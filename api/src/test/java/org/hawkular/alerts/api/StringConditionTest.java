@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.hawkular.alerts.api.model.condition.StringCondition;
+import org.hawkular.alerts.api.model.condition.StringCondition.Operator;
+import org.junit.Test;
+
+public class StringConditionTest {
+
+    @Test
+    public void testMatchPattern() {
+        StringCondition condition = new StringCondition("tenant", "trigger-1", "log", Operator.MATCH, "ERROR.*",
+                false);
+
+        assertTrue(condition.match("ERROR in deployment"));
+        assertFalse(condition.match("error in deployment"));
+
+        condition.setIgnoreCase(true);
+
+        assertTrue(condition.match("error in deployment"));
+
+        condition.setPattern("WARN.*");
+
+        assertFalse(condition.match("error in deployment"));
+        assertTrue(condition.match("warn in deployment"));
+
+        StringCondition copy = new StringCondition(condition);
+
+        assertTrue(copy.match("Warn in deployment"));
+    }
+
+    @Test
+    public void testIgnoreCase() {
+        StringCondition condition = new StringCondition("tenant", "trigger-1", "log", Operator.STARTS_WITH, "ERROR",
+                true);
+
+        assertTrue(condition.match("error in deployment"));
+        assertTrue(condition.match("Error in deployment"));
+        assertEquals("ERROR", condition.getPattern());
+
+        condition.setIgnoreCase(false);
+
+        assertFalse(condition.match("error in deployment"));
+        assertTrue(condition.match("ERROR in deployment"));
+    }
+}
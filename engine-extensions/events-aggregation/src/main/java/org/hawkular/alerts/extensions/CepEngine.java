@@ -30,6 +30,13 @@ import org.hawkular.alerts.api.model.trigger.FullTrigger;
  */
 public interface CepEngine {
 
+    /**
+     * Update the CEP rules to the ExternalConditions of the active triggers. Only the rules of the triggers that
+     * changed are replaced, an empty collection stops the CEP session.
+     *
+     * @param expiration expiration of the events in the CEP session
+     * @param activeTriggers triggers with ExternalConditions processed by the CEP session
+     */
     void updateConditions(String expiration, Collection<FullTrigger> activeTriggers);
 
     void processEvents(TreeSet<Event> events);
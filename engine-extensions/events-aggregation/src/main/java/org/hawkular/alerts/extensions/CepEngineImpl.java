@@ -20,17 +20,20 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.TreeSet;
 import java.util.concurrent.ExecutorService;
 
+import org.hawkular.alerts.api.model.condition.Condition;
+import org.hawkular.alerts.api.model.condition.ExternalCondition;
 import org.hawkular.alerts.api.model.event.Event;
 import org.hawkular.alerts.api.model.trigger.FullTrigger;
 import org.hawkular.alerts.api.services.AlertsService;
+import org.hawkular.alerts.api.services.PropertiesService;
 import org.hawkular.commons.log.MsgLogger;
 import org.hawkular.commons.log.MsgLogging;
-import org.kie.api.KieBase;
-import org.kie.api.KieBaseConfiguration;
-import org.kie.api.conf.EventProcessingOption;
 import org.kie.api.event.rule.AfterMatchFiredEvent;
 import org.kie.api.event.rule.AgendaEventListener;
 import org.kie.api.event.rule.AgendaGroupPoppedEvent;
@@ -44,12 +47,10 @@ import org.kie.api.event.rule.ObjectUpdatedEvent;
 import org.kie.api.event.rule.RuleFlowGroupActivatedEvent;
 import org.kie.api.event.rule.RuleFlowGroupDeactivatedEvent;
 import org.kie.api.event.rule.RuleRuntimeEventListener;
-import org.kie.api.io.ResourceType;
 import org.kie.api.runtime.KieSession;
 import org.kie.api.runtime.KieSessionConfiguration;
 import org.kie.api.runtime.conf.ClockTypeOption;
 import org.kie.internal.KnowledgeBaseFactory;
-import org.kie.internal.utils.KieHelper;
 
 /**
  * It evaluates events externally and send data into alerting
@@ -59,25 +60,85 @@ import org.kie.internal.utils.KieHelper;
  */
 public class CepEngineImpl implements CepEngine {
     private final MsgLogger log = MsgLogging.getMsgLogger(CepEngineImpl.class);
+    private static final String CEP_THREAD_NAME = "HawkularAlerts-cep";
+    private static final String CEP_UPDATE_THREAD_NAME = "HawkularAlerts-cep-update";
 
-    Expression expression;
-    List<Event> results;
-    KieSession kieSession;
+    /*
+        RULES_UPDATE_DELAY defined in milliseconds, trigger changes received during this delay are coalesced in a
+        single update of the CEP rules
+     */
+    private static final String RULES_UPDATE_DELAY = "hawkular-alerts.extension-rules-update-delay";
+    private static final String RULES_UPDATE_DELAY_ENV = "EXTENSION_RULES_UPDATE_DELAY";
+    private static final String RULES_UPDATE_DELAY_DEFAULT = "1000";
+
+    /*
+        NATIVE_AGGREGATION evaluates the count-only time window expressions without the CEP session, see
+        NativeAggregation for the expressions supported. Disabled by default as the results do not carry the events
+        of the window.
+     */
+    private static final String NATIVE_AGGREGATION = "hawkular-alerts.extension-native-aggregation";
+    private static final String NATIVE_AGGREGATION_ENV = "EXTENSION_NATIVE_AGGREGATION";
+    private static final String NATIVE_AGGREGATION_DEFAULT = "false";
+    private static final long NATIVE_AGGREGATION_TICK = 1000;
+
+    private volatile CepRules rules;
+
+    private NativeAggregation nativeAggregation;
+
+    private long updateDelay = Long.parseLong(RULES_UPDATE_DELAY_DEFAULT);
+    private final Timer updateTimer = new Timer(CEP_UPDATE_THREAD_NAME, true);
+    private final Object pendingLock = new Object();
+    private boolean pendingUpdate;
+    private boolean stopped;
+    private String pendingExpiration;
+    private List<FullTrigger> pendingTriggers;
 
     private AlertsService alertsService;
 
+    private PropertiesService properties;
+
     private ExecutorService executor;
 
     public void setAlertsService(AlertsService alertsService) {
         this.alertsService = alertsService;
     }
 
+    public void setProperties(PropertiesService properties) {
+        this.properties = properties;
+    }
+
     public void setExecutor(ExecutorService executor) {
         this.executor = executor;
     }
 
+    public void init() {
+        if (properties != null) {
+            updateDelay = Long.parseLong(properties.getProperty(RULES_UPDATE_DELAY, RULES_UPDATE_DELAY_ENV,
+                    RULES_UPDATE_DELAY_DEFAULT));
+            if (Boolean.parseBoolean(properties.getProperty(NATIVE_AGGREGATION, NATIVE_AGGREGATION_ENV,
+                    NATIVE_AGGREGATION_DEFAULT))) {
+                nativeAggregation = new NativeAggregation(this, System::currentTimeMillis);
+                updateTimer.schedule(new TimerTask() {
+                    @Override
+                    public void run() {
+                        try {
+                            nativeAggregation.advance();
+                        } catch (Exception e) {
+                            log.error("Error advancing native aggregations.", e);
+                        }
+                    }
+                }, NATIVE_AGGREGATION_TICK, NATIVE_AGGREGATION_TICK);
+            }
+        }
+    }
+
     public void processEvents(TreeSet<Event> events) {
-        if (kieSession != null) {
+        if (nativeAggregation != null) {
+            nativeAggregation.processEvents(events);
+        }
+        CepRules current = rules;
+        if (current != null) {
+            KieSession kieSession = current.getSession();
             events.stream().forEach(e -> kieSession.insert(e));
         }
     }
@@ -93,18 +154,101 @@ public class CepEngineImpl implements CepEngine {
         });
     }
 
+    /*
+        Updates are debounced: the last active triggers received are applied once updateDelay has passed since the
+        first change, so a burst of trigger changes costs a single update of the session.
+     */
     public void updateConditions(String expiration, Collection<FullTrigger> activeTriggers) {
-        expression = new Expression(expiration, activeTriggers);
-        log.debugf("Rules: \n  %s", expression);
-        stop();
-        KieBaseConfiguration kieBaseConfiguration = KnowledgeBaseFactory.newKnowledgeBaseConfiguration();
-        kieBaseConfiguration.setOption( EventProcessingOption.STREAM );
-        KieBase kieBase = new KieHelper().addContent(expression.getDrl(), ResourceType.DRL).build(kieBaseConfiguration);
+        synchronized (pendingLock) {
+            pendingExpiration = expiration;
+            pendingTriggers = activeTriggers == null ? new ArrayList<>() : new ArrayList<>(activeTriggers);
+            if (pendingUpdate || stopped) {
+                return;
+            }
+            pendingUpdate = true;
+            updateTimer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    applyUpdate();
+                }
+            }, updateDelay);
+        }
+    }
+
+    private synchronized void applyUpdate() {
+        String expiration;
+        List<FullTrigger> activeTriggers;
+        synchronized (pendingLock) {
+            if (!pendingUpdate) {
+                return;
+            }
+            expiration = pendingExpiration;
+            activeTriggers = pendingTriggers;
+            pendingUpdate = false;
+            pendingTriggers = null;
+        }
+        try {
+            if (nativeAggregation != null) {
+                activeTriggers = splitNative(activeTriggers);
+            }
+            if (activeTriggers.isEmpty()) {
+                stopSession();
+                return;
+            }
+            if (rules == null || !Objects.equals(rules.getExpiration(), expiration)) {
+                stopSession();
+                startSession(expiration);
+            }
+            long start = System.currentTimeMillis();
+            int changes = rules.update(activeTriggers);
+            log.debugf("Updated CEP rules of [%s] triggers in [%s] ms, [%s] triggers loaded", changes,
+                    System.currentTimeMillis() - start, rules.getPackages().size());
+        } catch (Exception e) {
+            log.error("Error updating CEP rules.", e);
+        }
+    }
+
+    /*
+        Loads the supported conditions into the native aggregations and returns the triggers with the conditions
+        left for the CEP session
+     */
+    private List<FullTrigger> splitNative(List<FullTrigger> activeTriggers) {
+        List<FullTrigger> nativeTriggers = new ArrayList<>();
+        List<FullTrigger> cepTriggers = new ArrayList<>();
+        for (FullTrigger fullTrigger : activeTriggers) {
+            List<Condition> nativeConditions = new ArrayList<>();
+            List<Condition> cepConditions = new ArrayList<>();
+            boolean cepExternal = false;
+            for (Condition condition : fullTrigger.getConditions()) {
+                if (!(condition instanceof ExternalCondition)) {
+                    cepConditions.add(condition);
+                } else if (NativeAggregation.supports((ExternalCondition) condition)) {
+                    nativeConditions.add(condition);
+                } else {
+                    cepConditions.add(condition);
+                    cepExternal = true;
+                }
+            }
+            if (!nativeConditions.isEmpty()) {
+                nativeTriggers.add(new FullTrigger(fullTrigger.getTrigger(), fullTrigger.getDampenings(),
+                        nativeConditions));
+            }
+            if (cepExternal) {
+                cepTriggers.add(new FullTrigger(fullTrigger.getTrigger(), fullTrigger.getDampenings(),
+                        cepConditions));
+            }
+        }
+        int loaded = nativeAggregation.update(nativeTriggers);
+        log.debugf("[%s] conditions evaluated by native aggregations", loaded);
+        return cepTriggers;
+    }
+
+    private void startSession(String expiration) {
         KieSessionConfiguration kieSessionConf = KnowledgeBaseFactory.newKnowledgeSessionConfiguration();
         kieSessionConf.setOption( ClockTypeOption.get( "realtime" ) );
 
-        kieSession = kieBase.newKieSession(kieSessionConf, null);
-        results = new ArrayList<>();
+        CepRules newRules = new CepRules(expiration, kieSessionConf);
+        KieSession kieSession = newRules.getSession();
         kieSession.setGlobal("results", this);
         kieSession.setGlobal("log", log);
         if (log.isDebugEnabled()) {
@@ -113,26 +257,44 @@ public class CepEngineImpl implements CepEngine {
         }
         log.debugf("Clock time [%s] ", kieSession.getSessionClock().getCurrentTime());
 
-        kieSession.getKieBase().getKiePackages().stream().forEach(p -> log.debugf("Rules: %s", p.getRules()));
-
-        executor.submit(() -> {
+        /*
+            fireUntilHalt() blocks until the session is halted, so it runs on its own thread instead of taking a
+            thread of the extensions executor
+         */
+        Thread cepThread = new Thread(() -> {
             log.info("Starting fireUntilHalt()");
             kieSession.fireUntilHalt();
             log.info("Stopping fireUntilHalt()");
-        });
+        }, CEP_THREAD_NAME);
+        cepThread.setDaemon(true);
+        cepThread.start();
+        rules = newRules;
     }
 
-    @Override
-    public void stop() {
-        if (kieSession != null) {
-            kieSession.halt();
-            kieSession.dispose();
-            kieSession.destroy();
-            kieSession = null;
+    private void stopSession() {
+        CepRules current = rules;
+        if (current != null) {
+            rules = null;
+            current.getSession().halt();
+            current.dispose();
             log.info("Sent halt() signal to CEP session");
         }
     }
 
+    @Override
+    public synchronized void stop() {
+        synchronized (pendingLock) {
+            stopped = true;
+            pendingUpdate = false;
+            pendingTriggers = null;
+            updateTimer.cancel();
+        }
+        if (nativeAggregation != null) {
+            nativeAggregation.update(null);
+        }
+        stopSession();
+    }
+
     public static class CepAgendaEventListener implements AgendaEventListener {
         private final MsgLogger log = MsgLogging.getMsgLogger(CepAgendaEventListener.class);
 
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.extensions;
+
+import static org.hawkular.alerts.api.util.Util.isEmpty;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.hawkular.alerts.api.model.trigger.FullTrigger;
+import org.hawkular.alerts.api.model.trigger.TriggerKey;
+import org.hawkular.commons.log.MsgLogger;
+import org.hawkular.commons.log.MsgLogging;
+import org.kie.api.KieBaseConfiguration;
+import org.kie.api.conf.EventProcessingOption;
+import org.kie.api.io.ResourceType;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.KieSessionConfiguration;
+import org.kie.api.runtime.rule.FactHandle;
+import org.kie.internal.KnowledgeBase;
+import org.kie.internal.KnowledgeBaseFactory;
+import org.kie.internal.builder.KnowledgeBuilder;
+import org.kie.internal.builder.KnowledgeBuilderFactory;
+import org.kie.internal.io.ResourceFactory;
+
+/**
+ * The rules of a CEP session, compiled in one package per trigger.
+ *
+ * The KieBase starts with a base package holding the globals and the Event declaration.  On each update only the
+ * packages of the new, changed or removed triggers are added or removed from the live KieBase, so the session keeps
+ * the sliding windows of the unchanged triggers and only the changed expressions are compiled.
+ */
+public class CepRules {
+    private final MsgLogger log = MsgLogging.getMsgLogger(CepRules.class);
+
+    private static final String BASE_PACKAGE = Expression.DEFAULT_PACKAGE;
+    private static final String TRIGGER_PACKAGE = Expression.DEFAULT_PACKAGE + ".trigger";
+
+    private final String expiration;
+    private final KnowledgeBase kieBase;
+    private final KieSession kieSession;
+
+    private final Map<TriggerKey, TriggerPackage> packages = new HashMap<>();
+    private int packageCount = 0;
+
+    /**
+     * @param expiration expiration of the events in the session
+     * @param kieSessionConf configuration of the session, i.e. its clock
+     */
+    public CepRules(String expiration, KieSessionConfiguration kieSessionConf) {
+        this.expiration = expiration;
+        KieBaseConfiguration kieBaseConfiguration = KnowledgeBaseFactory.newKnowledgeBaseConfiguration();
+        kieBaseConfiguration.setOption(EventProcessingOption.STREAM);
+        kieBase = KnowledgeBaseFactory.newKnowledgeBase(kieBaseConfiguration);
+        addPackage(Expression.baseDrl(BASE_PACKAGE, expiration));
+        kieSession = kieBase.newKieSession(kieSessionConf, null);
+    }
+
+    public String getExpiration() {
+        return expiration;
+    }
+
+    public KieSession getSession() {
+        return kieSession;
+    }
+
+    /**
+     * @return the packages of the loaded triggers
+     */
+    public Map<TriggerKey, String> getPackages() {
+        Map<TriggerKey, String> names = new HashMap<>();
+        packages.forEach((key, pkg) -> names.put(key, pkg.name));
+        return Collections.unmodifiableMap(names);
+    }
+
+    /**
+     * Load the rules of the active triggers, adding and removing only the packages of the triggers that changed.
+     * A trigger with an invalid expression is logged and left out of the session.
+     *
+     * @param activeTriggers the triggers that should be loaded in the session
+     * @return the number of triggers whose rules were added, replaced or removed
+     */
+    public synchronized int update(Collection<FullTrigger> activeTriggers) {
+        Map<TriggerKey, FullTrigger> active = new HashMap<>();
+        if (!isEmpty(activeTriggers)) {
+            activeTriggers.forEach(t -> active.put(new TriggerKey(t.getTrigger().getTenantId(),
+                    t.getTrigger().getId()), t));
+        }
+        int changes = 0;
+        for (Iterator<Map.Entry<TriggerKey, TriggerPackage>> it = packages.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<TriggerKey, TriggerPackage> loaded = it.next();
+            if (!active.containsKey(loaded.getKey())) {
+                removePackage(loaded.getValue().name);
+                it.remove();
+                changes++;
+            }
+        }
+        for (Map.Entry<TriggerKey, FullTrigger> entry : active.entrySet()) {
+            TriggerPackage loaded = packages.get(entry.getKey());
+            String drl;
+            try {
+                /*
+                    The DRL is generated with the loaded package name, so an unchanged trigger generates the same DRL
+                 */
+                String packageName = loaded != null ? loaded.name : TRIGGER_PACKAGE + (++packageCount);
+                drl = new Expression(packageName, expiration, Collections.singletonList(entry.getValue())).getDrl();
+                if (loaded != null && loaded.drl.equals(drl)) {
+                    continue;
+                }
+                if (loaded != null) {
+                    removePackage(loaded.name);
+                    packages.remove(entry.getKey());
+                    packageName = TRIGGER_PACKAGE + (++packageCount);
+                    drl = new Expression(packageName, expiration, Collections.singletonList(entry.getValue()))
+                            .getDrl();
+                }
+                addPackage(drl);
+                packages.put(entry.getKey(), new TriggerPackage(packageName, drl));
+                changes++;
+            } catch (Exception e) {
+                log.errorf("Failed to load CEP rules for trigger %s: %s", entry.getKey(), e.getMessage());
+                if (loaded != null && packages.containsKey(entry.getKey())) {
+                    removePackage(loaded.name);
+                    packages.remove(entry.getKey());
+                    changes++;
+                }
+            }
+        }
+        return changes;
+    }
+
+    public void dispose() {
+        kieSession.dispose();
+        kieSession.destroy();
+    }
+
+    private void addPackage(String drl) {
+        KnowledgeBuilder builder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+        builder.add(ResourceFactory.newByteArrayResource(drl.getBytes(StandardCharsets.UTF_8)), ResourceType.DRL);
+        if (builder.hasErrors()) {
+            throw new IllegalArgumentException(builder.getErrors().toString());
+        }
+        kieBase.addKnowledgePackages(builder.getKnowledgePackages());
+    }
+
+    /*
+        The group facts inserted by the rules of the package are instances of types declared on it, they are deleted
+        before the package is removed to not keep orphan facts in the session.
+     */
+    private void removePackage(String packageName) {
+        String prefix = packageName + ".";
+        Collection<FactHandle> handles = kieSession.getFactHandles(o -> o.getClass().getName().startsWith(prefix));
+        for (FactHandle handle : new ArrayList<>(handles)) {
+            kieSession.delete(handle);
+        }
+        kieBase.removeKiePackage(packageName);
+    }
+
+    private static class TriggerPackage {
+        private final String name;
+        private final String drl;
+
+        TriggerPackage(String name, String drl) {
+            this.name = name;
+            this.drl = drl;
+        }
+    }
+}
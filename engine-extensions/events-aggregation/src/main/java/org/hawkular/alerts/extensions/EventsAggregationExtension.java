@@ -194,11 +194,8 @@ public class EventsAggregationExtension implements EventExtension {
             } catch (Exception e) {
                 log.error("Failed to fetch Triggers for external conditions.", e);
             }
-            if (activeTriggers.isEmpty()) {
-                cep.stop();
-            } else {
-                cep.updateConditions(defaultExpiration, activeTriggers.values());
-            }
+            // an empty collection stops the CEP session
+            cep.updateConditions(defaultExpiration, activeTriggers.values());
         });
     }
 
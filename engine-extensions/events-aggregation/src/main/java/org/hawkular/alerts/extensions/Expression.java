@@ -49,8 +49,10 @@ import org.hawkular.alerts.api.model.trigger.Trigger;
  */
 public class Expression {
 
-    private static final String DRL_HEADER = "  package org.hawkular.alerts.extension \n" +
-            "  import org.hawkular.alerts.api.model.event.Event; \n" +
+    public static final String DEFAULT_PACKAGE = "org.hawkular.alerts.extension";
+
+    private static final String DRL_PACKAGE = "  package ";
+    private static final String DRL_HEADER = "  import org.hawkular.alerts.api.model.event.Event; \n" +
             "  import org.hawkular.alerts.api.json.JsonUtil; \n" +
             "  import org.hawkular.alerts.extensions.CepEngine; \n" +
             "  import org.kie.api.time.SessionClock; \n" +
@@ -121,18 +123,19 @@ public class Expression {
     }
 
     public Expression(String expiration, Collection<FullTrigger> activeTriggers) {
-        if (isEmpty(expiration)) {
-            expiration = DEFAULT_EXPIRATION;
-        }
+        this(DEFAULT_PACKAGE, expiration, activeTriggers);
+    }
+
+    /**
+     * @param packageName package of the generated rules
+     * @param expiration expiration of the events in the CEP session, 30m by default
+     * @param activeTriggers triggers with the ExternalConditions to translate into rules
+     */
+    public Expression(String packageName, String expiration, Collection<FullTrigger> activeTriggers) {
         if (isEmpty(activeTriggers)) {
             throw new IllegalArgumentException("ActiveTriggers must be not empty");
         }
-        drl = DRL_HEADER + "\n";
-        drl += "  declare Event \n" +
-               "    @role( event ) \n" +
-               "    @expires( " + expiration + " ) \n" +
-               "    @timestamp( ctime ) \n" +
-               "  end \n\n";
+        drl = baseDrl(packageName, expiration);
         activeTriggers.stream().forEach(fullTrigger -> {
             fullTrigger.getConditions().forEach(condition -> {
                 if (condition instanceof ExternalCondition) {
@@ -370,6 +373,27 @@ public class Expression {
         return drl;
     }
 
+    /**
+     * @param packageName package of the DRL
+     * @param expiration expiration of the events in the CEP session, 30m by default
+     * @return the globals and the Event declaration shared by all the rules of the CEP session, without any rule
+     */
+    public static String baseDrl(String packageName, String expiration) {
+        if (isEmpty(packageName)) {
+            throw new IllegalArgumentException("PackageName must be not empty");
+        }
+        if (isEmpty(expiration)) {
+            expiration = DEFAULT_EXPIRATION;
+        }
+        return DRL_PACKAGE + packageName + " \n" +
+                DRL_HEADER + "\n" +
+                "  declare Event \n" +
+                "    @role( event ) \n" +
+                "    @expires( " + expiration + " ) \n" +
+                "    @timestamp( ctime ) \n" +
+                "  end \n\n";
+    }
+
     private String processCountContext(String str) {
         int start = str.indexOf(TOKEN_COUNT_CONTEXT);
         int end = str.indexOf(' ', start);
@@ -0,0 +1,378 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.extensions;
+
+import static org.hawkular.alerts.api.util.Util.isEmpty;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.hawkular.alerts.api.model.condition.Condition;
+import org.hawkular.alerts.api.model.condition.ExternalCondition;
+import org.hawkular.alerts.api.model.event.Event;
+import org.hawkular.alerts.api.model.trigger.FullTrigger;
+import org.hawkular.alerts.api.model.trigger.Trigger;
+
+/**
+ * Streaming evaluation of the expressions that only count events per group on a time window, i.e.
+ *
+ *  event:groupBy(context.accountId):window(time,10s):having(count > 2)
+ *
+ * Instead of keeping every event of the window as a fact of the CEP session, each group keeps a ring of counters of
+ * time buckets, so an event is added in O(1) and the memory does not depend on the event rate.  The window is
+ * divided in at most {@link #MAX_BUCKETS} buckets, so an event leaves the window up to one bucket before the exact
+ * window length.
+ *
+ * The results follow the CEP rules: a result event is sent each time the count of a group changes, by a new event or
+ * by events leaving the window, and the having constraints hold.  The results carry the group value and the count on
+ * their context, but not the list of events of the window.  Expressions with a filter, a length window, no window, or
+ * having constraints other than count comparisons are not supported and must be evaluated by the CEP rules.
+ */
+public class NativeAggregation {
+
+    public static final String CONTEXT_COUNT = "count";
+
+    private static final String CONTEXT_PROCESSED = "processed";
+    private static final int MAX_BUCKETS = 60;
+    private static final long MIN_BUCKET = 1000;
+
+    private static final Pattern GROUP_BY = Pattern.compile("groupBy\\(\\s*(tags\\.|context\\.)?(\\w+)\\s*\\)");
+    private static final Pattern WINDOW = Pattern.compile("window\\(\\s*time\\s*,\\s*([0-9dhms]+)\\s*\\)");
+    private static final Pattern TIME = Pattern.compile("(?:(\\d+)d)?(?:(\\d+)h)?(?:(\\d+)m(?!s))?(?:(\\d+)s)?" +
+            "(?:(\\d+)(?:ms)?)?");
+    private static final Pattern HAVING = Pattern.compile("having\\((.*)\\)");
+    private static final Pattern COUNT = Pattern.compile("count\\s*(>=|<=|==|!=|>|<)\\s*(\\d+)");
+
+    private final CepEngine results;
+    private final LongSupplier clock;
+
+    private final Map<String, Aggregation> aggregations = new HashMap<>();
+    private final Map<String, List<Aggregation>> bySource = new HashMap<>();
+
+    /**
+     * @param results where the result events are sent
+     * @param clock current time in milliseconds
+     */
+    public NativeAggregation(CepEngine results, LongSupplier clock) {
+        this.results = results;
+        this.clock = clock;
+    }
+
+    /**
+     * @param condition an ExternalCondition of the EventsAggregation extension
+     * @return true if the expression of the condition can be evaluated by this class
+     */
+    public static boolean supports(ExternalCondition condition) {
+        return parse(condition.getExpression()) != null;
+    }
+
+    /**
+     * Load the aggregations of the supported conditions of the active triggers.  The counters of the conditions that
+     * did not change are kept.
+     *
+     * @param activeTriggers triggers with supported ExternalConditions
+     * @return the number of aggregations loaded
+     */
+    public synchronized int update(Collection<FullTrigger> activeTriggers) {
+        Map<String, Aggregation> updated = new HashMap<>();
+        if (!isEmpty(activeTriggers)) {
+            for (FullTrigger fullTrigger : activeTriggers) {
+                for (Condition condition : fullTrigger.getConditions()) {
+                    if (!(condition instanceof ExternalCondition)) {
+                        continue;
+                    }
+                    Aggregation aggregation = newAggregation(fullTrigger.getTrigger(), (ExternalCondition) condition);
+                    if (aggregation == null) {
+                        continue;
+                    }
+                    Aggregation loaded = aggregations.get(aggregation.key);
+                    updated.put(aggregation.key, loaded != null ? loaded : aggregation);
+                }
+            }
+        }
+        aggregations.clear();
+        aggregations.putAll(updated);
+        bySource.clear();
+        aggregations.values().forEach(a -> bySource.computeIfAbsent(a.sourceKey, k -> new ArrayList<>()).add(a));
+        return aggregations.size();
+    }
+
+    public synchronized int size() {
+        return aggregations.size();
+    }
+
+    /**
+     * @param events events to add to the windows of their aggregations
+     */
+    public synchronized void processEvents(Collection<Event> events) {
+        if (aggregations.isEmpty() || isEmpty(events)) {
+            return;
+        }
+        long now = clock.getAsLong();
+        for (Event event : events) {
+            List<Aggregation> matching = bySource.get(sourceKey(event.getTenantId(), event.getDataSource(),
+                    event.getDataId()));
+            if (matching != null) {
+                for (Aggregation aggregation : matching) {
+                    aggregation.add(event, now);
+                }
+            }
+        }
+    }
+
+    /**
+     * Move the windows to the current time, sending results for the groups whose count changed.
+     */
+    public synchronized void advance() {
+        long now = clock.getAsLong();
+        aggregations.values().forEach(a -> a.advance(now));
+    }
+
+    private Aggregation newAggregation(Trigger trigger, ExternalCondition condition) {
+        Parsed parsed = parse(condition.getExpression());
+        if (parsed == null) {
+            return null;
+        }
+        return new Aggregation(trigger, condition, parsed);
+    }
+
+    private static String sourceKey(String tenantId, String dataSource, String dataId) {
+        return tenantId + "|" + dataSource + "|" + dataId;
+    }
+
+    /*
+        Returns null if the expression is not supported
+     */
+    static Parsed parse(String expression) {
+        if (isEmpty(expression)) {
+            return null;
+        }
+        String[] section = expression.split(":");
+        if (section.length != 4 || !section[0].equals("event")) {
+            return null;
+        }
+        Parsed parsed = new Parsed();
+        for (int i = 1; i < section.length; i++) {
+            Matcher matcher;
+            if ((matcher = GROUP_BY.matcher(section[i].trim())).matches() && parsed.field == null) {
+                parsed.prefix = matcher.group(1);
+                parsed.field = matcher.group(2);
+                if (parsed.prefix == null && !parsed.field.equals("category") && !parsed.field.equals("text")) {
+                    return null;
+                }
+            } else if ((matcher = WINDOW.matcher(section[i].trim())).matches() && parsed.window == 0) {
+                parsed.window = parseTime(matcher.group(1));
+                if (parsed.window <= 0) {
+                    return null;
+                }
+            } else if ((matcher = HAVING.matcher(section[i].trim())).matches() && parsed.having == null) {
+                parsed.having = new ArrayList<>();
+                for (String constraint : matcher.group(1).split(",")) {
+                    Matcher count = COUNT.matcher(constraint.trim());
+                    if (!count.matches()) {
+                        return null;
+                    }
+                    parsed.having.add(new Constraint(count.group(1), Long.parseLong(count.group(2))));
+                }
+            } else {
+                return null;
+            }
+        }
+        return parsed.field != null && parsed.window > 0 && parsed.having != null ? parsed : null;
+    }
+
+    private static long parseTime(String time) {
+        Matcher matcher = TIME.matcher(time);
+        if (!matcher.matches()) {
+            return -1;
+        }
+        long[] units = {24 * 3600 * 1000L, 3600 * 1000L, 60 * 1000L, 1000L, 1L};
+        long millis = 0;
+        for (int i = 0; i < units.length; i++) {
+            if (matcher.group(i + 1) != null) {
+                millis += Long.parseLong(matcher.group(i + 1)) * units[i];
+            }
+        }
+        return millis;
+    }
+
+    static class Parsed {
+        String prefix;
+        String field;
+        long window;
+        List<Constraint> having;
+    }
+
+    static class Constraint {
+        private final String operator;
+        private final long value;
+
+        Constraint(String operator, long value) {
+            this.operator = operator;
+            this.value = value;
+        }
+
+        boolean matches(long count) {
+            switch (operator) {
+                case ">":
+                    return count > value;
+                case ">=":
+                    return count >= value;
+                case "<":
+                    return count < value;
+                case "<=":
+                    return count <= value;
+                case "==":
+                    return count == value;
+                default:
+                    return count != value;
+            }
+        }
+    }
+
+    private class Aggregation {
+        private final String key;
+        private final String sourceKey;
+        private final String tenantId;
+        private final String dataId;
+        private final String alerterId;
+        private final String expression;
+        private final String prefix;
+        private final String field;
+        private final List<Constraint> having;
+        private final long bucket;
+        private final int numBuckets;
+        private final Map<String, Counter> groups = new HashMap<>();
+
+        Aggregation(Trigger trigger, ExternalCondition condition, Parsed parsed) {
+            this.tenantId = trigger.getTenantId();
+            this.dataId = condition.getDataId();
+            this.alerterId = condition.getAlerterId();
+            this.expression = condition.getExpression();
+            this.prefix = parsed.prefix;
+            this.field = parsed.field;
+            this.having = parsed.having;
+            this.bucket = Math.max(MIN_BUCKET, (parsed.window + MAX_BUCKETS - 1) / MAX_BUCKETS);
+            this.numBuckets = (int) Math.max(1, (parsed.window + bucket - 1) / bucket);
+            this.sourceKey = sourceKey(tenantId, trigger.getSource(), dataId);
+            this.key = sourceKey + "|" + trigger.getId() + "|" + condition.getConditionId() + "|" + expression;
+        }
+
+        void add(Event event, long now) {
+            String group = groupOf(event);
+            if (group == null) {
+                return;
+            }
+            long current = now / bucket;
+            long eventBucket = Math.min(event.getCtime() / bucket, current);
+            if (eventBucket <= current - numBuckets) {
+                return;
+            }
+            Counter counter = groups.computeIfAbsent(group, g -> new Counter(numBuckets));
+            counter.expire(current);
+            counter.add(eventBucket);
+            evaluate(group, counter);
+        }
+
+        void advance(long now) {
+            long current = now / bucket;
+            for (Iterator<Map.Entry<String, Counter>> it = groups.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<String, Counter> entry = it.next();
+                Counter counter = entry.getValue();
+                long before = counter.total;
+                counter.expire(current);
+                if (counter.total == 0) {
+                    it.remove();
+                } else if (counter.total != before) {
+                    evaluate(entry.getKey(), counter);
+                }
+            }
+        }
+
+        private void evaluate(String group, Counter counter) {
+            for (Constraint constraint : having) {
+                if (!constraint.matches(counter.total)) {
+                    return;
+                }
+            }
+            Event result = new Event(tenantId, UUID.randomUUID().toString(), dataId, alerterId,
+                    expression.replaceAll("\"", "'"));
+            result.addContext(CONTEXT_PROCESSED, "true");
+            result.addContext(field, group);
+            result.addContext(CONTEXT_COUNT, String.valueOf(counter.total));
+            results.sendResult(result);
+        }
+
+        private String groupOf(Event event) {
+            if ("tags.".equals(prefix)) {
+                return event.getTags() == null ? null : event.getTags().get(field);
+            }
+            if ("context.".equals(prefix)) {
+                return event.getContext() == null ? null : event.getContext().get(field);
+            }
+            return "category".equals(field) ? event.getCategory() : event.getText();
+        }
+    }
+
+    /*
+        Ring of counters indexed by bucket, total is the sum of the counters of the buckets on the window
+     */
+    private static class Counter {
+        private final long[] counts;
+        private final long[] buckets;
+        private long total;
+        private long expired = Long.MIN_VALUE;
+
+        Counter(int numBuckets) {
+            counts = new long[numBuckets];
+            buckets = new long[numBuckets];
+        }
+
+        void add(long bucket) {
+            int i = (int) (bucket % counts.length);
+            if (buckets[i] != bucket) {
+                total -= counts[i];
+                counts[i] = 0;
+                buckets[i] = bucket;
+            }
+            counts[i]++;
+            total++;
+        }
+
+        void expire(long current) {
+            if (current == expired) {
+                return;
+            }
+            expired = current;
+            long oldest = current - counts.length;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0 && buckets[i] <= oldest) {
+                    total -= counts[i];
+                    counts[i] = 0;
+                }
+            }
+        }
+    }
+}
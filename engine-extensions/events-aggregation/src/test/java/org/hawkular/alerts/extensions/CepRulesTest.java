@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.extensions;
+
+import static org.hawkular.alerts.api.model.trigger.Mode.FIRING;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.drools.core.time.impl.PseudoClockScheduler;
+import org.hawkular.alerts.api.model.condition.ExternalCondition;
+import org.hawkular.alerts.api.model.event.Event;
+import org.hawkular.alerts.api.model.trigger.FullTrigger;
+import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.hawkular.alerts.api.model.trigger.TriggerKey;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.KieSessionConfiguration;
+import org.kie.api.runtime.conf.ClockTypeOption;
+import org.kie.internal.KnowledgeBaseFactory;
+
+public class CepRulesTest {
+
+    public static final String TEST_TENANT = "28026b36-8fe4-4332-84c8-524e173a68bf";
+    public static final String DATA_ID = "data-id";
+    public static final String OTHER_DATA_ID = "other-data-id";
+    public static final String ALERTER_ID = "EventsAggregation";
+
+    CepRules rules;
+    KieSession kieSession;
+    List<Event> results;
+    PseudoClockScheduler clock;
+
+    @Before
+    public void before() {
+        KieSessionConfiguration kieSessionConf = KnowledgeBaseFactory.newKnowledgeSessionConfiguration();
+        kieSessionConf.setOption( ClockTypeOption.get( "pseudo" ) );
+        rules = new CepRules("30m", kieSessionConf);
+        kieSession = rules.getSession();
+        clock = kieSession.getSessionClock();
+        results = new ArrayList<>();
+        kieSession.setGlobal("clock", clock);
+        kieSession.setGlobal("results", new CepEngine() {
+            @Override
+            public void sendResult(Event event) {
+                results.add(event);
+            }
+
+            @Override
+            public void updateConditions(String expiration, Collection<FullTrigger> activeTriggers) { }
+
+            @Override
+            public void processEvents(TreeSet<Event> events) { }
+
+            @Override
+            public void stop() { }
+        });
+    }
+
+    @After
+    public void after() {
+        rules.dispose();
+    }
+
+    private FullTrigger trigger(String triggerId, String dataId, String expression) {
+        Trigger trigger = new Trigger(TEST_TENANT, triggerId, triggerId);
+        ExternalCondition condition = new ExternalCondition(triggerId, FIRING, dataId, ALERTER_ID, expression);
+        return new FullTrigger(trigger, null, Arrays.asList(condition));
+    }
+
+    private void insert(String dataId, String accountId) {
+        long now = clock.advanceTime(1000, TimeUnit.MILLISECONDS);
+        Event event = new Event(TEST_TENANT, UUID.randomUUID().toString(), now, dataId, "TraceCompletion", "Buy");
+        event.addContext("accountId", accountId);
+        kieSession.insert(event);
+        kieSession.fireAllRules();
+    }
+
+    @Test
+    public void unchangedTriggersKeepTheirWindows() {
+        clock.setStartupTime(1);
+        FullTrigger t1 = trigger("trigger-1", DATA_ID,
+                "event:groupBy(context.accountId):window(time,10s):having(count > 2)");
+        FullTrigger t2 = trigger("trigger-2", OTHER_DATA_ID,
+                "event:groupBy(context.accountId):window(time,10s):having(count > 0)");
+        TriggerKey k1 = new TriggerKey(TEST_TENANT, "trigger-1");
+        TriggerKey k2 = new TriggerKey(TEST_TENANT, "trigger-2");
+
+        Assert.assertEquals(1, rules.update(Arrays.asList(t1)));
+        String t1Package = rules.getPackages().get(k1);
+
+        insert(DATA_ID, "user1");
+        insert(DATA_ID, "user1");
+        Assert.assertEquals(0, results.size());
+
+        // adding a trigger does not touch the rules of trigger-1
+        Assert.assertEquals(1, rules.update(Arrays.asList(t1, t2)));
+        Assert.assertEquals(t1Package, rules.getPackages().get(k1));
+        Assert.assertEquals(0, rules.update(Arrays.asList(t1, t2)));
+
+        // the third event is counted with the two received before the update
+        insert(DATA_ID, "user1");
+        Assert.assertEquals(1, results.size());
+        Assert.assertEquals("user1", results.get(0).getContext().get("accountId"));
+        Assert.assertEquals(DATA_ID, results.get(0).getDataId());
+
+        insert(OTHER_DATA_ID, "user2");
+        Assert.assertEquals(2, results.size());
+        Assert.assertEquals(OTHER_DATA_ID, results.get(1).getDataId());
+
+        // a changed trigger is recompiled in a new package
+        FullTrigger t1Changed = trigger("trigger-1", DATA_ID,
+                "event:groupBy(context.accountId):window(time,10s):having(count > 5)");
+        Assert.assertEquals(1, rules.update(Arrays.asList(t1Changed, t2)));
+        Assert.assertNotEquals(t1Package, rules.getPackages().get(k1));
+
+        // a removed trigger does not fire anymore
+        Assert.assertEquals(1, rules.update(Arrays.asList(t2)));
+        Assert.assertEquals(Collections.singleton(k2), rules.getPackages().keySet());
+        results.clear();
+        for (int i = 0; i < 6; i++) {
+            insert(DATA_ID, "user1");
+        }
+        Assert.assertEquals(0, results.size());
+    }
+
+    @Test
+    public void invalidExpressionsAreSkipped() {
+        FullTrigger t1 = trigger("trigger-1", DATA_ID,
+                "event:groupBy(context.accountId):window(time,10s):having(count > 2)");
+        FullTrigger invalid = trigger("trigger-invalid", DATA_ID, "event:window(time,10s)");
+
+        Assert.assertEquals(1, rules.update(Arrays.asList(t1, invalid)));
+        Assert.assertEquals(Collections.singleton(new TriggerKey(TEST_TENANT, "trigger-1")),
+                rules.getPackages().keySet());
+
+        Assert.assertEquals(1, rules.update(Collections.emptyList()));
+        Assert.assertTrue(rules.getPackages().isEmpty());
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.extensions;
+
+import static org.hawkular.alerts.api.model.trigger.Mode.FIRING;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import org.hawkular.alerts.api.model.condition.ExternalCondition;
+import org.hawkular.alerts.api.model.event.Event;
+import org.hawkular.alerts.api.model.trigger.FullTrigger;
+import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NativeAggregationTest {
+
+    public static final String TEST_TENANT = "28026b36-8fe4-4332-84c8-524e173a68bf";
+    public static final String DATA_ID = "data-id";
+    public static final String ALERTER_ID = "EventsAggregation";
+
+    NativeAggregation aggregation;
+    List<Event> results;
+    long now;
+
+    @Before
+    public void before() {
+        results = new ArrayList<>();
+        now = 1;
+        aggregation = new NativeAggregation(new CepEngine() {
+            @Override
+            public void sendResult(Event event) {
+                results.add(event);
+            }
+
+            @Override
+            public void updateConditions(String expiration, Collection<FullTrigger> activeTriggers) { }
+
+            @Override
+            public void processEvents(TreeSet<Event> events) { }
+
+            @Override
+            public void stop() { }
+        }, () -> now);
+    }
+
+    private FullTrigger trigger(String triggerId, String expression) {
+        Trigger trigger = new Trigger(TEST_TENANT, triggerId, triggerId);
+        ExternalCondition condition = new ExternalCondition(triggerId, FIRING, DATA_ID, ALERTER_ID, expression);
+        return new FullTrigger(trigger, null, Arrays.asList(condition));
+    }
+
+    private void insert(long time, String accountId) {
+        now = time;
+        Event event = new Event(TEST_TENANT, UUID.randomUUID().toString(), time, DATA_ID, "TraceCompletion", "Buy");
+        event.addContext("accountId", accountId);
+        aggregation.processEvents(Collections.singletonList(event));
+    }
+
+    private ExternalCondition condition(String expression) {
+        return new ExternalCondition("trigger", FIRING, DATA_ID, ALERTER_ID, expression);
+    }
+
+    @Test
+    public void supportedExpressions() {
+        Assert.assertTrue(NativeAggregation.supports(
+                condition("event:groupBy(context.accountId):window(time,10s):having(count > 2)")));
+        Assert.assertTrue(NativeAggregation.supports(
+                condition("event:groupBy(tags.accountId):window(time,1h30m):having(count >= 2, count < 10)")));
+        Assert.assertTrue(NativeAggregation.supports(
+                condition("event:groupBy(category):window(time,500ms):having(count == 1)")));
+
+        Assert.assertFalse(NativeAggregation.supports(
+                condition("event:groupBy(context.accountId):window(length,10):having(count > 2)")));
+        Assert.assertFalse(NativeAggregation.supports(
+                condition("event:groupBy(context.accountId):having(count > 2)")));
+        Assert.assertFalse(NativeAggregation.supports(
+                condition("event:groupBy(context.accountId):window(time,10s):having(count.tags.location > 1)")));
+        Assert.assertFalse(NativeAggregation.supports(
+                condition("event:groupBy(context.accountId):window(time,10s):filter(category == \"Credit\"):" +
+                        "having(count > 2)")));
+    }
+
+    @Test
+    public void marketingScenario() {
+        FullTrigger marketing = trigger("marketing",
+                "event:groupBy(context.accountId):window(time,10s):having(count > 2)");
+        Assert.assertEquals(1, aggregation.update(Arrays.asList(marketing)));
+
+        insert(1, "user1");
+        insert(1001, "user1");
+        insert(2001, "user2");
+        Assert.assertEquals(0, results.size());
+
+        insert(3001, "user1");
+        insert(4001, "user1");
+        Assert.assertEquals(2, results.size());
+        Assert.assertEquals("user1", results.get(0).getContext().get("accountId"));
+        Assert.assertEquals("3", results.get(0).getContext().get(NativeAggregation.CONTEXT_COUNT));
+        Assert.assertEquals("4", results.get(1).getContext().get(NativeAggregation.CONTEXT_COUNT));
+        Assert.assertEquals(DATA_ID, results.get(0).getDataId());
+
+        // the first event leaves the window, the count changes but it holds the having constraint
+        now = 10500;
+        aggregation.advance();
+        Assert.assertEquals(3, results.size());
+        Assert.assertEquals("3", results.get(2).getContext().get(NativeAggregation.CONTEXT_COUNT));
+
+        // the window is empty, the groups are released
+        now = 30001;
+        aggregation.advance();
+        Assert.assertEquals(3, results.size());
+        insert(30002, "user1");
+        Assert.assertEquals(3, results.size());
+    }
+
+    @Test
+    public void unchangedConditionsKeepTheirCounters() {
+        FullTrigger t1 = trigger("trigger-1", "event:groupBy(context.accountId):window(time,10s):having(count > 2)");
+        FullTrigger t2 = trigger("trigger-2", "event:groupBy(context.accountId):window(time,10s):having(count > 0)");
+        Assert.assertEquals(1, aggregation.update(Arrays.asList(t1)));
+
+        insert(1, "user1");
+        insert(1001, "user1");
+        Assert.assertEquals(2, aggregation.update(Arrays.asList(t1, t2)));
+
+        insert(2001, "user1");
+        Assert.assertEquals(2, results.size());
+
+        Assert.assertEquals(0, aggregation.update(null));
+        insert(3001, "user1");
+        Assert.assertEquals(2, results.size());
+    }
+}
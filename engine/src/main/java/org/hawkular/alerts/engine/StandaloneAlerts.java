@@ -17,8 +17,6 @@
 package org.hawkular.alerts.engine;
 
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
 
 import org.hawkular.alerts.api.services.ActionsService;
 import org.hawkular.alerts.api.services.AlertsService;
@@ -39,6 +37,8 @@ import org.hawkular.alerts.engine.impl.StatusServiceImpl;
 import org.hawkular.alerts.engine.impl.ispn.IspnActionsServiceImpl;
 import org.hawkular.alerts.engine.impl.ispn.IspnAlertsServiceImpl;
 import org.hawkular.alerts.engine.impl.ispn.IspnDefinitionsServiceImpl;
+import org.hawkular.alerts.engine.util.AlertsExecutors;
+import org.hawkular.alerts.engine.util.AlertsExecutors.Pool;
 import org.hawkular.alerts.extensions.CepEngineImpl;
 import org.hawkular.alerts.extensions.EventsAggregationExtension;
 import org.hawkular.alerts.filter.CacheClient;
@@ -59,13 +59,11 @@ public class StandaloneAlerts {
     private static final String ISPN_BACKEND_REINDEX = "hawkular-alerts.backend-reindex";
     private static final String ISPN_BACKEND_REINDEX_DEFAULT = "false";
     private static StandaloneAlerts instance;
-    private static ExecutorService executor;
+    private static AlertsExecutors executors;
     private static boolean ispnReindex;
 
     private boolean distributed;
 
-    private AlertsThreadFactory threadFactory;
-
     private ActionsCacheManager actionsCacheManager;
     private AlertsContext alertsContext;
     private AlertsEngineImpl engine;
@@ -89,9 +87,8 @@ public class StandaloneAlerts {
         distributed = IspnCacheManager.isDistributed();
         cacheManager = IspnCacheManager.getCacheManager();
 
-        threadFactory = new AlertsThreadFactory();
-        if (executor == null) {
-            executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), threadFactory);
+        if (executors == null) {
+            executors = new AlertsExecutors();
         }
 
         dataIdCache = new CacheClient();
@@ -154,7 +151,8 @@ public class StandaloneAlerts {
         engine.setActions(ispnActions);
         engine.setAlertsService(ispnAlerts);
         engine.setDefinitions(ispnDefinitions);
-        engine.setExecutor(executor);
+        engine.setEngineStateCache(cacheManager.getCache("engineState"));
+        engine.setExecutor(executors.get(Pool.RULES));
         engine.setExtensionsService(extensions);
         engine.setPartitionManager(partitionManager);
         engine.setRules(rules);
@@ -163,10 +161,11 @@ public class StandaloneAlerts {
         incoming.setDataDrivenGroupCacheManager(dataDrivenGroupCacheManager);
         incoming.setDataIdCache(dataIdCache);
         incoming.setDefinitionsService(ispnDefinitions);
-        incoming.setExecutor(executor);
+        incoming.setExecutor(executors.get(Pool.INGESTION));
         incoming.setPartitionManager(partitionManager);
 
         partitionManager.setDefinitionsService(ispnDefinitions);
+        partitionManager.setPublishCacheManager(publishCacheManager);
 
         actionsCacheManager.setDefinitions(ispnDefinitions);
         actionsCacheManager.setGlobalActionsCache(cacheManager.getCache("globalActions"));
@@ -177,15 +176,18 @@ public class StandaloneAlerts {
         publishCacheManager.setPublishDataIdsCache(cacheManager.getCache("dataIds"));
 
         status.setPartitionManager(partitionManager);
+        status.setIncomingDataManager(incoming);
+        status.setExecutors(executors);
 
         cepEngineImpl.setAlertsService(ispnAlerts);
-        cepEngineImpl.setExecutor(executor);
+        cepEngineImpl.setExecutor(executors.get(Pool.EXTENSIONS));
+        cepEngineImpl.setProperties(properties);
 
         eventsAggregationExtension.setCep(cepEngineImpl);
         eventsAggregationExtension.setDefinitions(ispnDefinitions);
         eventsAggregationExtension.setExtensions(extensions);
         eventsAggregationExtension.setProperties(properties);
-        eventsAggregationExtension.setExecutor(executor);
+        eventsAggregationExtension.setExecutor(executors.get(Pool.EXTENSIONS));
 
         // Initialization needs order
 
@@ -193,13 +195,15 @@ public class StandaloneAlerts {
         ispnDefinitions.init();
         ispnActions.init();
 
+        // The affinity partition uses the dataIds of the triggers published by the PublishCacheManager
+        publishCacheManager.init();
         partitionManager.init();
         alertsContext.init();
         dataDrivenGroupCacheManager.init();
         actionsCacheManager.init();
-        publishCacheManager.init();
         extensions.init();
         engine.initServices();
+        cepEngineImpl.init();
         eventsAggregationExtension.init();
     }
 
@@ -207,12 +211,15 @@ public class StandaloneAlerts {
         instance = new StandaloneAlerts();
     }
 
-    public static ExecutorService getExecutor() {
-        return executor;
-    }
-
-    public static void setExecutor(ExecutorService executor) {
-        StandaloneAlerts.executor = executor;
+    /**
+     * @param pool the subsystem that will use the executor
+     * @return the dedicated executor of the subsystem
+     */
+    public static synchronized ExecutorService getExecutor(Pool pool) {
+        if (executors == null) {
+            executors = new AlertsExecutors();
+        }
+        return executors.get(pool);
     }
 
     public static void start() {
@@ -222,10 +229,15 @@ public class StandaloneAlerts {
     public static void stop() {
         if (instance != null) {
             instance.engine.shutdown();
+            instance.cepEngineImpl.stop();
             instance.partitionManager.shutdown();
             IspnCacheManager.stop();
             instance = null;
         }
+        if (executors != null) {
+            executors.shutdown();
+            executors = null;
+        }
     }
 
     public static DefinitionsService getDefinitionsService() {
@@ -255,13 +267,4 @@ public class StandaloneAlerts {
         }
         return instance.status;
     }
-
-    public class AlertsThreadFactory implements ThreadFactory {
-        private int count = 0;
-
-        @Override
-        public Thread newThread(Runnable r) {
-            return new Thread(r, "HawkularAlerts-" + (++count));
-        }
-    }
 }
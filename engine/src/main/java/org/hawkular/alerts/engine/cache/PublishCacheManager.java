@@ -22,7 +22,9 @@ import static org.hawkular.alerts.api.util.Util.isEmpty;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.hawkular.alerts.api.model.condition.CompareCondition;
@@ -67,6 +69,8 @@ public class PublishCacheManager {
     // This cache is used by CacheClient to check which dataIds are published and forwarded from metrics.
     private Cache<CacheKey, Set<String>> publishCache;
 
+    private boolean publishFiltering;
+
     public void setProperties(PropertiesService properties) {
         this.properties = properties;
     }
@@ -83,11 +87,19 @@ public class PublishCacheManager {
         this.publishCache = publishCache;
     }
 
+    /**
+     * @return true if the dataIds of the triggers are maintained in the publish caches, it is known after init()
+     */
+    public boolean isPublishFiltering() {
+        return publishFiltering;
+    }
+
     public void init() {
         boolean disablePublish = Boolean.parseBoolean(properties.getProperty(DISABLE_PUBLISH_FILTERING_PROP,
                 DISABLE_PUBLISH_FILTERING_ENV, "false"));
         boolean resetCache = Boolean.parseBoolean(properties.getProperty(RESET_PUBLISH_CACHE_PROP,
                 RESET_PUBLISH_CACHE_ENV, "true"));
+        publishFiltering = !disablePublish;
         if (!disablePublish) {
             if (resetCache) {
                 log.warnClearPublishCache();
@@ -139,6 +151,40 @@ public class PublishCacheManager {
         }
     }
 
+    /**
+     * @return a copy of the dataIds used by each trigger, empty if the publish filtering is disabled
+     */
+    public Map<TriggerKey, Set<String>> getTriggerDataIds() {
+        if (publishDataIdsCache == null) {
+            return Collections.emptyMap();
+        }
+        return new HashMap<>(publishDataIdsCache);
+    }
+
+    /**
+     * @param tenantId the tenant of the trigger
+     * @param triggerId the trigger
+     * @return the dataIds used by the trigger, empty if unknown
+     */
+    public Set<String> getDataIds(String tenantId, String triggerId) {
+        if (publishDataIdsCache == null) {
+            return Collections.emptySet();
+        }
+        return publishDataIdsCache.getOrDefault(new TriggerKey(tenantId, triggerId), Collections.emptySet());
+    }
+
+    /**
+     * @param tenantId the tenant of the dataId
+     * @param dataId the dataId
+     * @return the triggerIds using the dataId, empty if unknown
+     */
+    public Set<String> getTriggerIds(String tenantId, String dataId) {
+        if (publishCache == null) {
+            return Collections.emptySet();
+        }
+        return publishCache.getOrDefault(new CacheKey(tenantId, dataId), Collections.emptySet());
+    }
+
     private void removePublishCache(String tenantId, String triggerId, Set<String> dataIds) {
         if (!isEmpty(dataIds)) {
             dataIds.stream().forEach(dataId -> {
@@ -16,8 +16,11 @@
  */
 package org.hawkular.alerts.engine.impl;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Auxiliary cache for AlertsEngine implementation.
@@ -45,8 +48,8 @@ public class AlertsEngineCache {
     private Set<DataId> activeDataIds;
 
     public AlertsEngineCache() {
-        activeDataEntries = new HashSet<>();
-        activeDataIds = new HashSet<>();
+        activeDataEntries = ConcurrentHashMap.newKeySet();
+        activeDataIds = ConcurrentHashMap.newKeySet();
     }
 
     /**
@@ -114,6 +117,17 @@ public class AlertsEngineCache {
         activeDataIds.removeAll(dataIdToRemove);
     }
 
+    /**
+     * @return a map of tenantId with the dataIds active on this node
+     */
+    public Map<String, Set<String>> getActiveDataIds() {
+        Map<String, Set<String>> dataIds = new HashMap<>();
+        activeDataIds.stream().forEach(d -> {
+            dataIds.computeIfAbsent(d.getTenantId(), tenantId -> new HashSet<>()).add(d.getDataId());
+        });
+        return dataIds;
+    }
+
     /**
      * Clear all cache entries.
      */
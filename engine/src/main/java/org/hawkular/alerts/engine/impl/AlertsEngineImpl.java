@@ -19,17 +19,21 @@ package org.hawkular.alerts.engine.impl;
 import static org.hawkular.alerts.api.util.Util.isEmpty;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 
 import org.hawkular.alerts.api.model.condition.CompareCondition;
@@ -37,11 +41,13 @@ import org.hawkular.alerts.api.model.condition.Condition;
 import org.hawkular.alerts.api.model.condition.ConditionEval;
 import org.hawkular.alerts.api.model.condition.MissingCondition;
 import org.hawkular.alerts.api.model.condition.MissingConditionEval;
+import org.hawkular.alerts.api.model.condition.NelsonCondition;
 import org.hawkular.alerts.api.model.dampening.Dampening;
 import org.hawkular.alerts.api.model.data.Data;
 import org.hawkular.alerts.api.model.event.Alert;
 import org.hawkular.alerts.api.model.event.Event;
 import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.hawkular.alerts.api.model.trigger.TriggerKey;
 import org.hawkular.alerts.api.services.ActionsService;
 import org.hawkular.alerts.api.services.AlertsService;
 import org.hawkular.alerts.api.services.DataExtension;
@@ -55,10 +61,14 @@ import org.hawkular.alerts.engine.service.PartitionManager;
 import org.hawkular.alerts.engine.service.PartitionManager.Operation;
 import org.hawkular.alerts.engine.service.PartitionTriggerListener;
 import org.hawkular.alerts.engine.service.RulesEngine;
+import org.hawkular.alerts.engine.util.CompareData;
 import org.hawkular.alerts.engine.util.MissingState;
+import org.hawkular.alerts.engine.util.NelsonData;
+import org.hawkular.alerts.engine.util.RateData;
 import org.hawkular.alerts.log.AlertingLogger;
 import org.hawkular.commons.log.MsgLogging;
 import org.hawkular.commons.properties.HawkularProperties;
+import org.infinispan.Cache;
 
 /**
  * Implementation for {@link org.hawkular.alerts.api.services.AlertsService}.
@@ -84,15 +94,62 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
      */
     private static final String ENGINE_PERIOD = "hawkular-alerts.engine-period";
 
+    /*
+        ENGINE_STATE enables the checkpoint of the rules engine evaluation state (dampening progress, trigger mode,
+        missing states and rate/compare data) used to resume triggers after a restart or a partition change.
+     */
+    private static final String ENGINE_STATE = "hawkular-alerts.engine-state";
+    private static final String ENGINE_STATE_ENV = "ENGINE_STATE";
+    private static final String ENGINE_STATE_DEFAULT = "true";
+
+    /*
+        ENGINE_STATE_PERIOD defined in milliseconds
+     */
+    private static final String ENGINE_STATE_PERIOD = "hawkular-alerts.engine-state-period";
+    private static final String ENGINE_STATE_PERIOD_ENV = "ENGINE_STATE_PERIOD";
+    private static final String ENGINE_STATE_PERIOD_DEFAULT = "60000";
+
+    /*
+        Triggers moved to this node by a partition change are loaded PARTITION_MIGRATION_BATCH at a time every
+        PARTITION_MIGRATION_PAUSE ms, so the triggers already on the node keep being evaluated during a rebalance.
+        A moved trigger is loaded once its previous owner has handed off its state, or after
+        PARTITION_MIGRATION_TIMEOUT ms if the previous owner left the cluster.
+     */
+    private static final String PARTITION_MIGRATION_BATCH = "hawkular-alerts.partition-migration-batch";
+    private static final String PARTITION_MIGRATION_BATCH_ENV = "PARTITION_MIGRATION_BATCH";
+    private static final String PARTITION_MIGRATION_BATCH_DEFAULT = "100";
+    private static final String PARTITION_MIGRATION_PAUSE = "hawkular-alerts.partition-migration-pause";
+    private static final String PARTITION_MIGRATION_PAUSE_ENV = "PARTITION_MIGRATION_PAUSE";
+    private static final String PARTITION_MIGRATION_PAUSE_DEFAULT = "500";
+    private static final String PARTITION_MIGRATION_TIMEOUT = "hawkular-alerts.partition-migration-timeout";
+    private static final String PARTITION_MIGRATION_TIMEOUT_ENV = "PARTITION_MIGRATION_TIMEOUT";
+    private static final String PARTITION_MIGRATION_TIMEOUT_DEFAULT = "5000";
+
     private int delay;
     private int period;
+    private boolean engineStateEnabled;
+    private long engineStatePeriod;
+    private long lastCheckpoint;
+    private int migrationBatch;
+    private long migrationPause;
+    private long migrationTimeout;
+
+    /*
+        Triggers moved to this node waiting to be loaded, with the time they were moved. A MigrationTask is scheduled
+        while it is not empty
+     */
+    private final Map<TriggerKey, Long> pendingMigration = new LinkedHashMap<>();
+    private boolean migrationScheduled = false;
+    private boolean migrationStopped = false;
 
     private TreeSet<Data> pendingData;
     private TreeSet<Event> pendingEvents;
+    private volatile int evaluating;
 
     private final List<Alert> alerts;
     private final List<Event> events;
     private final Set<Dampening> pendingTimeouts;
+    private final Queue<Dampening> resumedTimeouts;
     private final Map<Trigger, List<Set<ConditionEval>>> autoResolvedTriggers;
     private final Set<Trigger> disabledTriggers;
     private final Set<MissingState> missingStates;
@@ -108,6 +165,17 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
     private AlertsEngineCache alertsEngineCache = null;
     boolean distributed = false;
 
+    /*
+        Set when the active dataIds of this node change. They are published to the PartitionManager as soon as a
+        trigger operation or a batch of loaded triggers completes, and on the next rules invocation, so other nodes
+        only route to this node the data it uses.
+     */
+    private volatile boolean dataIdsChanged = false;
+
+    private final AlertsEngineState engineState = new AlertsEngineState();
+
+    private final GroupTemplates groupTemplates = new GroupTemplates();
+
     private static final String ENGINE_EXTENSIONS = "hawkular-alerts.engine-extensions";
     private static final String ENGINE_EXTENSIONS_ENV = "ENGINE_EXTENSIONS";
     private static final String ENGINE_EXTENSIONS_DEFAULT = "true";
@@ -133,6 +201,7 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
         alerts = new ArrayList<>();
         events = new ArrayList<>();
         pendingTimeouts = new HashSet<>();
+        resumedTimeouts = new ConcurrentLinkedQueue<>();
         autoResolvedTriggers = new HashMap<>();
         disabledTriggers = new HashSet<>();
         missingStates = new HashSet<>();
@@ -143,6 +212,16 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
         period = new Integer(HawkularProperties.getProperty(ENGINE_PERIOD, "2000"));
         engineExtensions = Boolean.parseBoolean(HawkularProperties.getProperty(ENGINE_EXTENSIONS, ENGINE_EXTENSIONS_ENV,
                 ENGINE_EXTENSIONS_DEFAULT));
+        engineStateEnabled = Boolean.parseBoolean(HawkularProperties.getProperty(ENGINE_STATE, ENGINE_STATE_ENV,
+                ENGINE_STATE_DEFAULT));
+        engineStatePeriod = Long.parseLong(HawkularProperties.getProperty(ENGINE_STATE_PERIOD, ENGINE_STATE_PERIOD_ENV,
+                ENGINE_STATE_PERIOD_DEFAULT));
+        migrationBatch = Integer.parseInt(HawkularProperties.getProperty(PARTITION_MIGRATION_BATCH,
+                PARTITION_MIGRATION_BATCH_ENV, PARTITION_MIGRATION_BATCH_DEFAULT));
+        migrationPause = Long.parseLong(HawkularProperties.getProperty(PARTITION_MIGRATION_PAUSE,
+                PARTITION_MIGRATION_PAUSE_ENV, PARTITION_MIGRATION_PAUSE_DEFAULT));
+        migrationTimeout = Long.parseLong(HawkularProperties.getProperty(PARTITION_MIGRATION_TIMEOUT,
+                PARTITION_MIGRATION_TIMEOUT_ENV, PARTITION_MIGRATION_TIMEOUT_DEFAULT));
     }
 
     public RulesEngine getRules() {
@@ -177,6 +256,12 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
         this.executor = executor;
     }
 
+    public void setEngineStateCache(Cache<String, byte[]> engineStateCache) {
+        if (engineStateEnabled) {
+            engineState.setStateCache(engineStateCache);
+        }
+    }
+
     public void initServices() {
         try {
             distributed = partitionManager.isDistributed();
@@ -189,10 +274,10 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
             executor.submit(() -> {
                 /*
                     A reload() operation means that all triggers from the backend should be reloaded into
-                    the AlertsEngine memory. In a distributed environment, the node that execute the reload()
-                    operation loads the triggers assigned to it and notify other nodes to load rest of the triggers.
+                    the AlertsEngine memory. In a distributed environment, a starting node only loads the triggers
+                    assigned to it, the other nodes keep their triggers.
                  */
-                reload();
+                reload(true);
             });
         } catch (Throwable t) {
             if (log.isDebugEnabled()) {
@@ -203,8 +288,12 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
     }
 
     public void shutdown() {
+        synchronized (pendingMigration) {
+            migrationStopped = true;
+        }
         rulesTask.cancel();
         wakeUpTimer.cancel();
+        checkpointState(true);
     }
 
     @Override
@@ -218,9 +307,11 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
         alerts.clear();
         events.clear();
         pendingTimeouts.clear();
+        resumedTimeouts.clear();
         autoResolvedTriggers.clear();
         disabledTriggers.clear();
         missingStates.clear();
+        engineState.clear();
 
         rulesTask = new RulesInvoker();
         wakeUpTimer.schedule(rulesTask, delay, period);
@@ -228,10 +319,21 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
 
     @Override
     public void reload() {
+        reload(false);
+    }
+
+    /*
+        With localPartition a distributed node loads the triggers assigned to it on the current partition, instead of
+        notifying every trigger to the cluster. If the partition is not yet initialized all triggers are notified.
+     */
+    private void reload(boolean localPartition) {
         log.debug("Start a full reload of the AlertsEngine");
+        // Keep the current evaluation state, triggers resume it when they are loaded again
+        checkpointState(true);
         rules.reset();
         if (distributed) {
             alertsEngineCache.clear();
+            dataIdsChanged = true;
         }
         if (rulesTask != null) {
             rulesTask.cancel();
@@ -245,20 +347,43 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
             log.errorDefinitionsService("Triggers", e.getMessage());
         }
 
+        Set<TriggerKey> localTriggers = null;
+        Map<String, List<String>> partition = distributed && localPartition ? partitionManager.getLocalPartition()
+                : null;
+        if (partition != null) {
+            localTriggers = new HashSet<>();
+            for (Entry<String, List<String>> entry : partition.entrySet()) {
+                for (String triggerId : entry.getValue()) {
+                    localTriggers.add(new TriggerKey(entry.getKey(), triggerId));
+                }
+            }
+        }
+
         if (!isEmpty(triggers)) {
 
-            triggers.stream().filter(Trigger::isLoadable).forEach(t -> {
-                /*
-                    In distributed scenario a reload should delegate into the PartitionManager to load the trigger on
-                    the node which belongs
-                 */
-                if (distributed) {
-                    partitionManager.notifyTrigger(Operation.UPDATE, t.getTenantId(), t.getId());
-                } else {
-                    reloadTrigger(t);
-                }
-            });
+            groupTemplates.startBulkLoad();
+            try {
+                final Set<TriggerKey> local = localTriggers;
+                triggers.stream().filter(Trigger::isLoadable).forEach(t -> {
+                    /*
+                        In distributed scenario a reload should delegate into the PartitionManager to load the trigger
+                        on the node which belongs
+                     */
+                    if (local != null) {
+                        if (local.contains(new TriggerKey(t.getTenantId(), t.getId()))) {
+                            reloadTrigger(t);
+                        }
+                    } else if (distributed) {
+                        partitionManager.notifyTrigger(Operation.UPDATE, t.getTenantId(), t.getId());
+                    } else {
+                        reloadTrigger(t);
+                    }
+                });
+            } finally {
+                groupTemplates.endBulkLoad();
+            }
         }
+        publishDataIds();
 
         rules.addGlobal("log", log);
         rules.addGlobal("actions", actions);
@@ -320,6 +445,7 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
             }
             Trigger doomedTrigger = new Trigger(tenantId, triggerId, "doomed");
             removeTrigger(doomedTrigger);
+            engineState.remove(tenantId, triggerId);
             return;
         }
 
@@ -353,21 +479,35 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
 
         // Look for the Trigger in the rules engine, if it is there then remove everything about it
         // Note that removeTrigger relies only on tenatId+triggerId.
-        removeTrigger(trigger);
+        // A trigger not yet loaded on this node resumes the evaluation state from the last checkpoint.
+        boolean resume = !removeTrigger(trigger);
+        final String tenantId = trigger.getTenantId();
+        final String triggerId = trigger.getId();
 
         try {
             if (distributed) {
                 trigger = definitions.getTrigger(trigger.getTenantId(), trigger.getId());
             }
+            if (trigger == null || !trigger.isLoadable()) {
+                engineState.remove(tenantId, triggerId);
+            }
             if (trigger != null && trigger.isLoadable()) {
-                Collection<Condition> conditionSet = definitions.getTriggerConditions(trigger.getTenantId(),
-                        trigger.getId(), null);
-                Collection<Dampening> dampenings = definitions.getTriggerDampenings(trigger.getTenantId(),
-                        trigger.getId(), null);
+                Collection<Condition> conditionSet;
+                Collection<Dampening> dampenings;
+                // On bulk loads members are built from their group template instead of fetched one by one
+                GroupTemplates.Template template = groupTemplates.getTemplate(definitions, trigger);
+                if (null != template) {
+                    conditionSet = template.getMemberConditions(trigger);
+                    dampenings = template.getMemberDampenings(trigger);
+                } else {
+                    conditionSet = definitions.getTriggerConditions(trigger.getTenantId(), trigger.getId(), null);
+                    dampenings = definitions.getTriggerDampenings(trigger.getTenantId(), trigger.getId(), null);
+                }
 
                 /*
                     Cache dataId from conditions, Handle MissingCondition's MissingState
                  */
+                List<MissingState> triggerMissingStates = new ArrayList<>();
                 for (Condition c : conditionSet) {
                     if (distributed) {
                         DataEntry entry = new DataEntry(c.getTenantId(), c.getTriggerId(), c.getDataId());
@@ -377,16 +517,24 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
                             DataEntry entry2 = new DataEntry(c.getTenantId(), c.getTriggerId(), data2Id);
                             alertsEngineCache.add(entry2);
                         }
+                        dataIdsChanged = true;
                     }
                     if (c instanceof MissingCondition) {
                         // MissingState keeps a reference to the Trigger fact to check active trigger mode
-                        MissingState missingState = new MissingState(trigger, (MissingCondition) c);
-                        // MissingStates are modified inside the rules engine
-                        synchronized (missingStates) {
-                            missingStates.remove(missingState);
-                            missingStates.add(missingState);
-                            rules.addFact(missingState);
-                        }
+                        triggerMissingStates.add(new MissingState(trigger, (MissingCondition) c));
+                    }
+                }
+
+                if (resume && engineState.isEnabled()) {
+                    resumeState(trigger, conditionSet, dampenings, triggerMissingStates);
+                }
+
+                // MissingStates are modified inside the rules engine
+                synchronized (missingStates) {
+                    for (MissingState missingState : triggerMissingStates) {
+                        missingStates.remove(missingState);
+                        missingStates.add(missingState);
+                        rules.addFact(missingState);
                     }
                 }
 
@@ -432,15 +580,20 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
             partitionManager.notifyTrigger(Operation.REMOVE, triggerToRemove.getTenantId(), triggerToRemove.getId());
         } else {
             removeTrigger(triggerToRemove);
+            engineState.remove(tenantId, triggerId);
         }
     }
 
-    private void removeTrigger(Trigger trigger) {
+    /*
+        Returns true if the trigger was loaded in the rules engine.
+     */
+    private boolean removeTrigger(Trigger trigger) {
         final String tenantId = trigger.getTenantId();
         final String triggerId = trigger.getId();
 
         // If necessary, clean up working memory
-        if (null != rules.getFact(trigger)) {
+        boolean loaded = null != rules.getFact(trigger);
+        if (loaded) {
             // Remove the Trigger fact
             rules.removeFact(trigger);
 
@@ -465,6 +618,7 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
         // Remove dataId associated from cache
         if (distributed) {
             alertsEngineCache.remove(trigger.getTenantId(), trigger.getId());
+            dataIdsChanged = true;
         }
         // Remove any MissingState being managed for the trigger
         synchronized (missingStates) {
@@ -477,6 +631,141 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
                 }
             }
         }
+        return loaded;
+    }
+
+    private void resumeState(Trigger trigger, Collection<Condition> conditionSet, Collection<Dampening> dampenings,
+            Collection<MissingState> triggerMissingStates) {
+        try {
+            List<NelsonData> nelsonData = new ArrayList<>();
+            for (Condition c : conditionSet) {
+                if (Condition.Type.NELSON == c.getType()) {
+                    nelsonData.add(new NelsonData((NelsonCondition) c));
+                }
+            }
+            if (engineState.restore(trigger, dampenings, triggerMissingStates, nelsonData)) {
+                log.debugf("Resumed evaluation state of %s", trigger);
+                for (NelsonData nd : nelsonData) {
+                    // otherwise the rules provide a new NelsonData for the condition
+                    String conditionId = nd.getCondition().getConditionId();
+                    if (!nd.isEmpty() && rules.getFacts(f -> f instanceof NelsonData
+                            && ((NelsonData) f).getCondition().getConditionId().equals(conditionId)).isEmpty()) {
+                        rules.addFact(nd);
+                    }
+                }
+                for (Dampening d : dampenings) {
+                    // pendingTimeouts is only handled from the rules timer thread
+                    if (d.getType() == Dampening.Type.STRICT_TIMEOUT && d.getNumTrueEvals() > 0) {
+                        resumedTimeouts.add(d);
+                    }
+                }
+            }
+            String source = trigger.getSource();
+            for (Condition c : conditionSet) {
+                if (Condition.Type.RATE == c.getType()) {
+                    String dataId = c.getDataId();
+                    if (rules.getFacts(f -> f instanceof RateData && isData(((RateData) f).getData(),
+                            c.getTenantId(), source, dataId)).isEmpty()) {
+                        RateData rateData = engineState.getRateData(c.getTenantId(), source, dataId);
+                        if (rateData != null) {
+                            rules.addFact(rateData);
+                        }
+                    }
+                } else if (Condition.Type.COMPARE == c.getType()) {
+                    for (String dataId : Arrays.asList(c.getDataId(), ((CompareCondition) c).getData2Id())) {
+                        if (rules.getFacts(f -> f instanceof CompareData && isData(((CompareData) f).getData(),
+                                c.getTenantId(), source, dataId)).isEmpty()) {
+                            CompareData compareData = engineState.getCompareData(c.getTenantId(), source, dataId);
+                            if (compareData != null) {
+                                rules.addFact(compareData);
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.errorf(e, "Failed to resume evaluation state of %s", trigger);
+        }
+    }
+
+    private static boolean isData(Data data, String tenantId, String source, String dataId) {
+        return data != null && tenantId.equals(data.getTenantId()) && dataId.equals(data.getId())
+                && (source == null ? data.getSource() == null : source.equals(data.getSource()));
+    }
+
+    private static boolean isData(Data data, String tenantId, String source, Set<String> dataIds) {
+        return data != null && dataIds.contains(data.getId()) && isData(data, tenantId, source, data.getId());
+    }
+
+    private static boolean isTriggerFact(Object fact, String tenantId, String triggerId) {
+        if (fact instanceof Trigger) {
+            return ((Trigger) fact).getTenantId().equals(tenantId) && ((Trigger) fact).getId().equals(triggerId);
+        } else if (fact instanceof Dampening) {
+            return ((Dampening) fact).getTenantId().equals(tenantId)
+                    && ((Dampening) fact).getTriggerId().equals(triggerId);
+        } else if (fact instanceof MissingState) {
+            return ((MissingState) fact).getTenantId().equals(tenantId)
+                    && ((MissingState) fact).getTriggerId().equals(triggerId);
+        } else if (fact instanceof NelsonData) {
+            return ((NelsonData) fact).getCondition().getTenantId().equals(tenantId)
+                    && ((NelsonData) fact).getCondition().getTriggerId().equals(triggerId);
+        }
+        return false;
+    }
+
+    /*
+        Checkpoints run on the rules timer thread, between engine firings, unless forced on reload or shutdown.
+     */
+    private void checkpointState(boolean force) {
+        if (!engineState.isEnabled()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (!force && (now - lastCheckpoint) < engineStatePeriod) {
+            return;
+        }
+        lastCheckpoint = now;
+        try {
+            engineState.checkpoint(rules.getFacts(f -> f instanceof Trigger || f instanceof Dampening
+                    || f instanceof MissingState || f instanceof NelsonData || f instanceof RateData
+                    || f instanceof CompareData), true);
+        } catch (Exception e) {
+            log.errorf(e, "Failed to checkpoint engine state: %s", e.getMessage());
+        }
+    }
+
+    /*
+        Store the latest state of a trigger moving to another node, so the new owner resumes it. The write is
+        synchronous, the new owner waits for the handoff mark before loading the trigger.
+     */
+    private void handoffState(String tenantId, String triggerId) {
+        if (!engineState.isEnabled()) {
+            return;
+        }
+        try {
+            Trigger trigger = (Trigger) rules.getFact(new Trigger(tenantId, triggerId, "to-handoff"));
+            String source = trigger == null ? null : trigger.getSource();
+            Set<String> rateDataIds = new HashSet<>();
+            Set<String> compareDataIds = new HashSet<>();
+            for (Object f : rules.getFacts(f -> f instanceof Condition
+                    && ((Condition) f).getTenantId().equals(tenantId)
+                    && ((Condition) f).getTriggerId().equals(triggerId))) {
+                Condition c = (Condition) f;
+                if (Condition.Type.RATE == c.getType()) {
+                    rateDataIds.add(c.getDataId());
+                } else if (Condition.Type.COMPARE == c.getType()) {
+                    compareDataIds.add(c.getDataId());
+                    compareDataIds.add(((CompareCondition) c).getData2Id());
+                }
+            }
+            Collection<Object> facts = rules.getFacts(f -> isTriggerFact(f, tenantId, triggerId)
+                    || (f instanceof RateData && isData(((RateData) f).getData(), tenantId, source, rateDataIds))
+                    || (f instanceof CompareData
+                            && isData(((CompareData) f).getData(), tenantId, source, compareDataIds)));
+            engineState.handoff(tenantId, triggerId, facts, migrationTimeout);
+        } catch (Exception e) {
+            log.errorf(e, "Failed to hand off engine state of %s/%s", tenantId, triggerId);
+        }
     }
 
     // We allow concurrent threads to make this call in order to process distributed data in parallel. We
@@ -512,15 +801,21 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
         }
     }
 
+    /*
+        Data is routed only to the nodes using its dataId, so the incoming set is copied only when something has to
+        be discarded.
+     */
     private TreeSet<Data> filterIncomingDataForNode(TreeSet<Data> data) {
-        TreeSet<Data> filteredData = new TreeSet<>(data);
-        for (Iterator<Data> i = filteredData.iterator(); i.hasNext();) {
-            Data d = i.next();
+        TreeSet<Data> filteredData = null;
+        for (Data d : data) {
             if (!alertsEngineCache.isDataIdActive(d.getTenantId(), d.getId())) {
-                i.remove();
+                if (filteredData == null) {
+                    filteredData = new TreeSet<>(data);
+                }
+                filteredData.remove(d);
             }
         }
-        return filteredData;
+        return filteredData == null ? data : filteredData;
     }
 
     private TreeSet<Data> processDataExtensions(TreeSet<Data> data) {
@@ -567,14 +862,16 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
     }
 
     private TreeSet<Event> filterIncomingEventsForNode(TreeSet<Event> events) {
-        TreeSet<Event> filteredEvents = new TreeSet<>(events);
-        for (Iterator<Event> i = filteredEvents.iterator(); i.hasNext();) {
-            Event e = i.next();
+        TreeSet<Event> filteredEvents = null;
+        for (Event e : events) {
             if (!alertsEngineCache.isDataIdActive(e.getTenantId(), e.getDataId())) {
-                i.remove();
+                if (filteredEvents == null) {
+                    filteredEvents = new TreeSet<>(events);
+                }
+                filteredEvents.remove(e);
             }
         }
-        return filteredEvents;
+        return filteredEvents == null ? events : filteredEvents;
     }
 
     private TreeSet<Event> processEventsExtensions(TreeSet<Event> events) {
@@ -587,6 +884,18 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
         return events;
     }
 
+    @Override
+    public int getPendingCount() {
+        int pending = evaluating;
+        synchronized (pendingData) {
+            pending += pendingData.size();
+        }
+        synchronized (pendingEvents) {
+            pending += pendingEvents.size();
+        }
+        return pending;
+    }
+
     private TreeSet<Data> getAndClearPendingData() {
         TreeSet<Data> result;
         synchronized (pendingData) {
@@ -619,6 +928,7 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
                 log.debugf("Executing rules engine on %s datums, %s events, %s dampening timeouts.", newData.size(),
                         newEvents.size(), numTimeouts);
 
+                evaluating = newData.size() + newEvents.size();
                 try {
                     if (newData.isEmpty() && newEvents.isEmpty()) {
                         rules.fireNoData();
@@ -656,13 +966,21 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
                     log.debugf("Error on rules processing: %s", e);
                     log.errorProcessingRules(e.getMessage());
                 } finally {
+                    evaluating = 0;
                     alerts.clear();
                     events.clear();
                 }
             }
+
+            publishDataIds();
+
+            checkpointState(false);
         }
 
         private int checkPendingTimeouts() {
+            for (Dampening d = resumedTimeouts.poll(); d != null; d = resumedTimeouts.poll()) {
+                pendingTimeouts.add(d);
+            }
             if (pendingTimeouts.isEmpty()) {
                 return 0;
             }
@@ -812,8 +1130,10 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
             case REMOVE:
                 Trigger removeTrigger = new Trigger(tenantId, triggerId, "remove-trigger");
                 removeTrigger(removeTrigger);
+                engineState.remove(tenantId, triggerId);
                 break;
         }
+        publishDataIds();
     }
 
     /*
@@ -841,24 +1161,114 @@ public class AlertsEngineImpl implements AlertsEngine, PartitionTriggerListener,
         }
 
         /*
-            Removing old triggers for this node
+            Removing old triggers for this node, their state is handed off to the new owner
          */
         for (Entry<String, List<String>> entry : removed.entrySet()) {
             String tenantId = entry.getKey();
             entry.getValue().stream().forEach(triggerId -> {
+                synchronized (pendingMigration) {
+                    pendingMigration.remove(new TriggerKey(tenantId, triggerId));
+                }
                 Trigger removeTrigger = new Trigger(tenantId, triggerId, "to-remove-from-alerts-engine");
+                handoffState(tenantId, triggerId);
                 removeTrigger(removeTrigger);
             });
         }
+        publishDataIds();
 
         /*
-            Reloading new triggers for this node
+            New triggers for this node are loaded in batches by the MigrationTask.
+            The triggers not moved by the partition change are not touched.
          */
-        for (Entry<String, List<String>> entry : added.entrySet()) {
-            String tenantId = entry.getKey();
-            entry.getValue().stream().forEach(triggerId -> {
-                reloadTrigger(tenantId, triggerId);
-            });
+        long now = System.currentTimeMillis();
+        synchronized (pendingMigration) {
+            for (Entry<String, List<String>> entry : added.entrySet()) {
+                String tenantId = entry.getKey();
+                entry.getValue().stream().forEach(triggerId -> {
+                    pendingMigration.putIfAbsent(new TriggerKey(tenantId, triggerId), now);
+                });
+            }
+            log.debugf("Pending migration of [%s] triggers", pendingMigration.size());
+            scheduleMigration();
+        }
+    }
+
+    /*
+        The partition cache is replicated synchronously, once published other nodes route the data of the triggers
+        just loaded to this node. Synchronized so a stale set of dataIds is never published after a newer one.
+     */
+    private synchronized void publishDataIds() {
+        if (distributed && dataIdsChanged) {
+            dataIdsChanged = false;
+            partitionManager.notifyDataIds(alertsEngineCache.getActiveDataIds());
+        }
+    }
+
+    private void scheduleMigration() {
+        if (!migrationStopped && !migrationScheduled && !pendingMigration.isEmpty()) {
+            migrationScheduled = true;
+            wakeUpTimer.schedule(new MigrationTask(), migrationPause);
+        }
+    }
+
+    /*
+        Loads a batch of the triggers moved to this node. It runs on the rules timer, so a batch is loaded between two
+        evaluations of the triggers already on the node. The partition already assigned these triggers to this node,
+        so they are loaded directly as a bulk load, resuming the state handed off by the previous owner.
+        A trigger waits in pendingMigration until the previous owner has handed off its state, or until
+        PARTITION_MIGRATION_TIMEOUT if no handoff comes, i.e. the previous owner left the cluster.
+        Any failure is caught, an exception thrown from a TimerTask would cancel the timer evaluating the rules.
+     */
+    private class MigrationTask extends TimerTask {
+        @Override
+        public void run() {
+            try {
+                loadBatch();
+            } catch (Throwable t) {
+                log.errorf(t, "Failed to load a batch of migrated triggers");
+            } finally {
+                synchronized (pendingMigration) {
+                    migrationScheduled = false;
+                    scheduleMigration();
+                }
+            }
+        }
+
+        private void loadBatch() {
+            List<Trigger> batch = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            synchronized (pendingMigration) {
+                Iterator<Entry<TriggerKey, Long>> it = pendingMigration.entrySet().iterator();
+                while (it.hasNext() && batch.size() < migrationBatch) {
+                    Entry<TriggerKey, Long> pending = it.next();
+                    TriggerKey key = pending.getKey();
+                    Trigger addTrigger = new Trigger(key.getTenantId(), key.getTriggerId(), "to-add-to-alerts-engine");
+                    if (null != rules.getFact(addTrigger)) {
+                        // A trigger already loaded, i.e. by the initial reload, keeps its current state
+                        it.remove();
+                    } else if (!engineState.isEnabled() || (now - pending.getValue()) >= migrationTimeout
+                            || engineState.isHandedOff(key.getTenantId(), key.getTriggerId())) {
+                        batch.add(addTrigger);
+                        it.remove();
+                    }
+                }
+            }
+            log.debugf("Loading [%s] migrated triggers", batch.size());
+            groupTemplates.startBulkLoad();
+            try {
+                for (Trigger addTrigger : batch) {
+                    try {
+                        reloadTrigger(addTrigger);
+                        engineState.acceptHandoff(addTrigger.getTenantId(), addTrigger.getId());
+                    } catch (Exception e) {
+                        log.errorf(e, "Failed to load migrated trigger %s/%s", addTrigger.getTenantId(),
+                                addTrigger.getId());
+                    }
+                }
+            } finally {
+                groupTemplates.endBulkLoad();
+            }
+            publishDataIds();
         }
     }
 }
@@ -0,0 +1,486 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.alerts.api.json.JsonUtil;
+import org.hawkular.alerts.api.model.condition.ConditionEval;
+import org.hawkular.alerts.api.model.dampening.Dampening;
+import org.hawkular.alerts.api.model.data.Data;
+import org.hawkular.alerts.api.model.trigger.Mode;
+import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.hawkular.alerts.engine.util.CompareData;
+import org.hawkular.alerts.engine.util.MissingState;
+import org.hawkular.alerts.engine.util.NelsonData;
+import org.hawkular.alerts.engine.util.RateData;
+import org.hawkular.commons.log.MsgLogger;
+import org.hawkular.commons.log.MsgLogging;
+import org.infinispan.AdvancedCache;
+import org.infinispan.Cache;
+import org.infinispan.context.Flag;
+
+/**
+ * Checkpoints the evaluation state the rules engine keeps only in working memory, so it can be resumed after a
+ * restart or when a trigger moves to a different node.
+ *
+ * The state of a trigger is its mode, the progress of its Dampening facts (counters, current and satisfying evals),
+ * the last evaluation time of its MissingStates and the baseline and rule progress of its NelsonData.  The previous
+ * datum held for rate and compare conditions is stored per dataId.  Entries are encoded in a compact binary format
+ * and a checkpoint only writes the entries that changed since the previous one.
+ */
+public class AlertsEngineState {
+    private static final MsgLogger log = MsgLogging.getMsgLogger(AlertsEngineState.class);
+
+    private static final byte VERSION_1 = 1;
+    // only the presence of a handoff entry is checked, its value is a fixed marker
+    private static final byte[] HANDOFF_MARK = new byte[] { 1 };
+
+    private static final String TRIGGER_PREFIX = "Trigger:";
+    private static final String RATE_PREFIX = "Rate:";
+    private static final String COMPARE_PREFIX = "Compare:";
+    private static final String HANDOFF_PREFIX = "Handoff:";
+
+    private Cache<String, byte[]> stateCache;
+
+    /*
+        Hash of the entries written by this node, used to skip unchanged entries and to detect stale ones.
+     */
+    private final Map<String, Integer> written = new HashMap<>();
+
+    public void setStateCache(Cache<String, byte[]> stateCache) {
+        this.stateCache = stateCache;
+    }
+
+    public boolean isEnabled() {
+        return stateCache != null;
+    }
+
+    /**
+     * Store the state represented by the engine facts.
+     *
+     * @param facts Trigger, Dampening, MissingState, NelsonData, RateData and CompareData facts from the rules engine
+     * @param full true if facts hold the whole working memory, entries written before and not present in facts
+     *             are removed; false to store only the given facts
+     * @return number of entries written
+     */
+    public synchronized int checkpoint(Collection<Object> facts, boolean full) {
+        if (stateCache == null) {
+            return 0;
+        }
+        Map<String, byte[]> entries = encode(facts);
+
+        Map<String, byte[]> changed = new HashMap<>();
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            Integer hash = Arrays.hashCode(entry.getValue());
+            if (!hash.equals(written.get(entry.getKey()))) {
+                changed.put(entry.getKey(), entry.getValue());
+                written.put(entry.getKey(), hash);
+            }
+        }
+        if (!changed.isEmpty()) {
+            stateCache.putAll(changed);
+        }
+        if (full) {
+            Iterator<String> it = written.keySet().iterator();
+            while (it.hasNext()) {
+                String key = it.next();
+                if (!entries.containsKey(key)) {
+                    stateCache.remove(key);
+                    it.remove();
+                }
+            }
+        }
+        log.debugf("Checkpoint of engine state: %s entries, %s written", entries.size(), changed.size());
+        return changed.size();
+    }
+
+    /**
+     * Store the state of a trigger moving to another node.  The entries and a handoff mark for the trigger are written
+     * synchronously, so once this returns the new owner can read them from any node.  This node forgets the
+     * entries, they are not removed by its next full checkpoint.
+     *
+     * @param tenantId the tenant of the trigger
+     * @param triggerId the trigger
+     * @param facts Trigger, Dampening, MissingState, NelsonData facts of the trigger and the RateData and CompareData
+     *              facts of its conditions
+     * @param markLifespan lifespan of the handoff mark in milliseconds
+     */
+    public synchronized void handoff(String tenantId, String triggerId, Collection<Object> facts, long markLifespan) {
+        if (stateCache == null) {
+            return;
+        }
+        Map<String, byte[]> entries = encode(facts);
+        AdvancedCache<String, byte[]> syncCache = stateCache.getAdvancedCache().withFlags(Flag.FORCE_SYNCHRONOUS);
+        if (!entries.isEmpty()) {
+            syncCache.putAll(entries);
+        }
+        syncCache.put(handoffKey(tenantId, triggerId), HANDOFF_MARK, markLifespan, TimeUnit.MILLISECONDS);
+        for (String key : entries.keySet()) {
+            written.remove(key);
+        }
+        written.remove(triggerKey(tenantId, triggerId));
+        log.debugf("Handoff of engine state of %s/%s: %s entries", tenantId, triggerId, entries.size());
+    }
+
+    /**
+     * @return true if the previous owner of the trigger has handed off its state
+     */
+    public boolean isHandedOff(String tenantId, String triggerId) {
+        return stateCache != null && stateCache.containsKey(handoffKey(tenantId, triggerId));
+    }
+
+    /**
+     * Remove the handoff mark of a trigger once the new owner has loaded it.
+     */
+    public void acceptHandoff(String tenantId, String triggerId) {
+        if (stateCache != null) {
+            stateCache.remove(handoffKey(tenantId, triggerId));
+        }
+    }
+
+    private Map<String, byte[]> encode(Collection<Object> facts) {
+        Map<String, TriggerState> triggers = new HashMap<>();
+        Map<String, byte[]> entries = new HashMap<>();
+        for (Object fact : facts) {
+            try {
+                if (fact instanceof Trigger) {
+                    Trigger t = (Trigger) fact;
+                    state(triggers, t.getTenantId(), t.getId()).mode = t.getMode();
+                } else if (fact instanceof Dampening) {
+                    Dampening d = (Dampening) fact;
+                    state(triggers, d.getTenantId(), d.getTriggerId()).dampenings.add(d);
+                } else if (fact instanceof MissingState) {
+                    MissingState ms = (MissingState) fact;
+                    state(triggers, ms.getTenantId(), ms.getTriggerId()).missingStates.add(ms);
+                } else if (fact instanceof NelsonData) {
+                    NelsonData nd = (NelsonData) fact;
+                    state(triggers, nd.getCondition().getTenantId(), nd.getCondition().getTriggerId())
+                            .nelsonData.add(nd);
+                } else if (fact instanceof RateData) {
+                    Data d = ((RateData) fact).getData();
+                    entries.put(dataKey(RATE_PREFIX, d.getTenantId(), d.getSource(), d.getId()), encodeData(d));
+                } else if (fact instanceof CompareData) {
+                    Data d = ((CompareData) fact).getData();
+                    entries.put(dataKey(COMPARE_PREFIX, d.getTenantId(), d.getSource(), d.getId()), encodeData(d));
+                }
+            } catch (Exception e) {
+                log.debugf(e, "Skipping state of %s", fact);
+            }
+        }
+        for (TriggerState state : triggers.values()) {
+            if (state.mode == null || state.isInitial()) {
+                continue;
+            }
+            try {
+                entries.put(triggerKey(state.tenantId, state.triggerId), encodeTrigger(state));
+            } catch (Exception e) {
+                log.debugf(e, "Skipping state of trigger %s/%s", state.tenantId, state.triggerId);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Apply the stored state of a trigger on the facts that are going to be loaded into the rules engine.
+     * Dampening progress is only restored if the Dampening settings did not change since the checkpoint.
+     *
+     * @param trigger the trigger fact
+     * @param dampenings the dampening facts of the trigger
+     * @param missingStates the missing states of the trigger
+     * @param nelsonData new NelsonData for the nelson conditions of the trigger
+     * @return true if a stored state was found and applied
+     */
+    public synchronized boolean restore(Trigger trigger, Collection<Dampening> dampenings,
+            Collection<MissingState> missingStates, Collection<NelsonData> nelsonData) {
+        if (stateCache == null) {
+            return false;
+        }
+        byte[] bytes = stateCache.get(triggerKey(trigger.getTenantId(), trigger.getId()));
+        if (bytes == null) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            checkVersion(in);
+            if (!trigger.getTenantId().equals(in.readUTF()) || !trigger.getId().equals(in.readUTF())) {
+                return false;
+            }
+            Mode mode = Mode.values()[in.readByte()];
+            if (mode == Mode.AUTORESOLVE && trigger.isAutoResolve()) {
+                trigger.setMode(mode);
+            }
+            int numDampenings = in.readInt();
+            for (int i = 0; i < numDampenings; i++) {
+                Dampening stored = new Dampening(trigger.getTenantId(), trigger.getId(),
+                        Mode.values()[in.readByte()], Dampening.Type.values()[in.readByte()], in.readInt(),
+                        in.readInt(), in.readLong());
+                int numTrueEvals = in.readInt();
+                int numEvals = in.readInt();
+                long trueEvalsStartTime = in.readLong();
+                List<ConditionEval> currentEvals = readEvals(in);
+                int numSets = in.readInt();
+                List<Set<ConditionEval>> satisfyingEvals = new ArrayList<>(numSets);
+                for (int j = 0; j < numSets; j++) {
+                    satisfyingEvals.add(new HashSet<>(readEvals(in)));
+                }
+                for (Dampening d : dampenings) {
+                    if (d.isSame(stored)) {
+                        d.setNumTrueEvals(numTrueEvals);
+                        d.setNumEvals(numEvals);
+                        d.setTrueEvalsStartTime(trueEvalsStartTime);
+                        d.setSatisfyingEvals(satisfyingEvals);
+                        for (ConditionEval ce : currentEvals) {
+                            d.getCurrentEvals().put(ce.getConditionSetIndex(), ce);
+                        }
+                    }
+                }
+            }
+            int numMissingStates = in.readInt();
+            for (int i = 0; i < numMissingStates; i++) {
+                String conditionId = in.readUTF();
+                long previousTime = in.readLong();
+                for (MissingState ms : missingStates) {
+                    if (ms.getCondition().getConditionId().equals(conditionId)) {
+                        ms.setPreviousTime(previousTime);
+                    }
+                }
+            }
+            int numNelsonData = in.readInt();
+            for (int i = 0; i < numNelsonData; i++) {
+                String conditionId = in.readUTF();
+                byte[] state = readBytes(in);
+                for (NelsonData nd : nelsonData) {
+                    if (nd.getCondition().getConditionId().equals(conditionId)) {
+                        nd.readState(new DataInputStream(new ByteArrayInputStream(state)));
+                    }
+                }
+            }
+            return true;
+        } catch (Exception e) {
+            log.debugf(e, "Discarding state of trigger %s/%s", trigger.getTenantId(), trigger.getId());
+            return false;
+        }
+    }
+
+    /**
+     * @return the stored previous datum for a rate condition, null if not found
+     */
+    public synchronized RateData getRateData(String tenantId, String source, String dataId) {
+        Data data = getData(dataKey(RATE_PREFIX, tenantId, source, dataId));
+        return data == null ? null : new RateData(data);
+    }
+
+    /**
+     * @return the stored datum for a compare condition, null if not found
+     */
+    public synchronized CompareData getCompareData(String tenantId, String source, String dataId) {
+        Data data = getData(dataKey(COMPARE_PREFIX, tenantId, source, dataId));
+        return data == null ? null : new CompareData(data);
+    }
+
+    /**
+     * Remove the stored state of a trigger that is deleted or disabled.
+     */
+    public synchronized void remove(String tenantId, String triggerId) {
+        if (stateCache == null) {
+            return;
+        }
+        String key = triggerKey(tenantId, triggerId);
+        stateCache.remove(key);
+        written.remove(key);
+    }
+
+    /**
+     * Remove the entries written by this node, the cache is shared with the rest of the cluster.
+     */
+    public synchronized void clear() {
+        if (stateCache == null) {
+            return;
+        }
+        for (String key : written.keySet()) {
+            stateCache.remove(key);
+        }
+        written.clear();
+    }
+
+    private Data getData(String key) {
+        if (stateCache == null) {
+            return null;
+        }
+        byte[] bytes = stateCache.get(key);
+        if (bytes == null) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            checkVersion(in);
+            return JsonUtil.getMapper().readValue(readBytes(in), Data.class);
+        } catch (Exception e) {
+            log.debugf(e, "Discarding state %s", key);
+            return null;
+        }
+    }
+
+    private static TriggerState state(Map<String, TriggerState> triggers, String tenantId, String triggerId) {
+        return triggers.computeIfAbsent(triggerKey(tenantId, triggerId), k -> new TriggerState(tenantId, triggerId));
+    }
+
+    static String triggerKey(String tenantId, String triggerId) {
+        return TRIGGER_PREFIX + tenantId + ":" + triggerId;
+    }
+
+    static String handoffKey(String tenantId, String triggerId) {
+        return HANDOFF_PREFIX + tenantId + ":" + triggerId;
+    }
+
+    static String dataKey(String prefix, String tenantId, String source, String dataId) {
+        return prefix + tenantId + ":" + source + ":" + dataId;
+    }
+
+    static byte[] encodeTrigger(TriggerState state) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION_1);
+            out.writeUTF(state.tenantId);
+            out.writeUTF(state.triggerId);
+            out.writeByte(state.mode.ordinal());
+            out.writeInt(state.dampenings.size());
+            for (Dampening d : state.dampenings) {
+                out.writeByte(d.getTriggerMode().ordinal());
+                out.writeByte(d.getType().ordinal());
+                out.writeInt(d.getEvalTrueSetting());
+                out.writeInt(d.getEvalTotalSetting());
+                out.writeLong(d.getEvalTimeSetting());
+                out.writeInt(d.getNumTrueEvals());
+                out.writeInt(d.getNumEvals());
+                out.writeLong(d.getTrueEvalsStartTime());
+                writeEvals(out, d.getCurrentEvals().values());
+                List<Set<ConditionEval>> satisfyingEvals = d.getSatisfyingEvals();
+                out.writeInt(satisfyingEvals.size());
+                for (Set<ConditionEval> evals : satisfyingEvals) {
+                    writeEvals(out, evals);
+                }
+            }
+            out.writeInt(state.missingStates.size());
+            for (MissingState ms : state.missingStates) {
+                out.writeUTF(ms.getCondition().getConditionId());
+                out.writeLong(ms.getPreviousTime());
+            }
+            out.writeInt(state.nelsonData.size());
+            for (NelsonData nd : state.nelsonData) {
+                out.writeUTF(nd.getCondition().getConditionId());
+                ByteArrayOutputStream nelsonBytes = new ByteArrayOutputStream(256);
+                try (DataOutputStream nelsonOut = new DataOutputStream(nelsonBytes)) {
+                    nd.writeState(nelsonOut);
+                }
+                writeBytes(out, nelsonBytes.toByteArray());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] encodeData(Data data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION_1);
+            writeBytes(out, JsonUtil.getMapper().writeValueAsBytes(data));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeEvals(DataOutputStream out, Collection<ConditionEval> evals) throws IOException {
+        out.writeInt(evals.size());
+        for (ConditionEval ce : evals) {
+            writeBytes(out, JsonUtil.toJson(ce).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static List<ConditionEval> readEvals(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<ConditionEval> evals = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            evals.add(JsonUtil.getMapper().readValue(readBytes(in), ConditionEval.class));
+        }
+        return evals;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] value = new byte[in.readInt()];
+        in.readFully(value);
+        return value;
+    }
+
+    private static void checkVersion(DataInputStream in) throws IOException {
+        byte version = in.readByte();
+        if (version != VERSION_1) {
+            throw new IOException("Unsupported engine state version " + version);
+        }
+    }
+
+    static class TriggerState {
+        final String tenantId;
+        final String triggerId;
+        Mode mode;
+        final List<Dampening> dampenings = new ArrayList<>();
+        final List<MissingState> missingStates = new ArrayList<>();
+        final List<NelsonData> nelsonData = new ArrayList<>();
+
+        TriggerState(String tenantId, String triggerId) {
+            this.tenantId = tenantId;
+            this.triggerId = triggerId;
+        }
+
+        /*
+            Nothing to resume for a trigger in firing mode that has not evaluated anything yet
+         */
+        boolean isInitial() {
+            if (mode != Mode.FIRING || !missingStates.isEmpty()) {
+                return false;
+            }
+            for (NelsonData nd : nelsonData) {
+                if (!nd.isEmpty()) {
+                    return false;
+                }
+            }
+            for (Dampening d : dampenings) {
+                if (d.getNumEvals() > 0 || !d.getCurrentEvals().isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -18,13 +18,19 @@ package org.hawkular.alerts.engine.impl;
 
 import static org.hawkular.alerts.api.util.Util.isEmpty;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.hawkular.alerts.api.exception.NotFoundException;
 import org.hawkular.alerts.api.model.condition.CompareCondition;
 import org.hawkular.alerts.api.model.condition.Condition;
 import org.hawkular.alerts.api.model.data.Data;
@@ -39,6 +45,10 @@ import org.hawkular.commons.properties.HawkularProperties;
 /**
  * A helper class to keep track of DataDrivenGroup
  *
+ * The cache is built once on init and then maintained incrementally from the definitions events, only the
+ * changed triggers are fetched.  Readers work on an immutable snapshot of the dataId index and on concurrent
+ * source sets, so {@link #needsSourceMember(String, String, String)} never blocks on an update.
+ *
  * @author Jay Shaughnessy
  * @author Lucas Ponce
  */
@@ -50,15 +60,12 @@ public class DataDrivenGroupCacheManager {
 
     private boolean dataDrivenTriggersEnabled;
 
-    // The sources with member triggers for the dataId.
-    // - null if dataId is not used in a group trigger condition
-    // - EmptySet if no source members are yet defined
-    Map<CacheKey, Set<String>> sourcesMap = new HashMap<>();
-    // The group triggerIds relevant to the dataId, null if none
-    Map<CacheKey, Set<String>> triggersMap = new HashMap<>();
+    // The data-driven group triggers relevant to the dataId, null if none. Replaced on group changes, never modified.
+    private volatile Map<CacheKey, List<GroupEntry>> groupsMap = Collections.emptyMap();
 
-    private volatile boolean updateRequested = false;
-    private volatile boolean updating = false;
+    // Updated only under the manager lock
+    private final Map<CacheKey, GroupEntry> groups = new HashMap<>();
+    private final Map<CacheKey, GroupEntry> members = new HashMap<>();
 
     DefinitionsService definitions;
 
@@ -74,92 +81,149 @@ public class DataDrivenGroupCacheManager {
 
         if (dataDrivenTriggersEnabled) {
 
-            requestCacheUpdate();
+            loadCache();
 
-            definitions.registerListener(e -> {
-                    requestCacheUpdate();
-            }, DefinitionsEvent.Type.TRIGGER_CONDITION_CHANGE);
+            definitions.registerListener(events -> {
+                Set<CacheKey> changed = new LinkedHashSet<>();
+                for (DefinitionsEvent e : events) {
+                    changed.add(new CacheKey(e.getTargetTenantId(), e.getTargetId()));
+                }
+                updateCache(changed);
+            }, DefinitionsEvent.Type.TRIGGER_CONDITION_CHANGE, DefinitionsEvent.Type.TRIGGER_UPDATE,
+                    DefinitionsEvent.Type.TRIGGER_REMOVE);
         }
     }
 
-    // Just run updateCache one time if multiple requests come in while an update is already in progress...
-    private void requestCacheUpdate() {
-        log.debug("Cache update requested");
-        if (updateRequested) {
-            log.debug("Cache update, redundant request ignored.");
-            return;
-        }
+    private synchronized void loadCache() {
+        log.debug("Loading cache...");
 
-        updateRequested = true;
+        try {
+            groups.clear();
+            members.clear();
+
+            Collection<Trigger> allTriggers = definitions.getAllTriggers();
+            int numGroups = 0;
+            for (Trigger t : allTriggers) {
+                if (TriggerType.DATA_DRIVEN_GROUP == t.getType()) {
+                    loadGroup(t);
+                    ++numGroups;
+                }
+            }
 
-        if (!updating) {
-            updateCache();
+            log.debugf("Loaded [%s] data-driven triggers out of [%s] total triggers...", numGroups,
+                    allTriggers.size());
+        } catch (Exception e) {
+            log.error("FAILED to loadCache. Unable to generate data-driven member triggers!", e);
+            groups.clear();
+            members.clear();
+        } finally {
+            publish();
+            log.debugf("Cache load complete. groupsMap: %s", groupsMap);
         }
     }
 
-    private synchronized void updateCache() {
-        log.debug("Updating cache...");
+    private synchronized void updateCache(Set<CacheKey> changedTriggers) {
+        log.debugf("Updating cache for %s", changedTriggers);
 
+        boolean groupsChanged = false;
+        for (CacheKey key : changedTriggers) {
+            try {
+                groupsChanged |= updateTrigger(key);
+            } catch (Exception e) {
+                log.errorf("FAILED to update cache for trigger %s. Unable to generate data-driven member triggers: %s",
+                        key, e.getMessage());
+            }
+        }
+        if (groupsChanged) {
+            publish();
+        }
+        log.debugf("Cache updates complete. groupsMap: %s", groupsMap);
+    }
+
+    /*
+        Returns true if the set of groups or their dataIds changed
+     */
+    private boolean updateTrigger(CacheKey key) throws Exception {
+        Trigger trigger;
         try {
-            updating = true;
-
-            while (updateRequested) {
-                updateRequested = false;
-                log.debug("Cache update in progress..");
-
-                Collection<Trigger> allTriggers = definitions.getAllTriggers();
-                Set<Trigger> ddGroupTriggers = new HashSet<>();
-                for (Trigger t : allTriggers) {
-                    if (TriggerType.DATA_DRIVEN_GROUP == t.getType()) {
-                        ddGroupTriggers.add(t);
-                    }
-                }
+            trigger = definitions.getTrigger(key.getTenantId(), key.getDataId());
+        } catch (NotFoundException e) {
+            trigger = null;
+        }
 
-                log.debugf("Updating [%s] data-driven triggers out of [%s] total triggers...", ddGroupTriggers.size(),
-                        allTriggers.size());
-
-                for (Trigger groupTrigger : ddGroupTriggers) {
-                    String tenantId = groupTrigger.getTenantId();
-                    Set<String> sources = new HashSet<>();
-                    for (Trigger memberTrigger : definitions.getMemberTriggers(tenantId, groupTrigger.getId(),
-                            false)) {
-                        sources.add(memberTrigger.getSource());
-                    }
-                    for (Condition c : definitions.getTriggerConditions(tenantId, groupTrigger.getId(), null)) {
-                        CacheKey key = new CacheKey(tenantId, c.getDataId());
-                        sourcesMap.put(key, sources);
-                        Set<String> triggers = triggersMap.get(key);
-                        if (null == triggers) {
-                            triggers = new HashSet<>();
-                        }
-                        triggers.add(groupTrigger.getId());
-                        triggersMap.put(key, triggers);
-
-                        if (c instanceof CompareCondition) {
-                            key = new CacheKey(tenantId, ((CompareCondition) c).getData2Id());
-                            sourcesMap.put(key, sources);
-
-                            triggers = triggersMap.get(key);
-                            if (null == triggers) {
-                                triggers = new HashSet<>();
-                            }
-                            triggers.add(groupTrigger.getId());
-                            triggersMap.put(key, triggers);
-                        }
-                    }
-                }
+        boolean groupsChanged = false;
+        if (null != trigger && TriggerType.DATA_DRIVEN_GROUP == trigger.getType()) {
+            loadGroup(trigger);
+            groupsChanged = true;
+        } else if (null != groups.get(key)) {
+            removeGroup(key);
+            groupsChanged = true;
+        }
+
+        GroupEntry previous = members.get(key);
+        GroupEntry current = null;
+        if (null != trigger && trigger.isMember() && !trigger.isOrphan()) {
+            current = groups.get(new CacheKey(key.getTenantId(), trigger.getMemberOf()));
+        }
+        if (null != previous) {
+            previous.removeMember(key.getDataId());
+            members.remove(key);
+        }
+        if (null != current) {
+            current.addMember(key.getDataId(), trigger.getSource());
+            members.put(key, current);
+        }
+
+        return groupsChanged;
+    }
+
+    private void loadGroup(Trigger groupTrigger) throws Exception {
+        String tenantId = groupTrigger.getTenantId();
+        CacheKey groupKey = new CacheKey(tenantId, groupTrigger.getId());
+        removeGroup(groupKey);
+
+        Set<String> dataIds = new HashSet<>();
+        for (Condition c : definitions.getTriggerConditions(tenantId, groupTrigger.getId(), null)) {
+            dataIds.add(c.getDataId());
+            if (c instanceof CompareCondition) {
+                dataIds.add(((CompareCondition) c).getData2Id());
+            }
+        }
+        GroupEntry group = new GroupEntry(tenantId, groupTrigger.getId(), dataIds);
+        for (Trigger memberTrigger : definitions.getMemberTriggers(tenantId, groupTrigger.getId(), false)) {
+            group.addMember(memberTrigger.getId(), memberTrigger.getSource());
+            members.put(new CacheKey(tenantId, memberTrigger.getId()), group);
+        }
+        groups.put(groupKey, group);
+    }
+
+    private void removeGroup(CacheKey groupKey) {
+        GroupEntry group = groups.remove(groupKey);
+        if (null == group) {
+            return;
+        }
+        Iterator<GroupEntry> it = members.values().iterator();
+        while (it.hasNext()) {
+            if (it.next() == group) {
+                it.remove();
             }
-        } catch (Exception e) {
-            log.error("FAILED to updateCache. Unable to generate data-driven member triggers!", e);
-            sourcesMap = new HashMap<>();
-        } finally {
-            log.debugf("Cache updates complete. sourceMap: %s", sourcesMap);
-            updating = false;
         }
     }
 
+    // Copy-on-write of the dataId index, it only changes when a group changes
+    private void publish() {
+        Map<CacheKey, List<GroupEntry>> newGroupsMap = new HashMap<>();
+        for (GroupEntry group : groups.values()) {
+            for (String dataId : group.dataIds) {
+                newGroupsMap.computeIfAbsent(new CacheKey(group.tenantId, dataId), k -> new ArrayList<>(2))
+                        .add(group);
+            }
+        }
+        groupsMap = Collections.unmodifiableMap(newGroupsMap);
+    }
+
     public boolean isCacheActive() {
-        return !sourcesMap.isEmpty();
+        return !groupsMap.isEmpty();
     }
 
     public Set<String> needsSourceMember(String tenantId, String dataId, String source) {
@@ -167,23 +231,70 @@ public class DataDrivenGroupCacheManager {
             return Collections.emptySet();
         }
 
-        CacheKey key = new CacheKey(tenantId, dataId);
-
         // if the dataId is not relevant to any group triggers just return empty set
-        if (null == triggersMap.get(key)) {
+        List<GroupEntry> dataIdGroups = groupsMap.get(new CacheKey(tenantId, dataId));
+        if (null == dataIdGroups) {
             return Collections.emptySet();
         }
 
-        // if the dataId is relevant to group triggers but the source is already known just return empty set
-        Set<String> sources = sourcesMap.get(key);
-        if (sources.contains(source)) {
-            return Collections.emptySet();
+        // otherwise, return the triggers that still need a member for this source
+        Set<String> result = null;
+        for (GroupEntry group : dataIdGroups) {
+            if (!group.sources.contains(source)) {
+                if (null == result) {
+                    result = new HashSet<>();
+                }
+                result.add(group.groupId);
+            }
+        }
+        return null == result ? Collections.emptySet() : result;
+    }
+
+    private static class GroupEntry {
+        private final String tenantId;
+        private final String groupId;
+        private final Set<String> dataIds;
+
+        // The sources with member triggers, read without locking
+        private final Set<String> sources = ConcurrentHashMap.newKeySet();
+
+        // memberId -> source, updated only under the manager lock
+        private final Map<String, String> memberSources = new HashMap<>();
+        private final Map<String, Integer> sourceCounts = new HashMap<>();
+
+        public GroupEntry(String tenantId, String groupId, Set<String> dataIds) {
+            this.tenantId = tenantId;
+            this.groupId = groupId;
+            this.dataIds = dataIds;
+        }
+
+        public void addMember(String memberId, String source) {
+            removeMember(memberId);
+            if (null == source) {
+                return;
+            }
+            memberSources.put(memberId, source);
+            sourceCounts.merge(source, 1, Integer::sum);
+            sources.add(source);
         }
 
-        // otherwise, return the triggers that need a member for this source
-        return triggersMap.get(key);
+        public void removeMember(String memberId) {
+            String source = memberSources.remove(memberId);
+            if (null == source) {
+                return;
+            }
+            if (null == sourceCounts.computeIfPresent(source, (s, count) -> count > 1 ? count - 1 : null)) {
+                sources.remove(source);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "GroupEntry [" + tenantId + ":" + groupId + ", dataIds=" + dataIds + ", sources=" + sources + "]";
+        }
     }
 
+    // A tenant scoped id, used for dataIds and for triggerIds
     private static class CacheKey {
         private String tenantId;
         private String dataId;
@@ -16,6 +16,7 @@
  */
 package org.hawkular.alerts.engine.impl;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.TreeSet;
@@ -341,6 +342,17 @@ public class DroolsRulesEngineImpl implements RulesEngine {
         }
     }
 
+    @Override
+    public Collection<Object> getFacts(Predicate<Object> factFilter) {
+        Collection<? extends Object> objects = kSession.getObjects(new ObjectFilter() {
+            @Override
+            public boolean accept(Object object) {
+                return factFilter.test(object);
+            }
+        });
+        return null == objects ? new ArrayList<>() : new ArrayList<>(objects);
+    }
+
     @Override
     public void removeGlobal(String name) {
         log.debugf("Remove Global %s", name);
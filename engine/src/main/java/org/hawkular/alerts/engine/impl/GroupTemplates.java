@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl;
+
+import static org.hawkular.alerts.engine.util.Utils.getMemberCondition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hawkular.alerts.api.model.condition.CompareCondition;
+import org.hawkular.alerts.api.model.condition.Condition;
+import org.hawkular.alerts.api.model.dampening.Dampening;
+import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.hawkular.alerts.api.services.DefinitionsService;
+
+/**
+ * Group trigger templates used to load member triggers into the rules engine.
+ *
+ * Member triggers are copies of their group trigger with the dataId tokens replaced.  When many members are loaded
+ * together (a full reload or a partition change) the group conditions and dampenings are fetched once and the member
+ * facts are built from them, instead of fetching the conditions and dampenings of every member.
+ *
+ * This only saves backend queries on bulk loads.  Each member is still loaded into the rules engine with its own
+ * Trigger, Condition and Dampening facts, so the working memory still grows with members x conditions.
+ *
+ * Templates are only kept while a bulk load is in progress, so updates to a group are always seen by later loads.
+ */
+public class GroupTemplates {
+
+    private final Map<String, Template> templates = new ConcurrentHashMap<>();
+    private final AtomicInteger bulkLoads = new AtomicInteger();
+
+    public void startBulkLoad() {
+        bulkLoads.incrementAndGet();
+    }
+
+    public void endBulkLoad() {
+        if (bulkLoads.decrementAndGet() <= 0) {
+            bulkLoads.set(0);
+            templates.clear();
+        }
+    }
+
+    /**
+     * @param definitions the definitions service
+     * @param member a trigger to be loaded
+     * @return the template to build the member facts, null if there is no bulk load in progress or the trigger can
+     * not be built from its group (i.e. it is not a member, it is an orphan or its dataIdMap is incomplete).
+     * @throws Exception on any problem fetching the group definitions
+     */
+    public Template getTemplate(DefinitionsService definitions, Trigger member) throws Exception {
+        if (bulkLoads.get() == 0 || !member.isMember() || member.isOrphan() || null == member.getMemberOf()
+                || null == member.getDataIdMap()) {
+            return null;
+        }
+        String key = member.getTenantId() + ":" + member.getMemberOf();
+        Template template = templates.get(key);
+        if (null == template) {
+            template = new Template(
+                    definitions.getTriggerConditions(member.getTenantId(), member.getMemberOf(), null),
+                    definitions.getTriggerDampenings(member.getTenantId(), member.getMemberOf(), null));
+            templates.putIfAbsent(key, template);
+        }
+        return template.appliesTo(member) ? template : null;
+    }
+
+    public static class Template {
+        private final Collection<Condition> conditions;
+        private final Collection<Dampening> dampenings;
+        private final Set<String> dataIdTokens = new HashSet<>();
+
+        Template(Collection<Condition> conditions, Collection<Dampening> dampenings) {
+            this.conditions = conditions;
+            this.dampenings = dampenings;
+            for (Condition c : conditions) {
+                dataIdTokens.add(c.getDataId());
+                if (Condition.Type.COMPARE == c.getType()) {
+                    dataIdTokens.add(((CompareCondition) c).getData2Id());
+                }
+            }
+        }
+
+        boolean appliesTo(Trigger member) {
+            return member.getDataIdMap().keySet().containsAll(dataIdTokens);
+        }
+
+        public Collection<Condition> getMemberConditions(Trigger member) {
+            List<Condition> memberConditions = new ArrayList<>(conditions.size());
+            for (Condition c : conditions) {
+                memberConditions.add(getMemberCondition(member, c, member.getDataIdMap()));
+            }
+            return memberConditions;
+        }
+
+        public Collection<Dampening> getMemberDampenings(Trigger member) {
+            List<Dampening> memberDampenings = new ArrayList<>(dampenings.size());
+            for (Dampening d : dampenings) {
+                memberDampenings.add(new Dampening(member.getTenantId(), member.getId(), d.getTriggerMode(),
+                        d.getType(), d.getEvalTrueSetting(), d.getEvalTotalSetting(), d.getEvalTimeSetting()));
+            }
+            return memberDampenings;
+        }
+    }
+}
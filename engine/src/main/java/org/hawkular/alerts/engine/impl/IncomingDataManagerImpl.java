@@ -19,7 +19,9 @@ package org.hawkular.alerts.engine.impl;
 import static org.hawkular.alerts.api.util.Util.isEmpty;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ExecutorService;
@@ -43,11 +45,53 @@ import org.hawkular.commons.properties.HawkularProperties;
 public class IncomingDataManagerImpl implements IncomingDataManager {
     private final MsgLogger log = MsgLogging.getMsgLogger(IncomingDataManagerImpl.class);
 
+    /*
+        INGESTION_MAX_ITEMS defines the max number of datums (or events) waiting to be evaluated, including the ones
+        already sent to the AlertsEngine.
+     */
+    private static final String INGESTION_MAX_ITEMS = "hawkular-alerts.ingestion-max-items";
+    private static final String INGESTION_MAX_ITEMS_ENV = "INGESTION_MAX_ITEMS";
+    private static final String INGESTION_MAX_ITEMS_DEFAULT = "100000";
+
+    /*
+        INGESTION_MAX_BYTES defines the max estimated size in bytes of the datums (or events) waiting to be processed
+     */
+    private static final String INGESTION_MAX_BYTES = "hawkular-alerts.ingestion-max-bytes";
+    private static final String INGESTION_MAX_BYTES_ENV = "INGESTION_MAX_BYTES";
+    private static final String INGESTION_MAX_BYTES_DEFAULT = "67108864";
+
+    /*
+        INGESTION_POLICY defines what to do with a new batch when the limits are reached:
+        BLOCK, SHED_OLDEST, SHED_TENANT or REJECT
+     */
+    private static final String INGESTION_POLICY = "hawkular-alerts.ingestion-policy";
+    private static final String INGESTION_POLICY_ENV = "INGESTION_POLICY";
+    private static final String INGESTION_POLICY_DEFAULT = "REJECT";
+
+    /*
+        INGESTION_BLOCK_TIMEOUT defined in milliseconds
+     */
+    private static final String INGESTION_BLOCK_TIMEOUT = "hawkular-alerts.ingestion-block-timeout";
+    private static final String INGESTION_BLOCK_TIMEOUT_ENV = "INGESTION_BLOCK_TIMEOUT";
+    private static final String INGESTION_BLOCK_TIMEOUT_DEFAULT = "5000";
+
+    /*
+        INGESTION_RETRY_AFTER defined in seconds, it is the delay suggested to rejected senders
+     */
+    private static final String INGESTION_RETRY_AFTER = "hawkular-alerts.ingestion-retry-after";
+    private static final String INGESTION_RETRY_AFTER_ENV = "INGESTION_RETRY_AFTER";
+    private static final String INGESTION_RETRY_AFTER_DEFAULT = "5";
+
+    private static final int ITEM_OVERHEAD_BYTES = 64;
+
     private int minReportingIntervalData;
     private int minReportingIntervalEvents;
 
     private ExecutorService executor;
 
+    private IngestionQueue dataQueue;
+    private IngestionQueue eventsQueue;
+
     DataDrivenGroupCacheManager dataDrivenGroupCacheManager;
 
     DefinitionsService definitionsService;
@@ -99,22 +143,101 @@ public class IncomingDataManagerImpl implements IncomingDataManager {
             }
             log.errorf("Failed to initialize: %s", t.getMessage());
         }
+        initQueues();
+    }
+
+    private void initQueues() {
+        int maxItems = Integer.parseInt(INGESTION_MAX_ITEMS_DEFAULT);
+        long maxBytes = Long.parseLong(INGESTION_MAX_BYTES_DEFAULT);
+        IngestionQueue.Policy policy = IngestionQueue.Policy.valueOf(INGESTION_POLICY_DEFAULT);
+        long blockTimeout = Long.parseLong(INGESTION_BLOCK_TIMEOUT_DEFAULT);
+        int retryAfter = Integer.parseInt(INGESTION_RETRY_AFTER_DEFAULT);
+        try {
+            maxItems = Integer.parseInt(HawkularProperties.getProperty(INGESTION_MAX_ITEMS, INGESTION_MAX_ITEMS_ENV,
+                    INGESTION_MAX_ITEMS_DEFAULT));
+            maxBytes = Long.parseLong(HawkularProperties.getProperty(INGESTION_MAX_BYTES, INGESTION_MAX_BYTES_ENV,
+                    INGESTION_MAX_BYTES_DEFAULT));
+            policy = IngestionQueue.Policy.valueOf(HawkularProperties.getProperty(INGESTION_POLICY,
+                    INGESTION_POLICY_ENV, INGESTION_POLICY_DEFAULT).trim().toUpperCase());
+            blockTimeout = Long.parseLong(HawkularProperties.getProperty(INGESTION_BLOCK_TIMEOUT,
+                    INGESTION_BLOCK_TIMEOUT_ENV, INGESTION_BLOCK_TIMEOUT_DEFAULT));
+            retryAfter = Integer.parseInt(HawkularProperties.getProperty(INGESTION_RETRY_AFTER,
+                    INGESTION_RETRY_AFTER_ENV, INGESTION_RETRY_AFTER_DEFAULT));
+        } catch (Throwable t) {
+            log.errorf(t, "Failed to parse ingestion limits, using defaults: %s", t.getMessage());
+        }
+        dataQueue = new IngestionQueue("ingestion-data", maxItems, maxBytes, policy, blockTimeout, retryAfter,
+                this::getEnginePendingCount);
+        eventsQueue = new IngestionQueue("ingestion-events", maxItems, maxBytes, policy, blockTimeout, retryAfter,
+                this::getEnginePendingCount);
     }
 
+    private int getEnginePendingCount() {
+        return alertsEngine == null ? 0 : alertsEngine.getPendingCount();
+    }
+
+    /*
+        The batch is queued before the task is submitted, so a rejected batch never reaches the executor. Each task
+        polls the oldest queued batch, which may not be the one submitted with it if some batches were shed.
+     */
     @Override
     public void bufferData(IncomingData incomingData) {
+        Collection<Data> data = incomingData.getIncomingData();
+        long numBytes = 0;
+        for (Data d : data) {
+            numBytes += ITEM_OVERHEAD_BYTES + length(d.getTenantId()) + length(d.getId()) + length(d.getValue())
+                    + length(d.getSource()) + length(d.getContext());
+        }
+        dataQueue.offer(incomingData, data.iterator().next().getTenantId(), data.size(), numBytes);
         executor.submit(() -> {
-            processData(incomingData);
+            IncomingData next = (IncomingData) dataQueue.poll();
+            if (next != null) {
+                processData(next);
+            }
         });
     }
 
     @Override
     public void bufferEvents(IncomingEvents incomingEvents) {
+        Collection<Event> events = incomingEvents.getIncomingEvents();
+        long numBytes = 0;
+        for (Event e : events) {
+            numBytes += ITEM_OVERHEAD_BYTES + length(e.getTenantId()) + length(e.getId())
+                    + length(e.getDataId()) + length(e.getText()) + length(e.getCategory())
+                    + length(e.getContext()) + length(e.getTags());
+        }
+        eventsQueue.offer(incomingEvents, events.iterator().next().getTenantId(), events.size(), numBytes);
         executor.submit(() -> {
-            processEvents(incomingEvents);
+            IncomingEvents next = (IncomingEvents) eventsQueue.poll();
+            if (next != null) {
+                processEvents(next);
+            }
         });
     }
 
+    @Override
+    public Map<String, String> getStatus() {
+        Map<String, String> status = new HashMap<>();
+        status.putAll(dataQueue.getStatus());
+        status.putAll(eventsQueue.getStatus());
+        return status;
+    }
+
+    private static long length(String s) {
+        return s == null ? 0 : 2L * s.length();
+    }
+
+    private static long length(Map<String, String> map) {
+        if (map == null) {
+            return 0;
+        }
+        long length = 0;
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            length += ITEM_OVERHEAD_BYTES / 2 + length(entry.getKey()) + length(entry.getValue());
+        }
+        return length;
+    }
+
     private void processData(IncomingData incomingData) {
         log.debugf("Processing [%s] datums for AlertsEngine.", incomingData.incomingData.size());
 
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+import org.hawkular.alerts.api.exception.IngestionRejectedException;
+import org.hawkular.commons.log.MsgLogger;
+import org.hawkular.commons.log.MsgLogging;
+
+/**
+ * A bounded queue of incoming batches of data or events, waiting to be processed and sent to the AlertsEngine.
+ *
+ * The queue is bounded by a number of items and an estimation of their size in bytes.  The items already sent to
+ * the AlertsEngine but not yet evaluated (the engine backlog) count against the items limit too, so a slow rules
+ * engine pushes back on the producers.  When a new batch does not fit, the queue applies its policy:
+ *
+ * - BLOCK waits until there is room, up to a timeout, and then rejects the batch.
+ * - SHED_OLDEST drops the oldest queued batches until the new one fits.
+ * - SHED_TENANT drops the oldest queued batches of the tenant with more queued items, or rejects the new batch if
+ *   that tenant is the one sending it.
+ * - REJECT rejects the new batch.
+ *
+ * A rejected batch throws an {@link IngestionRejectedException}.  A batch is always accepted on an empty queue
+ * with no engine backlog, even if it is larger than the limits.
+ */
+public class IngestionQueue {
+    private final MsgLogger log = MsgLogging.getMsgLogger(IngestionQueue.class);
+
+    private static final long BLOCK_CHECK_MS = 100;
+
+    public enum Policy {
+        BLOCK, SHED_OLDEST, SHED_TENANT, REJECT
+    }
+
+    private final String name;
+    private final int maxItems;
+    private final long maxBytes;
+    private final Policy policy;
+    private final long blockTimeout;
+    private final int retryAfter;
+    private final IntSupplier backlog;
+
+    private final Deque<Entry> entries = new ArrayDeque<>();
+    private final Map<String, Integer> tenantItems = new HashMap<>();
+    private int items;
+    private long bytes;
+
+    private long acceptedItems;
+    private long rejectedItems;
+    private long shedItems;
+
+    /**
+     * @param name name of the queue, used on logs and status
+     * @param maxItems max number of queued items, including the engine backlog
+     * @param maxBytes max estimated size in bytes of the queued items
+     * @param policy policy applied when a batch does not fit
+     * @param blockTimeout max time in milliseconds to wait for room under BLOCK policy
+     * @param retryAfter suggested delay in seconds for rejected producers
+     * @param backlog supplier of the number of items sent to the engine and not yet evaluated
+     */
+    public IngestionQueue(String name, int maxItems, long maxBytes, Policy policy, long blockTimeout, int retryAfter,
+            IntSupplier backlog) {
+        if (maxItems <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("Ingestion limits must be positive");
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("Policy must be not null");
+        }
+        this.name = name;
+        this.maxItems = maxItems;
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+        this.blockTimeout = blockTimeout;
+        this.retryAfter = retryAfter;
+        this.backlog = backlog == null ? () -> 0 : backlog;
+    }
+
+    /**
+     * @param batch the batch to queue
+     * @param tenantId tenant of the batch
+     * @param numItems number of items of the batch
+     * @param numBytes estimated size in bytes of the batch
+     * @throws IngestionRejectedException if the batch is not accepted
+     */
+    public synchronized void offer(Object batch, String tenantId, int numItems, long numBytes) {
+        if (!fits(numItems, numBytes)) {
+            switch (policy) {
+                case BLOCK:
+                    block(numItems, numBytes);
+                    break;
+                case SHED_OLDEST:
+                    while (!fits(numItems, numBytes) && !entries.isEmpty()) {
+                        shed(entries.peekFirst());
+                    }
+                    break;
+                case SHED_TENANT:
+                    shedTenant(tenantId, numItems, numBytes);
+                    break;
+                default:
+                    break;
+            }
+            if (!fits(numItems, numBytes)) {
+                reject(numItems, false);
+            }
+        }
+        entries.addLast(new Entry(batch, tenantId, numItems, numBytes));
+        tenantItems.merge(tenantId, numItems, Integer::sum);
+        items += numItems;
+        bytes += numBytes;
+        acceptedItems += numItems;
+    }
+
+    /**
+     * @return the oldest queued batch, null if the queue is empty
+     */
+    public synchronized Object poll() {
+        Entry entry = entries.pollFirst();
+        if (entry == null) {
+            return null;
+        }
+        remove(entry);
+        notifyAll();
+        return entry.batch;
+    }
+
+    public synchronized int getItems() {
+        return items;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getShedItems() {
+        return shedItems;
+    }
+
+    public synchronized long getRejectedItems() {
+        return rejectedItems;
+    }
+
+    /**
+     * @return queue depth and counters, keys prefixed with the name of the queue
+     */
+    public synchronized Map<String, String> getStatus() {
+        Map<String, String> status = new HashMap<>();
+        status.put(name + ".policy", policy.name());
+        status.put(name + ".queued-items", String.valueOf(items));
+        status.put(name + ".queued-bytes", String.valueOf(bytes));
+        status.put(name + ".backlog-items", String.valueOf(backlog.getAsInt()));
+        status.put(name + ".accepted-items", String.valueOf(acceptedItems));
+        status.put(name + ".rejected-items", String.valueOf(rejectedItems));
+        status.put(name + ".shed-items", String.valueOf(shedItems));
+        return status;
+    }
+
+    private boolean fits(int numItems, long numBytes) {
+        if (entries.isEmpty() && backlog.getAsInt() == 0) {
+            return true;
+        }
+        return items + backlog.getAsInt() + numItems <= maxItems && bytes + numBytes <= maxBytes;
+    }
+
+    /*
+        The engine backlog is drained without notification, so the wait is done in short slices
+     */
+    private void block(int numItems, long numBytes) {
+        long deadline = System.currentTimeMillis() + blockTimeout;
+        while (!fits(numItems, numBytes)) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                reject(numItems, true);
+            }
+            try {
+                wait(Math.min(remaining, BLOCK_CHECK_MS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                reject(numItems, true);
+            }
+        }
+    }
+
+    private void shedTenant(String tenantId, int numItems, long numBytes) {
+        while (!fits(numItems, numBytes)) {
+            String heaviest = null;
+            int heaviestItems = tenantItems.getOrDefault(tenantId, 0) + numItems;
+            for (Map.Entry<String, Integer> tenant : tenantItems.entrySet()) {
+                if (tenant.getValue() > heaviestItems) {
+                    heaviest = tenant.getKey();
+                    heaviestItems = tenant.getValue();
+                }
+            }
+            if (heaviest == null) {
+                // the new batch belongs to the heaviest tenant
+                return;
+            }
+            for (Iterator<Entry> i = entries.iterator(); i.hasNext();) {
+                Entry entry = i.next();
+                if (entry.tenantId.equals(heaviest)) {
+                    shed(entry);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void shed(Entry entry) {
+        entries.remove(entry);
+        remove(entry);
+        shedItems += entry.items;
+        log.debugf("Ingestion queue [%s] shed [%s] items of tenant [%s]", name, entry.items, entry.tenantId);
+    }
+
+    private void remove(Entry entry) {
+        tenantItems.computeIfPresent(entry.tenantId, (k, v) -> v == entry.items ? null : v - entry.items);
+        items -= entry.items;
+        bytes -= entry.bytes;
+    }
+
+    private void reject(int numItems, boolean timedOut) {
+        rejectedItems += numItems;
+        throw new IngestionRejectedException("Ingestion queue [" + name + "] is full: [" + items + "] items, ["
+                + bytes + "] bytes queued and [" + backlog.getAsInt() + "] items pending evaluation", retryAfter,
+                timedOut);
+    }
+
+    private static class Entry {
+        private final Object batch;
+        private final String tenantId;
+        private final int items;
+        private final long bytes;
+
+        Entry(Object batch, String tenantId, int items, long bytes) {
+            this.batch = batch;
+            this.tenantId = tenantId;
+            this.items = items;
+            this.bytes = bytes;
+        }
+    }
+}
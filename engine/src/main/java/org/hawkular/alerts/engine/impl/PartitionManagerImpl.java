@@ -21,21 +21,31 @@ import static org.hawkular.alerts.api.util.Util.isEmpty;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.hawkular.alerts.api.model.data.Data;
 import org.hawkular.alerts.api.model.event.Event;
 import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.hawkular.alerts.api.model.trigger.TriggerKey;
 import org.hawkular.alerts.api.services.DefinitionsService;
 import org.hawkular.alerts.cache.IspnCacheManager;
+import org.hawkular.alerts.engine.cache.PublishCacheManager;
+import org.hawkular.alerts.engine.impl.AlertsEngineCache.DataId;
 import org.hawkular.alerts.engine.service.PartitionDataListener;
 import org.hawkular.alerts.engine.service.PartitionManager;
 import org.hawkular.alerts.engine.service.PartitionTriggerListener;
@@ -48,10 +58,13 @@ import org.infinispan.manager.EmbeddedCacheManager;
 import org.infinispan.notifications.Listener;
 import org.infinispan.notifications.cachelistener.annotation.CacheEntryCreated;
 import org.infinispan.notifications.cachelistener.annotation.CacheEntryModified;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
 import org.infinispan.notifications.cachelistener.event.CacheEntryCreatedEvent;
 import org.infinispan.notifications.cachelistener.event.CacheEntryModifiedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
 import org.infinispan.notifications.cachemanagerlistener.annotation.ViewChanged;
 import org.infinispan.notifications.cachemanagerlistener.event.ViewChangedEvent;
+import org.infinispan.remoting.transport.Address;
 
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
@@ -60,33 +73,30 @@ import com.google.common.hash.Hashing;
  * Implementation of {@link PartitionManager} services based on Infinispan cache.
  *
  * This implementation uses a consistent hashing strategy {@see https://en.wikipedia.org/wiki/Consistent_hashing}
- * as a method to partition triggers across nodes.
+ * as a method to partition triggers across nodes. Optionally, an affinity strategy keeps together the triggers sharing
+ * dataIds, so a datum is evaluated on as few nodes as possible.
  *
- * It needs three caches added into Wildfly/JBoss configuration files.
+ * Trigger operations are sent to the node owning the trigger, and data and events are sent in one batch per node
+ * only to the nodes with triggers using their dataIds. Each node publishes its dataIds on the "partition" cache.
+ * Notifications travel point to point on the cluster transport, not through cache entries.
+ *
+ * It needs a cache added into Wildfly/JBoss configuration files.
  *
  * standalone.xml:
  * [...]
- *       <cache-container name="hawkular-alerts" default-cache="triggers" statistics-enabled="true">
+ *       <cache-container name="hawkular-alerts" default-cache="partition" statistics-enabled="true">
  *          <local-cache name="partition"/>
- *          <local-cache name="triggers"/>
- *          <local-cache name="data"/>
  *       </cache-container>
  * [...]
  *
  * Wildfly
  * standalone-ha.xml:
  * [...]
- *       <cache-container name="hawkular-alerts" default-cache="triggers" statistics-enabled="true">
+ *       <cache-container name="hawkular-alerts" default-cache="partition" statistics-enabled="true">
  *          <transport lock-timeout="60000"/>
  *          <replicated-cache name="partition" mode="SYNC">
  *              <transaction mode="BATCH"/>
  *          </replicated-cache>
- *          <replicated-cache name="triggers" mode="ASYNC">
- *              <transaction mode="BATCH"/>
- *          </replicated-cache>
- *          <replicated-cache name="data" mode="ASYNC">
- *              <transaction mode="BATCH"/>
- *          </replicated-cache>
  *       </cache-container>
  * [...]
  *
@@ -96,7 +106,7 @@ import com.google.common.hash.Hashing;
 public class PartitionManagerImpl implements PartitionManager {
 
     /**
-     * Used to clean triggers and data cache
+     * Used to clean the partition change flag
      */
     private static final String LIFESPAN_PROPERTY = "hawkular-alerts.partition-lifespan";
     private static final int LIFESPAN = Integer.parseInt(HawkularProperties.getProperty(LIFESPAN_PROPERTY, "100"));
@@ -105,15 +115,49 @@ public class PartitionManagerImpl implements PartitionManager {
     private static final String ALERTS_DISTRIBUTED_ENV = "HAWKULAR_ALERTS_DISTRIBUTED";
     private static final String ALERTS_DISTRIBUTED_DEFAULT = "false";
 
+    /*
+        Max number of batches of data or events sent to other nodes and not yet delivered.
+        Senders wait up to PARTITION_SEND_TIMEOUT ms for a slot, then the notification is dropped.
+        Trigger operations are not bounded, the caller waits up to PARTITION_SEND_TIMEOUT ms for each delivery.
+     */
+    private static final String PARTITION_MAX_INFLIGHT = "hawkular-alerts.partition-max-inflight";
+    private static final String PARTITION_MAX_INFLIGHT_ENV = "PARTITION_MAX_INFLIGHT";
+    private static final String PARTITION_MAX_INFLIGHT_DEFAULT = "100";
+    private static final String PARTITION_SEND_TIMEOUT = "hawkular-alerts.partition-send-timeout";
+    private static final String PARTITION_SEND_TIMEOUT_ENV = "PARTITION_SEND_TIMEOUT";
+    private static final String PARTITION_SEND_TIMEOUT_DEFAULT = "5000";
+    private static final int TRIGGER_SEND_ATTEMPTS = 3;
+
+    /*
+        PARTITION_STRATEGY "hash" distributes the triggers by consistent hashing, "affinity" keeps together the
+        triggers sharing dataIds with at most PARTITION_AFFINITY_LOAD_FACTOR times an even share of triggers per node
+     */
+    private static final String PARTITION_STRATEGY = "hawkular-alerts.partition-strategy";
+    private static final String PARTITION_STRATEGY_ENV = "PARTITION_STRATEGY";
+    private static final String PARTITION_STRATEGY_DEFAULT = "hash";
+    private static final String PARTITION_AFFINITY_LOAD_FACTOR = "hawkular-alerts.partition-affinity-load-factor";
+    private static final String PARTITION_AFFINITY_LOAD_FACTOR_ENV = "PARTITION_AFFINITY_LOAD_FACTOR";
+    private static final String PARTITION_AFFINITY_LOAD_FACTOR_DEFAULT = "1.2";
+
+    public static final String STRATEGY_AFFINITY = "affinity";
     public static final String BUCKETS = "buckets";
     public static final String PREVIOUS = "previousPartition";
     public static final String CURRENT = "currentPartition";
     public static final String PARTITION_CHANGE = "partitionChangeFlag";
+    public static final String DATA_IDS = "dataIds-";
 
     private static final AlertingLogger log = MsgLogging.getMsgLogger(AlertingLogger.class, PartitionManagerImpl.class);
 
     DefinitionsService definitionsService;
 
+    PublishCacheManager publishCacheManager;
+
+    /**
+     * Indicate if triggers are partitioned by the affinity of their dataIds.
+     */
+    private boolean affinity = false;
+    private double loadFactor;
+
     /**
      * Indicate if the deployment is on a clustering scenario.
      * With distributed == false PartitionManager services are simply ignored.
@@ -141,16 +185,33 @@ public class PartitionManagerImpl implements PartitionManager {
     private Cache partitionCache;
 
     /**
-     * This cache will be used to propagate a trigger across nodes.
-     * It will hold listeners to notify the change.
+     * The local instance, used by the notifications received from other nodes.
+     */
+    private static volatile PartitionManagerImpl instance;
+
+    /**
+     * DataIds used by the triggers of each node, as published on the "partition" cache.
+     */
+    private final Map<Integer, Map<String, Set<String>>> nodeDataIds = new ConcurrentHashMap<>();
+
+    /**
+     * Nodes using a dataId, rebuilt from nodeDataIds when a node publishes its dataIds.
      */
-    private Cache triggersCache;
+    private volatile Map<DataId, List<Integer>> routes = new HashMap<>();
 
     /**
-     * This cache will be used to propagate a data or event across nodes.
-     * It will hold listeners to notify the change.
+     * Bounds the batches sent and not yet delivered to other nodes.
      */
-    private Cache dataCache;
+    private Semaphore inflight;
+    private int maxInflight;
+    private long sendTimeout;
+
+    private final AtomicLong sentBatches = new AtomicLong();
+    private final AtomicLong sentItems = new AtomicLong();
+    private final AtomicLong droppedItems = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong receivedBatches = new AtomicLong();
+    private final AtomicLong receivedItems = new AtomicLong();
 
     /**
      * Representation of the current node in a cluster environment.
@@ -170,14 +231,16 @@ public class PartitionManagerImpl implements PartitionManager {
 
     private TopologyChangeListener topologyChangeListener = new TopologyChangeListener();
     private PartitionChangeListener partitionChangeListener = new PartitionChangeListener();
-    private NewTriggerListener newTriggerListener = new NewTriggerListener();
-    private NewDataListener newDataListener = new NewDataListener();
 
 
     public void setDefinitionsService(DefinitionsService definitionsService) {
         this.definitionsService = definitionsService;
     }
 
+    public void setPublishCacheManager(PublishCacheManager publishCacheManager) {
+        this.publishCacheManager = publishCacheManager;
+    }
+
     @Override
     public boolean isDistributed() {
         return distributed;
@@ -192,6 +255,14 @@ public class PartitionManagerImpl implements PartitionManager {
             status.put("members", cacheManager.getMembers().stream()
                     .map(Object::toString)
                     .collect(Collectors.joining(", ")));
+            status.put("routedDataIds", String.valueOf(routes.size()));
+            status.put("sentBatches", String.valueOf(sentBatches.get()));
+            status.put("sentItems", String.valueOf(sentItems.get()));
+            status.put("droppedItems", String.valueOf(droppedItems.get()));
+            status.put("failedBatches", String.valueOf(failedBatches.get()));
+            status.put("inflightBatches", String.valueOf(maxInflight - inflight.availablePermits()));
+            status.put("receivedBatches", String.valueOf(receivedBatches.get()));
+            status.put("receivedItems", String.valueOf(receivedItems.get()));
         }
         return status;
     }
@@ -202,14 +273,24 @@ public class PartitionManagerImpl implements PartitionManager {
         } else {
             cacheManager = IspnCacheManager.getCacheManager();
             partitionCache = cacheManager.getCache("partition");
-            triggersCache = cacheManager.getCache("triggers");
-            dataCache = cacheManager.getCache("data");
             status.put("currentNode", cacheManager.getAddress().toString());
             currentNode = cacheManager.getAddress().hashCode();
+            maxInflight = Integer.parseInt(HawkularProperties.getProperty(PARTITION_MAX_INFLIGHT,
+                    PARTITION_MAX_INFLIGHT_ENV, PARTITION_MAX_INFLIGHT_DEFAULT));
+            inflight = new Semaphore(maxInflight);
+            sendTimeout = Long.parseLong(HawkularProperties.getProperty(PARTITION_SEND_TIMEOUT,
+                    PARTITION_SEND_TIMEOUT_ENV, PARTITION_SEND_TIMEOUT_DEFAULT));
+            affinity = STRATEGY_AFFINITY.equals(resolveStrategy(HawkularProperties.getProperty(PARTITION_STRATEGY,
+                    PARTITION_STRATEGY_ENV, PARTITION_STRATEGY_DEFAULT),
+                    publishCacheManager != null && publishCacheManager.isPublishFiltering()));
+            loadFactor = Math.max(1.0, Double.parseDouble(HawkularProperties.getProperty(
+                    PARTITION_AFFINITY_LOAD_FACTOR, PARTITION_AFFINITY_LOAD_FACTOR_ENV,
+                    PARTITION_AFFINITY_LOAD_FACTOR_DEFAULT)));
+            status.put("strategy", affinity ? STRATEGY_AFFINITY : PARTITION_STRATEGY_DEFAULT);
+            instance = this;
             cacheManager.addListener(topologyChangeListener);
             partitionCache.addListener(partitionChangeListener);
-            triggersCache.addListener(newTriggerListener);
-            dataCache.addListener(newDataListener);
+            loadDataIds();
             /*
                 Initial partition
              */
@@ -219,15 +300,28 @@ public class PartitionManagerImpl implements PartitionManager {
         }
     }
 
+    /*
+        The affinity strategy uses the dataIds of the triggers kept by the PublishCacheManager, without publish
+        filtering they are not maintained and the triggers are distributed by consistent hashing
+     */
+    static String resolveStrategy(String strategy, boolean publishFiltering) {
+        if (!STRATEGY_AFFINITY.equals(strategy)) {
+            return PARTITION_STRATEGY_DEFAULT;
+        }
+        if (!publishFiltering) {
+            log.warnf("Partition strategy [%s] requires publish filtering, which is disabled. Using [%s] strategy.",
+                    STRATEGY_AFFINITY, PARTITION_STRATEGY_DEFAULT);
+            return PARTITION_STRATEGY_DEFAULT;
+        }
+        return STRATEGY_AFFINITY;
+    }
+
     public void shutdown() {
         if (distributed) {
             cacheManager.removeListener(topologyChangeListener);
             partitionCache.removeListener(partitionChangeListener);
-            triggersCache.removeListener(newTriggerListener);
-            dataCache.removeListener(newDataListener);
+            instance = null;
 
-            dataCache.stop();
-            triggersCache.stop();
             partitionCache.stop();
             cacheManager.stop();
         }
@@ -238,12 +332,59 @@ public class PartitionManagerImpl implements PartitionManager {
     public void notifyTrigger(Operation operation, String tenantId, String triggerId) {
         if (distributed) {
             PartitionEntry newEntry = new PartitionEntry(tenantId, triggerId);
-            int toNode = calculateNewEntry(newEntry, (Map<Integer, Integer>)partitionCache.get(BUCKETS));
-            NotifyTrigger nTrigger = new NotifyTrigger(currentNode, toNode, operation, tenantId, triggerId);
-            Integer key = nTrigger.hashCode();
-            triggersCache.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES)
-                    .putAsync(key, nTrigger, LIFESPAN, TimeUnit.MILLISECONDS);
+            Exception lastError = null;
+            for (int attempt = 1; attempt <= TRIGGER_SEND_ATTEMPTS; attempt++) {
+                /*
+                    The owner is calculated on each attempt, a failed delivery is usually caused by a topology change
+                 */
+                Integer toNode = calculateNewEntry(newEntry, (Map<Integer, Integer>)partitionCache.get(BUCKETS));
+                Map<Integer, Address> addresses = getAddresses();
+                if (affinity) {
+                    toNode = calculateAffinityNode(newEntry, toNode, addresses.keySet());
+                }
+                NotifyTrigger nTrigger = new NotifyTrigger(currentNode, toNode, operation, tenantId, triggerId);
+                try {
+                    sendTrigger(addresses.get(toNode), nTrigger);
+                    return;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted sending trigger [" + nTrigger + "]", e);
+                } catch (Exception e) {
+                    failedBatches.incrementAndGet();
+                    log.warnf("Failed to deliver [%s], attempt %s of %s: %s", nTrigger, attempt,
+                            TRIGGER_SEND_ATTEMPTS, e.toString());
+                    lastError = e;
+                }
+            }
+            throw new IllegalStateException("Trigger operation [" + operation + "] on [" + tenantId + "/" +
+                    triggerId + "] not delivered after " + TRIGGER_SEND_ATTEMPTS + " attempts", lastError);
+        }
+    }
+
+    /*
+        Trigger operations do not share the inflight slots of the data and events, they are sent on their own and
+        the caller waits for the delivery, so they are not dropped when the data ingestion saturates the cluster.
+     */
+    private void sendTrigger(Address address, NotifyTrigger nTrigger) throws Exception {
+        if (address == null) {
+            throw new IllegalStateException("Node [" + nTrigger.getToNode() + "] is not a member");
+        }
+        log.debugf("Sending trigger [%s]", nTrigger);
+        cacheManager.executor().filterTargets(Collections.singleton(address))
+                .submit(new Delivery(nTrigger))
+                .get(sendTimeout, TimeUnit.MILLISECONDS);
+        sentBatches.incrementAndGet();
+        sentItems.incrementAndGet();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, List<String>> getLocalPartition() {
+        if (!distributed) {
+            return null;
         }
+        Map<PartitionEntry, Integer> current = (Map<PartitionEntry, Integer>) partitionCache.get(CURRENT);
+        return current == null ? null : getNodePartition(current, currentNode);
     }
 
     @Override
@@ -252,29 +393,164 @@ public class PartitionManagerImpl implements PartitionManager {
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public void notifyData(Collection<Data> data) {
         if (distributed) {
-            NotifyData nData = new NotifyData(currentNode, data, Data.class);
-            Integer key = nData.hashCode();
-            log.debugf("Sending data [%s]", nData);
-            dataCache.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES)
-                    .putAsync(key, nData, LIFESPAN, TimeUnit.MILLISECONDS);
+            Map<Integer, Address> addresses = getAddresses();
+            Map<Integer, List<Data>> nodeData = route(data, d -> new DataId(d.getTenantId(), d.getId()), routes,
+                    currentNode, addresses.keySet());
+            nodeData.entrySet().stream().forEach(e -> {
+                NotifyData nData = new NotifyData(currentNode, e.getValue(), Data.class);
+                log.debugf("Sending data [%s] to [%s]", nData, e.getKey());
+                send(addresses.get(e.getKey()), nData, e.getValue().size());
+            });
         }
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public void notifyEvents(Collection<Event> events) {
         if (distributed) {
-            NotifyData nEvent = new NotifyData(currentNode, events, Event.class);
-            Integer key = nEvent.hashCode();
-            log.debugf("Sending events [%s]", nEvent);
-            dataCache.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES)
-                    .putAsync(key, nEvent, LIFESPAN, TimeUnit.MILLISECONDS);
+            Map<Integer, Address> addresses = getAddresses();
+            Map<Integer, List<Event>> nodeEvents = route(events, e -> new DataId(e.getTenantId(), e.getDataId()),
+                    routes, currentNode, addresses.keySet());
+            nodeEvents.entrySet().stream().forEach(e -> {
+                NotifyData nEvent = new NotifyData(currentNode, e.getValue(), Event.class);
+                log.debugf("Sending events [%s] to [%s]", nEvent, e.getKey());
+                send(addresses.get(e.getKey()), nEvent, e.getValue().size());
+            });
         }
     }
 
+    @Override
+    public void notifyDataIds(Map<String, Set<String>> dataIds) {
+        if (distributed) {
+            log.debugf("Publishing dataIds [%s]", dataIds);
+            partitionCache.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES)
+                    .put(DATA_IDS + currentNode, new HashMap<>(dataIds));
+        }
+    }
+
+    /**
+     * Group the items by the nodes using their dataId, the current node is skipped as it has already processed them.
+     * An item with a dataId not published by any node is sent to all the other members: a trigger using it may have
+     * been loaded after the last publication, and the nodes not using it filter it out.
+     *
+     * @param items data or events to route
+     * @param toDataId the dataId of an item
+     * @param routes the nodes using each dataId
+     * @param currentNode the node sending the items
+     * @param members the nodes of the cluster
+     * @return the items to send to each node
+     */
+    static <T> Map<Integer, List<T>> route(Collection<T> items, Function<T, DataId> toDataId,
+            Map<DataId, List<Integer>> routes, Integer currentNode, Collection<Integer> members) {
+        Map<Integer, List<T>> nodeItems = new HashMap<>();
+        for (T item : items) {
+            List<Integer> nodes = routes.get(toDataId.apply(item));
+            for (Integer node : nodes != null ? nodes : members) {
+                if (!node.equals(currentNode)) {
+                    nodeItems.computeIfAbsent(node, n -> new ArrayList<>()).add(item);
+                }
+            }
+        }
+        return nodeItems;
+    }
+
+    /*
+        Senders wait for a free slot when maxInflight notifications are not yet delivered, so a slow node pushes back
+        on the ingestion instead of growing the transport queues.
+     */
+    private void send(Address address, Serializable notification, int numItems) {
+        if (address == null) {
+            droppedItems.addAndGet(numItems);
+            return;
+        }
+        try {
+            if (!inflight.tryAcquire(sendTimeout, TimeUnit.MILLISECONDS)) {
+                droppedItems.addAndGet(numItems);
+                log.warnf("Dropped [%s] items to [%s], [%s] batches waiting for delivery", numItems, address,
+                        maxInflight);
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            droppedItems.addAndGet(numItems);
+            return;
+        }
+        try {
+            cacheManager.executor().filterTargets(Collections.singleton(address))
+                    .submit(new Delivery(notification))
+                    .whenComplete((v, t) -> {
+                        inflight.release();
+                        if (t != null) {
+                            failedBatches.incrementAndGet();
+                            log.errorf(t, "Failed to deliver [%s] items to [%s]", numItems, address);
+                        }
+                    });
+            sentBatches.incrementAndGet();
+            sentItems.addAndGet(numItems);
+        } catch (Exception e) {
+            inflight.release();
+            failedBatches.incrementAndGet();
+            log.errorf(e, "Failed to deliver [%s] items to [%s]", numItems, address);
+        }
+    }
+
+    private Map<Integer, Address> getAddresses() {
+        Map<Integer, Address> addresses = new HashMap<>();
+        cacheManager.getMembers().stream().forEach(a -> addresses.put(a.hashCode(), a));
+        return addresses;
+    }
+
+    /*
+        Load the dataIds published by the members before this node joined
+     */
+    @SuppressWarnings("unchecked")
+    private void loadDataIds() {
+        cacheManager.getMembers().stream().forEach(a -> {
+            Map<String, Set<String>> dataIds = (Map<String, Set<String>>) partitionCache.get(DATA_IDS + a.hashCode());
+            if (dataIds != null) {
+                nodeDataIds.put(a.hashCode(), dataIds);
+            }
+        });
+        updateRoutes();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void updateDataIds(Object key, Object value) {
+        Integer node = Integer.valueOf(((String) key).substring(DATA_IDS.length()));
+        if (value == null) {
+            nodeDataIds.remove(node);
+        } else {
+            nodeDataIds.put(node, (Map<String, Set<String>>) value);
+        }
+        updateRoutes();
+    }
+
+    private synchronized void updateRoutes() {
+        routes = calculateRoutes(nodeDataIds);
+    }
+
+    /**
+     * @param nodeDataIds the dataIds used by the triggers of each node, by tenant
+     * @return the nodes using each dataId
+     */
+    static Map<DataId, List<Integer>> calculateRoutes(Map<Integer, Map<String, Set<String>>> nodeDataIds) {
+        Map<DataId, List<Integer>> newRoutes = new HashMap<>();
+        nodeDataIds.entrySet().stream().forEach(node -> {
+            node.getValue().entrySet().stream().forEach(tenant -> {
+                tenant.getValue().stream().forEach(dataId -> {
+                    newRoutes.computeIfAbsent(new DataId(tenant.getKey(), dataId), d -> new ArrayList<>())
+                            .add(node.getKey());
+                });
+            });
+        });
+        return newRoutes;
+    }
+
+    private static boolean isDataIdsKey(Object key) {
+        return key instanceof String && ((String) key).startsWith(DATA_IDS);
+    }
+
     @Override
     public void registerDataListener(PartitionDataListener dataListener) {
         dataListeners.add(dataListener);
@@ -328,7 +604,14 @@ public class PartitionManagerImpl implements PartitionManager {
                 });
             }
 
-            newPartition = calculatePartition(entries, newBuckets);
+            Map<TriggerKey, Set<String>> dataIds = publishCacheManager == null ? Collections.emptyMap() :
+                    publishCacheManager.getTriggerDataIds();
+            if (affinity) {
+                newPartition = calculateAffinityPartition(entries, newBuckets, dataIds, oldPartition, loadFactor);
+            } else {
+                newPartition = calculatePartition(entries, newBuckets);
+            }
+            reportFanOut(oldPartition, newPartition, dataIds);
             if (log.isDebugEnabled()) {
                 log.debugf("Old partition: %s", oldPartition);
                 log.debugf("New partition: %s", newPartition);
@@ -340,6 +623,9 @@ public class PartitionManagerImpl implements PartitionManager {
                 partitionCache.put(PREVIOUS, oldPartition);
             }
             partitionCache.put(CURRENT, newPartition);
+            nodeDataIds.keySet().stream()
+                    .filter(node -> !members.contains(node))
+                    .forEach(node -> partitionCache.remove(DATA_IDS + node));
             partitionCache.endBatch(true);
             partitionCache.put(PARTITION_CHANGE, new Date(), LIFESPAN, TimeUnit.MILLISECONDS);
         }
@@ -422,6 +708,162 @@ public class PartitionManagerImpl implements PartitionManager {
         return newPartition;
     }
 
+    /**
+     * Distribute triggers on nodes keeping together the triggers connected by shared dataIds, so a datum is sent to
+     * as few nodes as possible.
+     *
+     * Groups of connected triggers are placed, biggest first, on the node holding most of them on the previous
+     * partition or else on the node given by consistent hashing. A node holds at most loadFactor times an even share
+     * of the triggers. A group not fitting on its node goes to the node with more room, and a group bigger than any
+     * room left is split filling the nodes with more room.
+     *
+     * @param entries a list of entries to distribute
+     * @param buckets a table of nodes
+     * @param dataIds the dataIds used by each trigger
+     * @param previous the previous partition, null on the initial partition
+     * @param loadFactor max triggers per node relative to an even share, at least 1
+     * @return a map of entries distributed across nodes
+     */
+    public Map<PartitionEntry, Integer> calculateAffinityPartition(List<PartitionEntry> entries,
+                                                                   Map<Integer, Integer> buckets,
+                                                                   Map<TriggerKey, Set<String>> dataIds,
+                                                                   Map<PartitionEntry, Integer> previous,
+                                                                   double loadFactor) {
+        Map<PartitionEntry, Integer> hashed = calculatePartition(entries, buckets);
+        int maxLoad = (int) Math.ceil(Math.max(1.0, loadFactor) * entries.size() / buckets.size());
+        Map<Integer, Integer> load = new HashMap<>();
+        buckets.values().stream().forEach(node -> load.put(node, 0));
+
+        /*
+            Connected groups of triggers, an union-find over the entries sharing a (tenantId, dataId)
+         */
+        int[] parent = new int[entries.size()];
+        Map<DataId, Integer> firstUser = new HashMap<>();
+        for (int i = 0; i < entries.size(); i++) {
+            parent[i] = i;
+            PartitionEntry entry = entries.get(i);
+            Set<String> triggerDataIds = dataIds.get(new TriggerKey(entry.getTenantId(), entry.getTriggerId()));
+            if (triggerDataIds != null) {
+                for (String dataId : triggerDataIds) {
+                    Integer user = firstUser.putIfAbsent(new DataId(entry.getTenantId(), dataId), i);
+                    if (user != null) {
+                        parent[find(parent, i)] = find(parent, user);
+                    }
+                }
+            }
+        }
+        Map<Integer, List<PartitionEntry>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < entries.size(); i++) {
+            groups.computeIfAbsent(find(parent, i), root -> new ArrayList<>()).add(entries.get(i));
+        }
+        List<List<PartitionEntry>> sortedGroups = new ArrayList<>(groups.values());
+        sortedGroups.sort(Comparator.comparingInt((List<PartitionEntry> g) -> g.size()).reversed());
+
+        Map<PartitionEntry, Integer> newPartition = new HashMap<>();
+        for (List<PartitionEntry> group : sortedGroups) {
+            Integer node = preferredNode(group, previous, hashed, load);
+            if (load.get(node) + group.size() > maxLoad) {
+                node = leastLoaded(load);
+            }
+            for (PartitionEntry entry : group) {
+                if (load.get(node) >= maxLoad) {
+                    node = leastLoaded(load);
+                }
+                newPartition.put(entry, node);
+                load.put(node, load.get(node) + 1);
+            }
+        }
+        return newPartition;
+    }
+
+    /**
+     * Count the nodes receiving each dataId on a partition, the nodes holding a trigger using it.
+     *
+     * @param partition a map of entries distributed across nodes
+     * @param dataIds the dataIds used by each trigger
+     * @return the sum for all the dataIds of the nodes receiving it
+     */
+    public int dataFanOut(Map<PartitionEntry, Integer> partition, Map<TriggerKey, Set<String>> dataIds) {
+        Map<DataId, Set<Integer>> nodes = new HashMap<>();
+        if (partition != null) {
+            for (Entry<PartitionEntry, Integer> entry : partition.entrySet()) {
+                String tenantId = entry.getKey().getTenantId();
+                Set<String> triggerDataIds = dataIds.get(new TriggerKey(tenantId, entry.getKey().getTriggerId()));
+                if (triggerDataIds != null) {
+                    triggerDataIds.stream().forEach(dataId -> {
+                        nodes.computeIfAbsent(new DataId(tenantId, dataId), d -> new HashSet<>()).add(entry.getValue());
+                    });
+                }
+            }
+        }
+        return nodes.values().stream().mapToInt(Set::size).sum();
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /*
+        The node holding most of the group on the previous partition, or most of the group by consistent hashing
+     */
+    private static Integer preferredNode(List<PartitionEntry> group, Map<PartitionEntry, Integer> previous,
+                                         Map<PartitionEntry, Integer> hashed, Map<Integer, Integer> load) {
+        Map<Integer, Integer> votes = new HashMap<>();
+        if (previous != null) {
+            group.stream()
+                    .map(previous::get)
+                    .filter(node -> node != null && load.containsKey(node))
+                    .forEach(node -> votes.merge(node, 1, Integer::sum));
+        }
+        if (votes.isEmpty()) {
+            group.stream().forEach(entry -> votes.merge(hashed.get(entry), 1, Integer::sum));
+        }
+        return votes.entrySet().stream().max(Entry.comparingByValue()).get().getKey();
+    }
+
+    private static Integer leastLoaded(Map<Integer, Integer> load) {
+        return load.entrySet().stream().min(Entry.comparingByValue()).get().getKey();
+    }
+
+    /*
+        With the affinity strategy a trigger stays on its node of the current partition. A new trigger goes to the
+        node holding most of the triggers sharing its dataIds, or to the node given by consistent hashing.
+     */
+    @SuppressWarnings("unchecked")
+    private Integer calculateAffinityNode(PartitionEntry entry, Integer hashNode, Set<Integer> members) {
+        Map<PartitionEntry, Integer> current = (Map<PartitionEntry, Integer>) partitionCache.get(CURRENT);
+        if (current == null) {
+            return hashNode;
+        }
+        Integer node = current.get(entry);
+        if (node != null && members.contains(node)) {
+            return node;
+        }
+        Map<Integer, Integer> votes = new HashMap<>();
+        String tenantId = entry.getTenantId();
+        publishCacheManager.getDataIds(tenantId, entry.getTriggerId()).stream().forEach(dataId -> {
+            publishCacheManager.getTriggerIds(tenantId, dataId).stream()
+                    .map(triggerId -> current.get(new PartitionEntry(tenantId, triggerId)))
+                    .filter(n -> n != null && members.contains(n))
+                    .forEach(n -> votes.merge(n, 1, Integer::sum));
+        });
+        return votes.isEmpty() ? hashNode : votes.entrySet().stream().max(Entry.comparingByValue()).get().getKey();
+    }
+
+    private void reportFanOut(Map<PartitionEntry, Integer> oldPartition, Map<PartitionEntry, Integer> newPartition,
+                              Map<TriggerKey, Set<String>> dataIds) {
+        int before = dataFanOut(oldPartition, dataIds);
+        int after = dataFanOut(newPartition, dataIds);
+        status.put("dataFanOutBefore", String.valueOf(before));
+        status.put("dataFanOut", String.valueOf(after));
+        log.infof("Partition of [%s] triggers, data fan-out [%s] before and [%s] after", newPartition.size(), before,
+                after);
+    }
+
     /**
      * Distribute a new entry across buckets using a consistent hashing strategy.
      *
@@ -488,9 +930,11 @@ public class PartitionManagerImpl implements PartitionManager {
         output.put("removed", new HashMap<>());
 
         if (isEmpty(previous)) {
-            current.entrySet().stream().forEach(entry -> {
-                add(output.get("added"), entry.getKey());
-            });
+            current.entrySet().stream()
+                    .filter(entry -> entry.getValue().equals(node))
+                    .forEach(entry -> {
+                        add(output.get("added"), entry.getKey());
+                    });
         } else {
             List<PartitionEntry> previousNode = new ArrayList();
             for (Entry<PartitionEntry, Integer> entry : previous.entrySet()) {
@@ -573,177 +1017,156 @@ public class PartitionManagerImpl implements PartitionManager {
              */
             if (cacheEvent.getKey().equals(PARTITION_CHANGE)) {
                 invokePartitionChangeListener();
+            } else if (isDataIdsKey(cacheEvent.getKey())) {
+                updateDataIds(cacheEvent.getKey(), cacheEvent.getValue());
             }
         }
-    }
-
-    @Listener
-    public class NewTriggerListener {
 
-        @CacheEntryCreated
-        public void onNewNotifyTrigger(CacheEntryCreatedEvent cacheEvent) {
-            if (cacheEvent.isPre()) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Discarding pre onNewNotifyTrigger(@CacheEntryCreated) event");
-                }
-                return;
-            }
-            NotifyTrigger notifyTrigger = (NotifyTrigger)triggersCache.get(cacheEvent.getKey());
-            if (log.isDebugEnabled()) {
-                log.debugf("onNewNotifyTrigger(@CacheEntryCreated) received on %s", currentNode);
-                log.debugf("CacheEvent: %s", cacheEvent);
-                log.debugf("NotifyTrigger: %s", notifyTrigger);
+        @CacheEntryModified
+        public void onDataIdsModified(CacheEntryModifiedEvent cacheEvent) {
+            if (!cacheEvent.isPre() && isDataIdsKey(cacheEvent.getKey())) {
+                updateDataIds(cacheEvent.getKey(), cacheEvent.getValue());
             }
-            processNotifyTrigger(notifyTrigger);
         }
 
-        @CacheEntryModified
-        public void onModifiedNotifyTrigger(CacheEntryModifiedEvent cacheEvent) {
-            if (cacheEvent.isPre()) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Discarding pre onModifiedNotifyTrigger(@CacheEntryModified) event");
-                }
-                return;
-            }
-            NotifyTrigger notifyTrigger = (NotifyTrigger)triggersCache.get(cacheEvent.getKey());
-            if (log.isDebugEnabled()) {
-                log.debugf("onModifiedNotifyTrigger(@CacheEntryModified) received on %s", currentNode);
-                log.debugf("CacheEvent: %s", cacheEvent);
-                log.debugf("NotifyTrigger: %s", notifyTrigger);
+        @CacheEntryRemoved
+        public void onDataIdsRemoved(CacheEntryRemovedEvent cacheEvent) {
+            if (!cacheEvent.isPre() && isDataIdsKey(cacheEvent.getKey())) {
+                updateDataIds(cacheEvent.getKey(), null);
             }
-            processNotifyTrigger(notifyTrigger);
         }
+    }
 
+    /*
+        When a trigger is added, updated or removed it should be notified on the PartitionManager.
+        PartitionManager sends the operation to the node owning the trigger, which places the trigger on the partition
+        and invokes the PartitionTriggerListener previously registered to process the event.
+     */
+    @SuppressWarnings("unchecked")
+    private void processNotifyTrigger(NotifyTrigger notifyTrigger) {
+        if (log.isDebugEnabled()) {
+            log.debugf("processNotifyTrigger received on %s", currentNode);
+            log.debugf("NotifyTrigger: %s", notifyTrigger);
+        }
         /*
-            When a trigger is added, updated or removed it should be notified on the PartitionManager.
-            PartitionManager adds an entry on "triggers" cache to fire an event that will place the trigger
-            on the partition and invoke PartitionTriggerListener previously registered to process the event.
+            A trigger should be processed on the target node
          */
-        @SuppressWarnings("unchecked")
-        private void processNotifyTrigger(NotifyTrigger notifyTrigger) {
+        if (null != notifyTrigger.toNode && null != currentNode && notifyTrigger.toNode.equals(currentNode)) {
             /*
-                A trigger should be processed on the target node
+                Update partition
              */
-            if (null != notifyTrigger.toNode && null != currentNode && notifyTrigger.toNode.equals(currentNode)) {
-                /*
-                    Update partition
-                 */
-                Map<PartitionEntry, Integer> current = (Map) partitionCache.get(CURRENT);
-                PartitionEntry newEntry = new PartitionEntry(notifyTrigger.getTenantId(),
-                        notifyTrigger.getTriggerId());
-                boolean exist = current.containsKey(newEntry);
-                if (exist) {
-                    Integer partitionNode = current.get(newEntry);
-                    switch (notifyTrigger.getOperation()) {
-                        case ADD:
-                        case UPDATE:
-                            /*
-                                Partition is updated if information is outdated
-                             */
-                            if (!partitionNode.equals(currentNode)) {
-                                modifyPartition(newEntry, current, notifyTrigger.getOperation());
-                            }
-                            break;
-                        case REMOVE:
+            Map<PartitionEntry, Integer> current = (Map) partitionCache.get(CURRENT);
+            PartitionEntry newEntry = new PartitionEntry(notifyTrigger.getTenantId(),
+                    notifyTrigger.getTriggerId());
+            boolean exist = current.containsKey(newEntry);
+            if (exist) {
+                Integer partitionNode = current.get(newEntry);
+                switch (notifyTrigger.getOperation()) {
+                    case ADD:
+                    case UPDATE:
+                        /*
+                            Partition is updated if information is outdated
+                         */
+                        if (!partitionNode.equals(currentNode)) {
                             modifyPartition(newEntry, current, notifyTrigger.getOperation());
-                            break;
-                    }
-                } else {
-                    if (!notifyTrigger.getOperation().equals(Operation.REMOVE)) {
+                        }
+                        break;
+                    case REMOVE:
                         modifyPartition(newEntry, current, notifyTrigger.getOperation());
-                    }
+                        break;
                 }
-                /*
-                    Finally invoke listener
-                 */
-                if (!triggerListeners.isEmpty()) {
-                    triggerListeners.stream().forEach(triggerListener -> {
-                        triggerListener.onTriggerChange(notifyTrigger.getOperation(), notifyTrigger.getTenantId(),
-                                notifyTrigger.getTriggerId());
-                    });
+            } else {
+                if (!notifyTrigger.getOperation().equals(Operation.REMOVE)) {
+                    modifyPartition(newEntry, current, notifyTrigger.getOperation());
                 }
             }
+            /*
+                Finally invoke listener
+             */
+            if (!triggerListeners.isEmpty()) {
+                triggerListeners.stream().forEach(triggerListener -> {
+                    triggerListener.onTriggerChange(notifyTrigger.getOperation(), notifyTrigger.getTenantId(),
+                            notifyTrigger.getTriggerId());
+                });
+            }
         }
+    }
 
-        @SuppressWarnings("unchecked")
-        private void modifyPartition(PartitionEntry entry, Map<PartitionEntry, Integer> current, Operation operation) {
-            Map<PartitionEntry, Integer> newPartition= new HashMap<>(current);
-            if (operation.equals(Operation.REMOVE)) {
-                newPartition.remove(entry);
-            } else {
-                newPartition.put(entry, currentNode);
-            }
-            partitionCache.startBatch();
-            partitionCache.put(PREVIOUS, current);
-            partitionCache.put(CURRENT, newPartition);
-            partitionCache.endBatch(true);
-            if (log.isDebugEnabled()) {
-                log.debug("modifyPartition()");
-                log.debugf("Previous: %s", current);
-                log.debugf("Current: %s", newPartition);
-            }
+    @SuppressWarnings("unchecked")
+    private void modifyPartition(PartitionEntry entry, Map<PartitionEntry, Integer> current, Operation operation) {
+        Map<PartitionEntry, Integer> newPartition= new HashMap<>(current);
+        if (operation.equals(Operation.REMOVE)) {
+            newPartition.remove(entry);
+        } else {
+            newPartition.put(entry, currentNode);
+        }
+        partitionCache.startBatch();
+        partitionCache.put(PREVIOUS, current);
+        partitionCache.put(CURRENT, newPartition);
+        partitionCache.endBatch(true);
+        if (log.isDebugEnabled()) {
+            log.debug("modifyPartition()");
+            log.debugf("Previous: %s", current);
+            log.debugf("Current: %s", newPartition);
         }
+    }
 
+    /*
+        When a new data/event is added it should be notified on the PartitionManager.
+        PartitionManager sends a batch to each node using the dataIds, invoking on the node the previously registered
+        PartitionDataListener.
+     */
+    private void processNotifyData(NotifyData notifyData) {
+        if (log.isDebugEnabled()) {
+            log.debugf("processNotifyData received on %s", currentNode);
+            log.debugf("NotifyData: %s", notifyData);
+        }
+        receivedBatches.incrementAndGet();
+        /*
+            Finally invoke listener on non-sender nodes
+         */
+        if (!dataListeners.isEmpty() && !currentNode.equals(notifyData.getFromNode())) {
+            if (notifyData.getDataCollection() != null) {
+                receivedItems.addAndGet(notifyData.getDataCollection().size());
+                dataListeners.stream().forEach(dataListener -> {
+                    dataListener.onNewData(notifyData.getDataCollection());
+                });
+            } else if (notifyData.getEventCollection() != null) {
+                receivedItems.addAndGet(notifyData.getEventCollection().size());
+                dataListeners.stream().forEach(dataListener -> {
+                    dataListener.onNewEvents(notifyData.getEventCollection());
+                });
+            }
+        }
     }
 
-    @Listener
-    public class NewDataListener {
+    /**
+     * Auxiliary class to send a NotifyTrigger or a NotifyData to another node.
+     * It is executed on the target node, where it hands the notification to the local PartitionManager.
+     */
+    public static class Delivery implements Runnable, Serializable {
+        private Serializable notification;
 
-        @CacheEntryCreated
-        public void onNewNotifyData(CacheEntryCreatedEvent cacheEvent) {
-            if (cacheEvent.isPre()) {
-                log.debug("Discarding pre onNewNotifyData(@CacheEntryCreated) event");
-                return;
-            }
-            NotifyData notifyData = (NotifyData)dataCache.get(cacheEvent.getKey());
-            if (log.isDebugEnabled()) {
-                log.debug("onNewNotifyData(@CacheEntryCreated) received.");
-                log.debugf("NotifyData: %s", notifyData);
-            }
-            processNotifyData(notifyData);
+        public Delivery(Serializable notification) {
+            this.notification = notification;
         }
 
-        @CacheEntryModified
-        public void onModifiedNotifyData(CacheEntryModifiedEvent cacheEvent) {
-            if (cacheEvent.isPre()) {
-                log.debug("Discarding pre onModifiedNotifyData(@CacheEntryModified) event");
+        @Override
+        public void run() {
+            PartitionManagerImpl partitionManager = instance;
+            if (partitionManager == null) {
                 return;
             }
-            NotifyData notifyData = (NotifyData)dataCache.get(cacheEvent.getKey());
-            if (log.isDebugEnabled()) {
-                log.debug("onModifiedNotifyData(@CacheEntryModified) received.");
-                log.debugf("NotifyData: %s", notifyData);
-            }
-            processNotifyData(notifyData);
-        }
-
-            /*
-                When a new data/event is added it should be notified on the PartitionManager.
-                PartitionManager adds an entry on "data" cache to fire an event that will propagate the
-                across the nodes invoking previously registered PartitionDataListener.
-             */
-
-        private void processNotifyData(NotifyData notifyData) {
-            /*
-                Finally invoke listener on non-sender nodes
-             */
-            if (!dataListeners.isEmpty() && notifyData.getFromNode() != currentNode) {
-                if (notifyData.getDataCollection() != null) {
-                    dataListeners.stream().forEach(dataListener -> {
-                        log.debugf("processNotifyData [%s]", notifyData);
-                        dataListener.onNewData(notifyData.getDataCollection());
-                    });
-                } else if (notifyData.getEventCollection() != null) {
-                    dataListeners.stream().forEach(dataListener -> {
-                        dataListener.onNewEvents(notifyData.getEventCollection());
-                    });
-                }
+            if (notification instanceof NotifyTrigger) {
+                partitionManager.processNotifyTrigger((NotifyTrigger) notification);
+            } else if (notification instanceof NotifyData) {
+                partitionManager.processNotifyData((NotifyData) notification);
             }
         }
     }
 
     /**
-     * Auxiliary class to store in the cache an operation for a Trigger.
+     * Auxiliary class to send an operation for a Trigger.
      * Used internally in the context of the PartitionManager services.
      */
     public static class NotifyTrigger implements Serializable {
@@ -839,7 +1262,7 @@ public class PartitionManagerImpl implements PartitionManager {
     }
 
     /**
-     * Auxiliary class to store in the cache an operation for a Data/Event
+     * Auxiliary class to send a collection of Data/Event
      * Used internally in the context of the PartitionManager services.
      */
     public static class NotifyData implements Serializable {
@@ -16,10 +16,13 @@
  */
 package org.hawkular.alerts.engine.impl;
 
+import java.util.Collections;
 import java.util.Map;
 
 import org.hawkular.alerts.api.services.StatusService;
+import org.hawkular.alerts.engine.service.IncomingDataManager;
 import org.hawkular.alerts.engine.service.PartitionManager;
+import org.hawkular.alerts.engine.util.AlertsExecutors;
 
 /**
  * An implementation of {@link org.hawkular.alerts.api.services.StatusService}.
@@ -31,10 +34,22 @@ public class StatusServiceImpl implements StatusService {
 
     PartitionManager partitionManager;
 
+    IncomingDataManager incomingDataManager;
+
+    AlertsExecutors executors;
+
     public void setPartitionManager(PartitionManager partitionManager) {
         this.partitionManager = partitionManager;
     }
 
+    public void setIncomingDataManager(IncomingDataManager incomingDataManager) {
+        this.incomingDataManager = incomingDataManager;
+    }
+
+    public void setExecutors(AlertsExecutors executors) {
+        this.executors = executors;
+    }
+
     @Override
     public boolean isStarted() {
         // TODO [lponce] this test is quite simple and with a different backend perhaps it doesnt give enough info
@@ -52,4 +67,14 @@ public class StatusServiceImpl implements StatusService {
     public Map<String, String> getDistributedStatus() {
         return partitionManager.getStatus();
     }
+
+    @Override
+    public Map<String, String> getIngestionStatus() {
+        return incomingDataManager == null ? Collections.emptyMap() : incomingDataManager.getStatus();
+    }
+
+    @Override
+    public Map<String, String> getExecutorsStatus() {
+        return executors == null ? Collections.emptyMap() : executors.getStatus();
+    }
 }
@@ -0,0 +1,355 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl.ispn;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.hawkular.alerts.api.model.action.ActionDefinition;
+import org.hawkular.alerts.api.model.condition.AvailabilityCondition;
+import org.hawkular.alerts.api.model.condition.CompareCondition;
+import org.hawkular.alerts.api.model.condition.Condition;
+import org.hawkular.alerts.api.model.condition.EventCondition;
+import org.hawkular.alerts.api.model.condition.ExternalCondition;
+import org.hawkular.alerts.api.model.condition.MissingCondition;
+import org.hawkular.alerts.api.model.condition.NelsonCondition;
+import org.hawkular.alerts.api.model.condition.RateCondition;
+import org.hawkular.alerts.api.model.condition.StringCondition;
+import org.hawkular.alerts.api.model.condition.ThresholdCondition;
+import org.hawkular.alerts.api.model.condition.ThresholdRangeCondition;
+import org.hawkular.alerts.api.model.dampening.Dampening;
+import org.hawkular.alerts.api.model.trigger.Mode;
+import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.hawkular.alerts.engine.impl.ispn.model.IspnActionDefinition;
+import org.hawkular.alerts.engine.impl.ispn.model.IspnActionPlugin;
+import org.hawkular.alerts.engine.impl.ispn.model.IspnCondition;
+import org.hawkular.alerts.engine.impl.ispn.model.IspnDampening;
+import org.hawkular.alerts.engine.impl.ispn.model.IspnTrigger;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryCreated;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryModified;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.event.CacheEntryCreatedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryModifiedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
+
+/**
+ * Read-through, in-memory projection of the definitions most frequently read by the engine, the actions service and
+ * the alerters: triggers, trigger conditions, trigger dampenings, action definitions and action plugin defaults.
+ *
+ * Entries are kept per tenant.  Every tenant has a version that is increased each time one of its definitions is
+ * written in the backend, invalidations are driven by a synchronous listener on the backend cache so the projection
+ * is already consistent when the write returns, before any inline engine reload or DefinitionsEvent notification.
+ * A value read from the backend is only cached if the tenant version did not change while it was being read.
+ *
+ * Cached instances are never handed out, readers always get their own copies.
+ */
+public class DefinitionsCache {
+    @FunctionalInterface
+    public interface Loader<T> {
+        T load() throws Exception;
+    }
+
+    private final Map<String, TenantDefinitions> tenants = new ConcurrentHashMap<>();
+
+    /*
+        Action plugins are not tenant scoped, they are versioned under its own projection
+     */
+    private final TenantDefinitions global = new TenantDefinitions();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private final BackendListener backendListener = new BackendListener();
+
+    public Object getBackendListener() {
+        return backendListener;
+    }
+
+    public Trigger getTrigger(String tenantId, String triggerId, Loader<Trigger> loader) throws Exception {
+        TenantDefinitions tenant = tenant(tenantId);
+        Trigger trigger = get(tenant, tenant.triggers, triggerId, loader);
+        return trigger == null ? null : new Trigger(trigger);
+    }
+
+    public Collection<Condition> getTriggerConditions(String tenantId, String triggerId, Mode triggerMode,
+            Loader<List<Condition>> loader) throws Exception {
+        TenantDefinitions tenant = tenant(tenantId);
+        List<Condition> conditions = get(tenant, tenant.conditions, triggerId, loader);
+        List<Condition> result = new ArrayList<>();
+        if (conditions != null) {
+            for (Condition c : conditions) {
+                if (null == triggerMode || triggerMode == c.getTriggerMode()) {
+                    result.add(copy(c));
+                }
+            }
+        }
+        return result;
+    }
+
+    public Collection<Dampening> getTriggerDampenings(String tenantId, String triggerId, Mode triggerMode,
+            Loader<List<Dampening>> loader) throws Exception {
+        TenantDefinitions tenant = tenant(tenantId);
+        List<Dampening> dampenings = get(tenant, tenant.dampenings, triggerId, loader);
+        List<Dampening> result = new ArrayList<>();
+        if (dampenings != null) {
+            for (Dampening d : dampenings) {
+                if (null == triggerMode || triggerMode == d.getTriggerMode()) {
+                    result.add(new Dampening(d));
+                }
+            }
+        }
+        return result;
+    }
+
+    public ActionDefinition getActionDefinition(String tenantId, String actionPlugin, String actionId,
+            Loader<ActionDefinition> loader) throws Exception {
+        TenantDefinitions tenant = tenant(tenantId);
+        ActionDefinition actionDefinition = get(tenant, tenant.actionDefinitions, actionKey(actionPlugin, actionId),
+                loader);
+        return actionDefinition == null ? null : new ActionDefinition(actionDefinition);
+    }
+
+    public Map<String, String> getDefaultActionPlugin(String actionPlugin, Loader<Map<String, String>> loader)
+            throws Exception {
+        Map<String, String> defaultProperties = get(global, global.actionPlugins, actionPlugin, loader);
+        return defaultProperties == null ? null : new HashMap<>(defaultProperties);
+    }
+
+    /**
+     * @param tenantId the tenant
+     * @return a point in time view of the definitions of the tenant currently held by the cache, all taken at the
+     * same tenant version.  Definitions not yet read through the cache are not part of the snapshot.
+     */
+    public Snapshot snapshot(String tenantId) {
+        TenantDefinitions tenant = tenant(tenantId);
+        synchronized (tenant) {
+            Snapshot snapshot = new Snapshot(tenantId, tenant.version);
+            tenant.triggers.forEach((triggerId, trigger) -> snapshot.triggers.put(triggerId, new Trigger(trigger)));
+            tenant.conditions.forEach((triggerId, conditions) -> {
+                List<Condition> copies = new ArrayList<>(conditions.size());
+                conditions.forEach(c -> copies.add(copy(c)));
+                snapshot.conditions.put(triggerId, copies);
+            });
+            tenant.dampenings.forEach((triggerId, dampenings) -> {
+                List<Dampening> copies = new ArrayList<>(dampenings.size());
+                dampenings.forEach(d -> copies.add(new Dampening(d)));
+                snapshot.dampenings.put(triggerId, copies);
+            });
+            return snapshot;
+        }
+    }
+
+    public long getVersion(String tenantId) {
+        return tenant(tenantId).version;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public void clear() {
+        synchronized (global) {
+            global.invalidateAll();
+        }
+        for (TenantDefinitions tenant : tenants.values()) {
+            synchronized (tenant) {
+                tenant.invalidateAll();
+            }
+        }
+    }
+
+    private TenantDefinitions tenant(String tenantId) {
+        return tenants.computeIfAbsent(tenantId, t -> new TenantDefinitions());
+    }
+
+    private <T> T get(TenantDefinitions tenant, Map<String, T> entries, String key, Loader<T> loader)
+            throws Exception {
+        T value = entries.get(key);
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        long version = tenant.version;
+        value = loader.load();
+        if (value != null) {
+            synchronized (tenant) {
+                if (version == tenant.version) {
+                    entries.put(key, value);
+                }
+            }
+        }
+        return value;
+    }
+
+    private static String actionKey(String actionPlugin, String actionId) {
+        return actionPlugin + "|" + actionId;
+    }
+
+    static Condition copy(Condition condition) {
+        switch (condition.getType()) {
+            case AVAILABILITY:
+                return new AvailabilityCondition((AvailabilityCondition) condition);
+            case COMPARE:
+                return new CompareCondition((CompareCondition) condition);
+            case EVENT:
+                return new EventCondition((EventCondition) condition);
+            case EXTERNAL:
+                return new ExternalCondition((ExternalCondition) condition);
+            case MISSING:
+                return new MissingCondition((MissingCondition) condition);
+            case NELSON:
+                return new NelsonCondition((NelsonCondition) condition);
+            case RANGE:
+                return new ThresholdRangeCondition((ThresholdRangeCondition) condition);
+            case RATE:
+                return new RateCondition((RateCondition) condition);
+            case STRING:
+                return new StringCondition((StringCondition) condition);
+            case THRESHOLD:
+                return new ThresholdCondition((ThresholdCondition) condition);
+            default:
+                throw new IllegalArgumentException("Unexpected Condition type: " + condition.getType().name());
+        }
+    }
+
+    private void invalidate(Object value) {
+        if (value instanceof IspnTrigger) {
+            IspnTrigger ispnTrigger = (IspnTrigger) value;
+            invalidate(ispnTrigger.getTenantId(), t -> t.triggers.remove(ispnTrigger.getTriggerId()));
+        } else if (value instanceof IspnCondition) {
+            IspnCondition ispnCondition = (IspnCondition) value;
+            invalidate(ispnCondition.getTenantId(), t -> t.conditions.remove(ispnCondition.getTriggerId()));
+        } else if (value instanceof IspnDampening) {
+            IspnDampening ispnDampening = (IspnDampening) value;
+            invalidate(ispnDampening.getTenantId(), t -> t.dampenings.remove(ispnDampening.getTriggerId()));
+        } else if (value instanceof IspnActionDefinition) {
+            IspnActionDefinition ispnAction = (IspnActionDefinition) value;
+            invalidate(ispnAction.getTenantId(), t -> t.actionDefinitions
+                    .remove(actionKey(ispnAction.getActionPlugin(), ispnAction.getActionId())));
+        } else if (value instanceof IspnActionPlugin) {
+            synchronized (global) {
+                global.version++;
+                global.actionPlugins.remove(((IspnActionPlugin) value).getActionPlugin());
+            }
+        }
+    }
+
+    private void invalidate(String tenantId, Consumer<TenantDefinitions> eviction) {
+        TenantDefinitions tenant = tenants.get(tenantId);
+        if (tenant == null) {
+            return;
+        }
+        synchronized (tenant) {
+            tenant.version++;
+            eviction.accept(tenant);
+        }
+    }
+
+    private static class TenantDefinitions {
+        /*
+            Guarded by the TenantDefinitions monitor on writes, read without locking by the loaders
+         */
+        private volatile long version = 0;
+        private final Map<String, Trigger> triggers = new ConcurrentHashMap<>();
+        private final Map<String, List<Condition>> conditions = new ConcurrentHashMap<>();
+        private final Map<String, List<Dampening>> dampenings = new ConcurrentHashMap<>();
+        private final Map<String, ActionDefinition> actionDefinitions = new ConcurrentHashMap<>();
+        private final Map<String, Map<String, String>> actionPlugins = new ConcurrentHashMap<>();
+
+        private void invalidateAll() {
+            version++;
+            triggers.clear();
+            conditions.clear();
+            dampenings.clear();
+            actionDefinitions.clear();
+            actionPlugins.clear();
+        }
+    }
+
+    /**
+     * Definitions of a tenant held by the cache at a given version.
+     */
+    public static class Snapshot {
+        private final String tenantId;
+        private final long version;
+        private final Map<String, Trigger> triggers = new HashMap<>();
+        private final Map<String, List<Condition>> conditions = new HashMap<>();
+        private final Map<String, List<Dampening>> dampenings = new HashMap<>();
+
+        private Snapshot(String tenantId, long version) {
+            this.tenantId = tenantId;
+            this.version = version;
+        }
+
+        public String getTenantId() {
+            return tenantId;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public Map<String, Trigger> getTriggers() {
+            return Collections.unmodifiableMap(triggers);
+        }
+
+        public Map<String, List<Condition>> getConditions() {
+            return Collections.unmodifiableMap(conditions);
+        }
+
+        public Map<String, List<Dampening>> getDampenings() {
+            return Collections.unmodifiableMap(dampenings);
+        }
+    }
+
+    @Listener
+    public class BackendListener {
+        @CacheEntryCreated
+        public void onCreated(CacheEntryCreatedEvent<String, Object> event) {
+            if (!event.isPre()) {
+                invalidate(event.getValue());
+            }
+        }
+
+        @CacheEntryModified
+        public void onModified(CacheEntryModifiedEvent<String, Object> event) {
+            if (!event.isPre()) {
+                invalidate(event.getValue());
+            }
+        }
+
+        @CacheEntryRemoved
+        public void onRemoved(CacheEntryRemovedEvent<String, Object> event) {
+            if (!event.isPre()) {
+                invalidate(event.getOldValue());
+            }
+        }
+    }
+}
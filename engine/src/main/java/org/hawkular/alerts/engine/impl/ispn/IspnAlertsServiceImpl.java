@@ -19,6 +19,7 @@ package org.hawkular.alerts.engine.impl.ispn;
 import static org.hawkular.alerts.api.util.Util.isEmpty;
 import static org.hawkular.alerts.engine.impl.ispn.IspnPk.pk;
 import static org.hawkular.alerts.engine.impl.ispn.IspnPk.pkFromEventId;
+import static org.hawkular.alerts.engine.impl.ispn.IspnPk.pkFromTriggerSnapshot;
 import static org.hawkular.alerts.engine.tags.ExpressionTagQueryParser.ExpressionTagResolver.EQ;
 import static org.hawkular.alerts.engine.tags.ExpressionTagQueryParser.ExpressionTagResolver.NEQ;
 import static org.hawkular.alerts.engine.util.Utils.extractAlertIds;
@@ -28,17 +29,23 @@ import static org.hawkular.alerts.engine.util.Utils.extractSeverity;
 import static org.hawkular.alerts.engine.util.Utils.extractStatus;
 import static org.hawkular.alerts.engine.util.Utils.extractTriggerIds;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.hawkular.alerts.api.model.Severity;
+import org.hawkular.alerts.api.json.JsonUtil;
 import org.hawkular.alerts.api.model.condition.ConditionEval;
+import org.hawkular.alerts.api.model.dampening.Dampening;
 import org.hawkular.alerts.api.model.data.Data;
 import org.hawkular.alerts.api.model.event.Alert;
 import org.hawkular.alerts.api.model.event.Alert.Status;
@@ -60,12 +67,15 @@ import org.hawkular.alerts.api.services.PropertiesService;
 import org.hawkular.alerts.cache.IspnCacheManager;
 import org.hawkular.alerts.engine.impl.IncomingDataManagerImpl;
 import org.hawkular.alerts.engine.impl.ispn.model.IspnEvent;
+import org.hawkular.alerts.engine.impl.ispn.model.IspnTriggerSnapshot;
 import org.hawkular.alerts.engine.impl.ispn.model.TagsBridge;
 import org.hawkular.alerts.engine.service.AlertsEngine;
 import org.hawkular.alerts.engine.service.IncomingDataManager;
 import org.hawkular.alerts.log.AlertingLogger;
 import org.hawkular.commons.log.MsgLogging;
+import org.hawkular.commons.properties.HawkularProperties;
 import org.infinispan.Cache;
+import org.infinispan.container.entries.CacheEntry;
 import org.infinispan.query.Search;
 import org.infinispan.query.dsl.QueryFactory;
 
@@ -76,6 +86,24 @@ import org.infinispan.query.dsl.QueryFactory;
 public class IspnAlertsServiceImpl implements AlertsService {
     private static final AlertingLogger log = MsgLogging.getMsgLogger(AlertingLogger.class, IspnAlertsServiceImpl.class);
 
+    /*
+        Store the Trigger and Dampening of events and alerts once per version instead of embedding them
+     */
+    private static final String BACKEND_NORMALIZED_EVENTS = "hawkular-alerts.backend-normalized-events";
+    private static final String BACKEND_NORMALIZED_EVENTS_ENV = "HAWKULAR_ALERTS_BACKEND_NORMALIZED_EVENTS";
+    private static final String BACKEND_NORMALIZED_EVENTS_DEFAULT = "true";
+
+    private static final int SNAPSHOTS_CACHE_SIZE = 10000;
+
+    private static final int TAG_QUERIES_CACHE_SIZE = 1000;
+
+    /*
+        Retention rules of events and alerts, see RetentionPolicy for the format
+     */
+    private static final String BACKEND_RETENTION = "hawkular-alerts.backend-retention";
+    private static final String BACKEND_RETENTION_ENV = "HAWKULAR_ALERTS_BACKEND_RETENTION";
+    private static final String BACKEND_RETENTION_DEFAULT = "";
+
     AlertsEngine alertsEngine;
 
     DefinitionsService definitionsService;
@@ -92,6 +120,47 @@ public class IspnAlertsServiceImpl implements AlertsService {
 
     IspnExpressionTagQueryParser parser;
 
+    boolean normalizedEvents;
+
+    RetentionPolicy retentionPolicy;
+
+    // Recently used trigger snapshots, by pk
+    private final Map<String, IspnTriggerSnapshot> snapshots =
+            Collections.synchronizedMap(new LinkedHashMap<String, IspnTriggerSnapshot>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, IspnTriggerSnapshot> eldest) {
+                    return size() > SNAPSHOTS_CACHE_SIZE;
+                }
+            });
+
+    // Expiration time of the stored trigger snapshots known by this node, by pk
+    private final Map<String, Long> snapshotExpirations =
+            Collections.synchronizedMap(new LinkedHashMap<String, Long>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > SNAPSHOTS_CACHE_SIZE;
+                }
+            });
+
+    // Snapshot versions of the recently used Trigger and Dampening instances, so the json is fingerprinted once per
+    // instance and not once per event
+    private final Map<SnapshotKey, String> snapshotVersions =
+            Collections.synchronizedMap(new LinkedHashMap<SnapshotKey, String>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<SnapshotKey, String> eldest) {
+                    return size() > SNAPSHOTS_CACHE_SIZE;
+                }
+            });
+
+    // Recently used tag queries, resolved as ickle query fragments with their tag regexes, by tag query
+    private final Map<String, String> tagQueries =
+            Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > TAG_QUERIES_CACHE_SIZE;
+                }
+            });
+
     public void init() {
         backend = IspnCacheManager.getCacheManager().getCache("backend");
         if (backend == null) {
@@ -99,6 +168,13 @@ public class IspnAlertsServiceImpl implements AlertsService {
             throw new RuntimeException("backend cache not found");
         }
         queryFactory = Search.getQueryFactory(backend);
+        normalizedEvents = Boolean.parseBoolean(HawkularProperties.getProperty(BACKEND_NORMALIZED_EVENTS,
+                BACKEND_NORMALIZED_EVENTS_ENV, BACKEND_NORMALIZED_EVENTS_DEFAULT));
+        retentionPolicy = RetentionPolicy.parse(HawkularProperties.getProperty(BACKEND_RETENTION,
+                BACKEND_RETENTION_ENV, BACKEND_RETENTION_DEFAULT));
+        if (retentionPolicy.hasRules()) {
+            log.infof("Events and alerts retention: %s", retentionPolicy);
+        }
         parser = new IspnExpressionTagQueryParser((tokens, query) -> {
             if (tokens != null) {
                 String tag;
@@ -204,6 +280,10 @@ public class IspnAlertsServiceImpl implements AlertsService {
         this.properties = properties;
     }
 
+    public RetentionPolicy getRetentionPolicy() {
+        return retentionPolicy;
+    }
+
     @Override
     public void ackAlerts(String tenantId, Collection<String> alertIds, String ackBy, String ackNotes) throws Exception {
         if (isEmpty(tenantId)) {
@@ -227,7 +307,7 @@ public class IspnAlertsServiceImpl implements AlertsService {
         for (Alert alert : alertsToAck) {
             alert.addNote(ackBy, ackNotes);
             alert.addLifecycle(Status.ACKNOWLEDGED, ackBy, System.currentTimeMillis());
-            backend.put(pk(alert), new IspnEvent(alert));
+            putEvent(alert);
             sendAction(alert);
         }
     }
@@ -242,7 +322,7 @@ public class IspnAlertsServiceImpl implements AlertsService {
         }
         log.debugf("Adding %s alerts", alerts.size());
         for (Alert alert : alerts) {
-            backend.put(pk(alert), new IspnEvent(alert));
+            putEvent(alert);
         }
     }
 
@@ -264,7 +344,7 @@ public class IspnAlertsServiceImpl implements AlertsService {
 
         for (Alert alert : existingAlerts) {
             tags.entrySet().stream().forEach(tag -> alert.addTag(tag.getKey(), tag.getValue()));
-            backend.put(pk(alert), new IspnEvent(alert));
+            putEvent(alert);
         }
     }
 
@@ -295,7 +375,7 @@ public class IspnAlertsServiceImpl implements AlertsService {
 
         for (Event event : existingEvents) {
             tags.entrySet().stream().forEach(tag -> event.addTag(tag.getKey(), tag.getValue()));
-            backend.put(pk(event), new IspnEvent(event));
+            putEvent(event);
         }
     }
 
@@ -309,7 +389,7 @@ public class IspnAlertsServiceImpl implements AlertsService {
         }
         log.debugf("Adding %s events", events.size());
         for (Event event : events) {
-            backend.put(pk(event), new IspnEvent(event));
+            putEvent(event);
         }
     }
 
@@ -332,7 +412,7 @@ public class IspnAlertsServiceImpl implements AlertsService {
 
         alert.addNote(user, text);
 
-        backend.put(pk(alert), new IspnEvent(alert));
+        putEvent(alert);
     }
 
     @Override
@@ -402,7 +482,11 @@ public class IspnAlertsServiceImpl implements AlertsService {
 
         String pk = pkFromEventId(tenantId, alertId);
         IspnEvent ispnEvent = (IspnEvent) backend.get(pk);
-        return ispnEvent != null && ispnEvent.getEvent() instanceof Alert ? (Alert) ispnEvent.getEvent() : null;
+        if (ispnEvent == null || !EventType.ALERT.name().equals(ispnEvent.getEventType())) {
+            return null;
+        }
+        Event event = fromIspnEvent(ispnEvent, thin);
+        return event instanceof Alert ? (Alert) event : null;
     }
 
     @Override
@@ -542,16 +626,10 @@ public class IspnAlertsServiceImpl implements AlertsService {
         }
 
         List<IspnEvent> ispnEvents = queryFactory.create(query.toString()).list();
-        List<Alert> alerts = ispnEvents.stream().map(ispnEvent -> {
-            if (criteria != null && criteria.isThin()) {
-                Alert alert = new Alert((Alert) ispnEvent.getEvent());
-                alert.setDampening(null);
-                alert.setEvalSets(null);
-                alert.setResolvedEvalSets(null);
-                return alert;
-            }
-            return (Alert) ispnEvent.getEvent();
-        }).collect(Collectors.toList());
+        boolean thin = criteria != null && criteria.isThin();
+        List<Alert> alerts = ispnEvents.stream()
+                .map(ispnEvent -> (Alert) fromIspnEvent(ispnEvent, thin))
+                .collect(Collectors.toList());
         if (alerts.isEmpty()) {
             return new Page<>(alerts, pager, 0);
         } else {
@@ -570,7 +648,7 @@ public class IspnAlertsServiceImpl implements AlertsService {
 
         String pk = pkFromEventId(tenantId, eventId);
         IspnEvent ispnEvent = (IspnEvent) backend.get(pk);
-        return ispnEvent != null ? ispnEvent.getEvent() : null;
+        return ispnEvent != null ? fromIspnEvent(ispnEvent, thin) : null;
     }
 
     @Override
@@ -666,7 +744,8 @@ public class IspnAlertsServiceImpl implements AlertsService {
         }
 
         List<IspnEvent> ispnEvents = queryFactory.create(query.toString()).list();
-        List<Event> events = ispnEvents.stream().map(e -> e.getEvent()).collect(Collectors.toList());
+        boolean thin = criteria != null && criteria.isThin();
+        List<Event> events = ispnEvents.stream().map(e -> fromIspnEvent(e, thin)).collect(Collectors.toList());
         if (events.isEmpty()) {
             return new Page<>(events, pager, 0);
         } else {
@@ -700,7 +779,7 @@ public class IspnAlertsServiceImpl implements AlertsService {
                 }
             }
             if (modified) {
-                backend.put(pk(alert), new IspnEvent(alert));
+                putEvent(alert);
             }
         }
     }
@@ -731,7 +810,7 @@ public class IspnAlertsServiceImpl implements AlertsService {
                 }
             }
             if (modified) {
-                backend.put(pk(event), new IspnEvent(event));
+                putEvent(event);
             }
         }
     }
@@ -761,7 +840,7 @@ public class IspnAlertsServiceImpl implements AlertsService {
             alert.addNote(resolvedBy, resolvedNotes);
             alert.setResolvedEvalSets(resolvedEvalSets);
             alert.addLifecycle(Status.RESOLVED, resolvedBy, System.currentTimeMillis());
-            backend.put(pk(alert), new IspnEvent(alert));
+            putEvent(alert);
             sendAction(alert);
         }
 
@@ -798,7 +877,7 @@ public class IspnAlertsServiceImpl implements AlertsService {
             alert.addNote(resolvedBy, resolvedNotes);
             alert.setResolvedEvalSets(resolvedEvalSets);
             alert.addLifecycle(Status.RESOLVED, resolvedBy, System.currentTimeMillis());
-            backend.put(pk(alert), new IspnEvent(alert));
+            putEvent(alert);
             sendAction(alert);
         }
 
@@ -845,11 +924,145 @@ public class IspnAlertsServiceImpl implements AlertsService {
     }
 
     protected void parseTagQuery(String tagQuery, StringBuilder query) throws Exception {
-        parser.resolveQuery(tagQuery, query);
+        String resolved = tagQueries.get(tagQuery);
+        if (resolved == null) {
+            StringBuilder tagQueryBuilder = new StringBuilder();
+            parser.resolveQuery(tagQuery, tagQueryBuilder);
+            resolved = tagQueryBuilder.toString();
+            tagQueries.put(tagQuery, resolved);
+        }
+        query.append(resolved);
     }
 
     // Private methods
 
+    /*
+        Events and alerts are stored with the lifespan left by the retention policy, an event already expired is not
+        stored (or it is removed if it was stored before)
+     */
+    private void putEvent(Event event) {
+        long lifespan = retentionPolicy.lifespan(event, System.currentTimeMillis());
+        if (lifespan == RetentionPolicy.KEEP) {
+            backend.put(pk(event), toIspnEvent(event, lifespan));
+        } else if (lifespan > 0) {
+            backend.put(pk(event), toIspnEvent(event, lifespan), lifespan, TimeUnit.MILLISECONDS);
+        } else {
+            backend.remove(pk(event));
+        }
+    }
+
+    /*
+        The trigger snapshot must outlive the events referencing it, so it is stored with twice the lifespan of the
+        event and renewed only when an event outlives it. A snapshot no longer referenced by a retained event expires.
+     */
+    private IspnEvent toIspnEvent(Event event, long lifespan) {
+        if (!normalizedEvents || event.getTrigger() == null) {
+            return new IspnEvent(event);
+        }
+        Trigger trigger = event.getTrigger();
+        String version = snapshotVersion(trigger, event.getDampening());
+        String pk = pkFromTriggerSnapshot(trigger.getTenantId(), trigger.getId(), version);
+        long now = System.currentTimeMillis();
+        long expiration = lifespan == RetentionPolicy.KEEP ? Long.MAX_VALUE : now + lifespan;
+        Long snapshotExpiration = snapshotExpirations.get(pk);
+        if (snapshotExpiration == null || snapshotExpiration < expiration) {
+            putSnapshot(pk, new IspnTriggerSnapshot(version, trigger, event.getDampening()), lifespan, expiration,
+                    now);
+        }
+        return new IspnEvent(event, version);
+    }
+
+    private void putSnapshot(String pk, IspnTriggerSnapshot snapshot, long lifespan, long expiration, long now) {
+        CacheEntry<String, Object> stored = backend.getAdvancedCache().getCacheEntry(pk);
+        if (stored != null) {
+            snapshots.put(pk, (IspnTriggerSnapshot) stored.getValue());
+            long storedExpiration = expiration(stored);
+            if (storedExpiration >= expiration) {
+                snapshotExpirations.put(pk, storedExpiration);
+                return;
+            }
+        } else {
+            snapshots.put(pk, snapshot);
+        }
+        if (lifespan == RetentionPolicy.KEEP) {
+            backend.put(pk, snapshot);
+            snapshotExpirations.put(pk, Long.MAX_VALUE);
+        } else {
+            backend.put(pk, snapshot, 2 * lifespan, TimeUnit.MILLISECONDS);
+            snapshotExpirations.put(pk, now + 2 * lifespan);
+        }
+    }
+
+    /*
+        An entry without lifespan never expires, an expiration that can not be known is treated as already expired
+     */
+    private static long expiration(CacheEntry<String, Object> entry) {
+        if (entry.getLifespan() < 0) {
+            return Long.MAX_VALUE;
+        }
+        return entry.getCreated() < 0 ? 0 : entry.getCreated() + entry.getLifespan();
+    }
+
+    /*
+        A version is a fingerprint of the json of the Trigger (plus its mode) and the Dampening.
+        It is computed once per Trigger and Dampening instance, the engine reuses them until the trigger is reloaded.
+     */
+    private String snapshotVersion(Trigger trigger, Dampening dampening) {
+        SnapshotKey key = new SnapshotKey(trigger, dampening);
+        String version = snapshotVersions.get(key);
+        if (version == null) {
+            StringBuilder json = new StringBuilder(JsonUtil.toJson(trigger))
+                    .append(trigger.getMode())
+                    .append(dampening != null ? JsonUtil.toJson(dampening) : "");
+            version = UUID.nameUUIDFromBytes(json.toString().getBytes(StandardCharsets.UTF_8)).toString();
+            snapshotVersions.put(key, version);
+        }
+        return version;
+    }
+
+    /*
+        Thin events skip the Dampening and the eval sets. The Trigger is attached from the snapshots cache.
+     */
+    private Event fromIspnEvent(IspnEvent ispnEvent, boolean thin) {
+        Event event = ispnEvent.getEvent();
+        if (ispnEvent.getTriggerVersion() != null) {
+            IspnTriggerSnapshot snapshot = getSnapshot(ispnEvent.getTenantId(), ispnEvent.getTriggerId(),
+                    ispnEvent.getTriggerVersion());
+            if (snapshot != null) {
+                event.setTrigger(snapshot.getTrigger());
+                if (!thin) {
+                    event.setDampening(snapshot.getDampening());
+                }
+            } else {
+                log.warnf("Trigger snapshot [%s] not found for event [%s]", ispnEvent.getTriggerVersion(),
+                        ispnEvent.getId());
+            }
+        }
+        if (thin) {
+            event.setDampening(null);
+            event.setEvalSets(null);
+            if (event instanceof Alert) {
+                ((Alert) event).setResolvedEvalSets(null);
+            }
+        }
+        return event;
+    }
+
+    private IspnTriggerSnapshot getSnapshot(String tenantId, String triggerId, String version) {
+        String pk = pkFromTriggerSnapshot(tenantId, triggerId, version);
+        if (pk == null) {
+            return null;
+        }
+        IspnTriggerSnapshot snapshot = snapshots.get(pk);
+        if (snapshot == null) {
+            snapshot = (IspnTriggerSnapshot) backend.get(pk);
+            if (snapshot != null) {
+                snapshots.put(pk, snapshot);
+            }
+        }
+        return snapshot;
+    }
+
     private Page<Alert> preparePage(List<Alert> alerts, Pager pager) {
         if (pager != null) {
             if (pager.getOrder() != null
@@ -996,4 +1209,38 @@ public class IspnAlertsServiceImpl implements AlertsService {
         }
     }
 
+
+    /*
+        Identity of the Trigger and Dampening instances of an event, the mode is part of the key as it is changed in
+        place on the Trigger
+     */
+    private static class SnapshotKey {
+        private final Trigger trigger;
+        private final Mode mode;
+        private final Dampening dampening;
+
+        SnapshotKey(Trigger trigger, Dampening dampening) {
+            this.trigger = trigger;
+            this.mode = trigger.getMode();
+            this.dampening = dampening;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            SnapshotKey that = (SnapshotKey) o;
+
+            return trigger == that.trigger && mode == that.mode && dampening == that.dampening;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(trigger);
+            result = 31 * result + (mode != null ? mode.hashCode() : 0);
+            result = 31 * result + System.identityHashCode(dampening);
+            return result;
+        }
+    }
 }
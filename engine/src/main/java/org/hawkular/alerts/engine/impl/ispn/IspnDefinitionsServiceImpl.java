@@ -24,6 +24,7 @@ import static org.hawkular.alerts.engine.impl.ispn.IspnPk.pk;
 import static org.hawkular.alerts.engine.impl.ispn.IspnPk.pkFromDampeningId;
 import static org.hawkular.alerts.engine.impl.ispn.IspnPk.pkFromTriggerId;
 import static org.hawkular.alerts.engine.util.Utils.checkTenantId;
+import static org.hawkular.alerts.engine.util.Utils.getMemberCondition;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -32,30 +33,26 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.hawkular.alerts.api.exception.FoundException;
 import org.hawkular.alerts.api.exception.NotFoundException;
 import org.hawkular.alerts.api.json.GroupMemberInfo;
 import org.hawkular.alerts.api.model.action.ActionDefinition;
-import org.hawkular.alerts.api.model.condition.AvailabilityCondition;
 import org.hawkular.alerts.api.model.condition.CompareCondition;
 import org.hawkular.alerts.api.model.condition.Condition;
 import org.hawkular.alerts.api.model.condition.EventCondition;
-import org.hawkular.alerts.api.model.condition.ExternalCondition;
-import org.hawkular.alerts.api.model.condition.MissingCondition;
-import org.hawkular.alerts.api.model.condition.NelsonCondition;
-import org.hawkular.alerts.api.model.condition.RateCondition;
-import org.hawkular.alerts.api.model.condition.StringCondition;
-import org.hawkular.alerts.api.model.condition.ThresholdCondition;
-import org.hawkular.alerts.api.model.condition.ThresholdRangeCondition;
 import org.hawkular.alerts.api.model.dampening.Dampening;
 import org.hawkular.alerts.api.model.data.Data;
 import org.hawkular.alerts.api.model.export.Definitions;
+import org.hawkular.alerts.api.model.export.DefinitionsWriter;
+import org.hawkular.alerts.api.model.export.ImportProgress;
 import org.hawkular.alerts.api.model.export.ImportType;
 import org.hawkular.alerts.api.model.paging.Order;
 import org.hawkular.alerts.api.model.paging.Page;
@@ -64,6 +61,7 @@ import org.hawkular.alerts.api.model.paging.TriggerComparator;
 import org.hawkular.alerts.api.model.trigger.FullTrigger;
 import org.hawkular.alerts.api.model.trigger.Mode;
 import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.hawkular.alerts.api.model.trigger.TriggerAction;
 import org.hawkular.alerts.api.model.trigger.TriggerType;
 import org.hawkular.alerts.api.services.DefinitionsEvent;
 import org.hawkular.alerts.api.services.DefinitionsEvent.Type;
@@ -83,6 +81,7 @@ import org.hawkular.alerts.engine.impl.ispn.model.TagsBridge;
 import org.hawkular.alerts.engine.service.AlertsEngine;
 import org.hawkular.alerts.log.AlertingLogger;
 import org.hawkular.commons.log.MsgLogging;
+import org.hawkular.commons.properties.HawkularProperties;
 import org.infinispan.Cache;
 import org.infinispan.query.Search;
 import org.infinispan.query.dsl.FilterConditionContext;
@@ -96,6 +95,25 @@ import org.infinispan.query.dsl.QueryFactory;
 public class IspnDefinitionsServiceImpl implements DefinitionsService {
     private final AlertingLogger log = MsgLogging.getMsgLogger(AlertingLogger.class, IspnDefinitionsServiceImpl.class);
 
+    /*
+        Rewrite all backend entries at startup, i.e. to migrate a store written with java serialization
+     */
+    private static final String BACKEND_MIGRATE = "hawkular-alerts.backend-migrate";
+    private static final String BACKEND_MIGRATE_ENV = "HAWKULAR_ALERTS_BACKEND_MIGRATE";
+    private static final String BACKEND_MIGRATE_DEFAULT = "false";
+
+    /*
+        Serve the hot definitions reads from an in-memory projection invalidated on backend writes
+     */
+    private static final String DEFINITIONS_CACHE = "hawkular-alerts.definitions-cache";
+    private static final String DEFINITIONS_CACHE_ENV = "HAWKULAR_ALERTS_DEFINITIONS_CACHE";
+    private static final String DEFINITIONS_CACHE_DEFAULT = "true";
+
+    /*
+        Number of triggers fetched from the backend at a time on a streaming export
+     */
+    private static final int EXPORT_PAGE_SIZE = 500;
+
     AlertsEngine alertsEngine;
 
     AlertsContext alertsContext;
@@ -106,9 +124,17 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
 
     QueryFactory queryFactory;
 
+    DefinitionsCache definitionsCache;
+
     private List<DefinitionsEvent> deferredNotifications = new ArrayList<>();
     private int deferNotificationsCount = 0;
 
+    /*
+        Bulk operations defer the alerts engine updates and issue a single one per trigger when released.
+        Deferral is per calling thread, so concurrent calls on the service do not release each other's updates.
+     */
+    private final ThreadLocal<DeferredEngineOps> deferredEngineOps = new ThreadLocal<>();
+
     public void init() {
         backend = IspnCacheManager.getCacheManager().getCache("backend");
         if (backend == null) {
@@ -116,6 +142,28 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
             throw new RuntimeException("backend cache not found");
         }
         queryFactory = Search.getQueryFactory(backend);
+        if (Boolean.parseBoolean(HawkularProperties.getProperty(DEFINITIONS_CACHE, DEFINITIONS_CACHE_ENV,
+                DEFINITIONS_CACHE_DEFAULT))) {
+            definitionsCache = new DefinitionsCache();
+            backend.addListener(definitionsCache.getBackendListener());
+        }
+        if (Boolean.parseBoolean(HawkularProperties.getProperty(BACKEND_MIGRATE, BACKEND_MIGRATE_ENV,
+                BACKEND_MIGRATE_DEFAULT))) {
+            migrateBackend();
+        }
+    }
+
+    private void migrateBackend() {
+        log.info("Migrating backend entries to the current format");
+        int migrated = 0;
+        for (String key : new ArrayList<>(backend.keySet())) {
+            Object value = backend.get(key);
+            if (value != null) {
+                backend.put(key, value);
+                migrated++;
+            }
+        }
+        log.infof("Migrated [%s] backend entries", migrated);
     }
 
     public void setAlertsEngine(AlertsEngine alertsEngine) {
@@ -130,6 +178,13 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
         this.properties = properties;
     }
 
+    /**
+     * @return the in-memory definitions projection, or null if it is disabled
+     */
+    public DefinitionsCache getDefinitionsCache() {
+        return definitionsCache;
+    }
+
     @Override
     public void addActionDefinition(String tenantId, ActionDefinition actionDefinition) throws Exception {
         if (isEmpty(tenantId)) {
@@ -423,37 +478,10 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
 
     @Override
     public void updateFullTrigger(String tenantId, FullTrigger fullTrigger) throws Exception {
-        if (null == fullTrigger) {
-            throw new IllegalArgumentException("FullTrigger must be not null");
-        }
+        FullTrigger existingFullTrigger = checkFullTriggerUpdate(tenantId, fullTrigger);
         Trigger trigger = fullTrigger.getTrigger();
-        if (null == trigger) {
-            throw new IllegalArgumentException("FullTrigger.Trigger must be not null");
-        }
-        TriggerType type = trigger.getType();
-        if (TriggerType.MEMBER == type) {
-            throw new IllegalArgumentException("FullTrigger.Trigger is type MEMBER and must be updated via the group");
-        }
-
-        checkTenantId(tenantId, trigger);
-        String triggerId = trigger.getId();
-
-        // fetch the trigger (or throw NotFoundException)
-        FullTrigger existingFullTrigger = getFullTrigger(tenantId, triggerId);
         Trigger existingTrigger = existingFullTrigger.getTrigger();
-
-        if (existingTrigger.getType() != type) {
-            throw new IllegalArgumentException(
-                    "It is not allowed to update trigger type. Current type: [" + existingTrigger.getType() + "]");
-        }
-        if (existingTrigger.isMember()) {
-            if (!existingTrigger.getMemberOf().equals(trigger.getMemberOf())) {
-                throw new IllegalArgumentException("A member trigger can not change groups.");
-            }
-            if (existingTrigger.isOrphan() != trigger.isOrphan()) {
-                throw new IllegalArgumentException("Orphan status can not be changed by this method.");
-            }
-        }
+        String triggerId = trigger.getId();
 
         try {
             deferNotifications();
@@ -523,6 +551,43 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
         }
     }
 
+    /*
+        Validates an update of a FullTrigger and returns the stored FullTrigger (or throws NotFoundException)
+     */
+    private FullTrigger checkFullTriggerUpdate(String tenantId, FullTrigger fullTrigger) throws Exception {
+        if (null == fullTrigger) {
+            throw new IllegalArgumentException("FullTrigger must be not null");
+        }
+        Trigger trigger = fullTrigger.getTrigger();
+        if (null == trigger) {
+            throw new IllegalArgumentException("FullTrigger.Trigger must be not null");
+        }
+        TriggerType type = trigger.getType();
+        if (TriggerType.MEMBER == type) {
+            throw new IllegalArgumentException("FullTrigger.Trigger is type MEMBER and must be updated via the group");
+        }
+
+        checkTenantId(tenantId, trigger);
+
+        // fetch the trigger (or throw NotFoundException)
+        FullTrigger existingFullTrigger = getFullTrigger(tenantId, trigger.getId());
+        Trigger existingTrigger = existingFullTrigger.getTrigger();
+
+        if (existingTrigger.getType() != type) {
+            throw new IllegalArgumentException(
+                    "It is not allowed to update trigger type. Current type: [" + existingTrigger.getType() + "]");
+        }
+        if (existingTrigger.isMember()) {
+            if (!existingTrigger.getMemberOf().equals(trigger.getMemberOf())) {
+                throw new IllegalArgumentException("A member trigger can not change groups.");
+            }
+            if (existingTrigger.isOrphan() != trigger.isOrphan()) {
+                throw new IllegalArgumentException("Orphan status can not be changed by this method.");
+            }
+        }
+        return existingFullTrigger;
+    }
+
     private boolean isSameDampenings(List<Dampening> dampenings, List<Dampening> existingDampenings) {
         if (dampenings.size() != existingDampenings.size()) {
             return false;
@@ -704,11 +769,18 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
             throw new IllegalArgumentException("TriggerId must be not null");
         }
         String pk = pkFromTriggerId(tenantId, triggerId);
-        IspnTrigger found = (IspnTrigger) backend.get(pk);
+        Trigger found = definitionsCache != null
+                ? definitionsCache.getTrigger(tenantId, triggerId, () -> loadTrigger(pk))
+                : loadTrigger(pk);
         if (found == null) {
             throw new NotFoundException(pk);
         }
-        return found.getTrigger();
+        return found;
+    }
+
+    private Trigger loadTrigger(String pk) {
+        IspnTrigger found = (IspnTrigger) backend.get(pk);
+        return found == null ? null : found.getTrigger();
     }
 
     @Override
@@ -1095,6 +1167,14 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
     @Override
     public Collection<Dampening> getTriggerDampenings(String tenantId, String triggerId, Mode triggerMode)
             throws Exception {
+        if (definitionsCache != null) {
+            return definitionsCache.getTriggerDampenings(tenantId, triggerId, triggerMode,
+                    () -> loadTriggerDampenings(tenantId, triggerId, null));
+        }
+        return loadTriggerDampenings(tenantId, triggerId, triggerMode);
+    }
+
+    private List<Dampening> loadTriggerDampenings(String tenantId, String triggerId, Mode triggerMode) {
         FilterConditionContext qb = queryFactory.from(IspnDampening.class)
                 .having("tenantId").eq(tenantId).and()
                 .having("triggerId").eq(triggerId);
@@ -1160,6 +1240,7 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
             if (null == c.getTriggerMode()) {
                 throw new IllegalArgumentException("Condition.triggerMode must not be null");
             }
+            validateCondition(c);
         });
 
         conditions.stream().forEach(c -> c.setTenantId(tenantId));
@@ -1178,9 +1259,7 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
                 .collect(Collectors.toList());
         updatedConditions.addAll(setConditions(tenantId, triggerId, Mode.AUTORESOLVE, autoResolveConditions, dataIds));
 
-        if (alertsEngine != null) {
-            alertsEngine.reloadTrigger(tenantId, triggerId);
-        }
+        engineReloadTrigger(tenantId, triggerId);
 
         notifyListeners(new DefinitionsEvent(Type.TRIGGER_CONDITION_CHANGE, tenantId, triggerId, dataIds));
 
@@ -1343,6 +1422,14 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
     @Override
     public Collection<Condition> getTriggerConditions(String tenantId, String triggerId, Mode triggerMode)
             throws Exception {
+        if (definitionsCache != null) {
+            return definitionsCache.getTriggerConditions(tenantId, triggerId, triggerMode,
+                    () -> loadTriggerConditions(tenantId, triggerId, null));
+        }
+        return loadTriggerConditions(tenantId, triggerId, triggerMode);
+    }
+
+    private List<Condition> loadTriggerConditions(String tenantId, String triggerId, Mode triggerMode) {
         FilterConditionContext qb = queryFactory.from(IspnCondition.class)
                 .having("tenantId").eq(tenantId).and()
                 .having("triggerId").eq(triggerId);
@@ -1436,6 +1523,13 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
         if (isEmpty(actionPlugin)) {
             throw new IllegalArgumentException("actionPlugin must be not null");
         }
+        if (definitionsCache != null) {
+            return definitionsCache.getDefaultActionPlugin(actionPlugin, () -> loadDefaultActionPlugin(actionPlugin));
+        }
+        return loadDefaultActionPlugin(actionPlugin);
+    }
+
+    private Map<String, String> loadDefaultActionPlugin(String actionPlugin) {
         IspnActionPlugin found = (IspnActionPlugin) backend.get(pk(actionPlugin));
         return found == null ? null : found.getDefaultProperties();
     }
@@ -1570,6 +1664,14 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
         if (isEmpty(actionId)) {
             throw new IllegalArgumentException("actionId must be not null");
         }
+        if (definitionsCache != null) {
+            return definitionsCache.getActionDefinition(tenantId, actionPlugin, actionId,
+                    () -> loadActionDefinition(tenantId, actionPlugin, actionId));
+        }
+        return loadActionDefinition(tenantId, actionPlugin, actionId);
+    }
+
+    private ActionDefinition loadActionDefinition(String tenantId, String actionPlugin, String actionId) {
         IspnActionDefinition actionDefinition = (IspnActionDefinition) backend
                 .get(pk(tenantId, actionPlugin, actionId));
         return actionDefinition != null ? actionDefinition.getActionDefinition() : null;
@@ -1602,6 +1704,26 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
         return definitions;
     }
 
+    @Override
+    public void exportDefinitions(String tenantId, DefinitionsWriter writer) throws Exception {
+        if (isEmpty(tenantId)) {
+            throw new IllegalArgumentException("TenantId must be not null");
+        }
+        if (null == writer) {
+            throw new IllegalArgumentException("Writer must be not null");
+        }
+        for (ActionDefinition actionDefinition : getActionDefinitions(tenantId)) {
+            writer.writeAction(actionDefinition);
+        }
+        List<String> triggerIds = getTriggerIds(tenantId);
+        for (int from = 0; from < triggerIds.size(); from += EXPORT_PAGE_SIZE) {
+            List<String> page = triggerIds.subList(from, Math.min(from + EXPORT_PAGE_SIZE, triggerIds.size()));
+            for (FullTrigger fullTrigger : getFullTriggers(tenantId, page)) {
+                writer.writeTrigger(fullTrigger);
+            }
+        }
+    }
+
     @Override
     public Definitions importDefinitions(String tenantId, Definitions definitions, ImportType strategy)
             throws Exception {
@@ -1615,165 +1737,217 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
             throw new IllegalArgumentException("ImportType startegy must be not null");
         }
 
-        definitions.updateTenant(tenantId);
-        Definitions imported = new Definitions();
-
         try {
+            deferEngineOps();
             deferNotifications();
 
-            Collection<Trigger> existingTriggers = getTriggers(tenantId, null, null);
-            Map<String, Set<String>> existingActionDefinitions = getActionDefinitionIds(tenantId);
             if (strategy.equals(ImportType.DELETE)) {
-                log.warningDeleteDefinitionsTenant(tenantId);
-                for (Trigger t : existingTriggers) {
-                    removeTrigger(t);
-                }
-                for (Entry<String, Set<String>> entry : existingActionDefinitions.entrySet()) {
-                    String actionPlugin = entry.getKey();
-                    for (String actionId : entry.getValue()) {
-                        removeActionDefinition(tenantId, actionPlugin, actionId);
-                    }
+                removeDefinitions(tenantId);
+            }
+            return importBatch(tenantId, definitions, strategy);
+        } catch (Exception e) {
+            log.errorDatabaseException(e.getMessage());
+            throw e;
+        } finally {
+            releaseEngineOps();
+            releaseNotifications();
+        }
+    }
+
+    @Override
+    public ImportProgress importDefinitions(String tenantId, Iterator<Definitions> batches, ImportType strategy,
+            Consumer<ImportProgress> progressListener) throws Exception {
+        if (isEmpty(tenantId)) {
+            throw new IllegalArgumentException("TenantId must be not null");
+        }
+        if (null == batches) {
+            throw new IllegalArgumentException("Batches must be not null");
+        }
+        if (null == strategy) {
+            throw new IllegalArgumentException("ImportType startegy must be not null");
+        }
+
+        ImportProgress progress = new ImportProgress();
+        boolean removed = false;
+        while (batches.hasNext()) {
+            Definitions batch = batches.next();
+            Definitions imported;
+            try {
+                deferEngineOps();
+                deferNotifications();
+
+                if (strategy.equals(ImportType.DELETE) && !removed) {
+                    removeDefinitions(tenantId);
+                    removed = true;
                 }
+                imported = importBatch(tenantId, batch, strategy);
+            } catch (Exception e) {
+                log.errorDatabaseException(e.getMessage());
+                throw e;
+            } finally {
+                releaseEngineOps();
+                releaseNotifications();
+            }
+            progress.add(batch, imported);
+            log.debugf("Importing definitions of tenant [%s]: %s", tenantId, progress);
+            if (null != progressListener) {
+                progressListener.accept(progress);
             }
-            List<ActionDefinition> importedActionDefinitions = new ArrayList<>();
-            if (!isEmpty(definitions.getActions())) {
-                for (ActionDefinition a : definitions.getActions()) {
-                    a.setTenantId(tenantId);
-                    if (!isEmpty(a)) {
-                        boolean existing = existingActionDefinitions.containsKey(a.getActionPlugin()) &&
-                                existingActionDefinitions.get(a.getActionPlugin()).contains(a.getActionId());
-                        switch (strategy) {
-                            case DELETE:
+        }
+        log.infof("Imported definitions of tenant [%s]: %s", tenantId, progress);
+        return progress;
+    }
+
+    // caller should be deferring notifications
+    private void removeDefinitions(String tenantId) throws Exception {
+        log.warningDeleteDefinitionsTenant(tenantId);
+        for (String triggerId : getTriggerIds(tenantId)) {
+            try {
+                removeTrigger(getTrigger(tenantId, triggerId));
+            } catch (NotFoundException e) {
+                // removed meanwhile
+            }
+        }
+        for (Entry<String, Set<String>> entry : getActionDefinitionIds(tenantId).entrySet()) {
+            String actionPlugin = entry.getKey();
+            for (String actionId : entry.getValue()) {
+                removeActionDefinition(tenantId, actionPlugin, actionId);
+            }
+        }
+    }
+
+    // caller should be deferring notifications
+    private Definitions importBatch(String tenantId, Definitions definitions, ImportType strategy)
+            throws Exception {
+        definitions.updateTenant(tenantId);
+        Definitions imported = new Definitions();
+
+        List<ActionDefinition> importedActionDefinitions = new ArrayList<>();
+        if (!isEmpty(definitions.getActions())) {
+            for (ActionDefinition a : definitions.getActions()) {
+                a.setTenantId(tenantId);
+                if (!isEmpty(a)) {
+                    boolean existing = backend.containsKey(pk(tenantId, a.getActionPlugin(), a.getActionId()));
+                    switch (strategy) {
+                        case DELETE:
+                            addActionDefinition(tenantId, a);
+                            importedActionDefinitions.add(a);
+                            break;
+                        case ALL:
+                            if (existing) {
+                                removeActionDefinition(tenantId, a.getActionPlugin(), a.getActionId());
+                            }
+                            addActionDefinition(tenantId, a);
+                            importedActionDefinitions.add(a);
+                            break;
+                        case NEW:
+                            if (!existing) {
                                 addActionDefinition(tenantId, a);
                                 importedActionDefinitions.add(a);
-                                break;
-                            case ALL:
-                                if (existing) {
-                                    removeActionDefinition(tenantId, a.getActionPlugin(), a.getActionId());
-                                }
+                            }
+                            break;
+                        case OLD:
+                            if (existing) {
+                                removeActionDefinition(tenantId, a.getActionPlugin(), a.getActionId());
                                 addActionDefinition(tenantId, a);
                                 importedActionDefinitions.add(a);
-                                break;
-                            case NEW:
-                                if (!existing) {
-                                    addActionDefinition(tenantId, a);
-                                    importedActionDefinitions.add(a);
-                                }
-                                break;
-                            case OLD:
-                                if (existing) {
-                                    removeActionDefinition(tenantId, a.getActionPlugin(), a.getActionId());
-                                    addActionDefinition(tenantId, a);
-                                    importedActionDefinitions.add(a);
-                                }
-                                break;
-                        }
-                    } else {
-                        if (log.isDebugEnabled()) {
-                            log.debug("ActionDefinition " + a + " is empty. Ignored on the import process");
-                        }
+                            }
+                            break;
+                    }
+                } else {
+                    if (log.isDebugEnabled()) {
+                        log.debug("ActionDefinition " + a + " is empty. Ignored on the import process");
                     }
                 }
             }
-            List<FullTrigger> importedTriggers = new ArrayList<>();
-            if (!isEmpty(definitions.getTriggers())) {
-                for (FullTrigger t : definitions.getTriggers()) {
-                    if (!isEmpty(t.getTrigger())) {
-                        boolean existing = existingTriggers.contains(t.getTrigger());
-                        switch (strategy) {
-                            case DELETE:
+        }
+        List<FullTrigger> importedTriggers = new ArrayList<>();
+        if (!isEmpty(definitions.getTriggers())) {
+            for (FullTrigger t : definitions.getTriggers()) {
+                if (!isEmpty(t.getTrigger())) {
+                    boolean existing = backend.containsKey(pkFromTriggerId(tenantId, t.getTrigger().getId()));
+                    switch (strategy) {
+                        case DELETE:
+                            addFullTrigger(tenantId, t);
+                            importedTriggers.add(t);
+                            break;
+                        case ALL:
+                            if (existing) {
+                                removeTrigger(tenantId, t.getTrigger().getId());
+                            }
+                            addFullTrigger(tenantId, t);
+                            importedTriggers.add(t);
+                            break;
+                        case NEW:
+                            if (!existing) {
                                 addFullTrigger(tenantId, t);
                                 importedTriggers.add(t);
-                                break;
-                            case ALL:
-                                if (existing) {
-                                    removeTrigger(t.getTrigger());
-                                }
+                            }
+                            break;
+                        case OLD:
+                            if (existing) {
+                                removeTrigger(tenantId, t.getTrigger().getId());
                                 addFullTrigger(tenantId, t);
                                 importedTriggers.add(t);
-                                break;
-                            case NEW:
-                                if (!existing) {
-                                    addFullTrigger(tenantId, t);
-                                    importedTriggers.add(t);
-                                }
-                                break;
-                            case OLD:
-                                if (existing) {
-                                    removeTrigger(t.getTrigger());
-                                    addFullTrigger(tenantId, t);
-                                    importedTriggers.add(t);
-                                }
-                                break;
-                        }
-                    } else {
-                        if (log.isDebugEnabled()) {
-                            log.debug("Trigger " + t + " is empty. Ignored on the import process");
-                        }
+                            }
+                            break;
+                    }
+                } else {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Trigger " + t + " is empty. Ignored on the import process");
                     }
                 }
             }
-            List<GroupMemberInfo> importedMembersInfo = new ArrayList<>();
-            if (!isEmpty(definitions.getGroupMembersInfo())) {
-                for (GroupMemberInfo memberInfo : definitions.getGroupMembersInfo()) {
-                    if (!isEmpty(memberInfo.getGroupId()) && !isEmpty(memberInfo.getMemberId())) {
-                        boolean existing = false;
-                        for (Trigger t : existingTriggers) {
-                            if (t.getId().equals(memberInfo.getMemberId())) {
-                                existing = true;
-                                break;
+        }
+        List<GroupMemberInfo> importedMembersInfo = new ArrayList<>();
+        if (!isEmpty(definitions.getGroupMembersInfo())) {
+            for (GroupMemberInfo memberInfo : definitions.getGroupMembersInfo()) {
+                if (!isEmpty(memberInfo.getGroupId()) && !isEmpty(memberInfo.getMemberId())) {
+                    boolean existing = backend.containsKey(pkFromTriggerId(tenantId, memberInfo.getMemberId()));
+                    switch (strategy) {
+                        case DELETE:
+                            addMemberTrigger(tenantId, memberInfo.getGroupId(), memberInfo.getMemberId(),
+                                    memberInfo.getMemberName(), memberInfo.getMemberDescription(),
+                                    memberInfo.getMemberContext(), memberInfo.getMemberTags(),
+                                    memberInfo.getDataIdMap());
+                            importedMembersInfo.add(memberInfo);
+                            break;
+                        case ALL:
+                            if (existing) {
+                                removeTrigger(tenantId, memberInfo.getMemberId());
                             }
-                        }
-                        switch (strategy) {
-                            case DELETE:
+                            addMemberTrigger(tenantId, memberInfo.getGroupId(), memberInfo.getMemberId(),
+                                    memberInfo.getMemberName(), memberInfo.getMemberDescription(),
+                                    memberInfo.getMemberContext(), memberInfo.getMemberTags(),
+                                    memberInfo.getDataIdMap());
+                            importedMembersInfo.add(memberInfo);
+                            break;
+                        case NEW:
+                            if (!existing) {
                                 addMemberTrigger(tenantId, memberInfo.getGroupId(), memberInfo.getMemberId(),
                                         memberInfo.getMemberName(), memberInfo.getMemberDescription(),
                                         memberInfo.getMemberContext(), memberInfo.getMemberTags(),
                                         memberInfo.getDataIdMap());
                                 importedMembersInfo.add(memberInfo);
-                                break;
-                            case ALL:
-                                if (existing) {
-                                    removeTrigger(tenantId, memberInfo.getMemberId());
-                                }
+                            }
+                            break;
+                        case OLD:
+                            if (existing) {
+                                removeTrigger(tenantId, memberInfo.getMemberId());
                                 addMemberTrigger(tenantId, memberInfo.getGroupId(), memberInfo.getMemberId(),
                                         memberInfo.getMemberName(), memberInfo.getMemberDescription(),
                                         memberInfo.getMemberContext(), memberInfo.getMemberTags(),
                                         memberInfo.getDataIdMap());
                                 importedMembersInfo.add(memberInfo);
-                                break;
-                            case NEW:
-                                if (!existing) {
-                                    addMemberTrigger(tenantId, memberInfo.getGroupId(), memberInfo.getMemberId(),
-                                            memberInfo.getMemberName(), memberInfo.getMemberDescription(),
-                                            memberInfo.getMemberContext(), memberInfo.getMemberTags(),
-                                            memberInfo.getDataIdMap());
-                                    importedMembersInfo.add(memberInfo);
-                                }
-                                break;
-                            case OLD:
-                                if (existing) {
-                                    removeTrigger(tenantId, memberInfo.getMemberId());
-                                    addMemberTrigger(tenantId, memberInfo.getGroupId(), memberInfo.getMemberId(),
-                                            memberInfo.getMemberName(), memberInfo.getMemberDescription(),
-                                            memberInfo.getMemberContext(), memberInfo.getMemberTags(),
-                                            memberInfo.getDataIdMap());
-                                    importedMembersInfo.add(memberInfo);
-                                }
-                                break;
-                        }
+                            }
+                            break;
                     }
                 }
             }
-            imported.setTriggers(importedTriggers);
-            imported.setGroupMembersInfo(importedMembersInfo);
-            imported.setActions(importedActionDefinitions);
-        } catch (Exception e) {
-            log.errorDatabaseException(e.getMessage());
-            throw e;
-        } finally {
-            releaseNotifications();
         }
+        imported.setTriggers(importedTriggers);
+        imported.setGroupMembersInfo(importedMembersInfo);
+        imported.setActions(importedActionDefinitions);
 
         return imported;
     }
@@ -1818,6 +1992,109 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
         alertsContext.notifyListeners(notifications);
     }
 
+    private void deferEngineOps() {
+        DeferredEngineOps deferred = deferredEngineOps.get();
+        if (deferred == null) {
+            deferred = new DeferredEngineOps();
+            deferredEngineOps.set(deferred);
+        }
+        ++deferred.count;
+    }
+
+    private void releaseEngineOps() {
+        DeferredEngineOps deferred = deferredEngineOps.get();
+        if (deferred != null && --deferred.count == 0) {
+            deferredEngineOps.remove();
+            engineOpsDeferred(deferred.ops);
+        }
+    }
+
+    private void engineOpsDeferred(Map<TriggerKey, Boolean> engineOps) {
+        if (engineOps.isEmpty()) {
+            return;
+        }
+
+        log.debugf("Releasing [%s] deferred alerts engine updates", engineOps.size());
+        engineOps.forEach((key, remove) -> {
+            if (remove) {
+                alertsEngine.removeTrigger(key.tenantId, key.triggerId);
+            } else {
+                alertsEngine.reloadTrigger(key.tenantId, key.triggerId);
+            }
+        });
+    }
+
+    private void engineAddTrigger(String tenantId, String triggerId) {
+        if (null == alertsEngine) {
+            return;
+        }
+        DeferredEngineOps deferred = deferredEngineOps.get();
+        if (deferred != null) {
+            deferred.ops.put(new TriggerKey(tenantId, triggerId), false);
+            return;
+        }
+        alertsEngine.addTrigger(tenantId, triggerId);
+    }
+
+    private void engineReloadTrigger(String tenantId, String triggerId) {
+        if (null == alertsEngine) {
+            return;
+        }
+        DeferredEngineOps deferred = deferredEngineOps.get();
+        if (deferred != null) {
+            deferred.ops.put(new TriggerKey(tenantId, triggerId), false);
+            return;
+        }
+        alertsEngine.reloadTrigger(tenantId, triggerId);
+    }
+
+    private void engineRemoveTrigger(String tenantId, String triggerId) {
+        if (null == alertsEngine) {
+            return;
+        }
+        DeferredEngineOps deferred = deferredEngineOps.get();
+        if (deferred != null) {
+            deferred.ops.put(new TriggerKey(tenantId, triggerId), true);
+            return;
+        }
+        alertsEngine.removeTrigger(tenantId, triggerId);
+    }
+
+    /*
+        Value is true when the last deferred operation for the trigger was a remove.
+     */
+    private static class DeferredEngineOps {
+        private int count;
+        private final Map<TriggerKey, Boolean> ops = new LinkedHashMap<>();
+    }
+
+    private static class TriggerKey {
+        private final String tenantId;
+        private final String triggerId;
+
+        TriggerKey(String tenantId, String triggerId) {
+            this.tenantId = tenantId;
+            this.triggerId = triggerId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            TriggerKey that = (TriggerKey) o;
+            return tenantId.equals(that.tenantId) && triggerId.equals(that.triggerId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * tenantId.hashCode() + triggerId.hashCode();
+        }
+    }
+
     private void addTrigger(Trigger trigger) throws Exception {
         if (trigger.getActions() != null) {
             Collection<ActionDefinition> actionDefinitions = getActionDefinitions(trigger.getTenantId());
@@ -1841,9 +2118,7 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
         }
         backend.put(pk, new IspnTrigger(trigger));
 
-        if (null != alertsEngine) {
-            alertsEngine.addTrigger(trigger.getTenantId(), trigger.getId());
-        }
+        engineAddTrigger(trigger.getTenantId(), trigger.getId());
 
         notifyListeners(new DefinitionsEvent(DefinitionsEvent.Type.TRIGGER_CREATE, trigger));
     }
@@ -1873,9 +2148,7 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
         /*
             Trigger should be removed from the alerts engine.
          */
-        if (null != alertsEngine) {
-            alertsEngine.removeTrigger(tenantId, triggerId);
-        }
+        engineRemoveTrigger(tenantId, triggerId);
 
         notifyListeners(
                 new DefinitionsEvent(DefinitionsEvent.Type.TRIGGER_REMOVE, tenantId, triggerId, trigger.getTags()));
@@ -1885,9 +2158,7 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
         String pk = pk(trigger);
         backend.put(pk, new IspnTrigger(trigger));
 
-        if (null != alertsEngine) {
-            alertsEngine.reloadTrigger(trigger.getTenantId(), trigger.getId());
-        }
+        engineReloadTrigger(trigger.getTenantId(), trigger.getId());
 
         notifyListeners(new DefinitionsEvent(DefinitionsEvent.Type.TRIGGER_UPDATE, trigger));
 
@@ -1990,19 +2261,47 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
 
     private void updateTriggerEnablement(String tenantId, Collection<Trigger> triggers, boolean enabled)
             throws Exception {
+        if (triggers.isEmpty()) {
+            return;
+        }
+
+        Map<String, Object> updatedTriggers = new HashMap<>();
+        for (Trigger trigger : triggers) {
+            trigger.setEnabled(enabled);
+            updatedTriggers.put(pk(trigger), new IspnTrigger(trigger));
+        }
+        putAllInBatch(updatedTriggers);
 
         try {
+            deferEngineOps();
             deferNotifications();
 
             for (Trigger trigger : triggers) {
-                trigger.setEnabled(enabled);
-                updateTrigger(trigger);
+                engineReloadTrigger(trigger.getTenantId(), trigger.getId());
+                notifyListeners(new DefinitionsEvent(DefinitionsEvent.Type.TRIGGER_UPDATE, trigger));
             }
         } finally {
+            releaseEngineOps();
             releaseNotifications();
         }
     }
 
+    private void putAllInBatch(Map<String, Object> entries) throws Exception {
+        try {
+            backend.startBatch();
+            backend.putAll(entries);
+            backend.endBatch(true);
+        } catch (Exception e) {
+            try {
+                backend.endBatch(false);
+            } catch (Exception e2) {
+                log.errorDatabaseException(e2.getMessage());
+            }
+            log.errorDatabaseException(e.getMessage());
+            throw e;
+        }
+    }
+
     private Dampening addDampening(Dampening dampening) throws Exception {
         try {
             backend.put(pk(dampening), new IspnDampening(dampening));
@@ -2011,9 +2310,7 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
             throw e;
         }
 
-        if (null != alertsEngine) {
-            alertsEngine.reloadTrigger(dampening.getTenantId(), dampening.getTriggerId());
-        }
+        engineReloadTrigger(dampening.getTenantId(), dampening.getTriggerId());
 
         notifyListeners(new DefinitionsEvent(Type.DAMPENING_CHANGE, dampening));
 
@@ -2066,6 +2363,258 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
         }
     }
 
+    @Override
+    public void createFullTriggers(String tenantId, Collection<FullTrigger> fullTriggers) throws Exception {
+        if (isEmpty(tenantId)) {
+            throw new IllegalArgumentException("TenantId must be not null");
+        }
+        if (isEmpty(fullTriggers)) {
+            throw new IllegalArgumentException("FullTriggers must be not empty");
+        }
+
+        Collection<ActionDefinition> actionDefinitions = null;
+        Map<String, Object> newEntries = new HashMap<>();
+        List<Trigger> newTriggers = new ArrayList<>(fullTriggers.size());
+        List<DefinitionsEvent> events = new ArrayList<>();
+        for (FullTrigger fullTrigger : fullTriggers) {
+            if (null == fullTrigger) {
+                throw new IllegalArgumentException("FullTrigger must be not null");
+            }
+            Trigger trigger = fullTrigger.getTrigger();
+            if (null == trigger) {
+                throw new IllegalArgumentException("FullTrigger.Trigger must be not null");
+            }
+            if (trigger.isMember()) {
+                throw new IllegalArgumentException("FullTrigger.Trigger.Type can not be a member trigger");
+            }
+            checkTenantId(tenantId, trigger);
+            trigger.setTenantId(tenantId);
+            String triggerId = trigger.getId();
+
+            if (trigger.getActions() != null) {
+                if (null == actionDefinitions) {
+                    actionDefinitions = getActionDefinitions(tenantId);
+                }
+                for (TriggerAction action : trigger.getActions()) {
+                    action.setTenantId(tenantId);
+                    boolean found = actionDefinitions.stream()
+                            .anyMatch(a -> a.getActionPlugin().equals(action.getActionPlugin())
+                                    && a.getActionId().equals(action.getActionId()));
+                    if (!found) {
+                        throw new IllegalArgumentException("Action " + action.getActionId() + " on plugin: "
+                                + action.getActionPlugin() + " is not found");
+                    }
+                }
+            }
+
+            String pk = pk(trigger);
+            if (newEntries.containsKey(pk) || backend.containsKey(pk)) {
+                throw new FoundException(pk);
+            }
+            newEntries.put(pk, new IspnTrigger(trigger));
+            newTriggers.add(trigger);
+            events.add(new DefinitionsEvent(Type.TRIGGER_CREATE, trigger));
+
+            if (!isEmpty(fullTrigger.getDampenings())) {
+                for (Dampening d : fullTrigger.getDampenings()) {
+                    d.setTenantId(tenantId);
+                    d.setTriggerId(triggerId);
+                    newEntries.put(pk(d), new IspnDampening(d));
+                    events.add(new DefinitionsEvent(Type.DAMPENING_CHANGE, d));
+                }
+            }
+
+            if (!isEmpty(fullTrigger.getConditions())) {
+                Set<String> dataIds = new HashSet<>();
+                for (Mode mode : Mode.values()) {
+                    List<Condition> modeConditions = new ArrayList<>();
+                    for (Condition c : fullTrigger.getConditions()) {
+                        if (null == c.getTriggerMode()) {
+                            throw new IllegalArgumentException("Condition.triggerMode must not be null");
+                        }
+                        if (mode == c.getTriggerMode()) {
+                            modeConditions.add(c);
+                        }
+                    }
+                    prepareConditions(tenantId, triggerId, mode, modeConditions, dataIds, newEntries);
+                }
+                events.add(new DefinitionsEvent(Type.TRIGGER_CONDITION_CHANGE, tenantId, triggerId, dataIds));
+            }
+        }
+
+        putAllInBatch(newEntries);
+
+        try {
+            deferEngineOps();
+            deferNotifications();
+
+            newTriggers.forEach(t -> engineAddTrigger(tenantId, t.getId()));
+            events.forEach(this::notifyListeners);
+        } finally {
+            releaseEngineOps();
+            releaseNotifications();
+        }
+    }
+
+    @Override
+    public void updateFullTriggers(String tenantId, Collection<FullTrigger> fullTriggers) throws Exception {
+        if (isEmpty(tenantId)) {
+            throw new IllegalArgumentException("TenantId must be not null");
+        }
+        if (isEmpty(fullTriggers)) {
+            throw new IllegalArgumentException("FullTriggers must be not empty");
+        }
+
+        /*
+            All triggers are validated before any change is written. The changes of plain triggers are written in a
+            single batch. Group triggers propagate their changes to the member triggers, they are updated afterwards
+            as in updateFullTrigger.
+         */
+        Map<String, Object> newEntries = new HashMap<>();
+        Set<String> doomedKeys = new HashSet<>();
+        List<Trigger> updatedTriggers = new ArrayList<>();
+        List<FullTrigger> groupTriggers = new ArrayList<>();
+        List<DefinitionsEvent> events = new ArrayList<>();
+        Set<String> triggerIds = new HashSet<>();
+        for (FullTrigger fullTrigger : fullTriggers) {
+            FullTrigger existingFullTrigger = checkFullTriggerUpdate(tenantId, fullTrigger);
+            Trigger trigger = fullTrigger.getTrigger();
+            String triggerId = trigger.getId();
+            if (!triggerIds.add(triggerId)) {
+                throw new IllegalArgumentException("Trigger [" + tenantId + "/" + triggerId + "] is duplicated");
+            }
+            if (trigger.isGroup()) {
+                groupTriggers.add(fullTrigger);
+                continue;
+            }
+            boolean updated = false;
+
+            if (!trigger.isSame(existingFullTrigger.getTrigger())) {
+                newEntries.put(pk(trigger), new IspnTrigger(trigger));
+                events.add(new DefinitionsEvent(Type.TRIGGER_UPDATE, trigger));
+                updated = true;
+            }
+
+            List<Dampening> dampenings = fullTrigger.getDampenings();
+            List<Dampening> existingDampenings = existingFullTrigger.getDampenings();
+            if (!isSameDampenings(dampenings, existingDampenings)) {
+                for (Dampening d : existingDampenings) {
+                    doomedKeys.add(pk(d));
+                    events.add(new DefinitionsEvent(Type.DAMPENING_CHANGE, d));
+                }
+                for (Dampening d : dampenings) {
+                    d.setTenantId(tenantId);
+                    d.setTriggerId(triggerId);
+                    newEntries.put(pk(d), new IspnDampening(d));
+                    events.add(new DefinitionsEvent(Type.DAMPENING_CHANGE, d));
+                }
+                updated = true;
+            }
+
+            List<Condition> conditions = fullTrigger.getConditions();
+            List<Condition> existingConditions = existingFullTrigger.getConditions();
+            if (!isSameConditions(conditions, existingConditions)) {
+                existingConditions.forEach(c -> doomedKeys.add(pk(c)));
+                Set<String> dataIds = new HashSet<>();
+                for (Mode mode : Mode.values()) {
+                    List<Condition> modeConditions = conditions.stream()
+                            .filter(c -> mode == c.getTriggerMode())
+                            .collect(Collectors.toList());
+                    prepareConditions(tenantId, triggerId, mode, modeConditions, dataIds, newEntries);
+                }
+                events.add(new DefinitionsEvent(Type.TRIGGER_CONDITION_CHANGE, tenantId, triggerId, dataIds));
+                updated = true;
+            }
+
+            if (updated) {
+                updatedTriggers.add(trigger);
+            }
+        }
+        doomedKeys.removeAll(newEntries.keySet());
+
+        try {
+            backend.startBatch();
+            doomedKeys.forEach(key -> backend.remove(key));
+            backend.putAll(newEntries);
+            backend.endBatch(true);
+        } catch (Exception e) {
+            try {
+                backend.endBatch(false);
+            } catch (Exception e2) {
+                log.errorDatabaseException(e2.getMessage());
+            }
+            log.errorDatabaseException(e.getMessage());
+            throw e;
+        }
+
+        try {
+            deferEngineOps();
+            deferNotifications();
+
+            updatedTriggers.forEach(t -> engineReloadTrigger(tenantId, t.getId()));
+            events.forEach(this::notifyListeners);
+
+            for (FullTrigger fullTrigger : groupTriggers) {
+                updateFullTrigger(tenantId, fullTrigger);
+            }
+        } finally {
+            releaseEngineOps();
+            releaseNotifications();
+        }
+    }
+
+    @Override
+    public void removeTriggers(String tenantId, Collection<String> triggerIds) throws Exception {
+        if (isEmpty(tenantId)) {
+            throw new IllegalArgumentException("TenantId must be not null");
+        }
+        if (isEmpty(triggerIds)) {
+            throw new IllegalArgumentException("TriggerIds must be not empty");
+        }
+
+        List<Trigger> doomedTriggers = new ArrayList<>(triggerIds.size());
+        Set<String> doomedKeys = new HashSet<>();
+        for (String triggerId : triggerIds) {
+            // fetch the trigger (or throw NotFoundException)
+            Trigger doomedTrigger = getTrigger(tenantId, triggerId);
+            if (doomedTrigger.isGroup()) {
+                throw new IllegalArgumentException("Trigger [" + tenantId + "/" + triggerId + "] is a group trigger.");
+            }
+            if (doomedKeys.add(pk(doomedTrigger))) {
+                doomedTriggers.add(doomedTrigger);
+                getTriggerConditions(tenantId, triggerId, null).forEach(c -> doomedKeys.add(pk(c)));
+                getTriggerDampenings(tenantId, triggerId, null).forEach(d -> doomedKeys.add(pk(d)));
+            }
+        }
+
+        try {
+            backend.startBatch();
+            doomedKeys.forEach(key -> backend.remove(key));
+            backend.endBatch(true);
+        } catch (Exception e) {
+            try {
+                backend.endBatch(false);
+            } catch (Exception e2) {
+                log.errorDatabaseException(e2.getMessage());
+            }
+            log.errorDatabaseException(e.getMessage());
+            throw e;
+        }
+
+        try {
+            deferEngineOps();
+            deferNotifications();
+
+            for (Trigger t : doomedTriggers) {
+                engineRemoveTrigger(tenantId, t.getId());
+                notifyListeners(new DefinitionsEvent(Type.TRIGGER_REMOVE, tenantId, t.getId(), t.getTags()));
+            }
+        } finally {
+            releaseEngineOps();
+            releaseNotifications();
+        }
+    }
+
     @Override
     public FullTrigger getFullTrigger(String tenantId, String triggerId) throws Exception {
         if (isEmpty(tenantId)) {
@@ -2098,6 +2647,52 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
         }
     }
 
+    private List<String> getTriggerIds(String tenantId) {
+        List<Object[]> rows = queryFactory.from(IspnTrigger.class)
+                .select("triggerId")
+                .having("tenantId").eq(tenantId)
+                .build()
+                .list();
+        List<String> triggerIds = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            triggerIds.add((String) row[0]);
+        }
+        Collections.sort(triggerIds);
+        return triggerIds;
+    }
+
+    private List<FullTrigger> getFullTriggers(String tenantId, Collection<String> triggerIds) {
+        List<IspnTrigger> triggers = queryFactory.from(IspnTrigger.class)
+                .having("tenantId").eq(tenantId).and()
+                .having("triggerId").in(triggerIds)
+                .build()
+                .list();
+        List<IspnDampening> dampenings = queryFactory.from(IspnDampening.class)
+                .having("tenantId").eq(tenantId).and()
+                .having("triggerId").in(triggerIds)
+                .build()
+                .list();
+        List<IspnCondition> conditions = queryFactory.from(IspnCondition.class)
+                .having("tenantId").eq(tenantId).and()
+                .having("triggerId").in(triggerIds)
+                .build()
+                .list();
+        Map<String, List<Dampening>> dampeningsByTrigger = new HashMap<>();
+        dampenings.forEach(d -> dampeningsByTrigger.computeIfAbsent(d.getTriggerId(), k -> new ArrayList<>())
+                .add(d.getDampening()));
+        Map<String, List<Condition>> conditionsByTrigger = new HashMap<>();
+        conditions.forEach(c -> conditionsByTrigger.computeIfAbsent(c.getTriggerId(), k -> new ArrayList<>())
+                .add(c.getCondition()));
+
+        List<FullTrigger> fullTriggers = new ArrayList<>(triggers.size());
+        for (IspnTrigger t : triggers) {
+            fullTriggers.add(new FullTrigger(t.getTrigger(),
+                    dampeningsByTrigger.getOrDefault(t.getTriggerId(), new ArrayList<>()),
+                    conditionsByTrigger.getOrDefault(t.getTriggerId(), new ArrayList<>())));
+        }
+        return fullTriggers;
+    }
+
     private List<FullTrigger> getFullTriggers(String tenantId) throws Exception {
         if (isEmpty(tenantId)) {
             throw new IllegalArgumentException("TenantId must be not null");
@@ -2142,7 +2737,7 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
         return actionDefinitions.stream().map(a -> a.getActionDefinition()).collect(Collectors.toList());
     }
 
-    private Collection<Condition> mapConditions(List<IspnCondition> ispnConditions) {
+    private List<Condition> mapConditions(List<IspnCondition> ispnConditions) {
         return ispnConditions.stream()
                 .map(c -> c.getCondition())
                 .collect(Collectors.toList());
@@ -2171,106 +2766,6 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
         }
     }
 
-    private Condition getMemberCondition(Trigger member, Condition groupCondition, Map<String, String> dataIdMap) {
-        Condition newCondition = null;
-        switch (groupCondition.getType()) {
-            case AVAILABILITY:
-                newCondition = new AvailabilityCondition(member.getTenantId(), member.getId(),
-                        groupCondition.getTriggerMode(),
-                        groupCondition.getConditionSetSize(), groupCondition.getConditionSetIndex(),
-                        dataIdMap.get(groupCondition.getDataId()),
-                        ((AvailabilityCondition) groupCondition).getOperator());
-                break;
-            case COMPARE:
-                newCondition = new CompareCondition(member.getTenantId(), member.getId(),
-                        groupCondition.getTriggerMode(),
-                        groupCondition.getConditionSetSize(), groupCondition.getConditionSetIndex(),
-                        dataIdMap.get(groupCondition.getDataId()),
-                        ((CompareCondition) groupCondition).getOperator(),
-                        ((CompareCondition) groupCondition).getData2Multiplier(),
-                        dataIdMap.get(((CompareCondition) groupCondition).getData2Id()));
-                break;
-            case EVENT:
-                newCondition = new EventCondition(member.getTenantId(), member.getId(),
-                        groupCondition.getTriggerMode(),
-                        groupCondition.getConditionSetSize(), groupCondition.getConditionSetIndex(),
-                        dataIdMap.get(groupCondition.getDataId()),
-                        ((EventCondition) groupCondition).getExpression());
-                break;
-            case EXTERNAL:
-                String tokenDataId = groupCondition.getDataId();
-                String memberDataId = dataIdMap.get(tokenDataId);
-                String tokenExpression = ((ExternalCondition) groupCondition).getExpression();
-                String memberExpression = isEmpty(tokenExpression) ? tokenExpression
-                        : tokenExpression.replace(tokenDataId, memberDataId);
-                newCondition = new ExternalCondition(member.getTenantId(), member.getId(),
-                        groupCondition.getTriggerMode(),
-                        groupCondition.getConditionSetSize(), groupCondition.getConditionSetIndex(),
-                        memberDataId,
-                        ((ExternalCondition) groupCondition).getAlerterId(),
-                        memberExpression);
-                break;
-            case MISSING:
-                newCondition = new MissingCondition(member.getTenantId(), member.getId(),
-                        groupCondition.getTriggerMode(),
-                        groupCondition.getConditionSetSize(), groupCondition.getConditionSetIndex(),
-                        dataIdMap.get(groupCondition.getDataId()),
-                        ((MissingCondition) groupCondition).getInterval());
-                break;
-            case NELSON:
-                newCondition = new NelsonCondition(member.getTenantId(), member.getId(),
-                        groupCondition.getTriggerMode(),
-                        groupCondition.getConditionSetSize(), groupCondition.getConditionSetIndex(),
-                        dataIdMap.get(groupCondition.getDataId()),
-                        ((NelsonCondition) groupCondition).getActiveRules(),
-                        ((NelsonCondition) groupCondition).getSampleSize());
-                break;
-            case RANGE:
-                newCondition = new ThresholdRangeCondition(member.getTenantId(), member.getId(),
-                        groupCondition.getTriggerMode(),
-                        groupCondition.getConditionSetSize(), groupCondition.getConditionSetIndex(),
-                        dataIdMap.get(groupCondition.getDataId()),
-                        ((ThresholdRangeCondition) groupCondition).getOperatorLow(),
-                        ((ThresholdRangeCondition) groupCondition).getOperatorHigh(),
-                        ((ThresholdRangeCondition) groupCondition).getThresholdLow(),
-                        ((ThresholdRangeCondition) groupCondition).getThresholdHigh(),
-                        ((ThresholdRangeCondition) groupCondition).isInRange());
-                break;
-            case RATE:
-                newCondition = new RateCondition(member.getTenantId(), member.getId(),
-                        groupCondition.getTriggerMode(),
-                        groupCondition.getConditionSetSize(), groupCondition.getConditionSetIndex(),
-                        dataIdMap.get(groupCondition.getDataId()),
-                        ((RateCondition) groupCondition).getDirection(),
-                        ((RateCondition) groupCondition).getPeriod(),
-                        ((RateCondition) groupCondition).getOperator(),
-                        ((RateCondition) groupCondition).getThreshold());
-                break;
-            case STRING:
-                newCondition = new StringCondition(member.getTenantId(), member.getId(),
-                        groupCondition.getTriggerMode(),
-                        groupCondition.getConditionSetSize(), groupCondition.getConditionSetIndex(),
-                        dataIdMap.get(groupCondition.getDataId()),
-                        ((StringCondition) groupCondition).getOperator(),
-                        ((StringCondition) groupCondition).getPattern(),
-                        ((StringCondition) groupCondition).isIgnoreCase());
-                break;
-            case THRESHOLD:
-                newCondition = new ThresholdCondition(member.getTenantId(), member.getId(),
-                        groupCondition.getTriggerMode(),
-                        groupCondition.getConditionSetSize(), groupCondition.getConditionSetIndex(),
-                        dataIdMap.get(groupCondition.getDataId()),
-                        ((ThresholdCondition) groupCondition).getOperator(),
-                        ((ThresholdCondition) groupCondition).getThreshold());
-                break;
-            default:
-                throw new IllegalArgumentException("Unexpected Condition type: " + groupCondition.getType().name());
-        }
-
-        newCondition.setContext(groupCondition.getContext());
-        return newCondition;
-    }
-
     private Collection<Condition> setConditions(String tenantId, String triggerId, Mode triggerMode,
             Collection<Condition> conditions, Set<String> dataIds) throws Exception {
 
@@ -2279,37 +2774,8 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
 
         // Now add the new condition set
         try {
-            Map<String, IspnCondition> newConditions = new HashMap<>();
-            int indexCondition = 0;
-            for (Condition cond : conditions) {
-                cond.setTenantId(tenantId);
-                cond.setTriggerId(triggerId);
-                cond.setTriggerMode(triggerMode);
-                cond.setConditionSetSize(conditions.size());
-                cond.setConditionSetIndex(++indexCondition);
-
-                dataIds.add(cond.getDataId());
-                switch (cond.getType()) {
-                    case COMPARE:
-                        CompareCondition cCond = (CompareCondition) cond;
-                        dataIds.add(cCond.getData2Id());
-                        break;
-
-                    case AVAILABILITY:
-                    case EVENT:
-                    case EXTERNAL:
-                    case MISSING:
-                    case NELSON:
-                    case RANGE:
-                    case RATE:
-                    case STRING:
-                    case THRESHOLD:
-                        break;
-                    default:
-                        throw new IllegalArgumentException("Unexpected ConditionType: " + cond);
-                }
-                newConditions.put(pk(cond), new IspnCondition(cond));
-            }
+            Map<String, Object> newConditions = new HashMap<>();
+            prepareConditions(tenantId, triggerId, triggerMode, conditions, dataIds, newConditions);
             backend.putAll(newConditions);
 
         } catch (Exception e) {
@@ -2320,6 +2786,52 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
         return conditions;
     }
 
+    private void prepareConditions(String tenantId, String triggerId, Mode triggerMode,
+            Collection<Condition> conditions, Set<String> dataIds, Map<String, Object> entries) {
+        int indexCondition = 0;
+        for (Condition cond : conditions) {
+            cond.setTenantId(tenantId);
+            cond.setTriggerId(triggerId);
+            cond.setTriggerMode(triggerMode);
+            cond.setConditionSetSize(conditions.size());
+            cond.setConditionSetIndex(++indexCondition);
+
+            dataIds.add(cond.getDataId());
+            switch (cond.getType()) {
+                case COMPARE:
+                    CompareCondition cCond = (CompareCondition) cond;
+                    dataIds.add(cCond.getData2Id());
+                    break;
+
+                case EVENT:
+                    validateCondition(cond);
+                    break;
+
+                case AVAILABILITY:
+                case EXTERNAL:
+                case MISSING:
+                case NELSON:
+                case RANGE:
+                case RATE:
+                case STRING:
+                case THRESHOLD:
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unexpected ConditionType: " + cond);
+            }
+            entries.put(pk(cond), new IspnCondition(cond));
+        }
+    }
+
+    /*
+        Conditions are deserialized leniently, so stored definitions always load. New definitions are checked here.
+     */
+    private void validateCondition(Condition cond) {
+        if (cond instanceof EventCondition) {
+            ((EventCondition) cond).validateExpression();
+        }
+    }
+
     private void removeConditions(String tenantId, String triggerId, Mode triggerMode) throws Exception {
         if (isEmpty(tenantId)) {
             throw new IllegalArgumentException("TenantId must not be null");
@@ -2345,9 +2857,7 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
             throw e;
         }
 
-        if (null != alertsEngine) {
-            alertsEngine.reloadTrigger(dampening.getTenantId(), dampening.getTriggerId());
-        }
+        engineReloadTrigger(dampening.getTenantId(), dampening.getTriggerId());
 
         notifyListeners(new DefinitionsEvent(Type.DAMPENING_CHANGE, dampening));
     }
@@ -2360,16 +2870,14 @@ public class IspnDefinitionsServiceImpl implements DefinitionsService {
             throw e;
         }
 
-        if (null != alertsEngine) {
-            alertsEngine.reloadTrigger(dampening.getTenantId(), dampening.getTriggerId());
-        }
+        engineReloadTrigger(dampening.getTenantId(), dampening.getTriggerId());
 
         notifyListeners(new DefinitionsEvent(Type.DAMPENING_CHANGE, dampening));
 
         return dampening;
     }
 
-    private Collection<Dampening> mapDampenings(List<IspnDampening> ispnDampenings) {
+    private List<Dampening> mapDampenings(List<IspnDampening> ispnDampenings) {
         return ispnDampenings.stream()
                 .map(d -> d.getDampening())
                 .collect(Collectors.toList());
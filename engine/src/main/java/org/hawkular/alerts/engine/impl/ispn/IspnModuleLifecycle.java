@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl.ispn;
+
+import java.util.Map;
+
+import org.hawkular.alerts.engine.impl.ispn.model.IspnExternalizers;
+import org.hawkular.commons.log.MsgLogger;
+import org.hawkular.commons.log.MsgLogging;
+import org.hawkular.commons.properties.HawkularProperties;
+import org.infinispan.commons.marshall.AdvancedExternalizer;
+import org.infinispan.configuration.global.GlobalConfiguration;
+import org.infinispan.factories.GlobalComponentRegistry;
+import org.infinispan.lifecycle.AbstractModuleLifecycle;
+
+/**
+ * Registers the backend externalizers when the cache manager starts.
+ *
+ * Binary marshalling can be disabled with "hawkular-alerts.backend-binary-marshalling" property
+ * (HAWKULAR_ALERTS_BACKEND_BINARY_MARSHALLING env) to keep writing entries with java serialization.
+ */
+public class IspnModuleLifecycle extends AbstractModuleLifecycle {
+    private static final MsgLogger log = MsgLogging.getMsgLogger(IspnModuleLifecycle.class);
+
+    private static final String BACKEND_BINARY_MARSHALLING = "hawkular-alerts.backend-binary-marshalling";
+    private static final String BACKEND_BINARY_MARSHALLING_ENV = "HAWKULAR_ALERTS_BACKEND_BINARY_MARSHALLING";
+    private static final String BACKEND_BINARY_MARSHALLING_DEFAULT = "true";
+
+    @Override
+    public void cacheManagerStarting(GlobalComponentRegistry gcr, GlobalConfiguration globalConfiguration) {
+        boolean binaryMarshalling = Boolean.parseBoolean(HawkularProperties.getProperty(BACKEND_BINARY_MARSHALLING,
+                BACKEND_BINARY_MARSHALLING_ENV, BACKEND_BINARY_MARSHALLING_DEFAULT));
+        log.infof("Backend binary marshalling enabled: %s", binaryMarshalling);
+        if (!binaryMarshalling) {
+            return;
+        }
+        Map<Integer, AdvancedExternalizer<?>> externalizers = globalConfiguration.serialization()
+                .advancedExternalizers();
+        for (AdvancedExternalizer<?> externalizer : IspnExternalizers.getExternalizers()) {
+            externalizers.put(externalizer.getId(), externalizer);
+        }
+    }
+}
@@ -122,6 +122,19 @@ public class IspnPk {
                 .toString();
     }
 
+    public static String pkFromTriggerSnapshot(String tenantId, String triggerId, String version) {
+        if (tenantId == null || triggerId == null || version == null) {
+            return null;
+        }
+        return new StringBuilder("TriggerSnapshot-")
+                .append(tenantId)
+                .append("-")
+                .append(triggerId)
+                .append("-")
+                .append(version)
+                .toString();
+    }
+
     public static String pk(Event event) {
         if (event == null) {
             return null;
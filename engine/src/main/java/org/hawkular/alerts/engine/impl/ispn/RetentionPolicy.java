@@ -0,0 +1,175 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl.ispn;
+
+import static org.hawkular.alerts.api.util.Util.isEmpty;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.alerts.api.model.event.Event;
+
+/**
+ * Retention of events and alerts in the backend, by tenant and event category.
+ *
+ * Rules are defined as a comma separated list of tenantId:category=retention entries, where tenantId and category
+ * can be * to match any value and retention is a number followed by d (days), h (hours), m (minutes) or s (seconds),
+ * or a plain number of milliseconds.  For example:
+ *
+ * *:*=30d,*:ALERT=180d,tenant1:LOG=7d
+ *
+ * The most specific rule is applied: tenant and category, then tenant, then category and then the default one.
+ * Events and alerts not matched by any rule are kept until they are deleted.
+ *
+ * The retention is enforced by the backend as the lifespan of the stored entry, counted from the ctime of the event,
+ * so expired events are evicted without querying and deleting them.
+ */
+public class RetentionPolicy {
+    public static final long KEEP = -1;
+
+    private static final String ANY = "*";
+
+    private final Map<String, Long> rules = new ConcurrentHashMap<>();
+
+    public RetentionPolicy() {
+    }
+
+    /**
+     * @param rules comma separated list of tenantId:category=retention entries, it can be empty
+     * @return the parsed policy
+     * @throws IllegalArgumentException on a malformed entry
+     */
+    public static RetentionPolicy parse(String rules) {
+        RetentionPolicy policy = new RetentionPolicy();
+        if (isEmpty(rules)) {
+            return policy;
+        }
+        for (String entry : rules.split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int equals = entry.lastIndexOf('=');
+            int colon = equals < 0 ? -1 : entry.lastIndexOf(':', equals);
+            if (colon <= 0 || equals == colon + 1 || equals == entry.length() - 1) {
+                throw new IllegalArgumentException("Retention rule [" + entry + "] is not tenantId:category=retention");
+            }
+            policy.setRetention(entry.substring(0, colon).trim(), entry.substring(colon + 1, equals).trim(),
+                    parseRetention(entry.substring(equals + 1).trim()));
+        }
+        return policy;
+    }
+
+    private static long parseRetention(String retention) {
+        TimeUnit unit;
+        switch (Character.toLowerCase(retention.charAt(retention.length() - 1))) {
+            case 'd':
+                unit = TimeUnit.DAYS;
+                break;
+            case 'h':
+                unit = TimeUnit.HOURS;
+                break;
+            case 'm':
+                unit = TimeUnit.MINUTES;
+                break;
+            case 's':
+                unit = TimeUnit.SECONDS;
+                break;
+            default:
+                unit = TimeUnit.MILLISECONDS;
+        }
+        String value = unit == TimeUnit.MILLISECONDS ? retention : retention.substring(0, retention.length() - 1);
+        try {
+            long amount = Long.parseLong(value.trim());
+            if (amount <= 0) {
+                throw new IllegalArgumentException("Retention [" + retention + "] must be positive");
+            }
+            return unit.toMillis(amount);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Retention [" + retention + "] is not valid");
+        }
+    }
+
+    /**
+     * @param tenantId the tenant of the rule, * or null for any tenant
+     * @param category the event category of the rule, * or null for any category
+     * @param retention retention in milliseconds, {@link #KEEP} removes the rule
+     */
+    public void setRetention(String tenantId, String category, long retention) {
+        String key = key(isEmpty(tenantId) ? ANY : tenantId, isEmpty(category) ? ANY : category);
+        if (retention == KEEP) {
+            rules.remove(key);
+        } else if (retention > 0) {
+            rules.put(key, retention);
+        } else {
+            throw new IllegalArgumentException("Retention must be positive");
+        }
+    }
+
+    /**
+     * @param tenantId the tenant of the event
+     * @param category the category of the event, it can be null
+     * @return retention in milliseconds of the most specific rule, or {@link #KEEP} if no rule matches
+     */
+    public long getRetention(String tenantId, String category) {
+        if (rules.isEmpty()) {
+            return KEEP;
+        }
+        Long retention = null;
+        if (!isEmpty(category)) {
+            retention = rules.get(key(tenantId, category));
+        }
+        if (retention == null) {
+            retention = rules.get(key(tenantId, ANY));
+        }
+        if (retention == null && !isEmpty(category)) {
+            retention = rules.get(key(ANY, category));
+        }
+        if (retention == null) {
+            retention = rules.get(key(ANY, ANY));
+        }
+        return retention == null ? KEEP : retention;
+    }
+
+    /**
+     * @param event the event or alert to store
+     * @param now current time in milliseconds
+     * @return remaining lifespan in milliseconds of the event, {@link #KEEP} when it has no retention and 0 when it is
+     * already expired
+     */
+    public long lifespan(Event event, long now) {
+        long retention = getRetention(event.getTenantId(), event.getCategory());
+        if (retention == KEEP) {
+            return KEEP;
+        }
+        return Math.max(0, event.getCtime() + retention - now);
+    }
+
+    public boolean hasRules() {
+        return !rules.isEmpty();
+    }
+
+    private static String key(String tenantId, String category) {
+        return tenantId + ":" + category;
+    }
+
+    @Override
+    public String toString() {
+        return "RetentionPolicy" + rules;
+    }
+}
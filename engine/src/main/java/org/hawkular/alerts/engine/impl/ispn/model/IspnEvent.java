@@ -30,12 +30,20 @@ import org.hibernate.search.annotations.Indexed;
 import org.hibernate.search.annotations.Store;
 
 /**
+ * An Event or Alert stored in the backend.
+ *
+ * When a triggerVersion is present the stored event does not embed its Trigger and Dampening, they are stored once
+ * per version as an IspnTriggerSnapshot and attached on read.
+ *
  * @author Jay Shaughnessy
  * @author Lucas Ponce
  */
 @Indexed(index = "event")
 public class IspnEvent implements Serializable {
 
+    // Fixed to the value computed for previous versions, so entries stored with java serialization remain readable
+    private static final long serialVersionUID = 1930672648629915161L;
+
     @Field(store = Store.YES, analyze = Analyze.NO)
     private String eventType;
 
@@ -70,14 +78,25 @@ public class IspnEvent implements Serializable {
 
     private Event event;
 
+    private String triggerVersion;
+
     public IspnEvent() {
     }
 
     public IspnEvent(Event event) {
-        updateEvent(event);
+        updateEvent(event, null);
     }
 
-    private void updateEvent(Event event) {
+    /**
+     * @param event the Event or Alert to store
+     * @param triggerVersion the version of the IspnTriggerSnapshot holding the Trigger and Dampening of the event,
+     *                       they are not embedded in the stored event
+     */
+    public IspnEvent(Event event, String triggerVersion) {
+        updateEvent(event, triggerVersion);
+    }
+
+    private void updateEvent(Event event, String triggerVersion) {
         if (event == null) {
             throw new IllegalArgumentException("event must be not null");
         }
@@ -96,6 +115,11 @@ public class IspnEvent implements Serializable {
         this.triggerId = event.getTrigger() != null ? event.getTrigger().getId() : null;
         this.ctime = event.getCtime();
         this.category = event.getCategory();
+        this.triggerVersion = triggerVersion;
+        if (triggerVersion != null) {
+            this.event.setTrigger(null);
+            this.event.setDampening(null);
+        }
     }
 
     public String getEventType() {
@@ -138,7 +162,11 @@ public class IspnEvent implements Serializable {
     }
 
     public void setEvent(Event event) {
-        updateEvent(event);
+        updateEvent(event, null);
+    }
+
+    public String getTriggerVersion() {
+        return triggerVersion;
     }
 
     public String getTriggerId() {
@@ -206,6 +234,8 @@ public class IspnEvent implements Serializable {
         if (status != null ? !status.equals(ispnEvent.status) : ispnEvent.status != null) return false;
         if (severity != null ? !severity.equals(ispnEvent.severity) : ispnEvent.severity != null) return false;
         if (category != null ? !category.equals(ispnEvent.category) : ispnEvent.category != null) return false;
+        if (triggerVersion != null ? !triggerVersion.equals(ispnEvent.triggerVersion)
+                : ispnEvent.triggerVersion != null) return false;
         return event != null ? event.equals(ispnEvent.event) : ispnEvent.event == null;
     }
 
@@ -221,6 +251,7 @@ public class IspnEvent implements Serializable {
         result = 31 * result + (int) (stime ^ (stime >>> 32));
         result = 31 * result + (severity != null ? severity.hashCode() : 0);
         result = 31 * result + (category != null ? category.hashCode() : 0);
+        result = 31 * result + (triggerVersion != null ? triggerVersion.hashCode() : 0);
         result = 31 * result + (event != null ? event.hashCode() : 0);
         return result;
     }
@@ -238,6 +269,7 @@ public class IspnEvent implements Serializable {
                 ", stime=" + stime +
                 ", severity='" + severity + '\'' +
                 ", category='" + category + '\'' +
+                ", triggerVersion='" + triggerVersion + '\'' +
                 ", event=" + event +
                 '}';
     }
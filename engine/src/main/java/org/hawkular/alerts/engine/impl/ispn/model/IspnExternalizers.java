@@ -0,0 +1,445 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl.ispn.model;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hawkular.alerts.api.json.JsonUtil;
+import org.hawkular.alerts.api.model.action.Action;
+import org.hawkular.alerts.api.model.action.ActionDefinition;
+import org.hawkular.alerts.api.model.condition.Condition;
+import org.hawkular.alerts.api.model.condition.ConditionEval;
+import org.hawkular.alerts.api.model.dampening.Dampening;
+import org.hawkular.alerts.api.model.event.Alert;
+import org.hawkular.alerts.api.model.event.Event;
+import org.hawkular.alerts.api.model.trigger.Mode;
+import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.infinispan.commons.marshall.AbstractExternalizer;
+import org.infinispan.commons.marshall.AdvancedExternalizer;
+
+/**
+ * Infinispan externalizers for the backend model classes.
+ *
+ * Each entry starts with a format version byte. The api model objects are encoded with the api json mapping, which
+ * is the canonical schema of the model, and the few fields not exposed in json (i.e. Trigger.mode and
+ * ConditionEval.match) are written explicitly. This avoids the class descriptors and deep object graphs of plain
+ * java serialization.
+ *
+ * Entries written by previous versions with java serialization are still readable, as the backend classes remain
+ * Serializable. They are rewritten in this format when updated.
+ */
+public class IspnExternalizers {
+
+    /*
+        Range of ids reserved for hawkular-alerts externalizers
+     */
+    public static final int ACTION_ID = 3300;
+    public static final int ACTION_DEFINITION_ID = 3301;
+    public static final int ACTION_PLUGIN_ID = 3302;
+    public static final int CONDITION_ID = 3303;
+    public static final int DAMPENING_ID = 3304;
+    public static final int EVENT_ID = 3305;
+    public static final int TRIGGER_ID = 3306;
+    public static final int TRIGGER_SNAPSHOT_ID = 3307;
+
+    static final byte VERSION_1 = 1;
+
+    private static final byte NULL = 0;
+    private static final byte EVENT = 1;
+    private static final byte ALERT = 2;
+
+    public static List<AdvancedExternalizer<?>> getExternalizers() {
+        return Arrays.asList(new IspnActionExternalizer(),
+                new IspnActionDefinitionExternalizer(),
+                new IspnActionPluginExternalizer(),
+                new IspnConditionExternalizer(),
+                new IspnDampeningExternalizer(),
+                new IspnEventExternalizer(),
+                new IspnTriggerExternalizer(),
+                new IspnTriggerSnapshotExternalizer());
+    }
+
+    public static class IspnActionExternalizer extends AbstractExternalizer<IspnAction> {
+        @Override
+        public Set<Class<? extends IspnAction>> getTypeClasses() {
+            return Collections.singleton(IspnAction.class);
+        }
+
+        @Override
+        public Integer getId() {
+            return ACTION_ID;
+        }
+
+        @Override
+        public void writeObject(ObjectOutput output, IspnAction ispnAction) throws IOException {
+            output.writeByte(VERSION_1);
+            Action action = new Action(ispnAction.getAction());
+            Event event = action.getEvent();
+            action.setEvent(null);
+            writeJson(output, action);
+            writeEvent(output, event);
+        }
+
+        @Override
+        public IspnAction readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+            checkVersion(input);
+            Action action = readJson(input, Action.class);
+            action.setEvent(readEvent(input));
+            return new IspnAction(action);
+        }
+    }
+
+    public static class IspnActionDefinitionExternalizer extends AbstractExternalizer<IspnActionDefinition> {
+        @Override
+        public Set<Class<? extends IspnActionDefinition>> getTypeClasses() {
+            return Collections.singleton(IspnActionDefinition.class);
+        }
+
+        @Override
+        public Integer getId() {
+            return ACTION_DEFINITION_ID;
+        }
+
+        @Override
+        public void writeObject(ObjectOutput output, IspnActionDefinition ispnActionDefinition) throws IOException {
+            output.writeByte(VERSION_1);
+            writeJson(output, ispnActionDefinition.getActionDefinition());
+        }
+
+        @Override
+        public IspnActionDefinition readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+            checkVersion(input);
+            return new IspnActionDefinition(readJson(input, ActionDefinition.class));
+        }
+    }
+
+    public static class IspnActionPluginExternalizer extends AbstractExternalizer<IspnActionPlugin> {
+        @Override
+        public Set<Class<? extends IspnActionPlugin>> getTypeClasses() {
+            return Collections.singleton(IspnActionPlugin.class);
+        }
+
+        @Override
+        public Integer getId() {
+            return ACTION_PLUGIN_ID;
+        }
+
+        @Override
+        public void writeObject(ObjectOutput output, IspnActionPlugin ispnActionPlugin) throws IOException {
+            output.writeByte(VERSION_1);
+            writeString(output, ispnActionPlugin.getActionPlugin());
+            writeMap(output, ispnActionPlugin.getDefaultProperties());
+        }
+
+        @Override
+        public IspnActionPlugin readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+            checkVersion(input);
+            return new IspnActionPlugin(readString(input), readMap(input));
+        }
+    }
+
+    public static class IspnConditionExternalizer extends AbstractExternalizer<IspnCondition> {
+        @Override
+        public Set<Class<? extends IspnCondition>> getTypeClasses() {
+            return Collections.singleton(IspnCondition.class);
+        }
+
+        @Override
+        public Integer getId() {
+            return CONDITION_ID;
+        }
+
+        @Override
+        public void writeObject(ObjectOutput output, IspnCondition ispnCondition) throws IOException {
+            output.writeByte(VERSION_1);
+            writeJson(output, ispnCondition.getCondition());
+        }
+
+        @Override
+        public IspnCondition readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+            checkVersion(input);
+            return new IspnCondition(readJson(input, Condition.class));
+        }
+    }
+
+    public static class IspnDampeningExternalizer extends AbstractExternalizer<IspnDampening> {
+        @Override
+        public Set<Class<? extends IspnDampening>> getTypeClasses() {
+            return Collections.singleton(IspnDampening.class);
+        }
+
+        @Override
+        public Integer getId() {
+            return DAMPENING_ID;
+        }
+
+        @Override
+        public void writeObject(ObjectOutput output, IspnDampening ispnDampening) throws IOException {
+            output.writeByte(VERSION_1);
+            writeJson(output, ispnDampening.getDampening());
+        }
+
+        @Override
+        public IspnDampening readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+            checkVersion(input);
+            return new IspnDampening(readJson(input, Dampening.class));
+        }
+    }
+
+    public static class IspnEventExternalizer extends AbstractExternalizer<IspnEvent> {
+        @Override
+        public Set<Class<? extends IspnEvent>> getTypeClasses() {
+            return Collections.singleton(IspnEvent.class);
+        }
+
+        @Override
+        public Integer getId() {
+            return EVENT_ID;
+        }
+
+        @Override
+        public void writeObject(ObjectOutput output, IspnEvent ispnEvent) throws IOException {
+            output.writeByte(VERSION_1);
+            writeEvent(output, ispnEvent.getEvent());
+            writeString(output, ispnEvent.getTriggerId());
+            writeString(output, ispnEvent.getTriggerVersion());
+        }
+
+        @Override
+        public IspnEvent readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+            checkVersion(input);
+            Event event = readEvent(input);
+            String triggerId = readString(input);
+            IspnEvent ispnEvent = new IspnEvent(event, readString(input));
+            ispnEvent.setTriggerId(triggerId);
+            return ispnEvent;
+        }
+    }
+
+    public static class IspnTriggerExternalizer extends AbstractExternalizer<IspnTrigger> {
+        @Override
+        public Set<Class<? extends IspnTrigger>> getTypeClasses() {
+            return Collections.singleton(IspnTrigger.class);
+        }
+
+        @Override
+        public Integer getId() {
+            return TRIGGER_ID;
+        }
+
+        @Override
+        public void writeObject(ObjectOutput output, IspnTrigger ispnTrigger) throws IOException {
+            output.writeByte(VERSION_1);
+            writeTrigger(output, ispnTrigger.getTrigger());
+        }
+
+        @Override
+        public IspnTrigger readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+            checkVersion(input);
+            return new IspnTrigger(readTrigger(input));
+        }
+    }
+
+    public static class IspnTriggerSnapshotExternalizer extends AbstractExternalizer<IspnTriggerSnapshot> {
+        @Override
+        public Set<Class<? extends IspnTriggerSnapshot>> getTypeClasses() {
+            return Collections.singleton(IspnTriggerSnapshot.class);
+        }
+
+        @Override
+        public Integer getId() {
+            return TRIGGER_SNAPSHOT_ID;
+        }
+
+        @Override
+        public void writeObject(ObjectOutput output, IspnTriggerSnapshot snapshot) throws IOException {
+            output.writeByte(VERSION_1);
+            writeString(output, snapshot.getVersion());
+            writeTrigger(output, snapshot.getTrigger());
+            Dampening dampening = snapshot.getDampening();
+            output.writeBoolean(dampening != null);
+            if (dampening != null) {
+                writeJson(output, dampening);
+            }
+        }
+
+        @Override
+        public IspnTriggerSnapshot readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+            checkVersion(input);
+            String version = readString(input);
+            Trigger trigger = readTrigger(input);
+            Dampening dampening = input.readBoolean() ? readJson(input, Dampening.class) : null;
+            return new IspnTriggerSnapshot(version, trigger, dampening);
+        }
+    }
+
+    static void checkVersion(ObjectInput input) throws IOException {
+        byte version = input.readByte();
+        if (version != VERSION_1) {
+            throw new IOException("Unsupported backend format version [" + version + "]");
+        }
+    }
+
+    static void writeEvent(ObjectOutput output, Event event) throws IOException {
+        if (event == null) {
+            output.writeByte(NULL);
+            return;
+        }
+        output.writeByte(event instanceof Alert ? ALERT : EVENT);
+        writeJson(output, event);
+        writeMode(output, event.getTrigger() != null ? event.getTrigger().getMode() : null);
+        writeMatches(output, event.getEvalSets());
+        if (event instanceof Alert) {
+            writeMatches(output, ((Alert) event).getResolvedEvalSets());
+        }
+    }
+
+    static Event readEvent(ObjectInput input) throws IOException {
+        byte type = input.readByte();
+        if (type == NULL) {
+            return null;
+        }
+        Event event = type == ALERT ? readJson(input, Alert.class) : readJson(input, Event.class);
+        Mode mode = readMode(input);
+        if (event.getTrigger() != null) {
+            event.getTrigger().setMode(mode);
+        }
+        readMatches(input, event.getEvalSets());
+        if (event instanceof Alert) {
+            readMatches(input, ((Alert) event).getResolvedEvalSets());
+        }
+        return event;
+    }
+
+    /*
+        The evals of a set are identified by their conditionSetIndex, the json does not keep the order of the evals
+        in a set
+     */
+    static void writeMatches(ObjectOutput output, List<Set<ConditionEval>> evalSets) throws IOException {
+        if (evalSets == null) {
+            output.writeInt(-1);
+            return;
+        }
+        output.writeInt(evalSets.size());
+        for (Set<ConditionEval> evalSet : evalSets) {
+            if (evalSet == null) {
+                output.writeInt(-1);
+                continue;
+            }
+            output.writeInt(evalSet.size());
+            for (ConditionEval eval : evalSet) {
+                output.writeInt(eval.getConditionSetIndex());
+                output.writeBoolean(eval.isMatch());
+            }
+        }
+    }
+
+    static void readMatches(ObjectInput input, List<Set<ConditionEval>> evalSets) throws IOException {
+        int numSets = input.readInt();
+        for (int i = 0; i < numSets; i++) {
+            int numEvals = input.readInt();
+            Map<Integer, Boolean> matches = new HashMap<>();
+            for (int j = 0; j < numEvals; j++) {
+                matches.put(input.readInt(), input.readBoolean());
+            }
+            Set<ConditionEval> evalSet = evalSets != null && i < evalSets.size() ? evalSets.get(i) : null;
+            if (evalSet != null) {
+                for (ConditionEval eval : evalSet) {
+                    Boolean match = matches.get(eval.getConditionSetIndex());
+                    if (match != null) {
+                        eval.setMatch(match);
+                    }
+                }
+            }
+        }
+    }
+
+    static void writeTrigger(ObjectOutput output, Trigger trigger) throws IOException {
+        writeJson(output, trigger);
+        writeMode(output, trigger.getMode());
+    }
+
+    static Trigger readTrigger(ObjectInput input) throws IOException {
+        Trigger trigger = readJson(input, Trigger.class);
+        trigger.setMode(readMode(input));
+        return trigger;
+    }
+
+    static void writeMode(ObjectOutput output, Mode mode) throws IOException {
+        output.writeByte(mode == null ? -1 : mode.ordinal());
+    }
+
+    static Mode readMode(ObjectInput input) throws IOException {
+        byte ordinal = input.readByte();
+        return ordinal < 0 ? null : Mode.values()[ordinal];
+    }
+
+    static void writeJson(ObjectOutput output, Object value) throws IOException {
+        byte[] json = JsonUtil.getMapper().writeValueAsBytes(value);
+        output.writeInt(json.length);
+        output.write(json);
+    }
+
+    static <T> T readJson(ObjectInput input, Class<T> clazz) throws IOException {
+        byte[] json = new byte[input.readInt()];
+        input.readFully(json);
+        return JsonUtil.getMapper().readValue(json, clazz);
+    }
+
+    static void writeString(ObjectOutput output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    static String readString(ObjectInput input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    static void writeMap(ObjectOutput output, Map<String, String> map) throws IOException {
+        if (map == null) {
+            output.writeInt(-1);
+            return;
+        }
+        output.writeInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            writeString(output, entry.getKey());
+            writeString(output, entry.getValue());
+        }
+    }
+
+    static Map<String, String> readMap(ObjectInput input) throws IOException {
+        int size = input.readInt();
+        if (size < 0) {
+            return null;
+        }
+        Map<String, String> map = new HashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            map.put(readString(input), readString(input));
+        }
+        return map;
+    }
+}
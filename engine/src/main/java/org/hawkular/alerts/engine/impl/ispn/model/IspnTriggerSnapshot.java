@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl.ispn.model;
+
+import java.io.Serializable;
+
+import org.hawkular.alerts.api.model.dampening.Dampening;
+import org.hawkular.alerts.api.model.trigger.Trigger;
+
+/**
+ * A version of the Trigger and Dampening attached to events and alerts.
+ * It is stored once per version and referenced from the IspnEvent entries.
+ */
+public class IspnTriggerSnapshot implements Serializable {
+
+    private String tenantId;
+
+    private String triggerId;
+
+    private String version;
+
+    private Trigger trigger;
+
+    private Dampening dampening;
+
+    public IspnTriggerSnapshot() {
+    }
+
+    public IspnTriggerSnapshot(String version, Trigger trigger, Dampening dampening) {
+        if (trigger == null) {
+            throw new IllegalArgumentException("trigger must be not null");
+        }
+        this.tenantId = trigger.getTenantId();
+        this.triggerId = trigger.getId();
+        this.version = version;
+        this.trigger = trigger;
+        this.dampening = dampening != null ? new Dampening(dampening) : null;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public String getTriggerId() {
+        return triggerId;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /*
+        Events share the Trigger reference, as the Event copy constructor does
+     */
+    public Trigger getTrigger() {
+        return trigger;
+    }
+
+    public Dampening getDampening() {
+        return dampening != null ? new Dampening(dampening) : null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        IspnTriggerSnapshot that = (IspnTriggerSnapshot) o;
+
+        if (tenantId != null ? !tenantId.equals(that.tenantId) : that.tenantId != null) return false;
+        if (triggerId != null ? !triggerId.equals(that.triggerId) : that.triggerId != null) return false;
+        return version != null ? version.equals(that.version) : that.version == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = tenantId != null ? tenantId.hashCode() : 0;
+        result = 31 * result + (triggerId != null ? triggerId.hashCode() : 0);
+        result = 31 * result + (version != null ? version.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "IspnTriggerSnapshot{" +
+                "tenantId='" + tenantId + '\'' +
+                ", triggerId='" + triggerId + '\'' +
+                ", version='" + version + '\'' +
+                '}';
+    }
+}
@@ -89,4 +89,9 @@ public interface AlertsEngine {
      * @param triggerId Trigger id to be removed
      */
     void removeTrigger(String tenantId, String triggerId);
+
+    /**
+     * @return the number of datums and events sent to the engine and not yet evaluated
+     */
+    int getPendingCount();
 }
@@ -16,6 +16,8 @@
  */
 package org.hawkular.alerts.engine.service;
 
+import java.util.Map;
+
 import org.hawkular.alerts.engine.impl.IncomingDataManagerImpl.IncomingData;
 import org.hawkular.alerts.engine.impl.IncomingDataManagerImpl.IncomingEvents;
 
@@ -27,8 +29,21 @@ import org.hawkular.alerts.engine.impl.IncomingDataManagerImpl.IncomingEvents;
  */
 public interface IncomingDataManager {
 
+    /**
+     * @param incomingData the data to be processed and sent to the AlertsEngine
+     * @throws org.hawkular.alerts.api.exception.IngestionRejectedException if the ingestion queue is full
+     */
     void bufferData(IncomingData incomingData);
 
+    /**
+     * @param incomingEvents the events to be processed and sent to the AlertsEngine
+     * @throws org.hawkular.alerts.api.exception.IngestionRejectedException if the ingestion queue is full
+     */
     void bufferEvents(IncomingEvents incomingEvents);
 
+    /**
+     * @return depth and counters of the ingestion queues
+     */
+    Map<String, String> getStatus();
+
 }
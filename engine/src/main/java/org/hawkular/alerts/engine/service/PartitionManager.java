@@ -17,7 +17,9 @@
 package org.hawkular.alerts.engine.service;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.hawkular.alerts.api.model.data.Data;
 import org.hawkular.alerts.api.model.event.Event;
@@ -78,6 +80,11 @@ public interface PartitionManager {
      *  - getStatus().get("currentNode") returns a string with the identifier of the current node
      *  - getStatus().get("members") returns a string with a list comma identifiers of the topology nodes
      *    at the moment of the call
+     *  - getStatus().get("sentBatches"), "sentItems", "droppedItems", "failedBatches", "inflightBatches",
+     *    "receivedBatches" and "receivedItems" return the delivery metrics of data and events across nodes
+     *  - getStatus().get("strategy") returns the partition strategy, "hash" or "affinity"
+     *  - getStatus().get("dataFanOutBefore") and getStatus().get("dataFanOut") return, on the coordinator, the sum
+     *    of the nodes receiving each dataId before and after the last partition change
      * In standalone scenarios getStatus() returns an empty map.
      *
      * @return Map with currentNode and members information for distributed scenarios
@@ -91,9 +98,18 @@ public interface PartitionManager {
      * @param operation type of operation performed on the trigger
      * @param tenantId Tenant where Trigger is stored
      * @param triggerId Trigger id
+     * @throws IllegalStateException if the operation could not be delivered to the node owning the trigger
      */
     void notifyTrigger(Operation operation, String tenantId, String triggerId);
 
+    /**
+     * Return the triggers assigned to the current node on the current partition.
+     *
+     * @return a map of tenantId with the triggerIds assigned to the current node, null if the partition is not
+     *         initialized or on non-distributed scenario
+     */
+    Map<String, List<String>> getLocalPartition();
+
     /**
      * Register a listener to process partition events linked with triggers.
      *
@@ -115,6 +131,14 @@ public interface PartitionManager {
      */
     void notifyEvents(Collection<Event> events);
 
+    /**
+     * Notify partition manager with the dataIds used by the triggers loaded on this node.
+     * Data and events are only delivered to the nodes that use their dataId.
+     *
+     * @param dataIds a map of tenantId with the dataIds used by the triggers of this node
+     */
+    void notifyDataIds(Map<String, Set<String>> dataIds);
+
     /**
      * Register a listener to process partition events linked with data or events.
      *
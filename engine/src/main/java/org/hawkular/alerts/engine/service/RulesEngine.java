@@ -92,6 +92,12 @@ public interface RulesEngine {
      */
     void removeFacts(Predicate<Object> factFilter);
 
+    /**
+     * @param factFilter the factFilter
+     * @return The Fact Objects matching the <code>factFilter</code>.
+     */
+    Collection<Object> getFacts(Predicate<Object> factFilter);
+
     /**
      * Add to the accumulated <code>Data</code> to be processed the next time {@link #fire()} is called. After the
      * rules are fired on the accumulated <code>Data</code> it will be cleared.
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.util;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hawkular.commons.log.MsgLogger;
+import org.hawkular.commons.log.MsgLogging;
+import org.hawkular.commons.properties.HawkularProperties;
+
+/**
+ * Named and bounded thread pools used by the alerting subsystems, so a burst or a blocked task on one of them does
+ * not stall the others.
+ *
+ * Each pool is sized by hawkular-alerts.executor-[pool]-threads and its queue by
+ * hawkular-alerts.executor-[pool]-queue-size.  When the queue is full the task is counted as a saturated task and
+ * handled by hawkular-alerts.executor-[pool]-rejection-policy:
+ * <ul>
+ *     <li>caller-runs: the task runs on the submitting thread, which slows down the producer</li>
+ *     <li>abort: the submitter gets a RejectedExecutionException</li>
+ *     <li>discard: the task is dropped</li>
+ * </ul>
+ * The actions pool aborts by default, so a slow plugin never runs on the engine threads, the other pools run on the
+ * caller.
+ *
+ * Long-running loops, like the CEP session or the Kafka consumers, should not be submitted to these pools but run on
+ * their own threads.
+ */
+public class AlertsExecutors {
+    private static final MsgLogger log = MsgLogging.getMsgLogger(AlertsExecutors.class);
+
+    private static final String THREAD_PREFIX = "HawkularAlerts-";
+    private static final long KEEP_ALIVE_SECONDS = 60;
+    private static final long SATURATION_LOG_INTERVAL = 1000;
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+    public enum Pool {
+        /*
+            Processing of incoming data and events before they are sent to the AlertsEngine
+         */
+        INGESTION("ingestion", CORES, 1000, RejectionPolicy.CALLER_RUNS),
+        /*
+            Reload of triggers into the AlertsEngine
+         */
+        RULES("rules", 2, 1000, RejectionPolicy.CALLER_RUNS),
+        /*
+            Execution of action plugins, usually blocked on remote calls
+         */
+        ACTIONS("actions", 2 * CORES, 10000, RejectionPolicy.ABORT),
+        /*
+            Engine extensions, i.e. the events aggregation with CEP
+         */
+        EXTENSIONS("extensions", CORES, 1000, RejectionPolicy.CALLER_RUNS),
+        /*
+            Alerter plugins
+         */
+        ALERTERS("alerters", CORES, 1000, RejectionPolicy.CALLER_RUNS);
+
+        private final String name;
+        private final int defaultThreads;
+        private final int defaultQueueSize;
+        private final RejectionPolicy defaultPolicy;
+
+        Pool(String name, int defaultThreads, int defaultQueueSize, RejectionPolicy defaultPolicy) {
+            this.name = name;
+            this.defaultThreads = defaultThreads;
+            this.defaultQueueSize = defaultQueueSize;
+            this.defaultPolicy = defaultPolicy;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    public enum RejectionPolicy {
+        CALLER_RUNS("caller-runs"),
+        ABORT("abort"),
+        DISCARD("discard");
+
+        private final String name;
+
+        RejectionPolicy(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public static RejectionPolicy fromName(String name) {
+            for (RejectionPolicy policy : values()) {
+                if (policy.name.equalsIgnoreCase(name.trim())) {
+                    return policy;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final Map<Pool, ThreadPoolExecutor> executors = new EnumMap<>(Pool.class);
+    private final Map<Pool, AtomicLong> saturated = new EnumMap<>(Pool.class);
+    private final Map<Pool, RejectionPolicy> policies = new EnumMap<>(Pool.class);
+
+    public AlertsExecutors() {
+        for (Pool pool : Pool.values()) {
+            int threads = getProperty("hawkular-alerts.executor-" + pool.name + "-threads",
+                    "EXECUTOR_" + pool.name() + "_THREADS", pool.defaultThreads);
+            int queueSize = getProperty("hawkular-alerts.executor-" + pool.name + "-queue-size",
+                    "EXECUTOR_" + pool.name() + "_QUEUE_SIZE", pool.defaultQueueSize);
+            RejectionPolicy policy = getPolicy(pool);
+            AtomicLong saturatedTasks = new AtomicLong();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS,
+                    TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), new NamedThreadFactory(pool.name),
+                    (r, e) -> {
+                        if (saturatedTasks.incrementAndGet() % SATURATION_LOG_INTERVAL == 1) {
+                            log.warnf("Executor [%s] is saturated, [%s] policy applied to [%s] tasks", pool.name,
+                                    policy.name, saturatedTasks.get());
+                        }
+                        switch (policy) {
+                            case CALLER_RUNS:
+                                if (!e.isShutdown()) {
+                                    r.run();
+                                }
+                                break;
+                            case ABORT:
+                                throw new RejectedExecutionException("Executor [" + pool.name + "] is saturated");
+                            default:
+                                break;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            executors.put(pool, executor);
+            saturated.put(pool, saturatedTasks);
+            policies.put(pool, policy);
+            log.debugf("Executor [%s] with [%s] threads, [%s] queue size and [%s] rejection policy", pool.name,
+                    threads, queueSize, policy.name);
+        }
+    }
+
+    public ExecutorService get(Pool pool) {
+        return executors.get(pool);
+    }
+
+    /**
+     * @return threads, queued and saturated tasks of each pool, keys prefixed with executor-[pool]
+     */
+    public Map<String, String> getStatus() {
+        Map<String, String> status = new HashMap<>();
+        executors.forEach((pool, executor) -> {
+            String prefix = "executor-" + pool.name + ".";
+            status.put(prefix + "max-threads", String.valueOf(executor.getMaximumPoolSize()));
+            status.put(prefix + "active-threads", String.valueOf(executor.getActiveCount()));
+            status.put(prefix + "queued-tasks", String.valueOf(executor.getQueue().size()));
+            status.put(prefix + "completed-tasks", String.valueOf(executor.getCompletedTaskCount()));
+            status.put(prefix + "saturated-tasks", String.valueOf(saturated.get(pool).get()));
+            status.put(prefix + "rejection-policy", policies.get(pool).name);
+        });
+        return status;
+    }
+
+    public void shutdown() {
+        executors.values().forEach(ExecutorService::shutdown);
+    }
+
+    private static int getProperty(String key, String envKey, int defaultValue) {
+        String value = HawkularProperties.getProperty(key, envKey, String.valueOf(defaultValue));
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        log.warnf("Invalid value [%s] for [%s], using [%s]", value, key, defaultValue);
+        return defaultValue;
+    }
+
+    private static RejectionPolicy getPolicy(Pool pool) {
+        String key = "hawkular-alerts.executor-" + pool.name + "-rejection-policy";
+        String value = HawkularProperties.getProperty(key, "EXECUTOR_" + pool.name() + "_REJECTION_POLICY",
+                pool.defaultPolicy.name);
+        RejectionPolicy policy = RejectionPolicy.fromName(value);
+        if (policy == null) {
+            log.warnf("Invalid value [%s] for [%s], using [%s]", value, key, pool.defaultPolicy.name);
+            return pool.defaultPolicy;
+        }
+        return policy;
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, THREAD_PREFIX + name + "-" + count.incrementAndGet());
+        }
+    }
+}
@@ -16,13 +16,14 @@
  */
 package org.hawkular.alerts.engine.util;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 
-import org.apache.commons.math3.stat.descriptive.moment.Mean;
-import org.apache.commons.math3.stat.descriptive.moment.StandardDeviation;
+import org.hawkular.alerts.api.json.JsonUtil;
 import org.hawkular.alerts.api.model.condition.NelsonCondition;
 import org.hawkular.alerts.api.model.condition.NelsonCondition.NelsonRule;
 import org.hawkular.alerts.api.model.data.Data;
@@ -36,37 +37,49 @@ import org.hawkular.alerts.api.model.data.Data;
  * standard deviation) if and when the owning trigger is re-enabled.  One caveat, triggers that have autoResolve do
  * not get removed from working memory, and as such the NelsonData will remain.
  *
+ * The state is kept in fixed size ring buffers and primitive fields, with the baseline mean and standard deviation
+ * computed as running statistics (Welford), so adding a sample does not allocate and every NelsonData uses the
+ * same small amount of memory.
+ *
  * @author Jay Shaughnessy
  * @author Lucas Ponce
  */
 public class NelsonData {
+    // We keep 15 Data because that is the most needed to eval any of the rules (rule7 uses 15)
+    private static final int VIOLATIONS_DATA_SIZE = 15;
+
+    private static final byte BELOW = -1;
+    private static final byte WITHIN = 0;
+    private static final byte ABOVE = 1;
+
     private NelsonCondition condition;
 
     // Currently violated rules for the currently ruleData
     protected List<NelsonRule> violations = new ArrayList<>(8);
 
-    // the last 15 Data used to evaluate the rules. We keep 15 because that is the most needed to eval
-    // any of the rules (rule7 uses 15)
-    private LinkedList<Data> violationsData = new LinkedList<>();
+    // the last 15 Data used to evaluate the rules, as a ring buffer with the most recent at violationsDataHead
+    private final Data[] violationsData = new Data[VIOLATIONS_DATA_SIZE];
+    private int violationsDataHead = -1;
+    private int violationsDataSize;
 
-    private Mean mean = new Mean();
-    private StandardDeviation standardDeviation = new StandardDeviation();
+    // running mean and variance of the baseline samples
+    private int sampleCount;
+    private double sampleMean;
+    private double sampleM2;
     private double oneDeviation;
     private double twoDeviations;
     private double threeDeviations;
 
     private int rule2Count;
     private int rule3Count;
-    private Double rule3PreviousSample;
+    private boolean rule3HasPrevious;
+    private double rule3PreviousSample;
     private int rule4Count;
-    private Double rule4PreviousSample;
-    private String rule4PreviousDirection;
-    private LinkedList<String> rule5LastThree = new LinkedList<>();
-    int rule5Above;
-    int rule5Below;
-    private LinkedList<String> rule6LastFive = new LinkedList<>();
-    int rule6Above;
-    int rule6Below;
+    private boolean rule4HasPrevious;
+    private double rule4PreviousSample;
+    private byte rule4PreviousDirection;
+    private final DirectionWindow rule5LastThree = new DirectionWindow(3);
+    private final DirectionWindow rule6LastFive = new DirectionWindow(5);
     private int rule7Count;
     private int rule8Count;
 
@@ -75,23 +88,20 @@ public class NelsonData {
     }
 
     public void clear() {
-        mean.clear();
-        standardDeviation.clear();
+        sampleCount = 0;
+        sampleMean = 0;
+        sampleM2 = 0;
 
         violations.clear();
 
         rule2Count = 0;
         rule3Count = 0;
-        rule3PreviousSample = null;
+        rule3HasPrevious = false;
         rule4Count = 0;
-        rule4PreviousSample = null;
-        rule4PreviousDirection = null;
+        rule4HasPrevious = false;
+        rule4PreviousDirection = WITHIN;
         rule5LastThree.clear();
-        rule5Above = 0;
-        rule5Below = 0;
         rule6LastFive.clear();
-        rule6Above = 0;
-        rule6Below = 0;
         rule7Count = 0;
         rule8Count = 0;
     }
@@ -103,42 +113,51 @@ public class NelsonData {
     public void addData(Data data) {
         // The rulebase will try to add the same data multiple times (once for each NelsonCondition using
         // the dataId).  Just ignore subsequent attempts.
-        if (violationsData.contains(data)) {
+        if (containsData(data)) {
             return;
         }
 
-        Double sample;
+        double sample;
         try {
-            sample = Double.valueOf(data.getValue());
+            sample = Double.parseDouble(data.getValue());
         } catch (Exception e) {
             // not a valid numeric data
             return;
         }
 
-        if (!isValid(sample)) {
+        if (Double.isNaN(sample) || Double.isInfinite(sample)) {
             // not a valid Double
             return;
         }
 
-        violationsData.push(data);
-        while (violationsData.size() > 15) {
-            violationsData.removeLast();
+        violationsDataHead = (violationsDataHead + 1) % VIOLATIONS_DATA_SIZE;
+        violationsData[violationsDataHead] = data;
+        if (violationsDataSize < VIOLATIONS_DATA_SIZE) {
+            ++violationsDataSize;
         }
 
-        // System.out.printf("\nViolationsData (size=%s)", violationsData.size());
-        // violationsData.stream().forEach(d -> System.out.printf(" \n%d %s", d.getTimestamp(), d.getValue()));
-        // System.out.println("");
+        addSample(sample);
+    }
 
-        addSample(sample.doubleValue());
+    private boolean containsData(Data data) {
+        for (int i = 0; i < violationsDataSize; i++) {
+            if (violationsData[i].equals(data)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     private void addSample(double sample) {
-        if (mean.getN() < condition.getSampleSize()) {
-            mean.increment(sample);
-            standardDeviation.increment(sample);
-
-            if (mean.getN() == condition.getSampleSize()) {
-                oneDeviation = standardDeviation.getResult();
+        if (sampleCount < condition.getSampleSize()) {
+            ++sampleCount;
+            double delta = sample - sampleMean;
+            sampleMean += delta / sampleCount;
+            sampleM2 += delta * (sample - sampleMean);
+
+            if (sampleCount == condition.getSampleSize()) {
+                // bias corrected, as the baseline is a sample of the data
+                oneDeviation = sampleCount > 1 ? Math.sqrt(sampleM2 / (sampleCount - 1)) : 0.0;
                 twoDeviations = oneDeviation * 2;
                 threeDeviations = oneDeviation * 3;
             }
@@ -173,7 +192,7 @@ public class NelsonData {
     }
 
     public boolean hasMean() {
-        return mean != null && mean.getN() == condition.getSampleSize();
+        return sampleCount == condition.getSampleSize();
     }
 
     // one point is more than 3 standard deviations from the mean
@@ -182,7 +201,7 @@ public class NelsonData {
             return false;
         }
 
-        return Math.abs(sample - mean.getResult()) > threeDeviations;
+        return Math.abs(sample - sampleMean) > threeDeviations;
     }
 
     // Nine (or more) points in a row are on the same side of the mean
@@ -191,7 +210,7 @@ public class NelsonData {
             return false;
         }
 
-        if (sample > mean.getResult()) {
+        if (sample > sampleMean) {
             if (rule2Count > 0) {
                 ++rule2Count;
             } else {
@@ -210,7 +229,8 @@ public class NelsonData {
 
     // Six (or more) points in a row are continually increasing (or decreasing)
     private boolean rule3(double sample) {
-        if (null == rule3PreviousSample) {
+        if (!rule3HasPrevious) {
+            rule3HasPrevious = true;
             rule3PreviousSample = sample;
             rule3Count = 0;
             return false;
@@ -238,17 +258,18 @@ public class NelsonData {
     }
 
     // Fourteen (or more) points in a row alternate in direction, increasing then decreasing
-    private boolean rule4(Double sample) {
-        if (null == rule4PreviousSample || sample.doubleValue() == rule4PreviousSample.doubleValue()) {
+    private boolean rule4(double sample) {
+        if (!rule4HasPrevious || sample == rule4PreviousSample) {
+            rule4HasPrevious = true;
             rule4PreviousSample = sample;
-            rule4PreviousDirection = "=";
+            rule4PreviousDirection = WITHIN;
             rule4Count = 0;
             return false;
         }
 
-        String sampleDirection = (sample > rule4PreviousSample) ? ">" : "<";
+        byte sampleDirection = (sample > rule4PreviousSample) ? ABOVE : BELOW;
 
-        if (sampleDirection.equals(rule4PreviousDirection)) {
+        if (sampleDirection == rule4PreviousDirection) {
             rule4Count = 0;
         } else {
             ++rule4Count;
@@ -266,29 +287,9 @@ public class NelsonData {
             return false;
         }
 
-        if (rule5LastThree.size() == 3) {
-            switch (rule5LastThree.removeLast()) {
-                case ">":
-                    --rule5Above;
-                    break;
-                case "<":
-                    --rule5Below;
-                    break;
-            }
-        }
-        if (Math.abs(sample - mean.getResult()) > twoDeviations) {
-            if (sample > mean.getResult()) {
-                ++rule5Above;
-                rule5LastThree.push(">");
-            } else {
-                ++rule5Below;
-                rule5LastThree.push("<");
-            }
-        } else {
-            rule5LastThree.push("");
-        }
+        rule5LastThree.add(direction(sample, twoDeviations));
 
-        return rule5Above >= 2 || rule5Below >= 2;
+        return rule5LastThree.above >= 2 || rule5LastThree.below >= 2;
     }
 
     // At least 4 of 5 points in a row are > 1 standard deviation from the mean in the same direction
@@ -297,30 +298,9 @@ public class NelsonData {
             return false;
         }
 
-        if (rule6LastFive.size() == 5) {
-            switch (rule6LastFive.removeLast()) {
-                case ">":
-                    --rule6Above;
-                    break;
-                case "<":
-                    --rule6Below;
-                    break;
-            }
-        }
+        rule6LastFive.add(direction(sample, oneDeviation));
 
-        if (Math.abs(sample - mean.getResult()) > oneDeviation) {
-            if (sample > mean.getResult()) {
-                ++rule6Above;
-                rule6LastFive.push(">");
-            } else {
-                ++rule6Below;
-                rule6LastFive.push("<");
-            }
-        } else {
-            rule6LastFive.push("");
-        }
-
-        return rule6Above >= 4 || rule6Below >= 4;
+        return rule6LastFive.above >= 4 || rule6LastFive.below >= 4;
     }
 
     // Fifteen points in a row are all within 1 standard deviation of the mean on either side of the mean
@@ -331,12 +311,12 @@ public class NelsonData {
             return false;
         }
 
-        if (sample == mean.getResult()) {
+        if (sample == sampleMean) {
             rule7Count = 0;
             return false;
         }
 
-        if (Math.abs(sample - mean.getResult()) <= oneDeviation) {
+        if (Math.abs(sample - sampleMean) <= oneDeviation) {
             ++rule7Count;
         } else {
             rule7Count = 0;
@@ -347,12 +327,12 @@ public class NelsonData {
 
     // Eight points in a row exist, but none within 1 standard deviation of the mean
     // and the points are in both directions from the mean
-    private boolean rule8(Double sample) {
+    private boolean rule8(double sample) {
         if (!hasMean()) {
             return false;
         }
 
-        if (Math.abs(sample - mean.getResult()) > oneDeviation) {
+        if (Math.abs(sample - sampleMean) > oneDeviation) {
             ++rule8Count;
         } else {
             rule8Count = 0;
@@ -361,8 +341,11 @@ public class NelsonData {
         return rule8Count >= 8;
     }
 
-    private boolean isValid(Double d) {
-        return null != d && !d.isNaN() && !d.isInfinite();
+    private byte direction(double sample, double deviations) {
+        if (Math.abs(sample - sampleMean) > deviations) {
+            return sample > sampleMean ? ABOVE : BELOW;
+        }
+        return WITHIN;
     }
 
     public NelsonCondition getCondition() {
@@ -373,22 +356,115 @@ public class NelsonData {
         return Collections.unmodifiableList(violations);
     }
 
+    /**
+     * @return a copy of the last Data used to evaluate the rules, most recent first
+     */
     public List<Data> getViolationsData() {
-        return Collections.unmodifiableList(violationsData);
-    }
-
-    public Mean getMean() {
-        return mean;
+        List<Data> data = new ArrayList<>(violationsDataSize);
+        for (int i = 0; i < violationsDataSize; i++) {
+            data.add(violationsData[(violationsDataHead - i + VIOLATIONS_DATA_SIZE) % VIOLATIONS_DATA_SIZE]);
+        }
+        return Collections.unmodifiableList(data);
     }
 
+    /**
+     * @return the mean of the baseline samples, NaN if there are no samples yet
+     */
     public double getMeanResult() {
-        return mean.getResult();
+        return sampleCount == 0 ? Double.NaN : sampleMean;
     }
 
     public double getStandardDeviationResult() {
         return oneDeviation;
     }
 
+    /**
+     * Write the baseline and the progress of the rules, so the evaluation can be resumed on a different node.
+     *
+     * @param out the output of the engine state
+     * @throws IOException on write errors
+     */
+    public void writeState(DataOutput out) throws IOException {
+        out.writeInt(violationsDataSize);
+        for (Data data : getViolationsData()) {
+            byte[] bytes = JsonUtil.getMapper().writeValueAsBytes(data);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        out.writeInt(sampleCount);
+        out.writeDouble(sampleMean);
+        out.writeDouble(sampleM2);
+        out.writeDouble(oneDeviation);
+        out.writeInt(rule2Count);
+        out.writeInt(rule3Count);
+        out.writeBoolean(rule3HasPrevious);
+        out.writeDouble(rule3PreviousSample);
+        out.writeInt(rule4Count);
+        out.writeBoolean(rule4HasPrevious);
+        out.writeDouble(rule4PreviousSample);
+        out.writeByte(rule4PreviousDirection);
+        rule5LastThree.write(out);
+        rule6LastFive.write(out);
+        out.writeInt(rule7Count);
+        out.writeInt(rule8Count);
+    }
+
+    /**
+     * Read a state written by {@link #writeState(DataOutput)}. Violations are not restored, they are evaluated again
+     * with the next sample.
+     *
+     * @param in the input of the engine state
+     * @throws IOException on read errors
+     */
+    public void readState(DataInput in) throws IOException {
+        int numData = in.readInt();
+        if (numData < 0 || numData > VIOLATIONS_DATA_SIZE) {
+            throw new IOException("Invalid NelsonData state with " + numData + " data");
+        }
+        Data[] data = new Data[numData];
+        for (int i = 0; i < numData; i++) {
+            int length = in.readInt();
+            if (length < 0) {
+                throw new IOException("Invalid NelsonData state with a data of " + length + " bytes");
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            data[i] = JsonUtil.getMapper().readValue(bytes, Data.class);
+        }
+        // stored most recent first
+        violationsDataSize = numData;
+        violationsDataHead = numData - 1;
+        for (int i = 0; i < numData; i++) {
+            violationsData[numData - 1 - i] = data[i];
+        }
+        sampleCount = in.readInt();
+        sampleMean = in.readDouble();
+        sampleM2 = in.readDouble();
+        oneDeviation = in.readDouble();
+        twoDeviations = oneDeviation * 2;
+        threeDeviations = oneDeviation * 3;
+        rule2Count = in.readInt();
+        rule3Count = in.readInt();
+        rule3HasPrevious = in.readBoolean();
+        rule3PreviousSample = in.readDouble();
+        rule4Count = in.readInt();
+        rule4HasPrevious = in.readBoolean();
+        rule4PreviousSample = in.readDouble();
+        rule4PreviousDirection = in.readByte();
+        rule5LastThree.read(in);
+        rule6LastFive.read(in);
+        rule7Count = in.readInt();
+        rule8Count = in.readInt();
+        violations.clear();
+    }
+
+    /**
+     * @return true if no sample has been evaluated yet
+     */
+    public boolean isEmpty() {
+        return violationsDataSize == 0;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -416,9 +492,73 @@ public class NelsonData {
 
     @Override
     public String toString() {
-        return "NelsonData [condition=" + condition + ", violationsData=" + violationsData
-                + ", violations=" + violations + ", mean=" + mean + ", standardDeviation=" + oneDeviation
+        return "NelsonData [condition=" + condition + ", violationsData=" + getViolationsData()
+                + ", violations=" + violations + ", mean=" + getMeanResult() + ", standardDeviation=" + oneDeviation
                 + ", twoDeviations=" + twoDeviations + ", threeDeviations=" + threeDeviations + "]";
     }
 
+    /*
+        Directions from the mean of the last samples, as a ring buffer with the count of samples above and below
+     */
+    private static final class DirectionWindow {
+        private final byte[] directions;
+        private int next;
+        private int size;
+        int above;
+        int below;
+
+        DirectionWindow(int length) {
+            directions = new byte[length];
+        }
+
+        void add(byte direction) {
+            if (size == directions.length) {
+                count(directions[next], -1);
+            } else {
+                ++size;
+            }
+            directions[next] = direction;
+            count(direction, 1);
+            next = (next + 1) % directions.length;
+        }
+
+        private void count(byte direction, int delta) {
+            if (direction == ABOVE) {
+                above += delta;
+            } else if (direction == BELOW) {
+                below += delta;
+            }
+        }
+
+        void clear() {
+            next = 0;
+            size = 0;
+            above = 0;
+            below = 0;
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeInt(next);
+            out.writeInt(size);
+            out.write(directions);
+        }
+
+        void read(DataInput in) throws IOException {
+            clear();
+            int storedNext = in.readInt();
+            int storedSize = in.readInt();
+            byte[] stored = new byte[directions.length];
+            in.readFully(stored);
+            if (storedNext < 0 || storedNext >= directions.length || storedSize < 0
+                    || storedSize > directions.length) {
+                throw new IOException("Invalid NelsonData direction window");
+            }
+            System.arraycopy(stored, 0, directions, 0, directions.length);
+            next = storedNext;
+            size = storedSize;
+            for (int i = 0; i < size; i++) {
+                count(directions[(next - 1 - i + directions.length) % directions.length], 1);
+            }
+        }
+    }
 }
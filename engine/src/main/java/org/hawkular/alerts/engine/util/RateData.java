@@ -20,7 +20,8 @@ import org.hawkular.alerts.api.model.data.Data;
 
 /**
  * RateConditions use a current and previous datum for the same dataId.  This class simply stores the
- * previous datum as a Fact in Drools' working memory, for use in the evaluation.
+ * previous datum as a Fact in Drools' working memory, for use in the evaluation.  The numeric value of the datum is
+ * parsed once, when it is stored, instead of on every evaluation.
  *
  * @author Jay Shaughnessy
  * @author Lucas Ponce
@@ -29,8 +30,12 @@ public class RateData {
 
     public Data data;
 
+    private long timestamp;
+
+    private double value;
+
     public RateData(Data data) {
-        this.data = data;
+        setData(data);
     }
 
     public Data getData() {
@@ -39,6 +44,30 @@ public class RateData {
 
     public void setData(Data data) {
         this.data = data;
+        this.timestamp = data == null ? 0L : data.getTimestamp();
+        this.value = parseValue(data);
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the numeric value of the datum, NaN if it is not numeric
+     */
+    public double getValue() {
+        return value;
+    }
+
+    private static double parseValue(Data data) {
+        if (data == null || data.getValue() == null) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(data.getValue());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
     }
 
     @Override
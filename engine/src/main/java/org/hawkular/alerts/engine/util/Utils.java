@@ -20,9 +20,21 @@ import static org.hawkular.alerts.api.util.Util.isEmpty;
 
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.hawkular.alerts.api.model.Severity;
+import org.hawkular.alerts.api.model.condition.AvailabilityCondition;
+import org.hawkular.alerts.api.model.condition.CompareCondition;
+import org.hawkular.alerts.api.model.condition.Condition;
+import org.hawkular.alerts.api.model.condition.EventCondition;
+import org.hawkular.alerts.api.model.condition.ExternalCondition;
+import org.hawkular.alerts.api.model.condition.MissingCondition;
+import org.hawkular.alerts.api.model.condition.NelsonCondition;
+import org.hawkular.alerts.api.model.condition.RateCondition;
+import org.hawkular.alerts.api.model.condition.StringCondition;
+import org.hawkular.alerts.api.model.condition.ThresholdCondition;
+import org.hawkular.alerts.api.model.condition.ThresholdRangeCondition;
 import org.hawkular.alerts.api.model.dampening.Dampening;
 import org.hawkular.alerts.api.model.event.Alert.Status;
 import org.hawkular.alerts.api.model.trigger.Trigger;
@@ -162,4 +174,113 @@ public class Utils {
         return alertIds;
     }
 
+    /**
+     * Build the condition of a member trigger from a group trigger condition, replacing the dataId tokens with
+     * the member dataIds.  Immutable settings, like the context, are shared with the group condition.
+     *
+     * @param member the member trigger
+     * @param groupCondition the group condition
+     * @param dataIdMap group dataId token to member dataId
+     * @return the member condition
+     */
+    public static Condition getMemberCondition(Trigger member, Condition groupCondition,
+            Map<String, String> dataIdMap) {
+        Condition newCondition = null;
+        switch (groupCondition.getType()) {
+            case AVAILABILITY:
+                newCondition = new AvailabilityCondition(member.getTenantId(), member.getId(),
+                        groupCondition.getTriggerMode(),
+                        groupCondition.getConditionSetSize(), groupCondition.getConditionSetIndex(),
+                        dataIdMap.get(groupCondition.getDataId()),
+                        ((AvailabilityCondition) groupCondition).getOperator());
+                break;
+            case COMPARE:
+                newCondition = new CompareCondition(member.getTenantId(), member.getId(),
+                        groupCondition.getTriggerMode(),
+                        groupCondition.getConditionSetSize(), groupCondition.getConditionSetIndex(),
+                        dataIdMap.get(groupCondition.getDataId()),
+                        ((CompareCondition) groupCondition).getOperator(),
+                        ((CompareCondition) groupCondition).getData2Multiplier(),
+                        dataIdMap.get(((CompareCondition) groupCondition).getData2Id()));
+                break;
+            case EVENT:
+                newCondition = new EventCondition(member.getTenantId(), member.getId(),
+                        groupCondition.getTriggerMode(),
+                        groupCondition.getConditionSetSize(), groupCondition.getConditionSetIndex(),
+                        dataIdMap.get(groupCondition.getDataId()),
+                        ((EventCondition) groupCondition).getExpression());
+                break;
+            case EXTERNAL:
+                String tokenDataId = groupCondition.getDataId();
+                String memberDataId = dataIdMap.get(tokenDataId);
+                String tokenExpression = ((ExternalCondition) groupCondition).getExpression();
+                String memberExpression = isEmpty(tokenExpression) ? tokenExpression
+                        : tokenExpression.replace(tokenDataId, memberDataId);
+                newCondition = new ExternalCondition(member.getTenantId(), member.getId(),
+                        groupCondition.getTriggerMode(),
+                        groupCondition.getConditionSetSize(), groupCondition.getConditionSetIndex(),
+                        memberDataId,
+                        ((ExternalCondition) groupCondition).getAlerterId(),
+                        memberExpression);
+                break;
+            case MISSING:
+                newCondition = new MissingCondition(member.getTenantId(), member.getId(),
+                        groupCondition.getTriggerMode(),
+                        groupCondition.getConditionSetSize(), groupCondition.getConditionSetIndex(),
+                        dataIdMap.get(groupCondition.getDataId()),
+                        ((MissingCondition) groupCondition).getInterval());
+                break;
+            case NELSON:
+                newCondition = new NelsonCondition(member.getTenantId(), member.getId(),
+                        groupCondition.getTriggerMode(),
+                        groupCondition.getConditionSetSize(), groupCondition.getConditionSetIndex(),
+                        dataIdMap.get(groupCondition.getDataId()),
+                        ((NelsonCondition) groupCondition).getActiveRules(),
+                        ((NelsonCondition) groupCondition).getSampleSize());
+                break;
+            case RANGE:
+                newCondition = new ThresholdRangeCondition(member.getTenantId(), member.getId(),
+                        groupCondition.getTriggerMode(),
+                        groupCondition.getConditionSetSize(), groupCondition.getConditionSetIndex(),
+                        dataIdMap.get(groupCondition.getDataId()),
+                        ((ThresholdRangeCondition) groupCondition).getOperatorLow(),
+                        ((ThresholdRangeCondition) groupCondition).getOperatorHigh(),
+                        ((ThresholdRangeCondition) groupCondition).getThresholdLow(),
+                        ((ThresholdRangeCondition) groupCondition).getThresholdHigh(),
+                        ((ThresholdRangeCondition) groupCondition).isInRange());
+                break;
+            case RATE:
+                newCondition = new RateCondition(member.getTenantId(), member.getId(),
+                        groupCondition.getTriggerMode(),
+                        groupCondition.getConditionSetSize(), groupCondition.getConditionSetIndex(),
+                        dataIdMap.get(groupCondition.getDataId()),
+                        ((RateCondition) groupCondition).getDirection(),
+                        ((RateCondition) groupCondition).getPeriod(),
+                        ((RateCondition) groupCondition).getOperator(),
+                        ((RateCondition) groupCondition).getThreshold());
+                break;
+            case STRING:
+                newCondition = new StringCondition(member.getTenantId(), member.getId(),
+                        groupCondition.getTriggerMode(),
+                        groupCondition.getConditionSetSize(), groupCondition.getConditionSetIndex(),
+                        dataIdMap.get(groupCondition.getDataId()),
+                        ((StringCondition) groupCondition).getOperator(),
+                        ((StringCondition) groupCondition).getPattern(),
+                        ((StringCondition) groupCondition).isIgnoreCase());
+                break;
+            case THRESHOLD:
+                newCondition = new ThresholdCondition(member.getTenantId(), member.getId(),
+                        groupCondition.getTriggerMode(),
+                        groupCondition.getConditionSetSize(), groupCondition.getConditionSetIndex(),
+                        dataIdMap.get(groupCondition.getDataId()),
+                        ((ThresholdCondition) groupCondition).getOperator(),
+                        ((ThresholdCondition) groupCondition).getThreshold());
+                break;
+            default:
+                throw new IllegalArgumentException("Unexpected Condition type: " + groupCondition.getType().name());
+        }
+
+        newCondition.setContext(groupCondition.getContext());
+        return newCondition;
+    }
 }
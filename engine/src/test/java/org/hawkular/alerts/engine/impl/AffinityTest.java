@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hawkular.alerts.api.model.trigger.TriggerKey;
+import org.hawkular.alerts.engine.impl.PartitionManagerImpl.PartitionEntry;
+import org.junit.Test;
+
+/**
+ * Testing the partition of triggers by the affinity of their dataIds.
+ */
+public class AffinityTest {
+
+    private static final String TENANT = "tenant";
+
+    PartitionManagerImpl pm = new PartitionManagerImpl();
+
+    Map<Integer, Integer> buckets = pm.updateBuckets(null, Arrays.asList(2001, 3002, 4003));
+
+    /*
+        numGroups groups of groupSize triggers, the triggers of a group use the same dataId
+     */
+    private void generate(int numGroups, int groupSize, List<PartitionEntry> entries,
+                          Map<TriggerKey, Set<String>> dataIds) {
+        for (int g = 0; g < numGroups; g++) {
+            for (int t = 0; t < groupSize; t++) {
+                String triggerId = "trigger-" + groupSize + "-" + g + "-" + t;
+                entries.add(new PartitionEntry(TENANT, triggerId));
+                dataIds.put(new TriggerKey(TENANT, triggerId), Collections.singleton("data-" + groupSize + "-" + g));
+            }
+        }
+    }
+
+    private Map<Integer, Integer> load(Map<PartitionEntry, Integer> partition) {
+        Map<Integer, Integer> load = new HashMap<>();
+        partition.values().stream().forEach(node -> load.merge(node, 1, Integer::sum));
+        return load;
+    }
+
+    @Test
+    public void groupsAreColocated() {
+        List<PartitionEntry> entries = new ArrayList<>();
+        Map<TriggerKey, Set<String>> dataIds = new HashMap<>();
+        generate(6, 5, entries, dataIds);
+
+        Map<PartitionEntry, Integer> hashed = pm.calculatePartition(entries, buckets);
+        Map<PartitionEntry, Integer> affinity = pm.calculateAffinityPartition(entries, buckets, dataIds, null, 1.2);
+
+        assertEquals(entries.size(), affinity.size());
+        assertEquals(6, pm.dataFanOut(affinity, dataIds));
+        assertTrue(pm.dataFanOut(hashed, dataIds) > 6);
+        load(affinity).values().stream().forEach(load -> assertTrue(load <= 12));
+    }
+
+    @Test
+    public void groupsAreSplitOverTheLoadCap() {
+        List<PartitionEntry> entries = new ArrayList<>();
+        Map<TriggerKey, Set<String>> dataIds = new HashMap<>();
+        generate(1, 20, entries, dataIds);
+        generate(10, 1, entries, dataIds);
+
+        Map<PartitionEntry, Integer> affinity = pm.calculateAffinityPartition(entries, buckets, dataIds, null, 1.0);
+
+        assertEquals(3, load(affinity).size());
+        load(affinity).values().stream().forEach(load -> assertEquals(10, load.intValue()));
+        // the big group goes to two nodes, each single trigger to one
+        assertEquals(12, pm.dataFanOut(affinity, dataIds));
+    }
+
+    @Test
+    public void previousPartitionIsKept() {
+        List<PartitionEntry> entries = new ArrayList<>();
+        Map<TriggerKey, Set<String>> dataIds = new HashMap<>();
+        generate(6, 5, entries, dataIds);
+        generate(12, 1, entries, dataIds);
+
+        Map<PartitionEntry, Integer> previous = pm.calculateAffinityPartition(entries, buckets, dataIds, null, 1.2);
+        Map<PartitionEntry, Integer> current = pm.calculateAffinityPartition(entries, buckets, dataIds, previous,
+                1.2);
+        assertEquals(previous, current);
+
+        // a new node takes triggers but the groups stay together
+        Map<Integer, Integer> newBuckets = pm.updateBuckets(buckets, Arrays.asList(2001, 3002, 4003, 5004));
+        Map<PartitionEntry, Integer> scaled = pm.calculateAffinityPartition(entries, newBuckets, dataIds, previous,
+                1.2);
+        assertEquals(18, pm.dataFanOut(scaled, dataIds));
+        assertEquals(4, load(scaled).size());
+        load(scaled).values().stream().forEach(load -> assertTrue(load <= 13));
+    }
+
+    @Test
+    public void affinityFallsBackToHashWithoutPublishFiltering() {
+        assertEquals(PartitionManagerImpl.STRATEGY_AFFINITY, PartitionManagerImpl.resolveStrategy("affinity", true));
+        assertEquals("hash", PartitionManagerImpl.resolveStrategy("affinity", false));
+        assertEquals("hash", PartitionManagerImpl.resolveStrategy("hash", true));
+        assertEquals("hash", PartitionManagerImpl.resolveStrategy("hash", false));
+    }
+}
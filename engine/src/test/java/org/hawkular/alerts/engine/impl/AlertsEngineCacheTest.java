@@ -16,9 +16,14 @@
  */
 package org.hawkular.alerts.engine.impl;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
 import org.hawkular.alerts.engine.impl.AlertsEngineCache.DataEntry;
 import org.junit.Test;
 
@@ -55,4 +60,21 @@ public class AlertsEngineCacheTest {
         assertFalse(cache.isDataIdActive("o1", "d3"));
     }
 
+    @Test
+    public void activeDataIdsTest() {
+        AlertsEngineCache cache = new AlertsEngineCache();
+
+        cache.add(new DataEntry("o1", "t1", "d1"));
+        cache.add(new DataEntry("o1", "t1", "d2"));
+        cache.add(new DataEntry("o1", "t2", "d1"));
+        cache.add(new DataEntry("o2", "t1", "d1"));
+
+        assertEquals(2, cache.getActiveDataIds().size());
+        assertEquals(new HashSet<>(Arrays.asList("d1", "d2")), cache.getActiveDataIds().get("o1"));
+        assertEquals(Collections.singleton("d1"), cache.getActiveDataIds().get("o2"));
+
+        cache.remove("o2", "t1");
+        assertEquals(Collections.singleton("o1"), cache.getActiveDataIds().keySet());
+    }
+
 }
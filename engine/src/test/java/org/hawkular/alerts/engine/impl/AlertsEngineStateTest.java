@@ -0,0 +1,201 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.hawkular.alerts.api.model.condition.NelsonCondition;
+import org.hawkular.alerts.api.model.condition.NelsonCondition.NelsonRule;
+import org.hawkular.alerts.api.model.condition.ThresholdCondition;
+import org.hawkular.alerts.api.model.condition.ThresholdConditionEval;
+import org.hawkular.alerts.api.model.dampening.Dampening;
+import org.hawkular.alerts.api.model.data.Data;
+import org.hawkular.alerts.api.model.trigger.Mode;
+import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.hawkular.alerts.cache.IspnCacheManager;
+import org.hawkular.alerts.engine.util.NelsonData;
+import org.hawkular.alerts.engine.util.RateData;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Testing checkpoint and restore of the engine evaluation state.
+ */
+public class AlertsEngineStateTest {
+
+    static AlertsEngineState engineState;
+
+    @BeforeClass
+    public static void init() {
+        System.setProperty("hawkular.data", "./target/ispn");
+        engineState = new AlertsEngineState();
+        engineState.setStateCache(IspnCacheManager.getCacheManager().getCache("engineState"));
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        IspnCacheManager.stop();
+    }
+
+    @Before
+    public void clear() {
+        engineState.clear();
+    }
+
+    @Test
+    public void checkpointAndRestore() {
+        Trigger trigger = new Trigger("tenant", "trigger", "Trigger");
+        trigger.setAutoResolve(true);
+        trigger.setMode(Mode.AUTORESOLVE);
+        ThresholdCondition condition = new ThresholdCondition("tenant", "trigger", Mode.AUTORESOLVE, "dataId",
+                ThresholdCondition.Operator.GT, 10.0);
+        Dampening dampening = Dampening.forRelaxedCount("tenant", "trigger", Mode.AUTORESOLVE, 3, 5);
+        ThresholdConditionEval eval = new ThresholdConditionEval(condition,
+                Data.forNumeric("tenant", "dataId", 1000L, 15.0));
+        dampening.setNumTrueEvals(2);
+        dampening.setNumEvals(3);
+        dampening.getCurrentEvals().put(eval.getConditionSetIndex(), eval);
+        dampening.addSatisfyingEvals(eval);
+        RateData rateData = new RateData(Data.forNumeric("tenant", "dataId", 1000L, 15.0));
+
+        List<Object> facts = Arrays.asList(trigger, dampening, rateData);
+        assertEquals(2, engineState.checkpoint(facts, true));
+        // Unchanged state is not written again
+        assertEquals(0, engineState.checkpoint(facts, true));
+
+        Trigger loaded = new Trigger("tenant", "trigger", "Trigger");
+        loaded.setAutoResolve(true);
+        Dampening loadedDampening = Dampening.forRelaxedCount("tenant", "trigger", Mode.AUTORESOLVE, 3, 5);
+        assertTrue(engineState.restore(loaded, Collections.singletonList(loadedDampening), new ArrayList<>(),
+                new ArrayList<>()));
+        assertEquals(Mode.AUTORESOLVE, loaded.getMode());
+        assertEquals(2, loadedDampening.getNumTrueEvals());
+        assertEquals(3, loadedDampening.getNumEvals());
+        assertEquals(1, loadedDampening.getCurrentEvals().size());
+        assertEquals(1, loadedDampening.getSatisfyingEvals().size());
+
+        RateData restored = engineState.getRateData("tenant", Data.SOURCE_NONE, "dataId");
+        assertNotNull(restored);
+        assertEquals(rateData, restored);
+
+        // Dampening settings changed, progress is not restored
+        Dampening updatedDampening = Dampening.forRelaxedCount("tenant", "trigger", Mode.AUTORESOLVE, 2, 5);
+        Collection<Dampening> updated = Collections.singletonList(updatedDampening);
+        assertTrue(engineState.restore(new Trigger("tenant", "trigger", "Trigger"), updated, new ArrayList<>(),
+                new ArrayList<>()));
+        assertEquals(0, updatedDampening.getNumTrueEvals());
+
+        // State of triggers no longer in the engine is removed on a full checkpoint
+        engineState.checkpoint(Collections.singletonList(rateData), true);
+        assertFalse(engineState.restore(loaded, Collections.singletonList(loadedDampening), new ArrayList<>(),
+                new ArrayList<>()));
+        assertNotNull(engineState.getRateData("tenant", Data.SOURCE_NONE, "dataId"));
+
+        engineState.remove("tenant", "trigger");
+        engineState.checkpoint(new ArrayList<>(), true);
+        assertNull(engineState.getRateData("tenant", Data.SOURCE_NONE, "dataId"));
+    }
+
+    @Test
+    public void checkpointAndRestoreNelsonData() {
+        Trigger trigger = new Trigger("tenant", "trigger-nelson", "Trigger");
+        NelsonCondition condition = new NelsonCondition("tenant", "trigger-nelson", "dataId",
+                EnumSet.allOf(NelsonRule.class), 10);
+        NelsonData nelsonData = new NelsonData(condition);
+        for (int i = 1; i <= 12; i++) {
+            nelsonData.addData(Data.forNumeric("tenant", "dataId", i, (double) i));
+        }
+
+        assertEquals(1, engineState.checkpoint(Arrays.asList(trigger, nelsonData), true));
+
+        NelsonData loaded = new NelsonData(condition);
+        assertTrue(engineState.restore(new Trigger("tenant", "trigger-nelson", "Trigger"), new ArrayList<>(),
+                new ArrayList<>(), Collections.singletonList(loaded)));
+        assertTrue(loaded.hasMean());
+        assertEquals(nelsonData.getMeanResult(), loaded.getMeanResult(), 0.000001);
+        assertEquals(nelsonData.getStandardDeviationResult(), loaded.getStandardDeviationResult(), 0.000001);
+        assertEquals(nelsonData.getViolationsData(), loaded.getViolationsData());
+
+        // Both evaluate the next sample the same way
+        Data next = Data.forNumeric("tenant", "dataId", 13, 100.0);
+        nelsonData.addData(next);
+        loaded.addData(next);
+        assertEquals(nelsonData.getViolations(), loaded.getViolations());
+        assertEquals(nelsonData.getViolationsData(), loaded.getViolationsData());
+    }
+
+    @Test
+    public void clearOnlyWrittenEntries() {
+        AlertsEngineState otherNode = new AlertsEngineState();
+        otherNode.setStateCache(IspnCacheManager.getCacheManager().getCache("engineState"));
+
+        RateData rateData = new RateData(Data.forNumeric("tenant", "dataId", 1000L, 15.0));
+        RateData otherRateData = new RateData(Data.forNumeric("tenant", "otherDataId", 1000L, 15.0));
+        assertEquals(1, engineState.checkpoint(Collections.singletonList(rateData), true));
+        assertEquals(1, otherNode.checkpoint(Collections.singletonList(otherRateData), true));
+
+        engineState.clear();
+        assertNull(engineState.getRateData("tenant", Data.SOURCE_NONE, "dataId"));
+        assertNotNull(engineState.getRateData("tenant", Data.SOURCE_NONE, "otherDataId"));
+
+        otherNode.clear();
+        assertNull(engineState.getRateData("tenant", Data.SOURCE_NONE, "otherDataId"));
+    }
+
+    @Test
+    public void handoff() {
+        Trigger trigger = new Trigger("tenant", "trigger-moved", "Trigger");
+        Dampening dampening = Dampening.forStrict("tenant", "trigger-moved", Mode.FIRING, 3);
+        dampening.setNumTrueEvals(2);
+        dampening.setNumEvals(2);
+        RateData rateData = new RateData(Data.forNumeric("tenant", "rateDataId", 1000L, 15.0));
+
+        engineState.checkpoint(Arrays.asList(trigger, dampening, rateData), true);
+        assertFalse(engineState.isHandedOff("tenant", "trigger-moved"));
+
+        dampening.setNumTrueEvals(1);
+        dampening.setNumEvals(1);
+        engineState.handoff("tenant", "trigger-moved", Arrays.asList(trigger, dampening, rateData), 60000);
+        assertTrue(engineState.isHandedOff("tenant", "trigger-moved"));
+
+        // The handed off state is kept for the new owner
+        engineState.checkpoint(new ArrayList<>(), true);
+        Dampening loadedDampening = Dampening.forStrict("tenant", "trigger-moved", Mode.FIRING, 3);
+        assertTrue(engineState.restore(new Trigger("tenant", "trigger-moved", "Trigger"),
+                Collections.singletonList(loadedDampening), new ArrayList<>(), new ArrayList<>()));
+        assertEquals(1, loadedDampening.getNumTrueEvals());
+        assertNotNull(engineState.getRateData("tenant", Data.SOURCE_NONE, "rateDataId"));
+
+        engineState.acceptHandoff("tenant", "trigger-moved");
+        assertFalse(engineState.isHandedOff("tenant", "trigger-moved"));
+
+        engineState.remove("tenant", "trigger-moved");
+    }
+}
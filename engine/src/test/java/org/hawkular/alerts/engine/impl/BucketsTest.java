@@ -219,4 +219,20 @@ public class BucketsTest {
         assertEquals(node2.get("added").get("tenant").size(), 6);
     }
 
+    @Test
+    public void distributeInitialPartition() {
+        PartitionManagerImpl pm = new PartitionManagerImpl();
+
+        Map<PartitionEntry, Integer> current = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            current.put(new PartitionEntry("tenant", "t" + i), i < 4 ? 1 : 2);
+        }
+        Map<String, Map<String, List<String>>> node1 = pm.getAddedRemovedPartition(null, current, 1);
+        Map<String, Map<String, List<String>>> node2 = pm.getAddedRemovedPartition(null, current, 2);
+        assertEquals(node1.get("removed").size(), 0);
+        assertEquals(node1.get("added").get("tenant").size(), 4);
+        assertEquals(node2.get("removed").size(), 0);
+        assertEquals(node2.get("added").get("tenant").size(), 6);
+    }
+
 }
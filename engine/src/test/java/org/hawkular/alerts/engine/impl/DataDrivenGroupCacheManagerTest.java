@@ -0,0 +1,271 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hawkular.alerts.api.exception.NotFoundException;
+import org.hawkular.alerts.api.model.condition.CompareCondition;
+import org.hawkular.alerts.api.model.condition.Condition;
+import org.hawkular.alerts.api.model.condition.ThresholdCondition;
+import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.hawkular.alerts.api.model.trigger.TriggerType;
+import org.hawkular.alerts.api.services.DefinitionsEvent;
+import org.hawkular.alerts.api.services.DefinitionsListener;
+import org.hawkular.alerts.api.services.DefinitionsService;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Testing the incremental maintenance of the data-driven group cache.
+ */
+public class DataDrivenGroupCacheManagerTest {
+
+    private static final String TENANT = "tenant";
+
+    private Definitions definitions;
+    private DataDrivenGroupCacheManager manager;
+
+    @Before
+    public void before() {
+        definitions = new Definitions();
+        manager = new DataDrivenGroupCacheManager();
+        manager.setDefinitions(definitions.proxy());
+    }
+
+    @Test
+    public void initialLoad() {
+        definitions.addGroup("group-1", new ThresholdCondition(TENANT, "group-1", "data-1",
+                ThresholdCondition.Operator.GT, 10.0));
+        definitions.addMember("group-1", "member-1", "source-1");
+        definitions.addTrigger(new Trigger(TENANT, "standalone", "standalone"));
+
+        manager.init();
+
+        assertTrue(manager.isCacheActive());
+        assertEquals(Collections.emptySet(), manager.needsSourceMember(TENANT, "data-1", "source-1"));
+        assertEquals(set("group-1"), manager.needsSourceMember(TENANT, "data-1", "source-2"));
+        assertEquals(Collections.emptySet(), manager.needsSourceMember(TENANT, "data-2", "source-2"));
+        assertEquals(Collections.emptySet(), manager.needsSourceMember("other", "data-1", "source-2"));
+    }
+
+    @Test
+    public void emptyLoad() {
+        definitions.addTrigger(new Trigger(TENANT, "standalone", "standalone"));
+
+        manager.init();
+
+        assertFalse(manager.isCacheActive());
+        assertEquals(Collections.emptySet(), manager.needsSourceMember(TENANT, "data-1", "source-1"));
+    }
+
+    @Test
+    public void memberAddAndRemove() {
+        definitions.addGroup("group-1", new ThresholdCondition(TENANT, "group-1", "data-1",
+                ThresholdCondition.Operator.GT, 10.0));
+        manager.init();
+
+        assertEquals(set("group-1"), manager.needsSourceMember(TENANT, "data-1", "source-1"));
+
+        definitions.addMember("group-1", "member-1", "source-1");
+        definitions.fire(DefinitionsEvent.Type.TRIGGER_UPDATE, "member-1");
+        assertEquals(Collections.emptySet(), manager.needsSourceMember(TENANT, "data-1", "source-1"));
+
+        // a second member for the same source, the source stays covered until both are gone
+        definitions.addMember("group-1", "member-2", "source-1");
+        definitions.fire(DefinitionsEvent.Type.TRIGGER_UPDATE, "member-2");
+        definitions.remove("member-1");
+        definitions.fire(DefinitionsEvent.Type.TRIGGER_REMOVE, "member-1");
+        assertEquals(Collections.emptySet(), manager.needsSourceMember(TENANT, "data-1", "source-1"));
+
+        definitions.remove("member-2");
+        definitions.fire(DefinitionsEvent.Type.TRIGGER_REMOVE, "member-2");
+        assertEquals(set("group-1"), manager.needsSourceMember(TENANT, "data-1", "source-1"));
+    }
+
+    @Test
+    public void orphanMemberDoesNotCoverSource() {
+        definitions.addGroup("group-1", new ThresholdCondition(TENANT, "group-1", "data-1",
+                ThresholdCondition.Operator.GT, 10.0));
+        definitions.addMember("group-1", "member-1", "source-1");
+        manager.init();
+
+        assertEquals(Collections.emptySet(), manager.needsSourceMember(TENANT, "data-1", "source-1"));
+
+        definitions.triggers.get("member-1").setType(TriggerType.ORPHAN);
+        definitions.fire(DefinitionsEvent.Type.TRIGGER_UPDATE, "member-1");
+        assertEquals(set("group-1"), manager.needsSourceMember(TENANT, "data-1", "source-1"));
+    }
+
+    @Test
+    public void dataIdSharedByTwoGroups() {
+        definitions.addGroup("group-1", new ThresholdCondition(TENANT, "group-1", "data-1",
+                ThresholdCondition.Operator.GT, 10.0));
+        definitions.addGroup("group-2", new CompareCondition(TENANT, "group-2", "data-2",
+                CompareCondition.Operator.GT, 1.0, "data-1"));
+        definitions.addMember("group-1", "member-1", "source-1");
+        manager.init();
+
+        assertEquals(set("group-2"), manager.needsSourceMember(TENANT, "data-1", "source-1"));
+        assertEquals(set("group-2"), manager.needsSourceMember(TENANT, "data-2", "source-1"));
+        assertEquals(set("group-1", "group-2"), manager.needsSourceMember(TENANT, "data-1", "source-2"));
+
+        definitions.addMember("group-2", "member-2", "source-1");
+        definitions.fire(DefinitionsEvent.Type.TRIGGER_UPDATE, "member-2");
+        assertEquals(Collections.emptySet(), manager.needsSourceMember(TENANT, "data-1", "source-1"));
+        assertEquals(Collections.emptySet(), manager.needsSourceMember(TENANT, "data-2", "source-1"));
+    }
+
+    @Test
+    public void groupRemoval() {
+        definitions.addGroup("group-1", new ThresholdCondition(TENANT, "group-1", "data-1",
+                ThresholdCondition.Operator.GT, 10.0));
+        definitions.addGroup("group-2", new ThresholdCondition(TENANT, "group-2", "data-1",
+                ThresholdCondition.Operator.LT, 5.0));
+        definitions.addMember("group-1", "member-1", "source-1");
+        manager.init();
+
+        assertEquals(set("group-1", "group-2"), manager.needsSourceMember(TENANT, "data-1", "source-2"));
+
+        definitions.remove("group-1");
+        definitions.remove("member-1");
+        definitions.fire(DefinitionsEvent.Type.TRIGGER_REMOVE, "group-1");
+        definitions.fire(DefinitionsEvent.Type.TRIGGER_REMOVE, "member-1");
+        assertTrue(manager.isCacheActive());
+        assertEquals(set("group-2"), manager.needsSourceMember(TENANT, "data-1", "source-1"));
+        assertEquals(set("group-2"), manager.needsSourceMember(TENANT, "data-1", "source-2"));
+
+        definitions.remove("group-2");
+        definitions.fire(DefinitionsEvent.Type.TRIGGER_REMOVE, "group-2");
+        assertFalse(manager.isCacheActive());
+        assertEquals(Collections.emptySet(), manager.needsSourceMember(TENANT, "data-1", "source-2"));
+    }
+
+    @Test
+    public void needsSourceMemberAfterConditionUpdate() {
+        definitions.addGroup("group-1", new ThresholdCondition(TENANT, "group-1", "data-1",
+                ThresholdCondition.Operator.GT, 10.0));
+        definitions.addMember("group-1", "member-1", "source-1");
+        manager.init();
+
+        definitions.conditions.put("group-1", Collections.singletonList(new ThresholdCondition(TENANT, "group-1",
+                "data-2", ThresholdCondition.Operator.GT, 10.0)));
+        definitions.fire(DefinitionsEvent.Type.TRIGGER_CONDITION_CHANGE, "group-1");
+
+        assertEquals(Collections.emptySet(), manager.needsSourceMember(TENANT, "data-1", "source-2"));
+        assertEquals(Collections.emptySet(), manager.needsSourceMember(TENANT, "data-2", "source-1"));
+        assertEquals(set("group-1"), manager.needsSourceMember(TENANT, "data-2", "source-2"));
+
+        // the existing members are kept on the reloaded group
+        definitions.remove("member-1");
+        definitions.fire(DefinitionsEvent.Type.TRIGGER_REMOVE, "member-1");
+        assertEquals(set("group-1"), manager.needsSourceMember(TENANT, "data-2", "source-1"));
+    }
+
+    private static HashSet<String> set(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+    /*
+        An in-memory DefinitionsService with just the calls used by the cache manager, for a single tenant
+     */
+    private static class Definitions implements InvocationHandler {
+        Map<String, Trigger> triggers = new LinkedHashMap<>();
+        Map<String, List<Condition>> conditions = new HashMap<>();
+        List<DefinitionsListener> listeners = new ArrayList<>();
+
+        DefinitionsService proxy() {
+            return (DefinitionsService) Proxy.newProxyInstance(DefinitionsService.class.getClassLoader(),
+                    new Class<?>[] { DefinitionsService.class }, this);
+        }
+
+        void addTrigger(Trigger trigger) {
+            triggers.put(trigger.getId(), trigger);
+        }
+
+        void addGroup(String groupId, Condition... groupConditions) {
+            Trigger group = new Trigger(TENANT, groupId, groupId);
+            group.setType(TriggerType.DATA_DRIVEN_GROUP);
+            addTrigger(group);
+            conditions.put(groupId, Arrays.asList(groupConditions));
+        }
+
+        void addMember(String groupId, String memberId, String source) {
+            Trigger member = new Trigger(TENANT, memberId, memberId);
+            member.setType(TriggerType.MEMBER);
+            member.setMemberOf(groupId);
+            member.setSource(source);
+            addTrigger(member);
+        }
+
+        void remove(String triggerId) {
+            triggers.remove(triggerId);
+            conditions.remove(triggerId);
+        }
+
+        void fire(DefinitionsEvent.Type type, String triggerId) {
+            List<DefinitionsEvent> events = Collections.singletonList(new DefinitionsEvent(type, TENANT, triggerId));
+            listeners.forEach(l -> l.onChange(events));
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getAllTriggers":
+                    return new ArrayList<>(triggers.values());
+                case "getTrigger": {
+                    Trigger trigger = TENANT.equals(args[0]) ? triggers.get(args[1]) : null;
+                    if (null == trigger) {
+                        throw new NotFoundException("Trigger [" + args[1] + "] not found");
+                    }
+                    return trigger;
+                }
+                case "getTriggerConditions":
+                    return conditions.getOrDefault(args[1], Collections.emptyList());
+                case "getMemberTriggers": {
+                    Collection<Trigger> result = new ArrayList<>();
+                    for (Trigger t : triggers.values()) {
+                        if (args[1].equals(t.getMemberOf()) && ((boolean) args[2] || !t.isOrphan())) {
+                            result.add(t);
+                        }
+                    }
+                    return result;
+                }
+                case "registerListener":
+                    listeners.add((DefinitionsListener) args[0]);
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hawkular.alerts.api.model.condition.CompareCondition;
+import org.hawkular.alerts.api.model.condition.Condition;
+import org.hawkular.alerts.api.model.condition.ThresholdCondition;
+import org.hawkular.alerts.api.model.dampening.Dampening;
+import org.hawkular.alerts.api.model.trigger.Mode;
+import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.hawkular.alerts.api.model.trigger.TriggerType;
+import org.junit.Test;
+
+/**
+ * Testing member facts built from a group template.
+ */
+public class GroupTemplatesTest {
+
+    @Test
+    public void memberFacts() {
+        ThresholdCondition threshold = new ThresholdCondition("tenant", "group", "token-a",
+                ThresholdCondition.Operator.GT, 10.0);
+        threshold.setContext(Collections.singletonMap("unit", "ms"));
+        CompareCondition compare = new CompareCondition("tenant", "group", "token-a",
+                CompareCondition.Operator.LT, 0.5, "token-b");
+        List<Condition> groupConditions = Arrays.asList(threshold, compare);
+        Dampening groupDampening = Dampening.forStrict("tenant", "group", Mode.FIRING, 3);
+
+        GroupTemplates.Template template = new GroupTemplates.Template(groupConditions,
+                Collections.singletonList(groupDampening));
+
+        Trigger member = new Trigger("tenant", "member", "Member");
+        member.setType(TriggerType.MEMBER);
+        member.setMemberOf("group");
+        Map<String, String> dataIdMap = new HashMap<>();
+        dataIdMap.put("token-a", "member-a");
+        dataIdMap.put("token-b", "member-b");
+        member.setDataIdMap(dataIdMap);
+
+        assertTrue(template.appliesTo(member));
+
+        List<Condition> conditions = new ArrayList<>(template.getMemberConditions(member));
+        assertEquals(2, conditions.size());
+        assertEquals("member", conditions.get(0).getTriggerId());
+        assertEquals("member-a", conditions.get(0).getDataId());
+        // immutable settings are shared with the group
+        assertTrue(threshold.getContext() == conditions.get(0).getContext());
+        assertEquals("member-b", ((CompareCondition) conditions.get(1)).getData2Id());
+
+        Collection<Dampening> dampenings = template.getMemberDampenings(member);
+        assertEquals(1, dampenings.size());
+        Dampening dampening = dampenings.iterator().next();
+        assertEquals("member", dampening.getTriggerId());
+        assertEquals(3, dampening.getEvalTrueSetting());
+
+        // a member without all the group tokens is not built from the template
+        member.setDataIdMap(Collections.singletonMap("token-a", "member-a"));
+        assertFalse(template.appliesTo(member));
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hawkular.alerts.api.exception.IngestionRejectedException;
+import org.hawkular.alerts.engine.impl.IngestionQueue.Policy;
+import org.junit.Test;
+
+public class IngestionQueueTest {
+
+    @Test
+    public void rejectPolicy() {
+        IngestionQueue queue = new IngestionQueue("test", 10, 1000, Policy.REJECT, 0, 7, null);
+        queue.offer("b1", "tenant1", 6, 100);
+        try {
+            queue.offer("b2", "tenant1", 6, 100);
+            fail("Batch should be rejected");
+        } catch (IngestionRejectedException e) {
+            assertEquals(7, e.getRetryAfter());
+            assertFalse(e.isTimedOut());
+        }
+        assertEquals(6, queue.getItems());
+        assertEquals(6, queue.getRejectedItems());
+
+        // bytes limit
+        try {
+            queue.offer("b3", "tenant1", 1, 1000);
+            fail("Batch should be rejected");
+        } catch (IngestionRejectedException e) {
+            // expected
+        }
+
+        assertEquals("b1", queue.poll());
+        assertNull(queue.poll());
+        assertEquals(0, queue.getBytes());
+
+        // an empty queue accepts a batch larger than the limits
+        queue.offer("b4", "tenant1", 20, 5000);
+        assertEquals(20, queue.getItems());
+        assertEquals("26", queue.getStatus().get("test.accepted-items"));
+        assertEquals("7", queue.getStatus().get("test.rejected-items"));
+    }
+
+    @Test
+    public void engineBacklogCountsAgainstItems() {
+        AtomicInteger backlog = new AtomicInteger(8);
+        IngestionQueue queue = new IngestionQueue("test", 10, 1000, Policy.REJECT, 0, 1, backlog::get);
+        try {
+            queue.offer("b1", "tenant1", 3, 10);
+            fail("Batch should be rejected");
+        } catch (IngestionRejectedException e) {
+            // expected
+        }
+        backlog.set(0);
+        queue.offer("b1", "tenant1", 3, 10);
+        assertEquals(3, queue.getItems());
+        assertEquals("0", queue.getStatus().get("test.backlog-items"));
+    }
+
+    @Test
+    public void shedOldestPolicy() {
+        IngestionQueue queue = new IngestionQueue("test", 10, 1000, Policy.SHED_OLDEST, 0, 1, null);
+        queue.offer("b1", "tenant1", 4, 10);
+        queue.offer("b2", "tenant2", 4, 10);
+        queue.offer("b3", "tenant3", 4, 10);
+
+        assertEquals(4, queue.getShedItems());
+        assertEquals(8, queue.getItems());
+        assertEquals("b2", queue.poll());
+        assertEquals("b3", queue.poll());
+    }
+
+    @Test
+    public void shedTenantPolicy() {
+        IngestionQueue queue = new IngestionQueue("test", 10, 1000, Policy.SHED_TENANT, 0, 1, null);
+        queue.offer("b1", "tenant1", 2, 10);
+        queue.offer("b2", "tenant2", 3, 10);
+        queue.offer("b3", "tenant2", 3, 10);
+
+        // tenant2 is the heaviest, its oldest batch is shed
+        queue.offer("b4", "tenant1", 3, 10);
+        assertEquals(3, queue.getShedItems());
+        assertEquals(8, queue.getItems());
+
+        // tenant2 would become the heaviest, so its own batch is rejected
+        try {
+            queue.offer("b5", "tenant2", 4, 10);
+            fail("Batch should be rejected");
+        } catch (IngestionRejectedException e) {
+            // expected
+        }
+        assertEquals(3, queue.getShedItems());
+        assertEquals(4, queue.getRejectedItems());
+
+        assertEquals("b1", queue.poll());
+        assertEquals("b3", queue.poll());
+        assertEquals("b4", queue.poll());
+    }
+
+    @Test
+    public void blockPolicy() throws Exception {
+        IngestionQueue queue = new IngestionQueue("test", 10, 1000, Policy.BLOCK, 5000, 1, null);
+        queue.offer("b1", "tenant1", 8, 10);
+
+        Thread consumer = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.poll();
+        });
+        consumer.start();
+
+        queue.offer("b2", "tenant1", 8, 10);
+        consumer.join();
+        assertEquals(8, queue.getItems());
+        assertEquals("b2", queue.poll());
+
+        IngestionQueue full = new IngestionQueue("test", 10, 1000, Policy.BLOCK, 200, 1, null);
+        full.offer("b1", "tenant1", 8, 10);
+        long start = System.currentTimeMillis();
+        try {
+            full.offer("b2", "tenant1", 8, 10);
+            fail("Batch should be rejected");
+        } catch (IngestionRejectedException e) {
+            assertTrue(e.isTimedOut());
+        }
+        assertTrue(System.currentTimeMillis() - start >= 200);
+    }
+}
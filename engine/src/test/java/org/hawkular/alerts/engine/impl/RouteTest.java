@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hawkular.alerts.api.model.data.Data;
+import org.hawkular.alerts.engine.impl.AlertsEngineCache.DataId;
+import org.junit.Test;
+
+/**
+ * Testing the routing of data to the nodes using their dataIds.
+ */
+public class RouteTest {
+
+    private static final String TENANT = "tenant";
+
+    private static final Integer NODE1 = 1001;
+    private static final Integer NODE2 = 2002;
+    private static final Integer NODE3 = 3003;
+
+    private static final List<Integer> MEMBERS = Arrays.asList(NODE1, NODE2, NODE3);
+
+    private static Map<String, Set<String>> dataIds(String... dataIds) {
+        Map<String, Set<String>> tenantDataIds = new HashMap<>();
+        tenantDataIds.put(TENANT, new HashSet<>(Arrays.asList(dataIds)));
+        return tenantDataIds;
+    }
+
+    private static Map<Integer, List<Data>> route(Map<DataId, List<Integer>> routes, Data... data) {
+        return PartitionManagerImpl.route(Arrays.asList(data), d -> new DataId(d.getTenantId(), d.getId()), routes,
+                NODE1, MEMBERS);
+    }
+
+    @Test
+    public void routeToNodesUsingDataIds() {
+        Map<Integer, Map<String, Set<String>>> nodeDataIds = new HashMap<>();
+        nodeDataIds.put(NODE1, dataIds("data-1", "data-shared"));
+        nodeDataIds.put(NODE2, dataIds("data-2", "data-shared"));
+        nodeDataIds.put(NODE3, dataIds("data-3", "data-shared"));
+        Map<DataId, List<Integer>> routes = PartitionManagerImpl.calculateRoutes(nodeDataIds);
+
+        assertEquals(4, routes.size());
+        assertEquals(3, routes.get(new DataId(TENANT, "data-shared")).size());
+
+        Data data1 = Data.forNumeric(TENANT, "data-1", 1, 1.0);
+        Data data2a = Data.forNumeric(TENANT, "data-2", 1, 1.0);
+        Data data2b = Data.forNumeric(TENANT, "data-2", 2, 2.0);
+        Data data3 = Data.forNumeric(TENANT, "data-3", 1, 1.0);
+        Data shared = Data.forNumeric(TENANT, "data-shared", 1, 1.0);
+
+        Map<Integer, List<Data>> nodeData = route(routes, data1, data2a, data2b, data3, shared);
+
+        // The current node already processed the data, one batch per other node
+        assertFalse(nodeData.containsKey(NODE1));
+        assertEquals(2, nodeData.size());
+        assertEquals(Arrays.asList(data2a, data2b, shared), nodeData.get(NODE2));
+        assertEquals(Arrays.asList(data3, shared), nodeData.get(NODE3));
+
+        // Only used by the current node
+        assertTrue(route(routes, data1).isEmpty());
+    }
+
+    @Test
+    public void broadcastUnknownDataIds() {
+        Map<Integer, Map<String, Set<String>>> nodeDataIds = new HashMap<>();
+        nodeDataIds.put(NODE2, dataIds("data-2"));
+        Map<DataId, List<Integer>> routes = PartitionManagerImpl.calculateRoutes(nodeDataIds);
+
+        Data data2 = Data.forNumeric(TENANT, "data-2", 1, 1.0);
+        Data unknown = Data.forNumeric(TENANT, "data-unknown", 1, 1.0);
+        Data otherTenant = Data.forNumeric("other-tenant", "data-2", 1, 1.0);
+
+        Map<Integer, List<Data>> nodeData = route(routes, data2, unknown, otherTenant);
+
+        assertEquals(2, nodeData.size());
+        assertEquals(Arrays.asList(data2, unknown, otherTenant), nodeData.get(NODE2));
+        assertEquals(Arrays.asList(unknown, otherTenant), nodeData.get(NODE3));
+    }
+}
@@ -17,7 +17,9 @@
 package org.hawkular.alerts.engine.impl.ispn;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.Arrays;
@@ -26,14 +28,17 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.hawkular.alerts.api.model.Severity;
 import org.hawkular.alerts.api.model.event.Alert;
 import org.hawkular.alerts.api.model.event.Event;
 import org.hawkular.alerts.api.services.AlertsCriteria;
 import org.hawkular.alerts.api.services.EventsCriteria;
+import org.hawkular.alerts.engine.impl.ispn.model.IspnEvent;
 import org.hawkular.commons.log.MsgLogger;
 import org.hawkular.commons.log.MsgLogging;
+import org.infinispan.container.entries.CacheEntry;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -84,6 +89,51 @@ public class IspnAlertsServiceImplTest extends IspnBaseServiceImplTest {
         deleteTestAlerts(numTenants);
     }
 
+    @Test
+    public void normalizedAlerts() throws Exception {
+        int numTenants = 1;
+        int numTriggers = 2;
+        int numAlerts = 10;
+        createTestAlerts(numTenants, numTriggers, numAlerts);
+
+        List<Alert> testAlerts = alerts.getAlerts("tenant0", null, null);
+        assertEquals(numTriggers * numAlerts, testAlerts.size());
+
+        Set<String> versions = new HashSet<>();
+        for (Alert alert : testAlerts) {
+            IspnEvent ispnEvent = (IspnEvent) alerts.backend.get(IspnPk.pk(alert));
+            assertNotNull(ispnEvent.getTriggerVersion());
+            assertNull(ispnEvent.getEvent().getTrigger());
+            versions.add(ispnEvent.getTriggerVersion());
+
+            assertNotNull(alert.getTrigger());
+            assertEquals(alert.getTriggerId(), alert.getTrigger().getId());
+            assertEquals(1, alert.getEvalSets().size());
+        }
+        // Same trigger definition for all the alerts of a trigger
+        assertEquals(numTriggers, versions.size());
+        for (String triggerId : Arrays.asList("trigger0", "trigger1")) {
+            Set<String> triggerVersions = new HashSet<>();
+            testAlerts.stream()
+                    .filter(a -> a.getTriggerId().equals(triggerId))
+                    .forEach(a -> triggerVersions.add(((IspnEvent) alerts.backend.get(IspnPk.pk(a)))
+                            .getTriggerVersion()));
+            assertEquals(1, triggerVersions.size());
+            String version = triggerVersions.iterator().next();
+            assertNotNull(alerts.backend.get(IspnPk.pkFromTriggerSnapshot("tenant0", triggerId, version)));
+        }
+
+        AlertsCriteria criteria = new AlertsCriteria();
+        criteria.setThin(true);
+        for (Alert alert : alerts.getAlerts("tenant0", criteria, null)) {
+            assertNotNull(alert.getTrigger());
+            assertNull(alert.getEvalSets());
+            assertNull(alert.getDampening());
+        }
+
+        deleteTestAlerts(numTenants);
+    }
+
     @Test
     public void evaluateTagQuery() throws Exception {
         StringBuilder query = new StringBuilder();
@@ -907,4 +957,43 @@ public class IspnAlertsServiceImplTest extends IspnBaseServiceImplTest {
 
         deleteTestEvents(numTenants);
     }
+
+    @Test
+    public void retentionPolicy() throws Exception {
+        RetentionPolicy policy = RetentionPolicy.parse("*:*=30d, *:ALERT=180d, tenant1:LOG=7d, tenant1:*=12h");
+        assertEquals(TimeUnit.DAYS.toMillis(7), policy.getRetention("tenant1", "LOG"));
+        assertEquals(TimeUnit.HOURS.toMillis(12), policy.getRetention("tenant1", "ALERT"));
+        assertEquals(TimeUnit.DAYS.toMillis(180), policy.getRetention("tenant2", "ALERT"));
+        assertEquals(TimeUnit.DAYS.toMillis(30), policy.getRetention("tenant2", null));
+        assertEquals(RetentionPolicy.KEEP, RetentionPolicy.parse("").getRetention("tenant1", "LOG"));
+        try {
+            RetentionPolicy.parse("tenant1=7d");
+            fail("It should throw an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        String tenantId = "tenant-retention";
+        long now = System.currentTimeMillis();
+        alerts.getRetentionPolicy().setRetention(tenantId, "LOG", TimeUnit.HOURS.toMillis(1));
+        try {
+            Event recent = new Event(tenantId, "recent", now, "dataId", "LOG", "recent");
+            Event expired = new Event(tenantId, "expired", now - TimeUnit.HOURS.toMillis(2), "dataId", "LOG",
+                    "expired");
+            Event kept = new Event(tenantId, "kept", now, "dataId", "DEPLOYMENT", "kept");
+            alerts.persistEvents(Arrays.asList(recent, expired, kept));
+
+            CacheEntry<String, Object> entry = alerts.backend.getAdvancedCache().getCacheEntry(IspnPk.pk(recent));
+            assertNotNull(entry);
+            assertTrue(entry.getLifespan() > 0);
+            assertTrue(entry.getLifespan() <= TimeUnit.HOURS.toMillis(1));
+            assertNull(alerts.backend.get(IspnPk.pk(expired)));
+            entry = alerts.backend.getAdvancedCache().getCacheEntry(IspnPk.pk(kept));
+            assertNotNull(entry);
+            assertEquals(-1, entry.getLifespan());
+        } finally {
+            alerts.getRetentionPolicy().setRetention(tenantId, "LOG", RetentionPolicy.KEEP);
+            alerts.deleteEvents(tenantId, new EventsCriteria());
+        }
+    }
 }
@@ -19,23 +19,32 @@ package org.hawkular.alerts.engine.impl.ispn;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.hawkular.alerts.api.exception.FoundException;
+import org.hawkular.alerts.api.json.DefinitionsNdjson;
 import org.hawkular.alerts.api.exception.NotFoundException;
 import org.hawkular.alerts.api.model.action.ActionDefinition;
 import org.hawkular.alerts.api.model.condition.AvailabilityCondition;
 import org.hawkular.alerts.api.model.condition.AvailabilityCondition.Operator;
 import org.hawkular.alerts.api.model.condition.Condition;
 import org.hawkular.alerts.api.model.dampening.Dampening;
+import org.hawkular.alerts.api.model.export.ImportProgress;
+import org.hawkular.alerts.api.model.export.ImportType;
+import org.hawkular.alerts.api.model.trigger.FullTrigger;
 import org.hawkular.alerts.api.model.trigger.Mode;
 import org.hawkular.alerts.api.model.trigger.Trigger;
 import org.hawkular.alerts.api.model.trigger.TriggerType;
@@ -363,4 +372,169 @@ public class IspnDefinitionsServiceImplTest extends IspnBaseServiceImplTest {
         definitions.removeGroupTrigger("tenant0", "groupTrigger0", false, false);
     }
 
+    @Test
+    public void definitionsCacheTest() throws Exception {
+        DefinitionsCache cache = definitions.getDefinitionsCache();
+        assertNotNull(cache);
+
+        Trigger trigger = new Trigger("cachedTrigger", "Cached Trigger");
+        definitions.addTrigger(TENANT, trigger);
+        Dampening fd = Dampening.forStrict(TENANT, "cachedTrigger", Mode.FIRING, 3);
+        definitions.addDampening(TENANT, fd);
+
+        assertEquals(trigger, definitions.getTrigger(TENANT, "cachedTrigger"));
+        assertEquals(1, definitions.getTriggerDampenings(TENANT, "cachedTrigger", null).size());
+
+        // cached instances are not exposed
+        long misses = cache.getMisses();
+        long hits = cache.getHits();
+        definitions.getTrigger(TENANT, "cachedTrigger").setDescription("changed by the caller");
+        definitions.getTriggerDampenings(TENANT, "cachedTrigger", Mode.FIRING).iterator().next().setNumEvals(5);
+        assertNull(definitions.getTrigger(TENANT, "cachedTrigger").getDescription());
+        assertEquals(0, definitions.getTriggerDampenings(TENANT, "cachedTrigger", Mode.FIRING).iterator().next()
+                .getNumEvals());
+        assertEquals(misses, cache.getMisses());
+        assertEquals(hits + 4, cache.getHits());
+
+        DefinitionsCache.Snapshot snapshot = cache.snapshot(TENANT);
+        assertNotNull(snapshot.getTriggers().get("cachedTrigger"));
+
+        // backend writes invalidate the projection before returning
+        trigger.setDescription("updated");
+        definitions.updateTrigger(TENANT, trigger);
+        assertEquals("updated", definitions.getTrigger(TENANT, "cachedTrigger").getDescription());
+        assertTrue(cache.getMisses() > misses);
+        assertTrue(cache.getVersion(TENANT) > snapshot.getVersion());
+        assertNull(snapshot.getTriggers().get("cachedTrigger").getDescription());
+
+        Dampening ad = Dampening.forRelaxedCount(TENANT, "cachedTrigger", Mode.AUTORESOLVE, 3, 5);
+        definitions.addDampening(TENANT, ad);
+        assertEquals(2, definitions.getTriggerDampenings(TENANT, "cachedTrigger", null).size());
+
+        definitions.removeTrigger(TENANT, "cachedTrigger");
+        try {
+            definitions.getTrigger(TENANT, "cachedTrigger");
+            fail("It should throw a NotFoundException");
+        } catch (NotFoundException e) {
+            // Expected
+        }
+        assertEquals(0, definitions.getTriggerDampenings(TENANT, "cachedTrigger", null).size());
+    }
+
+    @Test
+    public void bulkFullTriggersTest() throws Exception {
+        List<FullTrigger> fullTriggers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Trigger trigger = new Trigger("bulk" + i, "Bulk Trigger " + i);
+            Dampening dampening = Dampening.forStrict(TENANT, trigger.getId(), Mode.FIRING, 2);
+            Condition fc = new AvailabilityCondition(trigger.getId(), Mode.FIRING, "firing-" + i, Operator.NOT_UP);
+            Condition rc = new AvailabilityCondition(trigger.getId(), Mode.AUTORESOLVE, "resolve-" + i, Operator.UP);
+            fullTriggers.add(new FullTrigger(trigger, Arrays.asList(dampening), Arrays.asList(fc, rc)));
+        }
+        definitions.createFullTriggers(TENANT, fullTriggers);
+
+        for (int i = 0; i < 3; i++) {
+            FullTrigger fullTrigger = definitions.getFullTrigger(TENANT, "bulk" + i);
+            assertEquals(1, fullTrigger.getDampenings().size());
+            assertEquals(2, fullTrigger.getConditions().size());
+            assertEquals(1, definitions.getTriggerConditions(TENANT, "bulk" + i, Mode.FIRING).size());
+        }
+
+        try {
+            definitions.createFullTriggers(TENANT, Arrays.asList(
+                    new FullTrigger(new Trigger("bulk3", "Bulk Trigger 3"), null, null),
+                    new FullTrigger(new Trigger("bulk0", "Bulk Trigger 0"), null, null)));
+            fail("It should throw a FoundException");
+        } catch (FoundException e) {
+            // Expected
+        }
+        try {
+            definitions.getTrigger(TENANT, "bulk3");
+            fail("It should throw a NotFoundException");
+        } catch (NotFoundException e) {
+            // Expected
+        }
+
+        fullTriggers.forEach(ft -> {
+            ft.getTrigger().setDescription("updated");
+            ft.setDampenings(new ArrayList<>());
+        });
+        definitions.updateFullTriggers(TENANT, fullTriggers);
+        for (int i = 0; i < 3; i++) {
+            FullTrigger fullTrigger = definitions.getFullTrigger(TENANT, "bulk" + i);
+            assertEquals("updated", fullTrigger.getTrigger().getDescription());
+            assertEquals(0, fullTrigger.getDampenings().size());
+            assertEquals(2, fullTrigger.getConditions().size());
+        }
+
+        // a not found trigger fails the whole update, nothing is written
+        fullTriggers.get(0).getTrigger().setDescription("not-updated");
+        try {
+            definitions.updateFullTriggers(TENANT, Arrays.asList(fullTriggers.get(0),
+                    new FullTrigger(new Trigger("bulk3", "Bulk Trigger 3"), null, null)));
+            fail("It should throw a NotFoundException");
+        } catch (NotFoundException e) {
+            // Expected
+        }
+        assertEquals("updated", definitions.getTrigger(TENANT, "bulk0").getDescription());
+
+        definitions.removeTriggers(TENANT, Arrays.asList("bulk0", "bulk1", "bulk2"));
+        for (int i = 0; i < 3; i++) {
+            try {
+                definitions.getTrigger(TENANT, "bulk" + i);
+                fail("It should throw a NotFoundException");
+            } catch (NotFoundException e) {
+                // Expected
+            }
+            assertEquals(0, definitions.getTriggerConditions(TENANT, "bulk" + i, null).size());
+            assertEquals(0, definitions.getTriggerDampenings(TENANT, "bulk" + i, null).size());
+        }
+    }
+
+    @Test
+    public void streamDefinitionsTest() throws Exception {
+        String exportTenant = "tenant-export";
+        String importTenant = "tenant-import";
+        for (int i = 0; i < 5; i++) {
+            Trigger trigger = new Trigger(exportTenant, "stream" + i, "Stream Trigger " + i);
+            Condition fc = new AvailabilityCondition(exportTenant, trigger.getId(), Mode.FIRING, "stream-" + i,
+                    Operator.NOT_UP);
+            definitions.addTrigger(exportTenant, trigger);
+            definitions.setConditions(exportTenant, trigger.getId(), Mode.FIRING, Arrays.asList(fc));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        definitions.exportDefinitions(exportTenant, DefinitionsNdjson.writer(out));
+        String[] lines = out.toString("UTF-8").split("\n");
+        assertEquals(5, lines.length);
+
+        List<ImportProgress> reported = new ArrayList<>();
+        ImportProgress progress = definitions.importDefinitions(importTenant,
+                DefinitionsNdjson.batches(new ByteArrayInputStream(out.toByteArray()), 2), ImportType.ALL,
+                reported::add);
+        assertEquals(3, progress.getBatches());
+        assertEquals(5, progress.getProcessed());
+        assertEquals(5, progress.getTriggers());
+        assertEquals(3, reported.size());
+
+        for (int i = 0; i < 5; i++) {
+            FullTrigger fullTrigger = definitions.getFullTrigger(importTenant, "stream" + i);
+            assertEquals(importTenant, fullTrigger.getTrigger().getTenantId());
+            assertEquals(1, fullTrigger.getConditions().size());
+        }
+
+        progress = definitions.importDefinitions(importTenant,
+                DefinitionsNdjson.batches(new ByteArrayInputStream(out.toByteArray()), 2), ImportType.NEW, null);
+        assertEquals(5, progress.getProcessed());
+        assertEquals(0, progress.getTriggers());
+
+        try {
+            definitions.importDefinitions(importTenant,
+                    DefinitionsNdjson.batches(new ByteArrayInputStream("{\"trigger\":".getBytes("UTF-8")), 2),
+                    ImportType.ALL, null);
+            fail("It should throw an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.impl.ispn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.hawkular.alerts.api.model.Severity;
+import org.hawkular.alerts.api.model.condition.AvailabilityCondition;
+import org.hawkular.alerts.api.model.condition.AvailabilityConditionEval;
+import org.hawkular.alerts.api.model.condition.ConditionEval;
+import org.hawkular.alerts.api.model.data.AvailabilityType;
+import org.hawkular.alerts.api.model.data.Data;
+import org.hawkular.alerts.api.model.event.Alert;
+import org.hawkular.alerts.api.model.trigger.Mode;
+import org.hawkular.alerts.api.model.trigger.Trigger;
+import org.hawkular.alerts.engine.impl.ispn.model.IspnEvent;
+import org.hawkular.alerts.engine.impl.ispn.model.IspnExternalizers;
+import org.hawkular.alerts.engine.impl.ispn.model.IspnTrigger;
+import org.junit.Test;
+
+public class IspnExternalizersTest {
+
+    @Test
+    public void alertRoundTrip() throws Exception {
+        Trigger trigger = new Trigger("tenant", "trigger", "Trigger");
+        trigger.addContext("context1", "value1");
+        trigger.addTag("tag1", "value1");
+        trigger.setMode(Mode.AUTORESOLVE);
+        AvailabilityCondition availability = new AvailabilityCondition("tenant", "trigger", "Availability",
+                AvailabilityCondition.Operator.DOWN);
+        Data data = Data.forAvailability("tenant", "Availability", 1L, AvailabilityType.DOWN);
+        Set<ConditionEval> evalSet = new HashSet<>();
+        evalSet.add(new AvailabilityConditionEval(availability, data));
+        List<Set<ConditionEval>> evals = new ArrayList<>();
+        evals.add(evalSet);
+        Alert alert = new Alert("tenant", trigger, evals);
+        Data resolvedData = Data.forAvailability("tenant", "Availability", 2L, AvailabilityType.UP);
+        Set<ConditionEval> resolvedEvalSet = new HashSet<>();
+        resolvedEvalSet.add(new AvailabilityConditionEval(availability, resolvedData));
+        List<Set<ConditionEval>> resolvedEvals = new ArrayList<>();
+        resolvedEvals.add(resolvedEvalSet);
+        alert.setResolvedEvalSets(resolvedEvals);
+        alert.setSeverity(Severity.HIGH);
+        alert.addLifecycle(Alert.Status.ACKNOWLEDGED, "user1", 2L);
+        alert.addNote("user1", "note1");
+
+        IspnEvent ispnEvent = new IspnEvent(alert);
+        IspnExternalizers.IspnEventExternalizer externalizer = new IspnExternalizers.IspnEventExternalizer();
+        byte[] binary = write(out -> externalizer.writeObject(out, ispnEvent));
+        IspnEvent read = read(binary, in -> externalizer.readObject(in));
+
+        assertTrue(read.getEvent() instanceof Alert);
+        Alert readAlert = (Alert) read.getEvent();
+        assertEquals(alert, readAlert);
+        assertEquals(ispnEvent.getStatus(), read.getStatus());
+        assertEquals(ispnEvent.getSeverity(), read.getSeverity());
+        assertEquals(ispnEvent.getTags(), read.getTags());
+        assertEquals(ispnEvent.getCtime(), read.getCtime());
+        assertEquals(alert.getLifecycle().size(), readAlert.getLifecycle().size());
+        assertEquals(1, readAlert.getNotes().size());
+        assertEquals(1, readAlert.getEvalSets().size());
+        assertTrue(readAlert.getEvalSets().get(0).iterator().next().isMatch());
+        assertEquals(1, readAlert.getResolvedEvalSets().size());
+        assertFalse(readAlert.getResolvedEvalSets().get(0).iterator().next().isMatch());
+        assertEquals(trigger.getContext(), readAlert.getTrigger().getContext());
+        assertEquals(Mode.AUTORESOLVE, readAlert.getTrigger().getMode());
+
+        byte[] serialized = write(out -> out.writeObject(ispnEvent));
+        assertTrue(binary.length + " >= " + serialized.length, binary.length < serialized.length);
+    }
+
+    @Test
+    public void triggerRoundTrip() throws Exception {
+        Trigger trigger = new Trigger("tenant", "trigger", "Trigger");
+        trigger.addTag("tag1", "value1");
+        trigger.setMemberOf("group");
+
+        IspnTrigger ispnTrigger = new IspnTrigger(trigger);
+        IspnExternalizers.IspnTriggerExternalizer externalizer = new IspnExternalizers.IspnTriggerExternalizer();
+        IspnTrigger read = read(write(out -> externalizer.writeObject(out, ispnTrigger)),
+                in -> externalizer.readObject(in));
+
+        assertEquals(ispnTrigger, read);
+    }
+
+    private interface Writer {
+        void write(ObjectOutputStream out) throws Exception;
+    }
+
+    private interface Reader<T> {
+        T read(ObjectInputStream in) throws Exception;
+    }
+
+    private static byte[] write(Writer writer) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(baos)) {
+            writer.write(out);
+        }
+        return baos.toByteArray();
+    }
+
+    private static <T> T read(byte[] bytes, Reader<T> reader) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return reader.read(in);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.hawkular.alerts.engine.util.AlertsExecutors.Pool;
+import org.junit.After;
+import org.junit.Test;
+
+public class AlertsExecutorsTest {
+
+    private AlertsExecutors executors;
+
+    @After
+    public void after() {
+        System.clearProperty("hawkular-alerts.executor-rules-threads");
+        System.clearProperty("hawkular-alerts.executor-rules-queue-size");
+        System.clearProperty("hawkular-alerts.executor-actions-threads");
+        System.clearProperty("hawkular-alerts.executor-actions-queue-size");
+        System.clearProperty("hawkular-alerts.executor-actions-rejection-policy");
+        if (executors != null) {
+            executors.shutdown();
+        }
+    }
+
+    @Test
+    public void poolsAreIsolatedAndBounded() throws Exception {
+        System.setProperty("hawkular-alerts.executor-rules-threads", "1");
+        System.setProperty("hawkular-alerts.executor-rules-queue-size", "1");
+        executors = new AlertsExecutors();
+
+        ExecutorService rules = executors.get(Pool.RULES);
+        assertNotSame(rules, executors.get(Pool.INGESTION));
+
+        // block the single thread of the pool and fill its queue
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicReference<String> threadName = new AtomicReference<>();
+        rules.execute(() -> {
+            threadName.set(Thread.currentThread().getName());
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        rules.execute(() -> { });
+
+        // a saturated pool runs the task on the caller thread
+        AtomicReference<String> callerName = new AtomicReference<>();
+        rules.execute(() -> callerName.set(Thread.currentThread().getName()));
+        assertEquals(Thread.currentThread().getName(), callerName.get());
+        assertEquals("HawkularAlerts-rules-1", threadName.get());
+
+        // other pools are not affected
+        CountDownLatch ingested = new CountDownLatch(1);
+        executors.get(Pool.INGESTION).execute(ingested::countDown);
+        assertTrue(ingested.await(5, TimeUnit.SECONDS));
+
+        Map<String, String> status = executors.getStatus();
+        assertEquals("1", status.get("executor-rules.max-threads"));
+        assertEquals("1", status.get("executor-rules.queued-tasks"));
+        assertEquals("1", status.get("executor-rules.saturated-tasks"));
+        assertEquals("0", status.get("executor-ingestion.saturated-tasks"));
+
+        release.countDown();
+    }
+
+    @Test
+    public void saturatedActionsAreRejected() throws Exception {
+        System.setProperty("hawkular-alerts.executor-actions-threads", "1");
+        System.setProperty("hawkular-alerts.executor-actions-queue-size", "1");
+        executors = new AlertsExecutors();
+
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService actions = saturate(executors.get(Pool.ACTIONS), release);
+        try {
+            actions.execute(() -> { });
+            fail("A saturated actions pool should reject the task");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        Map<String, String> status = executors.getStatus();
+        assertEquals("abort", status.get("executor-actions.rejection-policy"));
+        assertEquals("1", status.get("executor-actions.saturated-tasks"));
+        assertEquals("caller-runs", status.get("executor-rules.rejection-policy"));
+
+        release.countDown();
+    }
+
+    @Test
+    public void rejectionPolicyIsConfigurable() throws Exception {
+        System.setProperty("hawkular-alerts.executor-actions-threads", "1");
+        System.setProperty("hawkular-alerts.executor-actions-queue-size", "1");
+        System.setProperty("hawkular-alerts.executor-actions-rejection-policy", "discard");
+        executors = new AlertsExecutors();
+
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService actions = saturate(executors.get(Pool.ACTIONS), release);
+        AtomicReference<String> discarded = new AtomicReference<>();
+        actions.execute(() -> discarded.set(Thread.currentThread().getName()));
+        assertNull(discarded.get());
+
+        Map<String, String> status = executors.getStatus();
+        assertEquals("discard", status.get("executor-actions.rejection-policy"));
+        assertEquals("1", status.get("executor-actions.saturated-tasks"));
+
+        release.countDown();
+    }
+
+    /*
+        Blocks the single thread of the pool and fills its queue of one task
+     */
+    private static ExecutorService saturate(ExecutorService executor, CountDownLatch release) throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.execute(() -> { });
+        return executor;
+    }
+}
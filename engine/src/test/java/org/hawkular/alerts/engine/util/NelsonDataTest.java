@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.engine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.hawkular.alerts.api.model.condition.NelsonCondition;
+import org.hawkular.alerts.api.model.condition.NelsonCondition.NelsonRule;
+import org.hawkular.alerts.api.model.data.Data;
+import org.junit.Test;
+
+public class NelsonDataTest {
+
+    @Test
+    public void testBaseline() {
+        NelsonCondition condition = new NelsonCondition("tenant", "trigger-1", "NumericData-01",
+                EnumSet.allOf(NelsonRule.class), 10);
+        NelsonData nelsonData = new NelsonData(condition);
+
+        assertTrue(Double.isNaN(nelsonData.getMeanResult()));
+
+        for (int i = 1; i <= 10; i++) {
+            nelsonData.addData(Data.forNumeric("tenant", "NumericData-01", i, (double) i));
+        }
+
+        assertTrue(nelsonData.hasMean());
+        assertEquals(5.5, nelsonData.getMeanResult(), 0.000001);
+        // sample standard deviation of 1..10
+        assertEquals(3.0276503, nelsonData.getStandardDeviationResult(), 0.000001);
+
+        // the baseline does not change once the sample size is reached
+        nelsonData.addData(Data.forNumeric("tenant", "NumericData-01", 11, 100.0));
+        assertEquals(5.5, nelsonData.getMeanResult(), 0.000001);
+        assertTrue(nelsonData.getViolations().contains(NelsonRule.Rule1));
+
+        nelsonData.clear();
+        assertFalse(nelsonData.hasMean());
+        assertFalse(nelsonData.hasViolations());
+    }
+
+    @Test
+    public void testViolationsData() {
+        NelsonCondition condition = new NelsonCondition("tenant", "trigger-1", "NumericData-01",
+                EnumSet.allOf(NelsonRule.class), 5);
+        NelsonData nelsonData = new NelsonData(condition);
+
+        Data first = Data.forNumeric("tenant", "NumericData-01", 1, 1.0);
+        nelsonData.addData(first);
+        nelsonData.addData(first);
+        assertEquals(1, nelsonData.getViolationsData().size());
+
+        for (int i = 2; i <= 20; i++) {
+            nelsonData.addData(Data.forNumeric("tenant", "NumericData-01", i, (double) i));
+        }
+
+        List<Data> violationsData = nelsonData.getViolationsData();
+        assertEquals(15, violationsData.size());
+        assertEquals(20, violationsData.get(0).getTimestamp());
+        assertEquals(6, violationsData.get(14).getTimestamp());
+
+        // Six (or more) points in a row are continually increasing
+        assertTrue(nelsonData.getViolations().contains(NelsonRule.Rule3));
+    }
+
+    @Test
+    public void testInvalidState() throws Exception {
+        NelsonCondition condition = new NelsonCondition("tenant", "trigger-1", "NumericData-01",
+                EnumSet.allOf(NelsonRule.class), 5);
+        NelsonData nelsonData = new NelsonData(condition);
+
+        for (int numData : new int[] { -1, 16, Integer.MAX_VALUE }) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            new DataOutputStream(bytes).writeInt(numData);
+            try {
+                nelsonData.readState(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+                fail("State with " + numData + " data should be rejected");
+            } catch (IOException e) {
+                // expected, rejected before any allocation
+            }
+        }
+    }
+}
@@ -52,6 +52,7 @@ import org.hawkular.alerts.api.doc.DocParameters;
 import org.hawkular.alerts.api.doc.DocPath;
 import org.hawkular.alerts.api.doc.DocResponse;
 import org.hawkular.alerts.api.doc.DocResponses;
+import org.hawkular.alerts.api.exception.IngestionRejectedException;
 import org.hawkular.alerts.api.model.data.Data;
 import org.hawkular.alerts.api.model.event.Alert;
 import org.hawkular.alerts.api.model.paging.Page;
@@ -710,7 +711,11 @@ public class AlertsHandler implements RestHandler {
     @DocResponses(value = {
             @DocResponse(code = 200, message = "Success, data added."),
             @DocResponse(code = 400, message = "Bad Request/Invalid Parameters.", response = ApiError.class),
-            @DocResponse(code = 500, message = "Internal server error.", response = ApiError.class)
+            @DocResponse(code = 429, message = "Ingestion queue full, retry after Retry-After seconds.",
+                    response = ApiError.class),
+            @DocResponse(code = 500, message = "Internal server error.", response = ApiError.class),
+            @DocResponse(code = 503, message = "Ingestion queue full after waiting, retry after Retry-After seconds.",
+                    response = ApiError.class)
     })
     public void sendData(RoutingContext routing) {
         routing.vertx()
@@ -734,6 +739,8 @@ public class AlertsHandler implements RestHandler {
                         future.complete();
                     } catch (IllegalArgumentException e) {
                         throw new BadRequestException("Bad arguments: " + e.getMessage());
+                    } catch (IngestionRejectedException e) {
+                        throw e;
                     } catch (Exception e) {
                         throw new InternalServerException(e.toString());
                     }
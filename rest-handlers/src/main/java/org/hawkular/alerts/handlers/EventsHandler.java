@@ -44,6 +44,7 @@ import org.hawkular.alerts.api.doc.DocParameters;
 import org.hawkular.alerts.api.doc.DocPath;
 import org.hawkular.alerts.api.doc.DocResponse;
 import org.hawkular.alerts.api.doc.DocResponses;
+import org.hawkular.alerts.api.exception.IngestionRejectedException;
 import org.hawkular.alerts.api.model.event.Event;
 import org.hawkular.alerts.api.model.paging.Page;
 import org.hawkular.alerts.api.model.paging.Pager;
@@ -198,7 +199,11 @@ public class EventsHandler implements RestHandler {
     @DocResponses(value = {
             @DocResponse(code = 200, message = "Success, Events Sent.", response = Event.class),
             @DocResponse(code = 400, message = "Bad Request/Invalid Parameters.", response = ApiError.class),
-            @DocResponse(code = 500, message = "Internal server error.", response = ApiError.class)
+            @DocResponse(code = 429, message = "Ingestion queue full, retry after Retry-After seconds.",
+                    response = ApiError.class),
+            @DocResponse(code = 500, message = "Internal server error.", response = ApiError.class),
+            @DocResponse(code = 503, message = "Ingestion queue full after waiting, retry after Retry-After seconds.",
+                    response = ApiError.class)
     })
     public void sendEvents(RoutingContext routing) {
         routing.vertx()
@@ -222,6 +227,8 @@ public class EventsHandler implements RestHandler {
                         future.complete(events);
                     } catch (IllegalArgumentException e) {
                         throw new ResponseUtil.BadRequestException("Bad arguments: " + e.getMessage());
+                    } catch (IngestionRejectedException e) {
+                        throw e;
                     } catch (Exception e) {
                         throw new ResponseUtil.InternalServerException(e.toString());
                     }
@@ -17,20 +17,29 @@
 package org.hawkular.alerts.handlers;
 
 import static org.hawkular.alerts.api.doc.DocConstants.GET;
+import static org.hawkular.alerts.handlers.util.ResponseUtil.CONTENT_TYPE;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.hawkular.alerts.api.doc.DocEndpoint;
 import org.hawkular.alerts.api.doc.DocPath;
 import org.hawkular.alerts.api.doc.DocResponse;
 import org.hawkular.alerts.api.doc.DocResponses;
+import org.hawkular.alerts.api.json.DefinitionsNdjson;
 import org.hawkular.alerts.api.model.export.Definitions;
 import org.hawkular.alerts.api.services.DefinitionsService;
 import org.hawkular.alerts.engine.StandaloneAlerts;
+import org.hawkular.alerts.handlers.util.ResponseOutputStream;
 import org.hawkular.alerts.handlers.util.ResponseUtil;
 import org.hawkular.commons.log.MsgLogger;
 import org.hawkular.commons.log.MsgLogging;
 import org.hawkular.handlers.RestEndpoint;
 import org.hawkular.handlers.RestHandler;
 
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
 
@@ -43,6 +52,10 @@ import io.vertx.ext.web.RoutingContext;
 public class ExportHandler implements RestHandler {
     private static final MsgLogger log = MsgLogging.getMsgLogger(ExportHandler.class);
     private static final String ROOT = "/";
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String GZIP = "gzip";
+    private static final int GZIP_BUFFER_SIZE = 8 * 1024;
 
     DefinitionsService definitionsService;
 
@@ -54,6 +67,7 @@ public class ExportHandler implements RestHandler {
     public void initRoutes(String baseUrl, Router router) {
         String path = baseUrl + "/export";
         router.get(path).handler(this::exportDefinitions);
+        router.get(path + "/stream").handler(this::exportDefinitionsStream);
     }
 
     @DocPath(method = GET,
@@ -76,4 +90,53 @@ public class ExportHandler implements RestHandler {
                     }
                 }, res -> ResponseUtil.result(routing, res));
     }
+
+    @DocPath(method = GET,
+            path = "/stream",
+            name = "Export full triggers and action definitions as a stream.",
+            notes = "Definitions are streamed as newline delimited JSON (application/x-ndjson), one object per " +
+                    "line: {\"action\":<<ActionDefinition>>} or {\"trigger\":<<FullTrigger>>}. + \n" +
+                    "Actions are written first, so the stream can be imported back with POST /import/stream. + \n" +
+                    "The stream is gzip encoded when the request accepts gzip encoding. + \n" +
+                    "Errors will close the stream.")
+    @DocResponses(value = {
+            @DocResponse(code = 200, message = "Successfully started the export stream.", response = String.class),
+            @DocResponse(code = 500, message = "Internal server error.", response = ResponseUtil.ApiError.class)
+    })
+    public void exportDefinitionsStream(RoutingContext routing) {
+        routing.vertx()
+                .executeBlocking(future -> {
+                    String tenantId = ResponseUtil.checkTenant(routing);
+                    String acceptEncoding = routing.request().getHeader(ACCEPT_ENCODING);
+                    boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains(GZIP);
+                    HttpServerResponse response = routing.response()
+                            .putHeader(CONTENT_TYPE, DefinitionsNdjson.CONTENT_TYPE)
+                            .setChunked(true)
+                            .setStatusCode(OK.code());
+                    if (gzip) {
+                        response.putHeader(CONTENT_ENCODING, GZIP);
+                    }
+                    try (ResponseOutputStream responseOut = new ResponseOutputStream(response);
+                         OutputStream out = gzip ? new GZIPOutputStream(responseOut, GZIP_BUFFER_SIZE) : responseOut) {
+                        definitionsService.exportDefinitions(tenantId, DefinitionsNdjson.writer(out));
+                        future.complete();
+                    } catch (Exception e) {
+                        log.debug(e.getMessage(), e);
+                        throw new ResponseUtil.InternalServerException(e.toString());
+                    }
+                }, res -> {
+                    HttpServerResponse response = routing.response();
+                    if (!response.headWritten()) {
+                        response.headers().remove(CONTENT_ENCODING);
+                        ResponseUtil.result(routing, res);
+                        return;
+                    }
+                    if (res.succeeded()) {
+                        response.end();
+                    } else {
+                        log.errorf("Export stream aborted: %s", res.cause().getMessage());
+                        response.close();
+                    }
+                });
+    }
 }
@@ -18,6 +18,16 @@ package org.hawkular.alerts.handlers;
 
 import static org.hawkular.alerts.api.doc.DocConstants.POST;
 import static org.hawkular.alerts.api.json.JsonUtil.fromJson;
+import static org.hawkular.alerts.api.json.JsonUtil.toJson;
+import static org.hawkular.alerts.handlers.util.ResponseUtil.CONTENT_TYPE;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
 import org.hawkular.alerts.api.doc.DocEndpoint;
 import org.hawkular.alerts.api.doc.DocParameter;
@@ -25,7 +35,9 @@ import org.hawkular.alerts.api.doc.DocParameters;
 import org.hawkular.alerts.api.doc.DocPath;
 import org.hawkular.alerts.api.doc.DocResponse;
 import org.hawkular.alerts.api.doc.DocResponses;
+import org.hawkular.alerts.api.json.DefinitionsNdjson;
 import org.hawkular.alerts.api.model.export.Definitions;
+import org.hawkular.alerts.api.model.export.ImportProgress;
 import org.hawkular.alerts.api.model.export.ImportType;
 import org.hawkular.alerts.api.services.DefinitionsService;
 import org.hawkular.alerts.engine.StandaloneAlerts;
@@ -36,6 +48,8 @@ import org.hawkular.commons.log.MsgLogging;
 import org.hawkular.handlers.RestEndpoint;
 import org.hawkular.handlers.RestHandler;
 
+import io.netty.buffer.ByteBufInputStream;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
 
@@ -47,6 +61,10 @@ import io.vertx.ext.web.RoutingContext;
 @DocEndpoint(value = "/import", description = "Import of triggers and actions definitions")
 public class ImportHandler implements RestHandler {
     private static final MsgLogger log = MsgLogging.getMsgLogger(ImportHandler.class);
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String GZIP = "gzip";
+    private static final String PARAM_BATCH_SIZE = "batchSize";
+    private static final int DEFAULT_BATCH_SIZE = 500;
 
     DefinitionsService definitionsService;
 
@@ -57,6 +75,7 @@ public class ImportHandler implements RestHandler {
     @Override
     public void initRoutes(String baseUrl, Router router) {
         String path = baseUrl + "/import";
+        router.post(path + "/stream/:strategy").handler(this::importDefinitionsStream);
         router.post(path + "/:strategy").handler(this::importDefinitions);
     }
 
@@ -133,4 +152,85 @@ public class ImportHandler implements RestHandler {
                     }
                 }, res -> ResponseUtil.result(routing, res));
     }
+
+    @DocPath(method = POST,
+            path = "/stream/{strategy}",
+            name = "Import a stream of full triggers and action definitions.",
+            notes = "The body is newline delimited JSON (application/x-ndjson) as produced by GET /export/stream, " +
+                    "one object per line: {\"action\":<<ActionDefinition>>}, {\"trigger\":<<FullTrigger>>} or " +
+                    "{\"groupMember\":<<GroupMemberInfo>>}. + \n" +
+                    "A gzip encoded body is accepted with Content-Encoding: gzip. + \n" +
+                    " + \n" +
+                    "Definitions are imported in batches, with the same strategies of POST /import/{strategy}. " +
+                    "Under DELETE strategy existing data is deleted once, before the first batch. + \n" +
+                    "The response streams an <<ImportProgress>> line per imported batch, the last line holding the " +
+                    "totals. + \n" +
+                    "Errors will close the stream, the error description is sent before the stream is closed. " +
+                    "Batches imported before the error are kept.")
+    @DocParameters(value = {
+            @DocParameter(name = "strategy", required = true, path = true,
+                    description = "Import strategy.",
+                    allowableValues = "DELETE,ALL,NEW,OLD"),
+            @DocParameter(name = "batchSize", type = Integer.class,
+                    description = "Number of definitions imported per batch, 500 by default."),
+            @DocParameter(required = true, body = true, type = String.class,
+                    description = "Newline delimited JSON stream of full triggers and action definitions.")
+    })
+    @DocResponses(value = {
+            @DocResponse(code = 200, message = "Successfully imported the stream of definitions.",
+                    response = ImportProgress.class),
+            @DocResponse(code = 400, message = "Bad Request/Invalid Parameters.", response = ApiError.class),
+            @DocResponse(code = 500, message = "Internal server error.", response = ApiError.class)
+    })
+    public void importDefinitionsStream(RoutingContext routing) {
+        routing.vertx()
+                .executeBlocking(future -> {
+                    String tenantId = ResponseUtil.checkTenant(routing);
+                    ImportType importType;
+                    int batchSize;
+                    try {
+                        importType = ImportType.valueOf(routing.request().getParam("strategy").toUpperCase());
+                        String batchSizeParam = routing.request().getParam(PARAM_BATCH_SIZE);
+                        batchSize = batchSizeParam == null ? DEFAULT_BATCH_SIZE : Integer.parseInt(batchSizeParam);
+                        if (batchSize < 1) {
+                            throw new IllegalArgumentException("batchSize must be greater than 0");
+                        }
+                    } catch (IllegalArgumentException e) {
+                        throw new ResponseUtil.BadRequestException(e.toString());
+                    }
+                    String contentEncoding = routing.request().getHeader(CONTENT_ENCODING);
+                    boolean gzip = contentEncoding != null && contentEncoding.toLowerCase().contains(GZIP);
+                    Consumer<ImportProgress> progressListener = progress -> {
+                        HttpServerResponse response = routing.response();
+                        if (!response.headWritten()) {
+                            response.putHeader(CONTENT_TYPE, DefinitionsNdjson.CONTENT_TYPE)
+                                    .setChunked(true)
+                                    .setStatusCode(OK.code());
+                        }
+                        response.write(toJson(progress) + "\n");
+                    };
+                    InputStream body = new ByteBufInputStream(routing.getBody().getByteBuf());
+                    try (InputStream in = gzip ? new GZIPInputStream(body) : body) {
+                        ImportProgress progress = definitionsService.importDefinitions(tenantId,
+                                DefinitionsNdjson.batches(in, batchSize), importType, progressListener);
+                        future.complete(progress);
+                    } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+                        throw new ResponseUtil.BadRequestException(e.toString());
+                    } catch (Exception e) {
+                        log.debug(e.getMessage(), e);
+                        throw new ResponseUtil.InternalServerException(e.toString());
+                    }
+                }, res -> {
+                    HttpServerResponse response = routing.response();
+                    if (!response.headWritten()) {
+                        ResponseUtil.result(routing, res);
+                        return;
+                    }
+                    if (res.succeeded()) {
+                        response.end();
+                    } else {
+                        response.end(toJson(new ApiError(res.cause().getMessage())) + "\n");
+                    }
+                });
+    }
 }
@@ -75,7 +75,14 @@ public class StatusHandler implements RestHandler {
                     "\"Implementation-Version\":\"<Version>\", + \n" +
                     "\"Built-From-Git-SHA1\":\"<Git-SHA1>\", + \n" +
                     "\"distributed\":\"<true|false>\", + \n" +
-                    "\"members\":\"<comma list of nodes IDs>\" + \n" +
+                    "\"members\":\"<comma list of nodes IDs>\", + \n" +
+                    "\"ingestion-data.queued-items\":\"<datums waiting to be processed>\", + \n" +
+                    "\"ingestion-data.shed-items\":\"<datums dropped by the ingestion policy>\", + \n" +
+                    "\"ingestion-events.queued-items\":\"<events waiting to be processed>\", + \n" +
+                    "\"ingestion-events.shed-items\":\"<events dropped by the ingestion policy>\", + \n" +
+                    "\"executor-<pool>.active-threads\":\"<busy threads of the pool>\", + \n" +
+                    "\"executor-<pool>.queued-tasks\":\"<tasks waiting for a thread>\", + \n" +
+                    "\"executor-<pool>.saturated-tasks\":\"<tasks run on the caller thread>\" + \n" +
                     "}")
     @DocResponses(value = {
             @DocResponse(code = 200, message = "Success, Event Created.", response = String.class, responseContainer = "Map"),
@@ -96,6 +103,8 @@ public class StatusHandler implements RestHandler {
                     if (distributed) {
                         status.putAll(statusService.getDistributedStatus());
                     }
+                    status.putAll(statusService.getIngestionStatus());
+                    status.putAll(statusService.getExecutorsStatus());
                     future.complete(status);
                 }, res -> ResponseUtil.result(routing, res));
     }
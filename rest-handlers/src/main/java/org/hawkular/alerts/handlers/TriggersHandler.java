@@ -46,6 +46,7 @@ import org.hawkular.alerts.api.doc.DocParameters;
 import org.hawkular.alerts.api.doc.DocPath;
 import org.hawkular.alerts.api.doc.DocResponse;
 import org.hawkular.alerts.api.doc.DocResponses;
+import org.hawkular.alerts.api.exception.FoundException;
 import org.hawkular.alerts.api.exception.NotFoundException;
 import org.hawkular.alerts.api.json.GroupConditionsInfo;
 import org.hawkular.alerts.api.json.GroupMemberInfo;
@@ -116,6 +117,9 @@ public class TriggersHandler implements RestHandler {
         router.put(path + "/trigger/:triggerId").handler(this::updateFullTrigger);
         router.post(path + "/groups").handler(this::createGroupTrigger);
         router.put(path + "/enabled").handler(this::setTriggersEnabled);
+        router.post(path + "/bulk").handler(this::createFullTriggers);
+        router.put(path + "/bulk").handler(this::updateFullTriggers);
+        router.delete(path + "/bulk").handler(this::deleteTriggers);
         router.put(path + "/:triggerId").handler(this::updateTrigger);
         router.delete(path + "/:triggerId").handler(this::deleteTrigger);
         router.get(path + "/trigger/:triggerId").handler(this::getFullTrigger);
@@ -289,6 +293,159 @@ public class TriggersHandler implements RestHandler {
                 }, res -> result(routing, res));
     }
 
+    @DocPath(method = POST,
+            path = "/bulk",
+            name = "Create a list of full triggers (trigger, dampenings and conditions).",
+            notes = "Definitions are stored in a single batch and the engine is updated once per trigger. + \n" +
+                    "If any trigger already exists none is created. + \n" +
+                    "Return created full triggers.")
+    @DocParameters(value = {
+            @DocParameter(required = true, body = true, type = FullTrigger.class, typeContainer = "List",
+                    description = "FullTriggers (trigger, dampenings, conditions) to be created.")
+    })
+    @DocResponses(value = {
+            @DocResponse(code = 200, message = "Success, FullTriggers created.", response = FullTrigger.class,
+                    responseContainer = "List"),
+            @DocResponse(code = 400, message = "Bad Request/Invalid Parameters.", response = ApiError.class),
+            @DocResponse(code = 500, message = "Internal server error.", response = ApiError.class)
+    })
+    public void createFullTriggers(RoutingContext routing) {
+        routing.vertx()
+                .executeBlocking(future -> {
+                    String tenantId = checkTenant(routing);
+                    String json = routing.getBodyAsString();
+                    Collection<FullTrigger> fullTriggers;
+                    try {
+                        fullTriggers = collectionFromJson(json, FullTrigger.class);
+                    } catch (Exception e) {
+                        log.errorf("Error parsing FullTrigger json: %s. Reason: %s", json, e.toString());
+                        throw new BadRequestException(e);
+                    }
+                    if (isEmpty(fullTriggers)) {
+                        throw new BadRequestException("FullTriggers are empty");
+                    }
+                    for (FullTrigger fullTrigger : fullTriggers) {
+                        if (fullTrigger == null || fullTrigger.getTrigger() == null) {
+                            throw new BadRequestException("Trigger is empty");
+                        }
+                        Trigger trigger = fullTrigger.getTrigger();
+                        trigger.setTenantId(tenantId);
+                        if (isEmpty(trigger.getId())) {
+                            trigger.setId(Trigger.generateId());
+                        }
+                        if (!checkTags(trigger)) {
+                            throw new BadRequestException("Tags " + trigger.getTags() + " must be non empty.");
+                        }
+                    }
+                    try {
+                        definitionsService.createFullTriggers(tenantId, fullTriggers);
+                        future.complete(fullTriggers);
+                    } catch (FoundException e) {
+                        throw new BadRequestException("Trigger exists: " + e.getMessage());
+                    } catch (IllegalArgumentException e) {
+                        throw new BadRequestException("Bad arguments: " + e.getMessage());
+                    } catch (Exception e) {
+                        log.debug(e.getMessage(), e);
+                        throw new InternalServerException(e);
+                    }
+                }, res -> result(routing, res));
+    }
+
+    @DocPath(method = PUT,
+            path = "/bulk",
+            name = "Update a list of existing full triggers (trigger, dampenings and conditions).",
+            notes = "The engine is updated once per trigger, after all triggers are stored.")
+    @DocParameters(value = {
+            @DocParameter(required = true, body = true, type = FullTrigger.class, typeContainer = "List",
+                    description = "FullTriggers (trigger, dampenings, conditions) to be updated.")
+    })
+    @DocResponses(value = {
+            @DocResponse(code = 200, message = "Success, FullTriggers updated."),
+            @DocResponse(code = 400, message = "Bad Request/Invalid Parameters.", response = ApiError.class),
+            @DocResponse(code = 404, message = "Trigger not found.", response = ApiError.class),
+            @DocResponse(code = 500, message = "Internal server error.", response = ApiError.class)
+    })
+    public void updateFullTriggers(RoutingContext routing) {
+        routing.vertx()
+                .executeBlocking(future -> {
+                    String tenantId = checkTenant(routing);
+                    String json = routing.getBodyAsString();
+                    Collection<FullTrigger> fullTriggers;
+                    try {
+                        fullTriggers = collectionFromJson(json, FullTrigger.class);
+                    } catch (Exception e) {
+                        log.errorf("Error parsing FullTrigger json: %s. Reason: %s", json, e.toString());
+                        throw new BadRequestException(e.toString(), e);
+                    }
+                    if (isEmpty(fullTriggers)) {
+                        throw new BadRequestException("FullTriggers can not be empty.");
+                    }
+                    for (FullTrigger fullTrigger : fullTriggers) {
+                        if (null == fullTrigger || null == fullTrigger.getTrigger()) {
+                            throw new BadRequestException("FullTrigger.Trigger can not be null.");
+                        }
+                        if (isEmpty(fullTrigger.getTrigger().getId())) {
+                            throw new BadRequestException("FullTrigger.Trigger.id can not be null.");
+                        }
+                        if (!checkTags(fullTrigger.getTrigger())) {
+                            throw new BadRequestException(
+                                    "Tags " + fullTrigger.getTrigger().getTags() + " must be non empty.");
+                        }
+                    }
+                    try {
+                        definitionsService.updateFullTriggers(tenantId, fullTriggers);
+                        future.complete();
+                    } catch (NotFoundException e) {
+                        throw new ResponseUtil.NotFoundException(e.getMessage());
+                    } catch (IllegalArgumentException e) {
+                        throw new BadRequestException("Bad arguments: " + e.getMessage());
+                    } catch (Exception e) {
+                        log.debug(e.getMessage(), e);
+                        throw new InternalServerException(e.toString());
+                    }
+                }, res -> result(routing, res));
+    }
+
+    @DocPath(method = DELETE,
+            path = "/bulk",
+            name = "Delete a list of standard or group member trigger definitions.",
+            notes = "If any trigger is not found none is deleted.")
+    @DocParameters(value = {
+            @DocParameter(name = "triggerIds", required = true,
+                    description = "List of trigger ids to delete",
+                    allowableValues = "Comma separated list of triggerIds to be deleted.")
+    })
+    @DocResponses(value = {
+            @DocResponse(code = 200, message = "Success, Triggers deleted."),
+            @DocResponse(code = 400, message = "Bad Request/Invalid Parameters.", response = ApiError.class),
+            @DocResponse(code = 404, message = "Trigger not found", response = ApiError.class),
+            @DocResponse(code = 500, message = "Internal server error.", response = ApiError.class)
+    })
+    public void deleteTriggers(RoutingContext routing) {
+        routing.vertx()
+                .executeBlocking(future -> {
+                    String tenantId = checkTenant(routing);
+                    String triggerIds = routing.request().params().get(PARAM_TRIGGER_IDS);
+                    if (isEmpty(triggerIds)) {
+                        throw new BadRequestException("TriggerIds must be non empty.");
+                    }
+                    try {
+                        definitionsService.removeTriggers(tenantId, Arrays.stream(triggerIds.split(","))
+                                .map(String::trim)
+                                .collect(Collectors.toList()));
+                        log.debugf("TriggerIds: %s", triggerIds);
+                        future.complete();
+                    } catch (NotFoundException e) {
+                        throw new ResponseUtil.NotFoundException(e.getMessage());
+                    } catch (IllegalArgumentException e) {
+                        throw new BadRequestException("Bad arguments: " + e.getMessage());
+                    } catch (Exception e) {
+                        log.debug(e.getMessage(), e);
+                        throw new InternalServerException(e.toString());
+                    }
+                }, res -> result(routing, res));
+    }
+
     @DocPath(method = PUT,
             path = "/trigger/{triggerId}",
             name = "Update an existing full trigger (trigger, dampenings and conditions).",
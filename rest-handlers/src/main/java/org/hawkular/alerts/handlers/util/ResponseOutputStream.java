@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.alerts.handlers.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+
+/**
+ * OutputStream over a chunked HttpServerResponse, to be used from a blocking handler.
+ *
+ * Bytes are written to the response in chunks, blocking the writer while the response write queue is full, so a
+ * slow client bounds the memory used by the stream instead of queueing the whole response.  Closing the stream
+ * flushes the pending bytes but does not end the response.
+ */
+public class ResponseOutputStream extends OutputStream {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final long DRAIN_CHECK_MS = 1000;
+
+    private final HttpServerResponse response;
+    private Buffer chunk = Buffer.buffer(CHUNK_SIZE);
+    private volatile boolean closed = false;
+
+    public ResponseOutputStream(HttpServerResponse response) {
+        this.response = response;
+        this.response.closeHandler(v -> closed = true);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        chunk.appendByte((byte) b);
+        if (chunk.length() >= CHUNK_SIZE) {
+            flush();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        chunk.appendBytes(b, off, len);
+        if (chunk.length() >= CHUNK_SIZE) {
+            flush();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (chunk.length() == 0) {
+            return;
+        }
+        waitForDrain();
+        try {
+            response.write(chunk);
+        } catch (IllegalStateException e) {
+            throw new IOException("Response is closed", e);
+        }
+        chunk = Buffer.buffer(CHUNK_SIZE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    private void waitForDrain() throws IOException {
+        while (response.writeQueueFull()) {
+            if (closed) {
+                throw new IOException("Connection closed by the client");
+            }
+            CountDownLatch drained = new CountDownLatch(1);
+            response.drainHandler(v -> drained.countDown());
+            if (response.writeQueueFull()) {
+                try {
+                    drained.await(DRAIN_CHECK_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for the client", e);
+                }
+            }
+        }
+        if (closed) {
+            throw new IOException("Connection closed by the client");
+        }
+    }
+}
@@ -23,6 +23,8 @@ import static io.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
 import static io.netty.handler.codec.http.HttpResponseStatus.INTERNAL_SERVER_ERROR;
 import static io.netty.handler.codec.http.HttpResponseStatus.NOT_FOUND;
 import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+import static io.netty.handler.codec.http.HttpResponseStatus.TOO_MANY_REQUESTS;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -37,6 +39,7 @@ import java.util.stream.Collectors;
 
 import org.hawkular.alerts.api.doc.DocModel;
 import org.hawkular.alerts.api.doc.DocModelProperty;
+import org.hawkular.alerts.api.exception.IngestionRejectedException;
 import org.hawkular.alerts.api.json.GroupMemberInfo;
 import org.hawkular.alerts.api.json.UnorphanMemberInfo;
 import org.hawkular.alerts.api.model.dampening.Dampening;
@@ -61,6 +64,7 @@ public class ResponseUtil {
     public static final String ACCEPT = "Accept";
     public static final String CONTENT_TYPE = "Content-Type";
     public static final String APPLICATION_JSON = "application/json";
+    public static final String RETRY_AFTER = "Retry-After";
     public static final String TENANT_HEADER_NAME = "Hawkular-Tenant";
     public static final String PARAM_PAGE = "page";
     public static final String PARAM_PER_PAGE = "per_page";
@@ -128,6 +132,18 @@ public class ResponseUtil {
                 .end(toJson(new ApiError(errorMsg)));
     }
 
+    /*
+        A full ingestion queue is answered with 429, or with 503 when the request has already waited for room
+     */
+    public static void ingestionRejected(RoutingContext routing, IngestionRejectedException e) {
+        routing.response()
+                .putHeader(ACCEPT, APPLICATION_JSON)
+                .putHeader(CONTENT_TYPE, APPLICATION_JSON)
+                .putHeader(RETRY_AFTER, String.valueOf(e.getRetryAfter()))
+                .setStatusCode(e.isTimedOut() ? SERVICE_UNAVAILABLE.code() : TOO_MANY_REQUESTS.code())
+                .end(toJson(new ApiError(e.getMessage())));
+    }
+
     public static void ok(RoutingContext routing, Object o) {
         routing.response()
                 .putHeader(ACCEPT, APPLICATION_JSON)
@@ -386,6 +402,10 @@ public class ResponseUtil {
                 notFound(routing, result.cause().getMessage());
                 return;
             }
+            if (result.cause() instanceof IngestionRejectedException) {
+                ingestionRejected(routing, (IngestionRejectedException) result.cause());
+                return;
+            }
             internalServerError(routing, result.cause().getMessage());
         }
     }